@@ -73,6 +73,8 @@ import com.mchange.v2.c3p0.management.*;
 public final class C3P0Registry
 {
     private final static String MC_PARAM = "com.mchange.v2.c3p0.management.ManagementCoordinator";
+
+    private final static String SHARED_HELPER_POOL_MAX_THREADS_PARAM = "com.mchange.v2.c3p0.sharedHelperPool.maxThreads";
     
     //MT: thread-safe
     final static MLogger logger = MLog.getLogger( C3P0Registry.class );
@@ -102,6 +104,19 @@ public final class C3P0Registry
     //MT: protected by its own lock
     private static Map classNamesToConnectionCustomizers = Collections.synchronizedMap( new HashMap() );
 
+    //MT: protected by its own lock
+    private static Map classNamesToTaskRunnerFactories = Collections.synchronizedMap( new HashMap() );
+
+    private final static TaskRunnerFactory DEFAULT_TASK_RUNNER_FACTORY = new DefaultTaskRunnerFactory();
+
+    // pool managers ask for the shared pool while holding their own locks, and
+    // some of our synchronized methods call into pool managers, so the shared
+    // pool is guarded by a lock of its own, rather than the class' lock
+    private final static Object sharedHelperPoolLock = new Object();
+
+    //MT: protected by sharedHelperPoolLock
+    private static SharedHelperPool sharedHelperPool = null;
+
     private static ManagementCoordinator mc;
 
     static
@@ -167,6 +182,86 @@ public final class C3P0Registry
         }
     }
 
+    public static TaskRunnerFactory getTaskRunnerFactory( String className )
+    {
+        if ( className == null )
+            return DEFAULT_TASK_RUNNER_FACTORY;
+
+        try
+        {
+            TaskRunnerFactory out = (TaskRunnerFactory) classNamesToTaskRunnerFactories.get( className );
+            if (out == null)
+            { 
+                out = (TaskRunnerFactory) Class.forName( className ).newInstance();
+                classNamesToTaskRunnerFactories.put( className, out );
+            }
+            return out;
+        }
+        catch (Exception e)
+        {
+            if (logger.isLoggable( MLevel.WARNING ))
+                logger.log( MLevel.WARNING, 
+                                "Could not create for find TaskRunnerFactory with class name '" +
+                                className + "'. Using default.",
+                                e );
+            return DEFAULT_TASK_RUNNER_FACTORY;
+        }
+    }
+
+    /**
+     * @return the process-wide helper pool used by SharedTaskRunnerFactory,
+     *         created on first use, and sized by the config property
+     *         com.mchange.v2.c3p0.sharedHelperPool.maxThreads
+     */
+    public static SharedHelperPool getSharedHelperPool()
+    {
+        synchronized ( sharedHelperPoolLock )
+        {
+            if ( sharedHelperPool == null )
+            {
+                int max_threads = Math.max( 8, 2 * Runtime.getRuntime().availableProcessors() );
+                String maxThreadsStr = C3P0ConfigUtils.getPropFileConfigProperty( SHARED_HELPER_POOL_MAX_THREADS_PARAM );
+                if ( maxThreadsStr != null )
+                {
+                    try
+                    { max_threads = Integer.parseInt( maxThreadsStr.trim() ); }
+                    catch ( NumberFormatException e )
+                    {
+                        if (logger.isLoggable( MLevel.WARNING ))
+                            logger.log( MLevel.WARNING, 
+                                        "Could not parse " + SHARED_HELPER_POOL_MAX_THREADS_PARAM + " value '" + maxThreadsStr + 
+                                        "' as an int. Using default of " + max_threads + ".",
+                                        e );
+                    }
+                }
+                sharedHelperPool = new SharedHelperPool( max_threads, "C3P0SharedHelperPool-HelperThread" );
+                if (logger.isLoggable( MLevel.INFO ))
+                    logger.info( "Initializing c3p0 shared helper pool with at most " + sharedHelperPool.getMaxThreads() + " threads." );
+            }
+            return sharedHelperPool;
+        }
+    }
+
+    /**
+     * @return the status of the shared helper pool, including task counts for
+     *         each DataSource using it, or null if no DataSource has used it
+     */
+    public static String getSharedHelperPoolStatus()
+    {
+        synchronized ( sharedHelperPoolLock )
+        { return ( sharedHelperPool == null ? null : sharedHelperPool.getStatus() ); }
+    }
+
+    /**
+     * @return the number of threads in the shared helper pool, zero if no
+     *         DataSource has used it
+     */
+    public static int getSharedHelperPoolNumThreads()
+    {
+        synchronized ( sharedHelperPoolLock )
+        { return ( sharedHelperPool == null ? 0 : sharedHelperPool.getNumThreads() ); }
+    }
+
     public static ConnectionCustomizer getConnectionCustomizer( String className ) throws SQLException
     {
         if ( className == null )
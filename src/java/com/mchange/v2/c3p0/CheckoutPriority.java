@@ -0,0 +1,88 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.c3p0;
+
+import com.mchange.v2.resourcepool.CheckoutPriorities;
+
+/**
+ * <p>The priority at which the current Thread checks Connections out of c3p0 pools.
+ * Clients waiting for a Connection are served HIGH first, then NORMAL, then LOW,
+ * and in order of arrival within a priority. Pools may also reserve Connections for
+ * each priority, see the configuration property <tt>checkoutPriorityReservations</tt>.</p>
+ *
+ * <p>Threads check out at NORMAL priority unless they set a priority of their own,
+ * typically around a unit of work:</p>
+ *
+ * <pre>
+ *   int prior = CheckoutPriority.setForCurrentThread( CheckoutPriority.HIGH );
+ *   try { ... ds.getConnection() ... }
+ *   finally { CheckoutPriority.setForCurrentThread( prior ); }
+ * </pre>
+ *
+ * <p>The priority of an asynchronous checkout is that of the Thread that began it.</p>
+ */
+public final class CheckoutPriority
+{
+    public final static int HIGH   = CheckoutPriorities.HIGH;
+    public final static int NORMAL = CheckoutPriorities.NORMAL;
+    public final static int LOW    = CheckoutPriorities.LOW;
+
+    private final static ThreadLocal current = new ThreadLocal();
+
+    /**
+     * @return the priority the current Thread had before, so that it may be restored
+     */
+    public static int setForCurrentThread( int priority )
+    {
+        CheckoutPriorities.checkPriority( priority );
+
+        int out = forCurrentThread();
+        if (priority == NORMAL)
+            current.remove();
+        else
+            current.set( new Integer( priority ) );
+        return out;
+    }
+
+    public static int forCurrentThread()
+    {
+        Integer priority = (Integer) current.get();
+        return ( priority == null ? NORMAL : priority.intValue() );
+    }
+
+    public static void clearForCurrentThread()
+    { current.remove(); }
+
+    /**
+     * @param name "HIGH", "NORMAL", or "LOW" (case-insensitive)
+     */
+    public static int forName( String name )
+    { return CheckoutPriorities.forName( name ); }
+
+    public static String nameOf( int priority )
+    { return CheckoutPriorities.nameOf( priority ); }
+
+    private CheckoutPriority()
+    {}
+}
@@ -510,6 +510,15 @@ public final class ComboPooledDataSource extends AbstractPoolBackedDataSource im
         this.resetPoolManager( false );
     }
 
+    public String getTaskRunnerFactoryClassName()
+    { return wcpds.getTaskRunnerFactoryClassName(); }
+
+    public void setTaskRunnerFactoryClassName( String taskRunnerFactoryClassName )
+    { 
+        wcpds.setTaskRunnerFactoryClassName( taskRunnerFactoryClassName ); 
+        this.resetPoolManager( false );
+    }
+
     public int getUnreturnedConnectionTimeout()
     { return wcpds.getUnreturnedConnectionTimeout(); }
 
@@ -540,6 +549,177 @@ public final class ComboPooledDataSource extends AbstractPoolBackedDataSource im
         this.resetPoolManager( false );
     }
 
+    public boolean isConcurrentCheckout()
+    { return wcpds.isConcurrentCheckout(); }
+
+    public void setConcurrentCheckout(boolean concurrentCheckout)
+    {
+        wcpds.setConcurrentCheckout( concurrentCheckout ); 
+        this.resetPoolManager( false );
+    }
+
+    public boolean isThreadAffinity()
+    { return wcpds.isThreadAffinity(); }
+
+    public void setThreadAffinity(boolean threadAffinity)
+    {
+        wcpds.setThreadAffinity( threadAffinity ); 
+        this.resetPoolManager( false );
+    }
+
+    public String getCheckoutOrdering()
+    { return wcpds.getCheckoutOrdering(); }
+
+    public void setCheckoutOrdering( String checkoutOrdering )
+    {
+        wcpds.setCheckoutOrdering( checkoutOrdering ); 
+        this.resetPoolManager( false );
+    }
+
+    public boolean isAdaptiveSizing()
+    { return wcpds.isAdaptiveSizing(); }
+
+    public void setAdaptiveSizing( boolean adaptiveSizing )
+    {
+        wcpds.setAdaptiveSizing( adaptiveSizing ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getAcquisitionParallelism()
+    { return wcpds.getAcquisitionParallelism(); }
+
+    public void setAcquisitionParallelism( int acquisitionParallelism )
+    {
+        wcpds.setAcquisitionParallelism( acquisitionParallelism ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getCircuitBreakerThreshold()
+    { return wcpds.getCircuitBreakerThreshold(); }
+
+    public void setCircuitBreakerThreshold( int circuitBreakerThreshold )
+    {
+        wcpds.setCircuitBreakerThreshold( circuitBreakerThreshold ); 
+        this.resetPoolManager( false );
+    }
+
+    public boolean isVirtualThreadFriendly()
+    { return wcpds.isVirtualThreadFriendly(); }
+
+    public void setVirtualThreadFriendly( boolean virtualThreadFriendly )
+    {
+        wcpds.setVirtualThreadFriendly( virtualThreadFriendly ); 
+        this.resetPoolManager( false );
+    }
+
+    public String getCheckoutPriorityReservations()
+    { return wcpds.getCheckoutPriorityReservations(); }
+
+    public void setCheckoutPriorityReservations( String checkoutPriorityReservations )
+    {
+        wcpds.setCheckoutPriorityReservations( checkoutPriorityReservations ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getMaxCheckoutWaiters()
+    { return wcpds.getMaxCheckoutWaiters(); }
+
+    public void setMaxCheckoutWaiters( int maxCheckoutWaiters )
+    {
+        wcpds.setMaxCheckoutWaiters( maxCheckoutWaiters ); 
+        this.resetPoolManager( false );
+    }
+
+    public boolean isShedPredictedTimeouts()
+    { return wcpds.isShedPredictedTimeouts(); }
+
+    public void setShedPredictedTimeouts( boolean shedPredictedTimeouts )
+    {
+        wcpds.setShedPredictedTimeouts( shedPredictedTimeouts ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getCheckoutStripes()
+    { return wcpds.getCheckoutStripes(); }
+
+    public void setCheckoutStripes( int checkoutStripes )
+    {
+        wcpds.setCheckoutStripes( checkoutStripes ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getMaxConnectionAgeJitter()
+    { return wcpds.getMaxConnectionAgeJitter(); }
+
+    public void setMaxConnectionAgeJitter( int maxConnectionAgeJitter )
+    {
+        wcpds.setMaxConnectionAgeJitter( maxConnectionAgeJitter ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getMaxConcurrentRetirements()
+    { return wcpds.getMaxConcurrentRetirements(); }
+
+    public void setMaxConcurrentRetirements( int maxConcurrentRetirements )
+    {
+        wcpds.setMaxConcurrentRetirements( maxConcurrentRetirements ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getWarmupParallelism()
+    { return wcpds.getWarmupParallelism(); }
+
+    public void setWarmupParallelism( int warmupParallelism )
+    {
+        wcpds.setWarmupParallelism( warmupParallelism ); 
+        this.resetPoolManager( false );
+    }
+
+    public String getWarmupStatements()
+    { return wcpds.getWarmupStatements(); }
+
+    public void setWarmupStatements( String warmupStatements )
+    {
+        wcpds.setWarmupStatements( warmupStatements ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getMaxConcurrentIdleTests()
+    { return wcpds.getMaxConcurrentIdleTests(); }
+
+    public void setMaxConcurrentIdleTests( int maxConcurrentIdleTests )
+    {
+        wcpds.setMaxConcurrentIdleTests( maxConcurrentIdleTests ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getNumAcquireHelperThreads()
+    { return wcpds.getNumAcquireHelperThreads(); }
+
+    public void setNumAcquireHelperThreads( int numAcquireHelperThreads )
+    {
+        wcpds.setNumAcquireHelperThreads( numAcquireHelperThreads ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getNumTestHelperThreads()
+    { return wcpds.getNumTestHelperThreads(); }
+
+    public void setNumTestHelperThreads( int numTestHelperThreads )
+    {
+        wcpds.setNumTestHelperThreads( numTestHelperThreads ); 
+        this.resetPoolManager( false );
+    }
+
+    public int getNumDestroyHelperThreads()
+    { return wcpds.getNumDestroyHelperThreads(); }
+
+    public void setNumDestroyHelperThreads( int numDestroyHelperThreads )
+    {
+        wcpds.setNumDestroyHelperThreads( numDestroyHelperThreads ); 
+        this.resetPoolManager( false );
+    }
+
     public int getStatementCacheNumDeferredCloseThreads()
     { return wcpds.getStatementCacheNumDeferredCloseThreads(); }
 
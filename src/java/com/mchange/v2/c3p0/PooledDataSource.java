@@ -23,6 +23,7 @@
 
 package com.mchange.v2.c3p0;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import javax.sql.DataSource;
 import java.util.Collection;
@@ -111,6 +112,82 @@ import java.util.Collection;
  */
 public interface PooledDataSource extends DataSource
 {
+    /**
+     * The SQLState of the SQLException with which a Connection checkout fails immediately,
+     * rather than waiting, while the pool's acquisition circuit breaker is open. (See the
+     * <tt>circuitBreakerThreshold</tt> configuration property.) The class is 08, connection
+     * exception, with an implementation-defined subclass.
+     */
+    public final static String CIRCUIT_OPEN_SQL_STATE = "08Z01";
+
+    /**
+     * The SQLState of the SQLException with which a Connection checkout fails immediately,
+     * rather than waiting, when too many clients already wait, or when the client would
+     * likely time out before being served. (See the <tt>maxCheckoutWaiters</tt> and
+     * <tt>shedPredictedTimeouts</tt> configuration properties.)
+     */
+    public final static String POOL_SATURATED_SQL_STATE = "08Z02";
+
+    /**
+     * Checks out a Connection from the default-authentication pool without blocking the calling Thread.
+     * If a Connection is idle, the callback is notified before this method returns. Otherwise, it is
+     * notified by one of the pool's helper threads, as soon as a Connection is checked in or acquired,
+     * or with an SQLException if <tt>checkoutTimeout</tt> elapses or no Connection can be acquired.
+     * The callback should not itself block for long.
+     *
+     * @return a handle by which a client may abandon the checkout
+     */
+    public PendingConnection getConnectionAsync( ConnectionCallback callback );
+
+    /**
+     * As {@link #getConnectionAsync(ConnectionCallback)}, but checks out a Connection
+     * from the pool for the specified authentication credentials.
+     */
+    public PendingConnection getConnectionAsync( String username, String password, ConnectionCallback callback );
+
+    /**
+     * Checks out <tt>count</tt> Connections from the default-authentication pool at once, or none.
+     * Waits until all of them can be had together. Only the longest-waiting such call holds some
+     * Connections while waiting for others, which are set aside for it as they are released, so
+     * steady single checkouts cannot starve it, and clients that each need several Connections cannot
+     * deadlock against one another, as they can when each gathers its Connections with one
+     * <tt>getConnection()</tt> after another. Acquires any
+     * Connections the pool lacks in a single batch. <tt>count</tt> may not exceed <tt>maxPoolSize</tt>.
+     *
+     * @param timeout milliseconds, or zero to wait indefinitely
+     * @return <tt>count</tt> Connections, each of which must be closed, perhaps via {@link #closeConnections(Connection[])}
+     */
+    public Connection[] getConnections( int count, long timeout ) throws SQLException;
+
+    /**
+     * As {@link #getConnections(int, long)}, but checks out Connections
+     * from the pool for the specified authentication credentials.
+     */
+    public Connection[] getConnections( String username, String password, int count, long timeout ) throws SQLException;
+
+    /**
+     * Closes each of several Connections, returning them to their pool, even if closing
+     * some fails. Throws the first failure, if any. <tt>null</tt> elements are skipped.
+     */
+    public void closeConnections( Connection[] cons ) throws SQLException;
+
+    /**
+     * Waits until the default-authentication pool is warm: until it has acquired its initial
+     * Connections (the larger of <tt>initialPoolSize</tt> and <tt>minPoolSize</tt>), and prepared
+     * any <tt>warmupStatements</tt> on them. Starts the pool, if it has not yet been started.
+     * Suitable for gating a health check.
+     *
+     * @param timeout milliseconds, or zero to wait indefinitely
+     * @return true if the pool is ready, false if the timeout elapsed first
+     * @throws SQLException if the pool is closed or broken, or the waiting Thread is interrupted
+     */
+    public boolean awaitReady( long timeout ) throws SQLException;
+
+    /**
+     * As {@link #awaitReady(long)}, but waits on the pool for the specified authentication credentials.
+     */
+    public boolean awaitReady( String username, String password, long timeout ) throws SQLException;
+
     public String getIdentityToken();
     public String getDataSourceName();
     public void setDataSourceName(String dataSourceName);
@@ -139,6 +216,22 @@ public interface PooledDataSource extends DataSource
     public long getNumFailedCheckinsDefaultUser() throws SQLException;
     public long getNumFailedCheckoutsDefaultUser() throws SQLException;
     public long getNumFailedIdleTestsDefaultUser() throws SQLException;
+    public long getNumIdleExpirationsDefaultUser() throws SQLException;
+    public long getNumIdleTestsDefaultUser() throws SQLException;
+    public long getNumSkippedIdleTestsDefaultUser() throws SQLException;
+    public long getAverageIdleTimeAtCheckoutDefaultUser() throws SQLException;
+    public float getCheckoutRateDefaultUser() throws SQLException;
+    public float getAverageHoldTimeDefaultUser() throws SQLException;
+    public float getAverageCheckoutWaitTimeDefaultUser() throws SQLException;
+    public int getAdaptiveTargetPoolSizeDefaultUser() throws SQLException;
+    public long getNumAdaptiveExpansionsDefaultUser() throws SQLException;
+    public long getNumAdaptiveContractionsDefaultUser() throws SQLException;
+    public long getLastTimeToFillDefaultUser() throws SQLException;
+    public long getTimeToReadyDefaultUser() throws SQLException;
+    public String getCircuitBreakerStateDefaultUser() throws SQLException;
+    public long getNumCircuitBreakerTripsDefaultUser() throws SQLException;
+    public long getNumCircuitBreakerRejectionsDefaultUser() throws SQLException;
+    public long getNumShedCheckoutsDefaultUser() throws SQLException;
     public float getEffectivePropertyCycleDefaultUser() throws SQLException;
     public int getNumThreadsAwaitingCheckoutDefaultUser() throws SQLException;
 
@@ -161,6 +254,22 @@ public interface PooledDataSource extends DataSource
     public int getStatementCacheNumConnectionsWithCachedStatements(String username, String password) throws SQLException;
     public float getEffectivePropertyCycle(String username, String password) throws SQLException;
     public int getNumThreadsAwaitingCheckout(String username, String password) throws SQLException;
+    public long getNumIdleExpirations(String username, String password) throws SQLException;
+    public long getNumIdleTests(String username, String password) throws SQLException;
+    public long getNumSkippedIdleTests(String username, String password) throws SQLException;
+    public long getAverageIdleTimeAtCheckout(String username, String password) throws SQLException;
+    public float getCheckoutRate(String username, String password) throws SQLException;
+    public float getAverageHoldTime(String username, String password) throws SQLException;
+    public float getAverageCheckoutWaitTime(String username, String password) throws SQLException;
+    public int getAdaptiveTargetPoolSize(String username, String password) throws SQLException;
+    public long getNumAdaptiveExpansions(String username, String password) throws SQLException;
+    public long getNumAdaptiveContractions(String username, String password) throws SQLException;
+    public long getLastTimeToFill(String username, String password) throws SQLException;
+    public long getTimeToReady(String username, String password) throws SQLException;
+    public String getCircuitBreakerState(String username, String password) throws SQLException;
+    public long getNumCircuitBreakerTrips(String username, String password) throws SQLException;
+    public long getNumCircuitBreakerRejections(String username, String password) throws SQLException;
+    public long getNumShedCheckouts(String username, String password) throws SQLException;
 
     /**
      * Discards all Connections managed by the PooledDataSource with the specified authentication credentials
@@ -195,14 +304,111 @@ public interface PooledDataSource extends DataSource
     public int getStatementDestroyerNumIdleThreads() throws SQLException;
     public int getStatementDestroyerNumTasksPending() throws SQLException;
 
+    /*
+     * the dedicated helper threads of numAcquireHelperThreads, numTestHelperThreads,
+     * and numDestroyHelperThreads. counts are -1, and samples null, unless configured.
+     */
+    public int getAcquireHelperNumThreads() throws SQLException;
+    public int getAcquireHelperNumActiveThreads() throws SQLException;
+    public int getAcquireHelperNumIdleThreads() throws SQLException;
+    public int getAcquireHelperNumTasksPending() throws SQLException;
+    public int getTestHelperNumThreads() throws SQLException;
+    public int getTestHelperNumActiveThreads() throws SQLException;
+    public int getTestHelperNumIdleThreads() throws SQLException;
+    public int getTestHelperNumTasksPending() throws SQLException;
+    public int getDestroyHelperNumThreads() throws SQLException;
+    public int getDestroyHelperNumActiveThreads() throws SQLException;
+    public int getDestroyHelperNumIdleThreads() throws SQLException;
+    public int getDestroyHelperNumTasksPending() throws SQLException;
+
     public String sampleThreadPoolStackTraces() throws SQLException;
     public String sampleThreadPoolStatus() throws SQLException;
 
     public String sampleStatementDestroyerStackTraces() throws SQLException;
     public String sampleStatementDestroyerStatus() throws SQLException;
 
+    public String sampleAcquireHelperStackTraces() throws SQLException;
+    public String sampleAcquireHelperStatus() throws SQLException;
+
+    public String sampleTestHelperStackTraces() throws SQLException;
+    public String sampleTestHelperStatus() throws SQLException;
+
+    public String sampleDestroyHelperStackTraces() throws SQLException;
+    public String sampleDestroyHelperStatus() throws SQLException;
+
     public String sampleStatementCacheStatusDefaultUser() throws SQLException;
     public String sampleStatementCacheStatus(String username, String password) throws SQLException;
+
+    /**
+     * Reports, for each CheckoutPriority, the Connections reserved and checked out,
+     * the clients waiting, the checkouts made, and their average wait.
+     */
+    public String sampleCheckoutPriorityStatusDefaultUser() throws SQLException;
+    public String sampleCheckoutPriorityStatus(String username, String password) throws SQLException;
+
+    /**
+     * Percentiles, in milliseconds, of the pool's latency histograms, which record
+     * every successful checkout's wait (including any test on checkout), every
+     * Connection's hold time from checkout to checkin, every successful acquisition
+     * of a new Connection, and every Connection test. Percentiles are between 0
+     * and 100, e.g. 99.9, and are accurate to within about 3%.
+     */
+    public float getCheckoutWaitPercentileDefaultUser(double percentile) throws SQLException;
+    public float getHoldTimePercentileDefaultUser(double percentile) throws SQLException;
+    public float getAcquisitionTimePercentileDefaultUser(double percentile) throws SQLException;
+    public float getConnectionTestTimePercentileDefaultUser(double percentile) throws SQLException;
+    public float getCheckoutWaitPercentile(String username, String password, double percentile) throws SQLException;
+    public float getHoldTimePercentile(String username, String password, double percentile) throws SQLException;
+    public float getAcquisitionTimePercentile(String username, String password, double percentile) throws SQLException;
+    public float getConnectionTestTimePercentile(String username, String password, double percentile) throws SQLException;
+
+    /**
+     * Reports the count, mean, median, 90th, 99th and 99.9th percentiles, and maximum
+     * of each of the pool's latency histograms.
+     */
+    public String sampleLatencyStatusDefaultUser() throws SQLException;
+    public String sampleLatencyStatus(String username, String password) throws SQLException;
+
+    /**
+     * Statistics of the tasks each pool posts to its helper threads: tasks that acquire
+     * new Connections, test idle Connections, refurbish Connections on check-in, and
+     * remove and destroy Connections. Queue wait percentiles, from a task's posting to
+     * its start, in milliseconds, reveal saturated helper threads long before tasks
+     * run long enough to exceed maxAdministrativeTaskTime. Queued counts are of tasks
+     * posted but not yet started.
+     */
+    public float getAcquireTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException;
+    public float getTestTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException;
+    public float getRefurbishTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException;
+    public float getDestroyTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException;
+    public float getAcquireTaskRunTimePercentileDefaultUser(double percentile) throws SQLException;
+    public float getTestTaskRunTimePercentileDefaultUser(double percentile) throws SQLException;
+    public float getRefurbishTaskRunTimePercentileDefaultUser(double percentile) throws SQLException;
+    public float getDestroyTaskRunTimePercentileDefaultUser(double percentile) throws SQLException;
+    public int getNumAcquireTasksQueuedDefaultUser() throws SQLException;
+    public int getNumTestTasksQueuedDefaultUser() throws SQLException;
+    public int getNumRefurbishTasksQueuedDefaultUser() throws SQLException;
+    public int getNumDestroyTasksQueuedDefaultUser() throws SQLException;
+    public float getAcquireTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException;
+    public float getTestTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException;
+    public float getRefurbishTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException;
+    public float getDestroyTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException;
+    public float getAcquireTaskRunTimePercentile(String username, String password, double percentile) throws SQLException;
+    public float getTestTaskRunTimePercentile(String username, String password, double percentile) throws SQLException;
+    public float getRefurbishTaskRunTimePercentile(String username, String password, double percentile) throws SQLException;
+    public float getDestroyTaskRunTimePercentile(String username, String password, double percentile) throws SQLException;
+    public int getNumAcquireTasksQueued(String username, String password) throws SQLException;
+    public int getNumTestTasksQueued(String username, String password) throws SQLException;
+    public int getNumRefurbishTasksQueued(String username, String password) throws SQLException;
+    public int getNumDestroyTasksQueued(String username, String password) throws SQLException;
+
+    /**
+     * Reports, for each kind of task, including the statement cache's, counts of
+     * tasks posted, queued, running, and failed, and summaries of their queue waits
+     * and run times.
+     */
+    public String sampleTaskStatusDefaultUser() throws SQLException;
+    public String sampleTaskStatus(String username, String password) throws SQLException;
     
     public Throwable getLastAcquisitionFailureDefaultUser() throws SQLException;
     public Throwable getLastCheckinFailureDefaultUser() throws SQLException;
@@ -300,4 +506,30 @@ public interface PooledDataSource extends DataSource
      *  @see #close()
      */
     public void close(boolean force_destory) throws SQLException;
+
+    /**
+     * Notified, exactly once unless the checkout is first cancelled, of
+     * the outcome of a call to <tt>getConnectionAsync()</tt>.
+     */
+    public interface ConnectionCallback
+    {
+        /**
+         * The client now holds Connection con, and must eventually close() it.
+         */
+        public void connectionAvailable( Connection con );
+
+        public void connectionFailed( SQLException e );
+    }
+
+    public interface PendingConnection
+    {
+        /**
+         * Abandons an asynchronous checkout. A Connection checked out for it
+         * even as it is cancelled is returned to the pool.
+         *
+         * @return false if the callback has already been, or
+         *         is already being, notified
+         */
+        public boolean cancel();
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0;
+
+import com.mchange.v2.async.AsynchronousRunner;
+
+/**
+ * <p>Runs a pooled DataSource's administrative tasks: Connection acquisitions,
+ * tests, check-in refurbishment, destruction, and the like. Task runners are
+ * created by a {@link TaskRunnerFactory}, configured with the DataSource
+ * property <tt>taskRunnerFactoryClassName</tt>.</p>
+ *
+ * <p>Tasks may block, for as long as the database takes to respond. A runner
+ * that cannot accept a task, because it has been closed, should throw a
+ * <tt>com.mchange.v2.util.ResourceClosedException</tt> from <tt>postRunnable()</tt>.</p>
+ *
+ * <p>The remaining methods report on the runner, for PooledDataSource's
+ * <tt>getThreadPool...</tt> statistics. Runners whose threads are not
+ * pooled should report the threads currently running tasks.</p>
+ */
+public interface TaskRunner extends AsynchronousRunner
+{
+    public int getThreadCount();
+
+    public int getActiveCount();
+
+    public int getIdleCount();
+
+    public int getPendingTaskCount();
+
+    public String getStackTraces();
+
+    public String getStatus();
+}
@@ -0,0 +1,50 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0;
+
+import java.util.Timer;
+
+/**
+ * <p>Creates the {@link TaskRunner}s on which pooled DataSources run their
+ * administrative tasks. Implementations should be immutable, and should
+ * offer public, no argument constructors.</p>
+ *
+ * <p>c3p0 offers factories for its traditional thread pool (the default),
+ * for <tt>java.util.concurrent.ThreadPoolExecutor</tt>, for
+ * <tt>java.util.concurrent.ForkJoinPool</tt> (JDK 7+), and for a
+ * virtual thread per task (JDK 21+), all in <tt>com.mchange.v2.c3p0.impl</tt>.</p>
+ */
+public interface TaskRunnerFactory
+{
+    /**
+     * @param num_threads the number of threads the runner should use, if it pools them
+     * @param max_administrative_task_time in seconds. If greater than zero, the runner
+     *        should interrupt tasks that run longer than this.
+     * @param timer a daemon Timer, shared by c3p0's task runners, on which such
+     *        interruptions may be scheduled
+     * @param thread_label identifies the DataSource, and the purpose of the runner,
+     *        and should name the runner's threads
+     */
+    public TaskRunner createTaskRunner( int num_threads, int max_administrative_task_time, Timer timer, String thread_label )
+	throws Exception;
+}
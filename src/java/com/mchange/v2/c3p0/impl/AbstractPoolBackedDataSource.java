@@ -135,6 +135,72 @@ public abstract class AbstractPoolBackedDataSource extends PoolBackedDataSourceB
         return pc.getConnection();
     }
 
+    public PendingConnection getConnectionAsync( ConnectionCallback callback )
+    {
+        try
+        { return getPoolManager().getPool().checkoutConnectionAsync( callback ); }
+        catch (SQLException e)
+        { return failedAsync( callback, e ); }
+    }
+
+    public PendingConnection getConnectionAsync( String username, String password, ConnectionCallback callback )
+    {
+        try
+        { return getPoolManager().getPool(username, password).checkoutConnectionAsync( callback ); }
+        catch (SQLException e)
+        { return failedAsync( callback, e ); }
+    }
+
+    public Connection[] getConnections( int count, long timeout ) throws SQLException
+    { return toConnections( getPoolManager().getPool().checkoutPooledConnections( count, timeout ) ); }
+
+    public Connection[] getConnections( String username, String password, int count, long timeout ) throws SQLException
+    { return toConnections( getPoolManager().getPool(username, password).checkoutPooledConnections( count, timeout ) ); }
+
+    private static Connection[] toConnections( PooledConnection[] pcs ) throws SQLException
+    {
+        Connection[] out = new Connection[ pcs.length ];
+        for (int i = 0; i < pcs.length; ++i)
+            out[i] = pcs[i].getConnection();
+        return out;
+    }
+
+    public void closeConnections( Connection[] cons ) throws SQLException
+    {
+        SQLException failure = null;
+        for (int i = 0; i < cons.length; ++i)
+        {
+            try
+            {
+                if (cons[i] != null)
+                    cons[i].close();
+            }
+            catch (SQLException e)
+            {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    public boolean awaitReady( long timeout ) throws SQLException
+    { return getPoolManager().getPool().awaitReady( timeout ); }
+
+    public boolean awaitReady( String username, String password, long timeout ) throws SQLException
+    { return getPoolManager().getPool(username, password).awaitReady( timeout ); }
+
+    private static PendingConnection failedAsync( ConnectionCallback callback, SQLException e )
+    {
+        callback.connectionFailed( e );
+        return new PendingConnection()
+        {
+            public boolean cancel()
+            { return false; }
+        };
+    }
+
     public PrintWriter getLogWriter() throws SQLException
     { return assertCpds().getLogWriter(); }
 
@@ -199,6 +265,54 @@ public abstract class AbstractPoolBackedDataSource extends PoolBackedDataSourceB
     public long getNumFailedIdleTestsDefaultUser() throws SQLException
     { return getPoolManager().getPool().getNumFailedIdleTests(); }
 
+    public long getNumIdleExpirationsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumIdleExpirations(); }
+
+    public long getNumIdleTestsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumIdleTests(); }
+
+    public long getNumSkippedIdleTestsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumSkippedIdleTests(); }
+
+    public long getAverageIdleTimeAtCheckoutDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getAverageIdleTimeAtCheckout(); }
+
+    public float getCheckoutRateDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getCheckoutRate(); }
+
+    public float getAverageHoldTimeDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getAverageHoldTime(); }
+
+    public float getAverageCheckoutWaitTimeDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getAverageCheckoutWaitTime(); }
+
+    public int getAdaptiveTargetPoolSizeDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getAdaptiveTargetPoolSize(); }
+
+    public long getNumAdaptiveExpansionsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumAdaptiveExpansions(); }
+
+    public long getNumAdaptiveContractionsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumAdaptiveContractions(); }
+
+    public long getLastTimeToFillDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getLastTimeToFill(); }
+
+    public long getTimeToReadyDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getTimeToReady(); }
+
+    public String getCircuitBreakerStateDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getCircuitBreakerState(); }
+
+    public long getNumCircuitBreakerTripsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumCircuitBreakerTrips(); }
+
+    public long getNumCircuitBreakerRejectionsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumCircuitBreakerRejections(); }
+
+    public long getNumShedCheckoutsDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getNumShedCheckouts(); }
+
     public int getNumThreadsAwaitingCheckoutDefaultUser() throws SQLException
     { return getPoolManager().getPool().getNumThreadsAwaitingCheckout(); }
 
@@ -226,6 +340,120 @@ public abstract class AbstractPoolBackedDataSource extends PoolBackedDataSourceB
     public String sampleStatementCacheStatus(String username, String password) throws SQLException
     { return assertAuthPool(username, password).dumpStatementCacheStatus(); }
     
+    public String sampleCheckoutPriorityStatusDefaultUser() throws SQLException
+    { return getPoolManager().getPool().dumpCheckoutPriorityStatus(); }
+    
+    public String sampleCheckoutPriorityStatus(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).dumpCheckoutPriorityStatus(); }
+
+    public float getCheckoutWaitPercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getCheckoutWaitPercentile( percentile ); }
+
+    public float getHoldTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getHoldTimePercentile( percentile ); }
+
+    public float getAcquisitionTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getAcquisitionTimePercentile( percentile ); }
+
+    public float getConnectionTestTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getConnectionTestTimePercentile( percentile ); }
+
+    public float getCheckoutWaitPercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getCheckoutWaitPercentile( percentile ); }
+
+    public float getHoldTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getHoldTimePercentile( percentile ); }
+
+    public float getAcquisitionTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getAcquisitionTimePercentile( percentile ); }
+
+    public float getConnectionTestTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getConnectionTestTimePercentile( percentile ); }
+
+    public String sampleLatencyStatusDefaultUser() throws SQLException
+    { return getPoolManager().getPool().dumpLatencyStatus(); }
+    
+    public String sampleLatencyStatus(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).dumpLatencyStatus(); }
+
+    public float getAcquireTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getAcquireTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getTestTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getTestTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getRefurbishTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getRefurbishTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getDestroyTaskQueueWaitPercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getDestroyTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getAcquireTaskRunTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getAcquireTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public float getTestTaskRunTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getTestTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public float getRefurbishTaskRunTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getRefurbishTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public float getDestroyTaskRunTimePercentileDefaultUser(double percentile) throws SQLException
+    { return getPoolManager().getPool().getDestroyTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public int getNumAcquireTasksQueuedDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getAcquireTaskStatistics().getNumQueued(); }
+
+    public int getNumTestTasksQueuedDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getTestTaskStatistics().getNumQueued(); }
+
+    public int getNumRefurbishTasksQueuedDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getRefurbishTaskStatistics().getNumQueued(); }
+
+    public int getNumDestroyTasksQueuedDefaultUser() throws SQLException
+    { return getPoolManager().getPool().getDestroyTaskStatistics().getNumQueued(); }
+
+    public float getAcquireTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getAcquireTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getTestTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getTestTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getRefurbishTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getRefurbishTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getDestroyTaskQueueWaitPercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getDestroyTaskStatistics().getQueueWaitHistogram().getPercentileMillis( percentile ); }
+
+    public float getAcquireTaskRunTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getAcquireTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public float getTestTaskRunTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getTestTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public float getRefurbishTaskRunTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getRefurbishTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public float getDestroyTaskRunTimePercentile(String username, String password, double percentile) throws SQLException
+    { return assertAuthPool(username, password).getDestroyTaskStatistics().getRunTimeHistogram().getPercentileMillis( percentile ); }
+
+    public int getNumAcquireTasksQueued(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getAcquireTaskStatistics().getNumQueued(); }
+
+    public int getNumTestTasksQueued(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getTestTaskStatistics().getNumQueued(); }
+
+    public int getNumRefurbishTasksQueued(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getRefurbishTaskStatistics().getNumQueued(); }
+
+    public int getNumDestroyTasksQueued(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getDestroyTaskStatistics().getNumQueued(); }
+
+    public String sampleTaskStatusDefaultUser() throws SQLException
+    { return getPoolManager().getPool().dumpTaskStatus(); }
+
+    public String sampleTaskStatus(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).dumpTaskStatus(); }
+    
     public Throwable getLastAcquisitionFailureDefaultUser() throws SQLException
     { return getPoolManager().getPool().getLastAcquisitionFailure(); }
 
@@ -361,6 +589,54 @@ public abstract class AbstractPoolBackedDataSource extends PoolBackedDataSourceB
     public long getNumFailedIdleTests(String username, String password) throws SQLException
     { return assertAuthPool(username, password).getNumFailedIdleTests(); }
 
+    public long getNumIdleExpirations(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumIdleExpirations(); }
+
+    public long getNumIdleTests(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumIdleTests(); }
+
+    public long getNumSkippedIdleTests(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumSkippedIdleTests(); }
+
+    public long getAverageIdleTimeAtCheckout(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getAverageIdleTimeAtCheckout(); }
+
+    public float getCheckoutRate(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getCheckoutRate(); }
+
+    public float getAverageHoldTime(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getAverageHoldTime(); }
+
+    public float getAverageCheckoutWaitTime(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getAverageCheckoutWaitTime(); }
+
+    public int getAdaptiveTargetPoolSize(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getAdaptiveTargetPoolSize(); }
+
+    public long getNumAdaptiveExpansions(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumAdaptiveExpansions(); }
+
+    public long getNumAdaptiveContractions(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumAdaptiveContractions(); }
+
+    public long getLastTimeToFill(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getLastTimeToFill(); }
+
+    public long getTimeToReady(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getTimeToReady(); }
+
+    public String getCircuitBreakerState(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getCircuitBreakerState(); }
+
+    public long getNumCircuitBreakerTrips(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumCircuitBreakerTrips(); }
+
+    public long getNumCircuitBreakerRejections(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumCircuitBreakerRejections(); }
+
+    public long getNumShedCheckouts(String username, String password) throws SQLException
+    { return assertAuthPool(username, password).getNumShedCheckouts(); }
+
     public void softReset(String username, String password) throws SQLException
     { assertAuthPool(username, password).reset(); }
 
@@ -432,6 +708,60 @@ public abstract class AbstractPoolBackedDataSource extends PoolBackedDataSourceB
     public String sampleStatementDestroyerStatus() throws SQLException
     { return getPoolManager().getStatementDestroyerStatus(); }
 
+    public int getAcquireHelperNumThreads() throws SQLException
+    { return getPoolManager().getAcquireHelperNumThreads(); }
+
+    public int getAcquireHelperNumActiveThreads() throws SQLException
+    { return getPoolManager().getAcquireHelperNumActiveThreads(); }
+
+    public int getAcquireHelperNumIdleThreads() throws SQLException
+    { return getPoolManager().getAcquireHelperNumIdleThreads(); }
+
+    public int getAcquireHelperNumTasksPending() throws SQLException
+    { return getPoolManager().getAcquireHelperNumTasksPending(); }
+
+    public int getTestHelperNumThreads() throws SQLException
+    { return getPoolManager().getTestHelperNumThreads(); }
+
+    public int getTestHelperNumActiveThreads() throws SQLException
+    { return getPoolManager().getTestHelperNumActiveThreads(); }
+
+    public int getTestHelperNumIdleThreads() throws SQLException
+    { return getPoolManager().getTestHelperNumIdleThreads(); }
+
+    public int getTestHelperNumTasksPending() throws SQLException
+    { return getPoolManager().getTestHelperNumTasksPending(); }
+
+    public int getDestroyHelperNumThreads() throws SQLException
+    { return getPoolManager().getDestroyHelperNumThreads(); }
+
+    public int getDestroyHelperNumActiveThreads() throws SQLException
+    { return getPoolManager().getDestroyHelperNumActiveThreads(); }
+
+    public int getDestroyHelperNumIdleThreads() throws SQLException
+    { return getPoolManager().getDestroyHelperNumIdleThreads(); }
+
+    public int getDestroyHelperNumTasksPending() throws SQLException
+    { return getPoolManager().getDestroyHelperNumTasksPending(); }
+
+    public String sampleAcquireHelperStackTraces() throws SQLException
+    { return getPoolManager().getAcquireHelperStackTraces(); }
+
+    public String sampleAcquireHelperStatus() throws SQLException
+    { return getPoolManager().getAcquireHelperStatus(); }
+
+    public String sampleTestHelperStackTraces() throws SQLException
+    { return getPoolManager().getTestHelperStackTraces(); }
+
+    public String sampleTestHelperStatus() throws SQLException
+    { return getPoolManager().getTestHelperStatus(); }
+
+    public String sampleDestroyHelperStackTraces() throws SQLException
+    { return getPoolManager().getDestroyHelperStackTraces(); }
+
+    public String sampleDestroyHelperStatus() throws SQLException
+    { return getPoolManager().getDestroyHelperStatus(); }
+
 
     public void softResetAllUsers() throws SQLException
     { getPoolManager().softResetAllAuths(); }
@@ -57,10 +57,26 @@ public final class C3P0Defaults
     private final static boolean FORCE_IGNORE_UNRESOLVED_TXNS                = false;
     private final static boolean USES_TRADITIONAL_REFLECTIVE_PROXIES         = false;
     private final static boolean DEBUG_UNRETURNED_CONNECTION_STACK_TRACES    = false;
+    private final static boolean CONCURRENT_CHECKOUT                         = false;
+    private final static boolean THREAD_AFFINITY                             = false;
+    private final static boolean ADAPTIVE_SIZING                             = false;
+    private final static boolean VIRTUAL_THREAD_FRIENDLY                     = false;
+    private final static boolean SHED_PREDICTED_TIMEOUTS                     = false;
 
     private final static ConnectionTester CONNECTION_TESTER = new DefaultConnectionTester();
 
-    private final static int NUM_HELPER_THREADS = 3;
+    private final static int NUM_HELPER_THREADS      = 3;
+    private final static int ACQUISITION_PARALLELISM = 0;
+    private final static int CIRCUIT_BREAKER_THRESHOLD = 0;
+    private final static int MAX_CHECKOUT_WAITERS      = 0;
+    private final static int CHECKOUT_STRIPES          = 1;
+    private final static int MAX_CONNECTION_AGE_JITTER = 0;
+    private final static int MAX_CONCURRENT_RETIREMENTS = 0;
+    private final static int WARMUP_PARALLELISM        = 0;
+    private final static int MAX_CONCURRENT_IDLE_TESTS = 0;
+    private final static int NUM_ACQUIRE_HELPER_THREADS = 0;
+    private final static int NUM_TEST_HELPER_THREADS    = 0;
+    private final static int NUM_DESTROY_HELPER_THREADS = 0;
 
     private final static String AUTOMATIC_TEST_TABLE             = null;
     private final static String CONNECTION_CUSTOMIZER_CLASS_NAME = null;
@@ -70,6 +86,10 @@ public final class C3P0Defaults
     private final static String OVERRIDE_DEFAULT_PASSWORD        = null;
     private final static String PASSWORD                         = null;
     private final static String PREFERRED_TEST_QUERY             = null;
+    private final static String CHECKOUT_ORDERING                = "LIFO";
+    private final static String CHECKOUT_PRIORITY_RESERVATIONS   = null;
+    private final static String WARMUP_STATEMENTS                = null;
+    private final static String TASK_RUNNER_FACTORY_CLASS_NAME   = null;
     private final static String FACTORY_CLASS_LOCATION           = null;
     private final static String USER_OVERRIDES_AS_STRING         = null;
     private final static String USER                             = null;
@@ -148,6 +168,9 @@ public final class C3P0Defaults
     public static String connectionTesterClassName()
     { return CONNECTION_TESTER.getClass().getName(); }
 
+    public static String taskRunnerFactoryClassName()
+    { return TASK_RUNNER_FACTORY_CLASS_NAME; }
+
     public static String automaticTestTable()
     { return AUTOMATIC_TEST_TABLE; }
 
@@ -178,12 +201,69 @@ public final class C3P0Defaults
     public static boolean debugUnreturnedConnectionStackTraces()
     { return DEBUG_UNRETURNED_CONNECTION_STACK_TRACES; }
 
+    public static boolean concurrentCheckout()
+    { return CONCURRENT_CHECKOUT; }
+
+    public static boolean threadAffinity()
+    { return THREAD_AFFINITY; }
+
     public static boolean usesTraditionalReflectiveProxies()
     { return USES_TRADITIONAL_REFLECTIVE_PROXIES; }
 
     public static String preferredTestQuery()
     { return PREFERRED_TEST_QUERY; }
 
+    public static String checkoutOrdering()
+    { return CHECKOUT_ORDERING; }
+
+    public static boolean adaptiveSizing()
+    { return ADAPTIVE_SIZING; }
+
+    public static int acquisitionParallelism()
+    { return ACQUISITION_PARALLELISM; }
+
+    public static int circuitBreakerThreshold()
+    { return CIRCUIT_BREAKER_THRESHOLD; }
+
+    public static boolean virtualThreadFriendly()
+    { return VIRTUAL_THREAD_FRIENDLY; }
+
+    public static String checkoutPriorityReservations()
+    { return CHECKOUT_PRIORITY_RESERVATIONS; }
+
+    public static int maxCheckoutWaiters()
+    { return MAX_CHECKOUT_WAITERS; }
+
+    public static boolean shedPredictedTimeouts()
+    { return SHED_PREDICTED_TIMEOUTS; }
+
+    public static int checkoutStripes()
+    { return CHECKOUT_STRIPES; }
+
+    public static int maxConnectionAgeJitter()
+    { return MAX_CONNECTION_AGE_JITTER; }
+
+    public static int maxConcurrentRetirements()
+    { return MAX_CONCURRENT_RETIREMENTS; }
+
+    public static int warmupParallelism()
+    { return WARMUP_PARALLELISM; }
+
+    public static String warmupStatements()
+    { return WARMUP_STATEMENTS; }
+
+    public static int maxConcurrentIdleTests()
+    { return MAX_CONCURRENT_IDLE_TESTS; }
+
+    public static int numAcquireHelperThreads()
+    { return NUM_ACQUIRE_HELPER_THREADS; }
+
+    public static int numTestHelperThreads()
+    { return NUM_TEST_HELPER_THREADS; }
+
+    public static int numDestroyHelperThreads()
+    { return NUM_DESTROY_HELPER_THREADS; }
+
     public static String userOverridesAsString()
     { return USER_OVERRIDES_AS_STRING; }
 
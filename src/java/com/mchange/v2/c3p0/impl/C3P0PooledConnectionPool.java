@@ -24,16 +24,22 @@
 package com.mchange.v2.c3p0.impl;
 
 import com.mchange.v2.c3p0.stmt.*;
+import com.mchange.v2.c3p0.CheckoutPriority;
 import com.mchange.v2.c3p0.ConnectionCustomizer;
 import com.mchange.v2.c3p0.SQLWarnings;
 import com.mchange.v2.c3p0.UnifiedConnectionTester;
 import com.mchange.v2.c3p0.WrapperConnectionPoolDataSource;
+import com.mchange.v2.c3p0.PooledDataSource;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
+import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.WeakHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
@@ -42,16 +48,20 @@ import javax.sql.PooledConnection;
 
 import com.mchange.v1.db.sql.ConnectionUtils;
 import com.mchange.v2.async.AsynchronousRunner;
-import com.mchange.v2.async.ThreadPoolAsynchronousRunner;
 import com.mchange.v2.log.MLevel;
 import com.mchange.v2.log.MLog;
 import com.mchange.v2.log.MLogger;
 import com.mchange.v2.c3p0.ConnectionTester;
 import com.mchange.v2.c3p0.QueryConnectionTester;
 import com.mchange.v2.resourcepool.CannotAcquireResourceException;
+import com.mchange.v2.resourcepool.CircuitOpenException;
+import com.mchange.v2.resourcepool.CheckoutOrdering;
+import com.mchange.v2.resourcepool.LatencyHistogram;
+import com.mchange.v2.resourcepool.PoolSaturatedException;
 import com.mchange.v2.resourcepool.ResourcePool;
 import com.mchange.v2.resourcepool.ResourcePoolException;
 import com.mchange.v2.resourcepool.ResourcePoolFactory;
+import com.mchange.v2.resourcepool.TaskStatistics;
 import com.mchange.v2.resourcepool.TimeoutException;
 import com.mchange.v2.sql.SqlUtils;
 
@@ -74,11 +84,23 @@ public final class C3P0PooledConnectionPool
 
     final int checkoutTimeout;
 
+    // SQL prepared on each new Connection, so that the statement cache
+    // already holds them when clients first ask. null unless configured,
+    // and the statement cache is effective
+    final String[] warmupStatements;
+
     final AsynchronousRunner sharedTaskRunner;
     final AsynchronousRunner deferredStatementDestroyer;;
 
     final ThrowableHolderPool thp = new ThrowableHolderPool();
 
+    // times taken by Connection tests, whether on checkout, checkin, or idle,
+    // and whether they pass or fail. the ResourcePool records the rest.
+    final LatencyHistogram connectionTestHistogram = new LatencyHistogram();
+
+    // tasks posted by our ConnectionEventListener, if it is asynchronous
+    final TaskStatistics connectionEventTaskStatistics = new TaskStatistics( "connection event" );
+
     final InUseLockFetcher inUseLockFetcher;
 
     public int getStatementDestroyerNumConnectionsInUse()                           { return scache == null ? -1 : scache.getStatementDestroyerNumConnectionsInUse(); }
@@ -96,28 +118,108 @@ public final class C3P0PooledConnectionPool
      *  But what lock to hold? The obvious choice is the tested resource's
      *  lock, but NewPooledConnection is designed for use by clients that
      *  do not hold its lock. So, we give NewPooledConnection an internal
-     *  Object, an "inInternalUseLock", and lock on this resource instead.
+     *  Lock, an "inInternalUseLock", and lock on this instead. For other
+     *  PooledConnections, we lock on the resource itself.
+     *
+     *  Connection tests, customizer callbacks, and waits for pending Statement
+     *  closes all happen while the lock is held. A virtual thread blocked in any of
+     *  those while holding a monitor would pin its carrier thread. So the
+     *  inInternalUseLock is a java.util.concurrent Lock, and virtualThreadFriendly
+     *  pools keep a Lock for each of their other PooledConnections, rather than
+     *  synchronizing on them.
      */
 
     private interface InUseLockFetcher
     {
+	// returns a java.util.concurrent Lock, or else an Object to synchronize on
 	public Object getInUseLock(Object resc);
+
+	public void resourceDestroyed(Object resc);
     }
 
     private static class ResourceItselfInUseLockFetcher implements InUseLockFetcher
     {
 	public Object getInUseLock(Object resc) { return resc; }
+	public void resourceDestroyed(Object resc) {}
+    }
+
+    /*
+     *  One per pool, so pools share no monitor. Locks are keyed by the identity
+     *  of their PooledConnections, which might override equals(), and are forgotten
+     *  when their PooledConnections are destroyed.
+     */
+    private static class PerResourceInUseLockFetcher implements InUseLockFetcher
+    {
+	final ConcurrentHashMap locks = new ConcurrentHashMap();
+
+	public Object getInUseLock(Object resc) 
+	{
+	    IdentityKey key = new IdentityKey( resc );
+	    Lock out = (Lock) locks.get( key );
+	    if (out == null)
+	    {
+		Lock fresh = new ReentrantLock();
+		out = (Lock) locks.putIfAbsent( key, fresh );
+		if (out == null)
+		    out = fresh;
+	    }
+	    return out;
+	}
+
+	public void resourceDestroyed(Object resc)
+	{ locks.remove( new IdentityKey( resc ) ); }
+    }
+
+    private final static class IdentityKey
+    {
+	final Object resc;
+
+	IdentityKey( Object resc )
+	{ this.resc = resc; }
+
+	public boolean equals( Object o )
+	{ return (o instanceof IdentityKey) && ((IdentityKey) o).resc == resc; }
+
+	public int hashCode()
+	{ return System.identityHashCode( resc ); }
     }
 
     private static class C3P0PooledConnectionNestedLockLockFetcher implements InUseLockFetcher
     {
 	public Object getInUseLock(Object resc)
 	{ return ((NewPooledConnection) resc).inInternalUseLock; }
+
+	public void resourceDestroyed(Object resc) {}
     }
 
     private static InUseLockFetcher RESOURCE_ITSELF_IN_USE_LOCK_FETCHER = new ResourceItselfInUseLockFetcher();
     private static InUseLockFetcher C3P0_POOLED_CONNECION_NESTED_LOCK_LOCK_FETCHER = new C3P0PooledConnectionNestedLockLockFetcher();
 
+    private interface InUseTask
+    {
+	public void run() throws Exception;
+    }
+
+    // runs task while holding resc's in-use lock, whichever kind of lock that is
+    private void whileInUse( Object resc, InUseTask task ) throws Exception
+    {
+	Object inUseLock = inUseLockFetcher.getInUseLock( resc );
+	if (inUseLock instanceof Lock)
+	{
+	    Lock lock = (Lock) inUseLock;
+	    lock.lock();
+	    try
+	    { task.run(); }
+	    finally
+	    { lock.unlock(); }
+	}
+	else
+	{
+	    synchronized (inUseLock)
+	    { task.run(); }
+	}
+    }
+
     C3P0PooledConnectionPool( final ConnectionPoolDataSource cpds,
                     final DbAuth auth,
                     int min, 
@@ -135,6 +237,22 @@ public final class C3P0PooledConnectionPool
                     int propertyCycle, //seconds
                     int unreturnedConnectionTimeout, //seconds
                     boolean debugUnreturnedConnectionStackTraces,
+                    boolean concurrentCheckout,
+                    boolean threadAffinity,
+                    CheckoutOrdering checkoutOrdering,
+                    boolean adaptiveSizing,
+                    int acquisitionParallelism,
+                    int circuitBreakerThreshold,
+                    boolean virtualThreadFriendly,
+                    int[] checkoutPriorityReservations,
+                    int maxCheckoutWaiters,
+                    boolean shedPredictedTimeouts,
+                    int checkoutStripes,
+                    int maxConnectionAgeJitter, //seconds
+                    int maxConcurrentRetirements,
+                    int warmupParallelism,
+                    String[] warmupStatements,
+                    int maxConcurrentIdleTests,
                     final boolean testConnectionOnCheckout,
                     final boolean testConnectionOnCheckin,
                     int maxStatements,
@@ -144,18 +262,18 @@ public final class C3P0PooledConnectionPool
                     final ConnectionCustomizer connectionCustomizer,
                     final String testQuery,
                     final ResourcePoolFactory fact,
-                    ThreadPoolAsynchronousRunner taskRunner,
-		    ThreadPoolAsynchronousRunner deferredStatementDestroyer,
+                    AsynchronousRunner taskRunner,
+		    AsynchronousRunner deferredStatementDestroyer,
                     final String parentDataSourceIdentityToken) throws SQLException
                     {
         try
         {
             if (maxStatements > 0 && maxStatementsPerConnection > 0)
-                this.scache = new DoubleMaxStatementCache( taskRunner, deferredStatementDestroyer, maxStatements, maxStatementsPerConnection );
+                this.scache = new DoubleMaxStatementCache( taskRunner, deferredStatementDestroyer, maxStatements, maxStatementsPerConnection, virtualThreadFriendly );
             else if (maxStatementsPerConnection > 0)
-                this.scache = new PerConnectionMaxOnlyStatementCache( taskRunner, deferredStatementDestroyer, maxStatementsPerConnection );
+                this.scache = new PerConnectionMaxOnlyStatementCache( taskRunner, deferredStatementDestroyer, maxStatementsPerConnection, virtualThreadFriendly );
             else if (maxStatements > 0)
-                this.scache = new GlobalMaxOnlyStatementCache( taskRunner, deferredStatementDestroyer, maxStatements );
+                this.scache = new GlobalMaxOnlyStatementCache( taskRunner, deferredStatementDestroyer, maxStatements, virtualThreadFriendly );
             else
                 this.scache = null;
 
@@ -169,7 +287,22 @@ public final class C3P0PooledConnectionPool
             this.c3p0PooledConnections = (cpds instanceof WrapperConnectionPoolDataSource);
             this.effectiveStatementCache = c3p0PooledConnections && (scache != null);
 
-	    this.inUseLockFetcher = (c3p0PooledConnections ? C3P0_POOLED_CONNECION_NESTED_LOCK_LOCK_FETCHER : RESOURCE_ITSELF_IN_USE_LOCK_FETCHER);
+            if (warmupStatements != null && warmupStatements.length > 0 && !effectiveStatementCache)
+            {
+                if ( logger.isLoggable( MLevel.WARNING ) )
+                    logger.warning( "warmupStatements are ignored, because they can only be kept in a statement cache, and " +
+                                    "no statement cache is in effect. Set maxStatements or maxStatementsPerConnection to use them." );
+                this.warmupStatements = null;
+            }
+            else
+                this.warmupStatements = warmupStatements;
+
+	    if (c3p0PooledConnections)
+		this.inUseLockFetcher = C3P0_POOLED_CONNECION_NESTED_LOCK_LOCK_FETCHER;
+	    else if (virtualThreadFriendly)
+		this.inUseLockFetcher = new PerResourceInUseLockFetcher();
+	    else
+		this.inUseLockFetcher = RESOURCE_ITSELF_IN_USE_LOCK_FETCHER;
 
             class PooledConnectionResourcePoolManager implements ResourcePool.Manager
             {	
@@ -237,6 +370,8 @@ public final class C3P0PooledConnectionPool
                             waitMarkPooledConnectionInUse(out);
                             con = out.getConnection();
                             SQLWarnings.logAndClearWarnings( con );
+                            if (warmupStatements != null)
+                                prepareWarmupStatements( con );
                         }
                         finally
                         {
@@ -281,150 +416,159 @@ public final class C3P0PooledConnectionPool
                 // checked back in to the pool. But we still may want to
                 // test to make sure it is still good.
 
-                public void refurbishResourceOnCheckout( Object resc ) throws Exception
+                public void refurbishResourceOnCheckout( final Object resc ) throws Exception
                 {
-		    synchronized (inUseLockFetcher.getInUseLock(resc))
+		    whileInUse( resc, new InUseTask()
 		    {
-			if ( connectionCustomizer != null )
-			{
-			    Connection physicalConnection = null;
-			    try
-			    { 
-				physicalConnection =  ((AbstractC3P0PooledConnection) resc).getPhysicalConnection();
-				waitMarkPhysicalConnectionInUse( physicalConnection );
-				if ( testConnectionOnCheckout )
-				{
-				    if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
-					finerLoggingTestPooledConnection( resc, "CHECKOUT" );
-				    else
-					testPooledConnection( resc );
-				}
-				connectionCustomizer.onCheckOut( physicalConnection, parentDataSourceIdentityToken );
-			    }
-			    catch (ClassCastException e)
-			    {
-				throw SqlUtils.toSQLException("Cannot use a ConnectionCustomizer with a non-c3p0 PooledConnection." +
-							      " PooledConnection: " + resc + 
-							      "; ConnectionPoolDataSource: " + cpds.getClass().getName(), e);
-			    }
-			    finally
-			    { unmarkPhysicalConnectionInUse(physicalConnection); }
-			}
-			else
+			public void run() throws Exception
 			{
-			    if ( testConnectionOnCheckout )
+			    if ( connectionCustomizer != null )
 			    {
-				PooledConnection pc = (PooledConnection) resc;
+				Connection physicalConnection = null;
 				try
+				{ 
+				    physicalConnection =  ((AbstractC3P0PooledConnection) resc).getPhysicalConnection();
+				    waitMarkPhysicalConnectionInUse( physicalConnection );
+				    if ( testConnectionOnCheckout )
+				    {
+					if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
+					    finerLoggingTestPooledConnection( resc, "CHECKOUT" );
+					else
+					    testPooledConnection( resc );
+				    }
+				    connectionCustomizer.onCheckOut( physicalConnection, parentDataSourceIdentityToken );
+				}
+				catch (ClassCastException e)
 				{
-				    waitMarkPooledConnectionInUse( pc );
-				    assert !Boolean.FALSE.equals(pooledConnectionInUse( pc )); //null or true are okay
-
-				    if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
-					finerLoggingTestPooledConnection( pc, "CHECKOUT" );
-				    else
-					testPooledConnection( pc );
+				    throw SqlUtils.toSQLException("Cannot use a ConnectionCustomizer with a non-c3p0 PooledConnection." +
+								  " PooledConnection: " + resc + 
+								  "; ConnectionPoolDataSource: " + cpds.getClass().getName(), e);
 				}
 				finally
-				{ 
-				    unmarkPooledConnectionInUse(pc); 
+				{ unmarkPhysicalConnectionInUse(physicalConnection); }
+			    }
+			    else
+			    {
+				if ( testConnectionOnCheckout )
+				{
+				    PooledConnection pc = (PooledConnection) resc;
+				    try
+				    {
+					waitMarkPooledConnectionInUse( pc );
+					assert !Boolean.FALSE.equals(pooledConnectionInUse( pc )); //null or true are okay
+
+					if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
+					    finerLoggingTestPooledConnection( pc, "CHECKOUT" );
+					else
+					    testPooledConnection( pc );
+				    }
+				    finally
+				    { 
+					unmarkPooledConnectionInUse(pc); 
+				    }
 				}
 			    }
 			}
-		    }
+		    } );
                 }
 
 		// TODO: refactor this by putting the connectionCustomizer if logic inside the (currently repeated) logic
-                public void refurbishResourceOnCheckin( Object resc ) throws Exception
+                public void refurbishResourceOnCheckin( final Object resc ) throws Exception
                 {
-		    Connection proxyToClose = null; // can't close a proxy while we own parent PooledConnection's lock.
+		    final Connection[] proxyToClose = new Connection[1]; // can't close a proxy while we own parent PooledConnection's lock.
 		    try
 		    {
-		      synchronized (inUseLockFetcher.getInUseLock(resc))
+		      whileInUse( resc, new InUseTask()
 		      {
-			if ( connectionCustomizer != null )
+			public void run() throws Exception
 			{
-			    Connection physicalConnection = null;
-			    try
-			    { 
-				physicalConnection =  ((AbstractC3P0PooledConnection) resc).getPhysicalConnection();
+			  if ( connectionCustomizer != null )
+			  {
+			      Connection physicalConnection = null;
+			      try
+			      { 
+				  physicalConnection =  ((AbstractC3P0PooledConnection) resc).getPhysicalConnection();
                             
-				// so by the time we are checked in, all marked-for-destruction statements should be closed.
-				waitMarkPhysicalConnectionInUse( physicalConnection );
-				connectionCustomizer.onCheckIn( physicalConnection, parentDataSourceIdentityToken );
-				SQLWarnings.logAndClearWarnings( physicalConnection );
-
-				if ( testConnectionOnCheckin )
-				{ 
-				    if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
-					finerLoggingTestPooledConnection( resc, "CHECKIN" );
-				    else
-					testPooledConnection( resc );
-				}
-
-			    }
-			    catch (ClassCastException e)
-			    {
-				throw SqlUtils.toSQLException("Cannot use a ConnectionCustomizer with a non-c3p0 PooledConnection." +
-							      " PooledConnection: " + resc + 
-							      "; ConnectionPoolDataSource: " + cpds.getClass().getName(), e);
-			    }
-			    finally
-			    { unmarkPhysicalConnectionInUse(physicalConnection); }
-			}
-			else
-			{
-			    PooledConnection pc = (PooledConnection) resc;
-			    Connection con = null;
-
-			    try
-			    {
-
-				// so by the time we are checked in, all marked-for-destruction statements should be closed.
-				waitMarkPooledConnectionInUse( pc );
-				con = pc.getConnection();
-				SQLWarnings.logAndClearWarnings(con);
-
-				if ( testConnectionOnCheckin )
-				{ 
-				    if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
-					finerLoggingTestPooledConnection( resc, con, "CHECKIN" );
-				    else
-					testPooledConnection( resc, con );
-				}
-
-			    }
-			    finally
-			    {
-				proxyToClose = con;
-				unmarkPooledConnectionInUse( pc );
-			    }
+				  // so by the time we are checked in, all marked-for-destruction statements should be closed.
+				  waitMarkPhysicalConnectionInUse( physicalConnection );
+				  connectionCustomizer.onCheckIn( physicalConnection, parentDataSourceIdentityToken );
+				  SQLWarnings.logAndClearWarnings( physicalConnection );
+
+				  if ( testConnectionOnCheckin )
+				  { 
+				      if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
+					  finerLoggingTestPooledConnection( resc, "CHECKIN" );
+				      else
+					  testPooledConnection( resc );
+				  }
+
+			      }
+			      catch (ClassCastException e)
+			      {
+				  throw SqlUtils.toSQLException("Cannot use a ConnectionCustomizer with a non-c3p0 PooledConnection." +
+								" PooledConnection: " + resc + 
+								"; ConnectionPoolDataSource: " + cpds.getClass().getName(), e);
+			      }
+			      finally
+			      { unmarkPhysicalConnectionInUse(physicalConnection); }
+			  }
+			  else
+			  {
+			      PooledConnection pc = (PooledConnection) resc;
+			      Connection con = null;
+
+			      try
+			      {
+
+				  // so by the time we are checked in, all marked-for-destruction statements should be closed.
+				  waitMarkPooledConnectionInUse( pc );
+				  con = pc.getConnection();
+				  SQLWarnings.logAndClearWarnings(con);
+
+				  if ( testConnectionOnCheckin )
+				  { 
+				      if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
+					  finerLoggingTestPooledConnection( resc, con, "CHECKIN" );
+				      else
+					  testPooledConnection( resc, con );
+				  }
+
+			      }
+			      finally
+			      {
+				  proxyToClose[0] = con;
+				  unmarkPooledConnectionInUse( pc );
+			      }
+			  }
 			}
-		      }
+		      } );
 		    }
 		    finally
 		    {
 			// close any opened proxy Connection
-			ConnectionUtils.attemptClose(proxyToClose);
+			ConnectionUtils.attemptClose(proxyToClose[0]);
 		    }
                 }
 
-                public void refurbishIdleResource( Object resc ) throws Exception
+                public void refurbishIdleResource( final Object resc ) throws Exception
                 { 
-		    synchronized (inUseLockFetcher.getInUseLock(resc))
+		    whileInUse( resc, new InUseTask()
 		    {
-			PooledConnection pc = (PooledConnection) resc;		    
-			try
+			public void run() throws Exception
 			{
-			    waitMarkPooledConnectionInUse( pc );
-			    if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
-				finerLoggingTestPooledConnection( resc, "IDLE CHECK" );
-			    else
-				testPooledConnection( resc );
+			    PooledConnection pc = (PooledConnection) resc;		    
+			    try
+			    {
+				waitMarkPooledConnectionInUse( pc );
+				if ( Debug.DEBUG && logger.isLoggable( MLevel.FINER ) )
+				    finerLoggingTestPooledConnection( resc, "IDLE CHECK" );
+				else
+				    testPooledConnection( resc );
+			    }
+			    finally
+			    { unmarkPooledConnectionInUse( pc ); }
 			}
-			finally
-			{ unmarkPooledConnectionInUse( pc ); }
-		    }
+		    } );
                 }
 
                 private void finerLoggingTestPooledConnection(Object resc, String testImpetus) throws Exception
@@ -459,6 +603,7 @@ public final class C3P0PooledConnectionPool
                     int status;
                     Connection openedConn = null;
                     Throwable rootCause = null;
+                    long testStart = System.nanoTime();
                     try	
                     { 
 			// No! Connection must be maked in use PRIOR TO Connection test
@@ -525,6 +670,8 @@ public final class C3P0PooledConnectionPool
                     }
                     finally
                     { 
+                        connectionTestHistogram.recordNanos( System.nanoTime() - testStart );
+
                         if (rootCause == null)
                             rootCause = throwableHolder[0];
                         else if (throwableHolder[0] != null && logger.isLoggable(MLevel.FINE))
@@ -633,6 +780,7 @@ public final class C3P0PooledConnectionPool
 		    finally
 		    {
 			unmarkPooledConnectionInUse((PooledConnection) resc);
+			inUseLockFetcher.resourceDestroyed( resc );
 		    }
                 }
             }
@@ -652,6 +800,21 @@ public final class C3P0PooledConnectionPool
                 fact.setExpirationEnforcementDelay( propertyCycle * 1000 );
                 fact.setDestroyOverdueResourceTime( unreturnedConnectionTimeout * 1000 );
                 fact.setDebugStoreCheckoutStackTrace( debugUnreturnedConnectionStackTraces );
+                fact.setConcurrentCheckout( concurrentCheckout );
+                fact.setThreadAffinity( threadAffinity );
+                fact.setCheckoutOrdering( checkoutOrdering );
+                fact.setAdaptiveSizing( adaptiveSizing );
+                fact.setAcquisitionParallelism( acquisitionParallelism );
+                fact.setCircuitBreakerThreshold( circuitBreakerThreshold );
+                fact.setVirtualThreadFriendly( virtualThreadFriendly );
+                fact.setPriorityReservations( checkoutPriorityReservations );
+                fact.setMaxCheckoutWaiters( maxCheckoutWaiters );
+                fact.setShedPredictedTimeouts( shedPredictedTimeouts );
+                fact.setCheckoutStripes( checkoutStripes );
+                fact.setResourceMaxAgeJitter( maxConnectionAgeJitter * 1000 );
+                fact.setMaxConcurrentRetirements( maxConcurrentRetirements );
+                fact.setWarmupParallelism( warmupParallelism );
+                fact.setMaxConcurrentIdleTests( maxConcurrentIdleTests );
                 fact.setAcquisitionRetryAttempts( acq_retry_attempts );
                 fact.setAcquisitionRetryDelay( acq_retry_delay );
                 fact.setBreakOnAcquisitionFailure( break_after_acq_failure );
@@ -671,12 +834,70 @@ public final class C3P0PooledConnectionPool
 		pc.addConnectionEventListener( cl );
 		return pc;
 	    }
-        catch (TimeoutException e)
-        { throw SqlUtils.toSQLException("An attempt by a client to checkout a Connection has timed out.", e); }
-        catch (CannotAcquireResourceException e)
-        { throw SqlUtils.toSQLException("Connections could not be acquired from the underlying database!", "08001", e); }
         catch (Exception e)
-        { throw SqlUtils.toSQLException(e); }
+        { throw toCheckoutSQLException( e ); }
+    }
+
+    /*
+     * Preparing and closing statements through a pooled Connection's proxy
+     * leaves them in the statement cache. A statement that cannot be prepared
+     * is logged and skipped. It should not make the Connection unusable.
+     */
+    private void prepareWarmupStatements( Connection con )
+    {
+        for (int i = 0; i < warmupStatements.length; ++i)
+        {
+            try
+            { con.prepareStatement( warmupStatements[i] ).close(); }
+            catch (SQLException e)
+            {
+                if ( logger.isLoggable( MLevel.WARNING ) )
+                    logger.log( MLevel.WARNING, "Could not prepare warm-up statement '" + warmupStatements[i] + "'. It will be skipped.", e );
+            }
+        }
+    }
+
+    /**
+     * Checks out count PooledConnections at once, or none, waiting up to timeout
+     * milliseconds (zero means no timeout) until all can be had together.
+     */
+    public PooledConnection[] checkoutPooledConnections( int count, long timeout ) throws SQLException
+    {
+        try
+        {
+            List rescs = this.checkoutAndMarkConnectionsInUse( count, timeout );
+            PooledConnection[] out = (PooledConnection[]) rescs.toArray( new PooledConnection[ rescs.size() ] );
+            for (int i = 0; i < out.length; ++i)
+                out[i].addConnectionEventListener( cl );
+            return out;
+        }
+        catch (Exception e)
+        { throw toCheckoutSQLException( e ); }
+    }
+
+    private static SQLException toCheckoutSQLException( Exception e )
+    {
+        if (e instanceof PoolSaturatedException)
+            return SqlUtils.toSQLException("An attempt by a client to checkout a Connection was rejected, because the pool is saturated. " + e.getMessage(), PooledDataSource.POOL_SATURATED_SQL_STATE, e);
+        else if (e instanceof TimeoutException)
+            return SqlUtils.toSQLException("An attempt by a client to checkout a Connection has timed out.", e);
+        else if (e instanceof CircuitOpenException)
+            return SqlUtils.toSQLException("Connections cannot currently be acquired from the underlying database, which appears to be down. The pool's acquisition circuit breaker is open.", PooledDataSource.CIRCUIT_OPEN_SQL_STATE, e);
+        else if (e instanceof CannotAcquireResourceException)
+            return SqlUtils.toSQLException("Connections could not be acquired from the underlying database!", "08001", e);
+        else
+            return SqlUtils.toSQLException(e);
+    }
+
+    /**
+     * Checks out a Connection without blocking the calling Thread. The callback
+     * is notified from the pool's checkin or acquisition path, via a helper thread.
+     */
+    public PooledDataSource.PendingConnection checkoutConnectionAsync( PooledDataSource.ConnectionCallback callback )
+    {
+        AsyncConnectionCheckout out = new AsyncConnectionCheckout( callback );
+        out.attempt();
+        return out;
     }
     
     private void waitMarkPhysicalConnectionInUse(Connection physicalConnection) throws InterruptedException
@@ -734,13 +955,14 @@ public final class C3P0PooledConnectionPool
      
     private Object checkoutAndMarkConnectionInUse() throws TimeoutException, CannotAcquireResourceException, ResourcePoolException, InterruptedException
     {
+        int priority = CheckoutPriority.forCurrentThread();
         Object out = null; 
 	boolean success = false;
 	while (! success)
 	    {
 		try
 		    {
-			out = rp.checkoutResource( checkoutTimeout );
+			out = rp.checkoutResource( checkoutTimeout, priority );
 			if (out instanceof AbstractC3P0PooledConnection)
 			    {
 				// cast should succeed, because effectiveStatementCache implies c3p0 pooled Connections
@@ -760,6 +982,60 @@ public final class C3P0PooledConnectionPool
         return out;
     }
     
+    // as checkoutAndMarkConnectionInUse(), all or nothing. if any Connection can't be
+    // marked in use, we give them all back, rather than hold them while we wait. retries
+    // share the one timeout, so that a Connection with pending Statement closes can't
+    // keep us waiting indefinitely
+    private List checkoutAndMarkConnectionsInUse( int count, long timeout ) throws TimeoutException, CannotAcquireResourceException, ResourcePoolException, InterruptedException
+    {
+        int priority = CheckoutPriority.forCurrentThread();
+        long deadline = ( timeout > 0 ? System.currentTimeMillis() + timeout : 0 );
+        while (true)
+        {
+            long remaining = 0;
+            if (deadline > 0)
+            {
+                remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new TimeoutException("A client timed out while waiting to check out " + count + " Connections at once, " +
+                                               "some of which remained unusable due to pending Statement closes. [" + this + "]");
+            }
+
+            List out = rp.checkoutResources( count, remaining, priority );
+            List marked = new ArrayList( count );
+            try
+            {
+                for (int i = 0; i < count; ++i)
+                {
+                    Object resc = out.get(i);
+                    if (resc instanceof AbstractC3P0PooledConnection)
+                    {
+                        Connection physicalConnection = ((AbstractC3P0PooledConnection) resc).getPhysicalConnection();
+                        if (! tryMarkPhysicalConnectionInUse(physicalConnection))
+                            break;
+                    }
+                    marked.add( resc );
+                }
+            }
+            finally
+            {
+                if (marked.size() < count)
+                {
+                    for (int i = 0; i < marked.size(); ++i)
+                    {
+                        Object resc = marked.get(i);
+                        if (resc instanceof AbstractC3P0PooledConnection)
+                            unmarkPhysicalConnectionInUse( ((AbstractC3P0PooledConnection) resc).getPhysicalConnection() );
+                    }
+                    try { rp.checkinResources( out ); }
+                    catch (Exception e) { logger.log(MLevel.WARNING, "Failed to check in Connections that were unusable due to pending Statement closes.", e); }
+                }
+            }
+            if (marked.size() == count)
+                return out;
+        }
+    }
+
     private void unmarkConnectionInUseAndCheckin(PooledConnection pcon) throws ResourcePoolException
     {
         if (effectiveStatementCache)
@@ -825,6 +1101,83 @@ public final class C3P0PooledConnectionPool
     public String dumpStatementCacheStatus()
     { return scache == null ? "Statement caching disabled." : scache.dumpStatementCacheStatus(); }
 
+    public String dumpCheckoutPriorityStatus() throws SQLException
+    {
+        try
+        {
+            StringBuffer sb = new StringBuffer( 255 );
+            int[] priorities = { CheckoutPriority.HIGH, CheckoutPriority.NORMAL, CheckoutPriority.LOW };
+            for (int i = 0; i < priorities.length; ++i)
+            {
+                int p = priorities[i];
+                int checked_out = rp.getNumCheckedOut( p );
+                sb.append( CheckoutPriority.nameOf( p ) );
+                sb.append( " -- reserved: " );
+                sb.append( rp.getReservedCount( p ) );
+                sb.append( "; checked out: " );
+                sb.append( checked_out < 0 ? "[untracked]" : String.valueOf( checked_out ) );
+                sb.append( "; waiting: " );
+                sb.append( rp.getNumCheckoutWaiters( p ) );
+                sb.append( "; checkouts: " );
+                sb.append( rp.getNumCheckouts( p ) );
+                sb.append( "; average wait (msecs): " );
+                sb.append( rp.getAverageCheckoutWaitTime( p ) );
+                sb.append( '\n' );
+            }
+            return sb.toString();
+        }
+        catch (ResourcePoolException e)
+        { throw SqlUtils.toSQLException(e); }
+    }
+
+    public String dumpLatencyStatus() throws SQLException
+    {
+        try
+        {
+            StringBuffer sb = new StringBuffer( 511 );
+            sb.append( "checkout wait -- " );
+            sb.append( rp.getCheckoutWaitHistogram().summary() );
+            sb.append( "\nhold time -- " );
+            sb.append( rp.getHoldTimeHistogram().summary() );
+            sb.append( "\nacquisition time -- " );
+            sb.append( rp.getAcquisitionTimeHistogram().summary() );
+            sb.append( "\nconnection test time -- " );
+            sb.append( connectionTestHistogram.summary() );
+            sb.append( '\n' );
+            return sb.toString();
+        }
+        catch (ResourcePoolException e)
+        { throw SqlUtils.toSQLException(e); }
+    }
+
+    public String dumpTaskStatus() throws SQLException
+    {
+        try
+        {
+            StringBuffer sb = new StringBuffer( 2047 );
+            appendTaskSummary( sb, rp.getAcquireTaskStatistics() );
+            appendTaskSummary( sb, rp.getTestTaskStatistics() );
+            appendTaskSummary( sb, rp.getRefurbishTaskStatistics() );
+            appendTaskSummary( sb, rp.getDestroyTaskStatistics() );
+            if (ASYNCHRONOUS_CONNECTION_EVENT_LISTENER)
+                appendTaskSummary( sb, connectionEventTaskStatistics );
+            if (scache != null)
+            {
+                appendTaskSummary( sb, scache.getPrepareTaskStatistics() );
+                appendTaskSummary( sb, scache.getDestroyTaskStatistics() );
+            }
+            return sb.toString();
+        }
+        catch (ResourcePoolException e)
+        { throw SqlUtils.toSQLException(e); }
+    }
+
+    private static void appendTaskSummary( StringBuffer sb, TaskStatistics ts )
+    {
+        sb.append( ts.summary() );
+        sb.append( '\n' );
+    }
+
     public void close() throws SQLException
     { close( true ); }
 
@@ -850,6 +1203,81 @@ public final class C3P0PooledConnectionPool
             throw SqlUtils.toSQLException( throwMe );
     }
 
+    /*
+     * Like checkoutAndMarkConnectionInUse(), a PooledConnection whose physical Connection
+     * still has Statements pending close is checked back in, and we try again, with
+     * a fresh asynchronous checkout. A cancel() abandons whichever is current.
+     */
+    class AsyncConnectionCheckout implements ResourcePool.CheckoutCallback, PooledDataSource.PendingConnection
+    {
+        final PooledDataSource.ConnectionCallback callback;
+        final int                                 priority = CheckoutPriority.forCurrentThread();
+
+        volatile ResourcePool.AsyncCheckout current   = null;
+        volatile boolean                    cancelled = false;
+
+        AsyncConnectionCheckout( PooledDataSource.ConnectionCallback callback )
+        { this.callback = callback; }
+
+        void attempt()
+        {
+            if (! cancelled)
+            {
+                current = rp.checkoutResourceAsync( checkoutTimeout, priority, this );
+
+                // we may have been cancelled while we checked out
+                if (cancelled)
+                    current.cancel();
+            }
+        }
+
+        public boolean cancel()
+        {
+            cancelled = true;
+            ResourcePool.AsyncCheckout ac = current;
+            return ( ac == null || ac.cancel() );
+        }
+
+        public void checkedOut( Object resc )
+        {
+            boolean success = false;
+            try
+            {
+                success = ( resc instanceof AbstractC3P0PooledConnection ? 
+                            tryMarkPhysicalConnectionInUse( ((AbstractC3P0PooledConnection) resc).getPhysicalConnection() ) : 
+                            true ); //we don't pool statements from non-c3p0 PooledConnections
+            }
+            finally
+            {
+                try { if (!success) rp.checkinResource( resc );}
+                catch (Exception e) { logger.log(MLevel.WARNING, "Failed to check in a Connection that was unusable due to pending Statement closes.", e); }
+            }
+
+            if (! success)
+            {
+                current = null; // it's done, a cancel() should stop the retry
+                attempt();
+                return;
+            }
+
+            PooledConnection pc = (PooledConnection) resc;
+            pc.addConnectionEventListener( cl );
+
+            Connection con;
+            try
+            { con = pc.getConnection(); }
+            catch (SQLException e)
+            {
+                callback.connectionFailed( e );
+                return;
+            }
+            callback.connectionAvailable( con );
+        }
+
+        public void failed( ResourcePoolException e )
+        { callback.connectionFailed( toCheckoutSQLException( e ) ); }
+    }
+
     class ConnectionEventListenerImpl implements ConnectionEventListener
     {
 
@@ -882,7 +1310,7 @@ public final class C3P0PooledConnectionPool
                     public void run()
                     { doCheckinResource( evt ); }
                 };
-                sharedTaskRunner.postRunnable( r );
+                connectionEventTaskStatistics.post( sharedTaskRunner, r );
             }
             else
                 doCheckinResource( evt );
@@ -946,7 +1374,7 @@ public final class C3P0PooledConnectionPool
                     public void run()
                     { doMarkPoolStatus( pc, final_status ); }
                 };
-                sharedTaskRunner.postRunnable( r );
+                connectionEventTaskStatistics.post( sharedTaskRunner, r );
             }
             else
                 doMarkPoolStatus( pc, final_status );
@@ -1087,6 +1515,284 @@ public final class C3P0PooledConnectionPool
         }
     }
 
+    public long getNumIdleTests() throws SQLException
+    {
+        try { return rp.getNumIdleTests(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumSkippedIdleTests() throws SQLException
+    {
+        try { return rp.getNumSkippedIdleTests(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumIdleExpirations() throws SQLException
+    {
+        try { return rp.getNumIdleExpirations(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getAverageIdleTimeAtCheckout() throws SQLException
+    {
+        try { return rp.getAverageIdleTimeAtCheckout(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getCheckoutRate() throws SQLException
+    {
+        try { return rp.getCheckoutRate(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getAverageHoldTime() throws SQLException
+    {
+        try { return rp.getAverageHoldTime(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getAverageCheckoutWaitTime() throws SQLException
+    {
+        try { return rp.getAverageCheckoutWaitTime(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public int getAdaptiveTargetPoolSize() throws SQLException
+    {
+        try { return rp.getAdaptiveTargetPoolSize(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumAdaptiveExpansions() throws SQLException
+    {
+        try { return rp.getNumAdaptiveExpansions(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumAdaptiveContractions() throws SQLException
+    {
+        try { return rp.getNumAdaptiveContractions(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getLastTimeToFill() throws SQLException
+    {
+        try { return rp.getLastTimeToFill(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getTimeToReady() throws SQLException
+    {
+        try { return rp.getTimeToReady(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    /**
+     * Waits until the pool has acquired its initial Connections,
+     * and any warmupStatements have been prepared on them.
+     *
+     * @param timeout milliseconds, or zero to wait indefinitely
+     * @return false if the timeout elapsed before the pool was ready
+     */
+    public boolean awaitReady( long timeout ) throws SQLException
+    {
+        try { return rp.awaitReady( timeout ); }
+        catch ( Exception e )
+        { throw SqlUtils.toSQLException( e ); }
+    }
+
+    public String getCircuitBreakerState() throws SQLException
+    {
+        try { return rp.getCircuitBreakerState(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumCircuitBreakerTrips() throws SQLException
+    {
+        try { return rp.getNumCircuitBreakerTrips(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumCircuitBreakerRejections() throws SQLException
+    {
+        try { return rp.getNumCircuitBreakerRejections(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public long getNumShedCheckouts() throws SQLException
+    {
+        try { return rp.getNumShedCheckouts(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getCheckoutWaitPercentile( double percentile ) throws SQLException
+    {
+        try { return rp.getCheckoutWaitHistogram().getPercentileMillis( percentile ); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getHoldTimePercentile( double percentile ) throws SQLException
+    {
+        try { return rp.getHoldTimeHistogram().getPercentileMillis( percentile ); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getAcquisitionTimePercentile( double percentile ) throws SQLException
+    {
+        try { return rp.getAcquisitionTimeHistogram().getPercentileMillis( percentile ); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public float getConnectionTestTimePercentile( double percentile ) throws SQLException
+    {
+        try { return connectionTestHistogram.getPercentileMillis( percentile ); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public TaskStatistics getAcquireTaskStatistics() throws SQLException
+    {
+        try { return rp.getAcquireTaskStatistics(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public TaskStatistics getTestTaskStatistics() throws SQLException
+    {
+        try { return rp.getTestTaskStatistics(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public TaskStatistics getRefurbishTaskStatistics() throws SQLException
+    {
+        try { return rp.getRefurbishTaskStatistics(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
+    public TaskStatistics getDestroyTaskStatistics() throws SQLException
+    {
+        try { return rp.getDestroyTaskStatistics(); }
+        catch ( Exception e )
+        { 
+            //e.printStackTrace();
+            logger.log( MLevel.WARNING, null, e );
+            throw SqlUtils.toSQLException( e );
+        }
+    }
+
     public Throwable getLastCheckinFailure() throws SQLException
     {
         try { return rp.getLastCheckinFailure(); }
@@ -1147,11 +1853,14 @@ public final class C3P0PooledConnectionPool
      * and reacquires new Connections to populate.
      * Current checked out Connections will still
      * be valid, and should still be checked into the
-     * pool (so the pool can destroy them).
+     * pool (so the pool can destroy them). If
+     * maxConcurrentRetirements is set, Connections
+     * are replaced on a rolling basis, rather than
+     * all at once.
      */
     public void reset() throws SQLException
     { 
-        try { rp.resetPool(); }
+        try { rp.retireAllResources(); }
         catch ( Exception e )
         { 
             //e.printStackTrace();
@@ -36,8 +36,12 @@ import com.mchange.v1.db.sql.*;
 import com.mchange.v2.log.*;
 import com.mchange.v1.lang.BooleanUtils;
 import com.mchange.v2.sql.SqlUtils;
+import com.mchange.v2.resourcepool.ResourcePoolException;
 import com.mchange.v2.resourcepool.ResourcePoolFactory;
 import com.mchange.v2.resourcepool.BasicResourcePoolFactory;
+import com.mchange.v2.resourcepool.CheckoutOrdering;
+import com.mchange.v2.resourcepool.CheckoutOrderings;
+import com.mchange.v2.resourcepool.CheckoutPriorities;
 
 public final class C3P0PooledConnectionPoolManager
 {
@@ -52,9 +56,42 @@ public final class C3P0PooledConnectionPoolManager
 
     final static int DFLT_NUM_TASK_THREADS_PER_DATA_SOURCE = 3;
 
+    // used when a configured TaskRunnerFactory fails. unlike the interface method,
+    // its createTaskRunner(...) declares no checked Exceptions
+    private final static DefaultTaskRunnerFactory FALLBACK_TASK_RUNNER_FACTORY = new DefaultTaskRunnerFactory();
+
+    // pools schedule their own maintenance on the process-wide TimingWheel, but
+    // task runners require a java.util.Timer for deadlock detection and
+    // maxAdministrativeTaskTime. rather than a Timer thread per DataSource,
+    // all task runners share one, which lives only while in use.
+    //
+    //MT: protected by the class' lock
+    private static Timer sharedAdminTimer = null;
+    private static int   sharedAdminTimerUsers = 0;
+
+    private static synchronized Timer acquireSharedAdminTimer()
+    {
+        if (sharedAdminTimer == null)
+            sharedAdminTimer = new Timer("C3P0PooledConnectionPoolManager-SharedAdminTaskTimer", true );
+        ++sharedAdminTimerUsers;
+        return sharedAdminTimer;
+    }
+
+    private static synchronized void releaseSharedAdminTimer()
+    {
+        if (--sharedAdminTimerUsers == 0)
+        {
+            sharedAdminTimer.cancel();
+            sharedAdminTimer = null;
+        }
+    }
+
     //MT: protected by this' lock
-    ThreadPoolAsynchronousRunner taskRunner;
-    ThreadPoolAsynchronousRunner deferredStatementDestroyer;
+    TaskRunner                   taskRunner;
+    TaskRunner                   deferredStatementDestroyer;
+    TaskRunner                   acquireTaskRunner;          //null unless numAcquireHelperThreads is set
+    TaskRunner                   testTaskRunner;             //null unless numTestHelperThreads is set
+    TaskRunner                   destroyTaskRunner;          //null unless numDestroyHelperThreads is set
     Timer                        timer; 
     ResourcePoolFactory          rpfact;
     Map                          authsToPools;
@@ -110,29 +147,75 @@ public final class C3P0PooledConnectionPoolManager
     public String getStatementDestroyerStatus()
     { return deferredStatementDestroyer != null ? deferredStatementDestroyer.getStatus() : null; }
 
+    public int getAcquireHelperNumThreads()
+    { return acquireTaskRunner != null ? acquireTaskRunner.getThreadCount() : -1; }
+
+    public int getAcquireHelperNumActiveThreads()
+    { return acquireTaskRunner != null ? acquireTaskRunner.getActiveCount() : -1; }
+
+    public int getAcquireHelperNumIdleThreads()
+    { return acquireTaskRunner != null ? acquireTaskRunner.getIdleCount() : -1; }
+
+    public int getAcquireHelperNumTasksPending()
+    { return acquireTaskRunner != null ? acquireTaskRunner.getPendingTaskCount() : -1; }
+
+    public String getAcquireHelperStackTraces()
+    { return acquireTaskRunner != null ? acquireTaskRunner.getStackTraces() : null; }
+
+    public String getAcquireHelperStatus()
+    { return acquireTaskRunner != null ? acquireTaskRunner.getStatus() : null; }
+
+    public int getTestHelperNumThreads()
+    { return testTaskRunner != null ? testTaskRunner.getThreadCount() : -1; }
+
+    public int getTestHelperNumActiveThreads()
+    { return testTaskRunner != null ? testTaskRunner.getActiveCount() : -1; }
+
+    public int getTestHelperNumIdleThreads()
+    { return testTaskRunner != null ? testTaskRunner.getIdleCount() : -1; }
+
+    public int getTestHelperNumTasksPending()
+    { return testTaskRunner != null ? testTaskRunner.getPendingTaskCount() : -1; }
+
+    public String getTestHelperStackTraces()
+    { return testTaskRunner != null ? testTaskRunner.getStackTraces() : null; }
+
+    public String getTestHelperStatus()
+    { return testTaskRunner != null ? testTaskRunner.getStatus() : null; }
+
+    public int getDestroyHelperNumThreads()
+    { return destroyTaskRunner != null ? destroyTaskRunner.getThreadCount() : -1; }
+
+    public int getDestroyHelperNumActiveThreads()
+    { return destroyTaskRunner != null ? destroyTaskRunner.getActiveCount() : -1; }
+
+    public int getDestroyHelperNumIdleThreads()
+    { return destroyTaskRunner != null ? destroyTaskRunner.getIdleCount() : -1; }
+
+    public int getDestroyHelperNumTasksPending()
+    { return destroyTaskRunner != null ? destroyTaskRunner.getPendingTaskCount() : -1; }
+
+    public String getDestroyHelperStackTraces()
+    { return destroyTaskRunner != null ? destroyTaskRunner.getStackTraces() : null; }
 
+    public String getDestroyHelperStatus()
+    { return destroyTaskRunner != null ? destroyTaskRunner.getStatus() : null; }
 
-    private ThreadPoolAsynchronousRunner createTaskRunner( int num_threads, int matt /* maxAdministrativeTaskTime */, Timer timer, String threadLabel )
+
+
+    // if the configured factory fails, we fall back to c3p0's traditional task runner
+    private TaskRunner createTaskRunner( TaskRunnerFactory trf, int num_threads, int matt /* maxAdministrativeTaskTime */, Timer timer, String threadLabel )
     {
-	ThreadPoolAsynchronousRunner out = null;
-        if ( matt > 0 )
+        try
+        { return trf.createTaskRunner( num_threads, matt, timer, threadLabel ); }
+        catch (Exception e)
         {
-            int matt_ms = matt * 1000;
-            out = new ThreadPoolAsynchronousRunner( num_threads, 
-						    true,        // daemon thread
-						    matt_ms,     // wait before interrupt()
-						    matt_ms * 3, // wait before deadlock declared if no tasks clear
-						    matt_ms * 6, // wait before deadlock tasks are interrupted (again)
-							         // after the hung thread has been cleared and replaced
-							         // (in hopes of getting the thread to terminate for
-							         // garbage collection)
-						    timer,
-						    threadLabel );
+            if ( logger.isLoggable( MLevel.WARNING ) )
+                logger.log( MLevel.WARNING, 
+                            "TaskRunnerFactory " + trf + " could not create a task runner for " + threadLabel + ". Using c3p0's default task runner.",
+                            e );
+            return FALLBACK_TASK_RUNNER_FACTORY.createTaskRunner( num_threads, matt, timer, threadLabel );
         }
-        else
-            out = new ThreadPoolAsynchronousRunner( num_threads, true, timer, threadLabel );
-
-	return out;
     }
 
     private String idString()
@@ -151,29 +234,45 @@ public final class C3P0PooledConnectionPoolManager
 	return sb.toString();
     }
 
-    private synchronized void poolsInit()
+    // tasks of each class for which no threads are configured run on taskRunner
+    private TaskRunner createDedicatedTaskRunner( TaskRunnerFactory trf, int num_threads, int matt, String threadLabel )
+    { return ( num_threads > 0 ? createTaskRunner( trf, num_threads, matt, timer, threadLabel ) : null ); }
+
+    private synchronized void poolsInit() throws ResourcePoolException
     {
 	String idStr = idString();
 
-        this.timer = new Timer(idStr + "-AdminTaskTimer", true );
+        this.timer = acquireSharedAdminTimer();
 
         int matt = this.getMaxAdministrativeTaskTime();
 
-	this.taskRunner = createTaskRunner( num_task_threads, matt, timer, idStr + "-HelperThread" );
+        TaskRunnerFactory trf = C3P0Registry.getTaskRunnerFactory( this.getTaskRunnerFactoryClassName() );
+
+	this.taskRunner = createTaskRunner( trf, num_task_threads, matt, timer, idStr + "-HelperThread" );
         //this.taskRunner = new RoundRobinAsynchronousRunner( num_task_threads, true );
         //this.rpfact = ResourcePoolFactory.createInstance( taskRunner, timer );
 
         int num_deferred_close_threads = this.getStatementCacheNumDeferredCloseThreads();
 	
 	if (num_deferred_close_threads > 0)
-	    this.deferredStatementDestroyer = createTaskRunner( num_deferred_close_threads, matt, timer, idStr + "-DeferredStatementDestroyerThread" );
+	    this.deferredStatementDestroyer = createTaskRunner( trf, num_deferred_close_threads, matt, timer, idStr + "-DeferredStatementDestroyerThread" );
 	else
 	    this.deferredStatementDestroyer = null;
 
+        // so that acquisitions and checkins never wait behind idle tests or destruction,
+        // nor tests behind destruction, each class of task may have threads of its own
+        this.acquireTaskRunner = createDedicatedTaskRunner( trf, this.getNumAcquireHelperThreads(), matt, idStr + "-AcquireHelperThread" );
+        this.testTaskRunner    = createDedicatedTaskRunner( trf, this.getNumTestHelperThreads(), matt, idStr + "-TestHelperThread" );
+        this.destroyTaskRunner = createDedicatedTaskRunner( trf, this.getNumDestroyHelperThreads(), matt, idStr + "-DestroyHelperThread" );
+
         if (POOL_EVENT_SUPPORT)
-            this.rpfact = ResourcePoolFactory.createInstance( taskRunner, null, timer );
+            this.rpfact = ResourcePoolFactory.createInstance( taskRunner, null, null );
         else
-            this.rpfact = BasicResourcePoolFactory.createNoEventSupportInstance( taskRunner, timer );
+            this.rpfact = BasicResourcePoolFactory.createNoEventSupportInstance( taskRunner, null );
+
+        rpfact.setAcquireTaskRunner( acquireTaskRunner );
+        rpfact.setTestTaskRunner( testTaskRunner );
+        rpfact.setDestroyTaskRunner( destroyTaskRunner );
 
         this.authsToPools = new HashMap();
     }
@@ -198,13 +297,25 @@ public final class C3P0PooledConnectionPoolManager
 
         this.taskRunner.close( true );
 
+        if ( acquireTaskRunner != null )
+            acquireTaskRunner.close( true );
+        if ( testTaskRunner != null )
+            testTaskRunner.close( true );
+
 	// we have to run remaining tasks to free Threads that may be caught in wait() on Statement destruction
 	if ( deferredStatementDestroyer != null )
 	    deferredStatementDestroyer.close( false );
 
-        this.timer.cancel();
+        // let queued destruction finish, so that the database sees its Connections closed
+        if ( destroyTaskRunner != null )
+            destroyTaskRunner.close( false );
+
+        releaseSharedAdminTimer();
 
         this.taskRunner = null;
+        this.acquireTaskRunner = null;
+        this.testTaskRunner = null;
+        this.destroyTaskRunner = null;
         this.timer = null;
         this.rpfact = null;
         this.authsToPools = null;
@@ -723,6 +834,30 @@ public final class C3P0PooledConnectionPoolManager
         }
     }
 
+    private boolean getConcurrentCheckout(String userName)
+    {
+        try
+        { return getBoolean("concurrentCheckout", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch boolean property", e);
+            return C3P0Defaults.concurrentCheckout();
+        }
+    }
+
+    private boolean getThreadAffinity(String userName)
+    {
+        try
+        { return getBoolean("threadAffinity", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch boolean property", e);
+            return C3P0Defaults.threadAffinity();
+        }
+    }
+
 
     private String getConnectionTesterClassName(String userName)
     { return getString("connectionTesterClassName", userName ); }
@@ -736,6 +871,186 @@ public final class C3P0PooledConnectionPoolManager
     private ConnectionCustomizer getConnectionCustomizer(String userName) throws SQLException
     { return C3P0Registry.getConnectionCustomizer( getConnectionCustomizerClassName( userName ) ); }
 
+    private CheckoutOrdering getCheckoutOrdering(String userName)
+    {
+        String name = getString("checkoutOrdering", userName );
+        try
+        { return CheckoutOrderings.forName( name ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.WARNING ) )
+                logger.log( MLevel.WARNING, "Could not find or instantiate CheckoutOrdering '" + name + "'. Using default LIFO ordering.", e);
+            return CheckoutOrderings.LIFO;
+        }
+    }
+
+    private boolean getAdaptiveSizing(String userName)
+    {
+        try
+        { return getBoolean("adaptiveSizing", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch boolean property", e);
+            return C3P0Defaults.adaptiveSizing();
+        }
+    }
+
+    private int getAcquisitionParallelism(String userName)
+    {
+        try
+        { return getInt("acquisitionParallelism", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.acquisitionParallelism();
+        }
+    }
+
+    private int getCircuitBreakerThreshold(String userName)
+    {
+        try
+        { return getInt("circuitBreakerThreshold", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.circuitBreakerThreshold();
+        }
+    }
+
+    private boolean getVirtualThreadFriendly(String userName)
+    {
+        try
+        { return getBoolean("virtualThreadFriendly", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch boolean property", e);
+            return C3P0Defaults.virtualThreadFriendly();
+        }
+    }
+
+    private int[] getCheckoutPriorityReservations(String userName)
+    {
+        String spec = getString("checkoutPriorityReservations", userName );
+        try
+        { 
+            int[] out = CheckoutPriorities.parseReservations( spec ); 
+            if (out != null)
+                CheckoutPriorities.checkReservations( out, getMaxPoolSize( userName ) );
+            return out;
+        }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.WARNING ) )
+                logger.log( MLevel.WARNING, "Could not parse checkoutPriorityReservations '" + spec + "'. No Connections will be reserved for any checkout priority.", e);
+            return null;
+        }
+    }
+
+    private int getMaxCheckoutWaiters(String userName)
+    {
+        try
+        { return getInt("maxCheckoutWaiters", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.maxCheckoutWaiters();
+        }
+    }
+
+    private boolean getShedPredictedTimeouts(String userName)
+    {
+        try
+        { return getBoolean("shedPredictedTimeouts", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch boolean property", e);
+            return C3P0Defaults.shedPredictedTimeouts();
+        }
+    }
+
+    private int getCheckoutStripes(String userName)
+    {
+        try
+        { return getInt("checkoutStripes", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.checkoutStripes();
+        }
+    }
+
+    private int getMaxConnectionAgeJitter(String userName)
+    {
+        try
+        { return getInt("maxConnectionAgeJitter", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.maxConnectionAgeJitter();
+        }
+    }
+
+    private int getMaxConcurrentRetirements(String userName)
+    {
+        try
+        { return getInt("maxConcurrentRetirements", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.maxConcurrentRetirements();
+        }
+    }
+
+    private int getWarmupParallelism(String userName)
+    {
+        try
+        { return getInt("warmupParallelism", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.warmupParallelism();
+        }
+    }
+
+    // statements are separated by semicolons
+    private String[] getWarmupStatements(String userName)
+    {
+        String spec = getString("warmupStatements", userName );
+        if (spec == null)
+            return null;
+
+        List out = new ArrayList();
+        for (StringTokenizer st = new StringTokenizer( spec, ";" ); st.hasMoreTokens(); )
+        {
+            String sql = st.nextToken().trim();
+            if (sql.length() > 0)
+                out.add( sql );
+        }
+        return (out.isEmpty() ? null : (String[]) out.toArray( new String[ out.size() ] ));
+    }
+
+    private int getMaxConcurrentIdleTests(String userName)
+    {
+        try
+        { return getInt("maxConcurrentIdleTests", userName ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.maxConcurrentIdleTests();
+        }
+    }
+
     private int getMaxIdleTimeExcessConnections(String userName)
     {
         try
@@ -785,6 +1100,45 @@ public final class C3P0PooledConnectionPoolManager
         }
     }
 
+    private int getNumAcquireHelperThreads()
+    {
+        try
+        { return getInt("numAcquireHelperThreads", null ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.numAcquireHelperThreads();
+        }
+    }
+
+    private int getNumTestHelperThreads()
+    {
+        try
+        { return getInt("numTestHelperThreads", null ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.numTestHelperThreads();
+        }
+    }
+
+    private int getNumDestroyHelperThreads()
+    {
+        try
+        { return getInt("numDestroyHelperThreads", null ); }
+        catch (Exception e)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.log( MLevel.FINE, "Could not fetch int property", e);
+            return C3P0Defaults.numDestroyHelperThreads();
+        }
+    }
+
+    private String getTaskRunnerFactoryClassName()
+    { return getString("taskRunnerFactoryClassName", null ); }
+
     private int getStatementCacheNumDeferredCloseThreads()
     {
         try
@@ -865,6 +1219,22 @@ public final class C3P0PooledConnectionPoolManager
 								      this.getPropertyCycle( userName ),
 								      this.getUnreturnedConnectionTimeout( userName ),
 								      this.getDebugUnreturnedConnectionStackTraces( userName ),
+								      this.getConcurrentCheckout( userName ),
+								      this.getThreadAffinity( userName ),
+								      this.getCheckoutOrdering( userName ),
+								      this.getAdaptiveSizing( userName ),
+								      this.getAcquisitionParallelism( userName ),
+								      this.getCircuitBreakerThreshold( userName ),
+								      this.getVirtualThreadFriendly( userName ),
+								      this.getCheckoutPriorityReservations( userName ),
+								      this.getMaxCheckoutWaiters( userName ),
+								      this.getShedPredictedTimeouts( userName ),
+								      this.getCheckoutStripes( userName ),
+								      this.getMaxConnectionAgeJitter( userName ),
+								      this.getMaxConcurrentRetirements( userName ),
+								      this.getWarmupParallelism( userName ),
+								      this.getWarmupStatements( userName ),
+								      this.getMaxConcurrentIdleTests( userName ),
 								      this.getTestConnectionOnCheckout( userName ),
 								      this.getTestConnectionOnCheckin( userName ),
 								      this.getMaxStatements( userName ),
@@ -0,0 +1,101 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.Timer;
+import com.mchange.v2.async.ThreadPoolAsynchronousRunner;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.c3p0.TaskRunnerFactory;
+
+/**
+ * Creates c3p0's traditional task runners, fixed pools of daemon threads
+ * with a single queue. When maxAdministrativeTaskTime is set, hung tasks are
+ * interrupted, and if no tasks clear for a while, the pool's threads are
+ * presumed deadlocked, and are replaced.
+ */
+public final class DefaultTaskRunnerFactory implements TaskRunnerFactory
+{
+    public TaskRunner createTaskRunner( int num_threads, int matt /* maxAdministrativeTaskTime */, Timer timer, String thread_label )
+    {
+	ThreadPoolAsynchronousRunner runner;
+        if ( matt > 0 )
+        {
+            int matt_ms = matt * 1000;
+            runner = new ThreadPoolAsynchronousRunner( num_threads, 
+						       true,        // daemon thread
+						       matt_ms,     // wait before interrupt()
+						       matt_ms * 3, // wait before deadlock declared if no tasks clear
+						       matt_ms * 6, // wait before deadlock tasks are interrupted (again)
+							            // after the hung thread has been cleared and replaced
+							            // (in hopes of getting the thread to terminate for
+							            // garbage collection)
+						       timer,
+						       thread_label );
+        }
+        else
+            runner = new ThreadPoolAsynchronousRunner( num_threads, true, timer, thread_label );
+
+	return new Runner( runner );
+    }
+
+    public String toString()
+    { return this.getClass().getName(); }
+
+    final static class Runner implements TaskRunner
+    {
+	final ThreadPoolAsynchronousRunner inner;
+
+	Runner( ThreadPoolAsynchronousRunner inner )
+	{ this.inner = inner; }
+
+	public void postRunnable( Runnable r )
+	{ inner.postRunnable( r ); }
+
+	public void close( boolean skip_remaining_tasks )
+	{ inner.close( skip_remaining_tasks ); }
+
+	public void close()
+	{ inner.close(); }
+
+	public int getThreadCount()
+	{ return inner.getThreadCount(); }
+
+	public int getActiveCount()
+	{ return inner.getActiveCount(); }
+
+	public int getIdleCount()
+	{ return inner.getIdleCount(); }
+
+	public int getPendingTaskCount()
+	{ return inner.getPendingTaskCount(); }
+
+	public String getStackTraces()
+	{ return inner.getStackTraces(); }
+
+	public String getStatus()
+	{ return inner.getStatus(); }
+
+	public String toString()
+	{ return inner.toString(); }
+    }
+}
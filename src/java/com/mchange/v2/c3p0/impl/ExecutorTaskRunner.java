@@ -0,0 +1,226 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.log.*;
+import com.mchange.v2.util.ResourceClosedException;
+
+/**
+ * <p>A TaskRunner that runs its tasks on a <tt>java.util.concurrent.ExecutorService</tt>,
+ * which it owns, and shuts down when it is closed. Tasks that run longer than
+ * maxAdministrativeTaskTime are interrupted, but unlike c3p0's traditional runner,
+ * an ExecutorTaskRunner never declares its threads deadlocked and replaces them.
+ * Executors that start threads as needed (or a thread per task) cannot deadlock
+ * on tasks that wait for one another.</p>
+ *
+ * <p>Counts of active threads and pending tasks are kept by the runner itself,
+ * so they are reported for any ExecutorService. The thread count is the pool
+ * size of a ThreadPoolExecutor, otherwise, unless a subclass knows better,
+ * the number of threads currently running tasks.</p>
+ */
+public class ExecutorTaskRunner implements TaskRunner
+{
+    final static MLogger logger = MLog.getLogger( ExecutorTaskRunner.class );
+
+    final ExecutorService executor;
+    final long            matt_ms;
+    final Timer           timer;
+    final String          thread_label;
+
+    final AtomicInteger pending = new AtomicInteger( 0 );
+
+    // keys are Threads currently running tasks, values are their tasks
+    final Map running = new ConcurrentHashMap();
+
+    volatile boolean closed   = false;
+    volatile boolean skipping = false;
+
+    /**
+     * @param max_administrative_task_time in seconds, zero or less to let tasks run indefinitely
+     */
+    public ExecutorTaskRunner( ExecutorService executor, int max_administrative_task_time, Timer timer, String thread_label )
+    {
+	this.executor     = executor;
+	this.matt_ms      = (max_administrative_task_time > 0 && timer != null ? max_administrative_task_time * 1000L : 0);
+	this.timer        = timer;
+	this.thread_label = thread_label;
+    }
+
+    public ExecutorService getExecutor()
+    { return executor; }
+
+    public void postRunnable( Runnable r )
+    {
+	if ( closed )
+	    throw new ResourceClosedException( this + " has been closed." );
+
+	pending.incrementAndGet();
+	try
+	{ executor.execute( new Task( r ) ); }
+	catch ( RejectedExecutionException e )
+	{
+	    pending.decrementAndGet();
+	    if ( logger.isLoggable( MLevel.FINE ) )
+		logger.log( MLevel.FINE, this + " -- task rejected by executor: " + r, e );
+	    throw new ResourceClosedException( this + " could not accept a task: " + e );
+	}
+    }
+
+    /**
+     * Tasks underway are permitted to finish, but are not interrupted.
+     */
+    public void close( boolean skip_remaining_tasks )
+    {
+	closed = true;
+	if ( skip_remaining_tasks )
+	    skipping = true;
+	executor.shutdown();
+    }
+
+    public void close()
+    { close( true ); }
+
+    public int getThreadCount()
+    {
+	if ( executor instanceof ThreadPoolExecutor )
+	    return ((ThreadPoolExecutor) executor).getPoolSize();
+	else
+	    return running.size();
+    }
+
+    public int getActiveCount()
+    { return running.size(); }
+
+    public int getIdleCount()
+    { return Math.max( 0, getThreadCount() - getActiveCount() ); }
+
+    public int getPendingTaskCount()
+    { return pending.get(); }
+
+    public String getStackTraces()
+    {
+	StringBuffer sb = new StringBuffer( 1024 );
+	sb.append( this );
+	sb.append( '\n' );
+	for ( Iterator ii = running.entrySet().iterator(); ii.hasNext(); )
+	{
+	    Map.Entry entry = (Map.Entry) ii.next();
+	    Thread t = (Thread) entry.getKey();
+	    sb.append( '\t' );
+	    sb.append( t );
+	    sb.append( " running " );
+	    sb.append( entry.getValue() );
+	    sb.append( '\n' );
+	    StackTraceElement[] stes = t.getStackTrace();
+	    for ( int i = 0; i < stes.length; ++i )
+	    {
+		sb.append( "\t\t" );
+		sb.append( stes[i] );
+		sb.append( '\n' );
+	    }
+	}
+	return sb.toString();
+    }
+
+    public String getStatus()
+    {
+	StringBuffer sb = new StringBuffer( 512 );
+	sb.append( this );
+	sb.append( " [ threads -> " );
+	sb.append( getThreadCount() );
+	sb.append( ", active -> " );
+	sb.append( getActiveCount() );
+	sb.append( ", pending tasks -> " );
+	sb.append( getPendingTaskCount() );
+	sb.append( ", closed -> " );
+	sb.append( closed );
+	sb.append( ", executor -> " );
+	sb.append( executor );
+	sb.append( " ]" );
+	return sb.toString();
+    }
+
+    public String toString()
+    { return super.toString() + " [" + thread_label + "]"; }
+
+    /**
+     * @return a ThreadFactory for daemon threads, named for the label
+     */
+    public static ThreadFactory daemonThreadFactory( final String thread_label )
+    {
+	return new ThreadFactory()
+	{
+	    final AtomicInteger count = new AtomicInteger( 0 );
+
+	    public Thread newThread( Runnable r )
+	    {
+		Thread t = new Thread( r, thread_label + "-#" + count.getAndIncrement() );
+		t.setDaemon( true );
+		return t;
+	    }
+	};
+    }
+
+    class Task implements Runnable
+    {
+	final Runnable inner;
+
+	Task( Runnable inner )
+	{ this.inner = inner; }
+
+	public void run()
+	{
+	    pending.decrementAndGet();
+	    if ( skipping )
+		return;
+
+	    Thread t = Thread.currentThread();
+	    TaskInterrupter interrupter = null;
+	    running.put( t, inner );
+	    try
+	    {
+		if ( matt_ms > 0 )
+		{
+		    interrupter = new TaskInterrupter( t, inner, ExecutorTaskRunner.this );
+		    timer.schedule( interrupter, matt_ms );
+		}
+		inner.run();
+	    }
+	    catch ( RuntimeException e )
+	    {
+		if ( logger.isLoggable( MLevel.WARNING ) )
+		    logger.log( MLevel.WARNING, ExecutorTaskRunner.this + " -- a task failed unexpectedly: " + inner, e );
+	    }
+	    finally
+	    {
+		if ( interrupter != null )
+		    interrupter.finish();
+		running.remove( t );
+	    }
+	}
+    }
+}
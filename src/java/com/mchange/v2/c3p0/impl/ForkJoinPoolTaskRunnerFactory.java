@@ -0,0 +1,64 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0.impl;
+
+import java.lang.reflect.*;
+import java.util.Timer;
+import java.util.concurrent.ExecutorService;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.c3p0.TaskRunnerFactory;
+
+/**
+ * <p>Runs tasks on a <tt>java.util.concurrent.ForkJoinPool</tt> whose parallelism
+ * is numHelperThreads. Requires JDK 7 or later. The pool is reached reflectively,
+ * so that c3p0 still builds for older JVMs.</p>
+ *
+ * <p>c3p0's tasks block on the database, and a ForkJoinPool does not compensate for
+ * blocking outside of its own ManagedBlocker API, so this is most suitable when
+ * numHelperThreads is set generously.</p>
+ */
+public final class ForkJoinPoolTaskRunnerFactory implements TaskRunnerFactory
+{
+    public TaskRunner createTaskRunner( int num_threads, int max_administrative_task_time, Timer timer, String thread_label )
+	throws Exception
+    {
+	Class fjpClass = Class.forName( "java.util.concurrent.ForkJoinPool" );
+	Constructor ctor = fjpClass.getConstructor( new Class[] { int.class } );
+	ExecutorService executor = (ExecutorService) ctor.newInstance( new Object[] { new Integer( Math.max( 1, num_threads ) ) } );
+	final Method getPoolSize = fjpClass.getMethod( "getPoolSize", new Class[0] );
+
+	return new ExecutorTaskRunner( executor, max_administrative_task_time, timer, thread_label )
+	{
+	    public int getThreadCount()
+	    {
+		try
+		{ return ((Integer) getPoolSize.invoke( this.executor, new Object[0] )).intValue(); }
+		catch ( Exception e )
+		{ return super.getThreadCount(); }
+	    }
+	};
+    }
+
+    public String toString()
+    { return this.getClass().getName(); }
+}
@@ -32,6 +32,8 @@ import com.mchange.v2.c3p0.util.*;
 import com.mchange.v2.log.*;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import com.mchange.v2.lang.ObjectUtils;
 import com.mchange.v2.sql.SqlUtils;
 
@@ -66,7 +68,8 @@ public final class NewPooledConnection extends AbstractC3P0PooledConnection{
     // since the StatementCache "in-use" marker doesn't nest, we have to ensure that
     // internal uses Connection tests don't overlap. (External use, due to checkout,
     // is no problem, no internal operation are performed on checked-out PooledConnections
-    final Object inInternalUseLock = new Object();
+    // a java.util.concurrent Lock, since Connection tests are performed while it is held
+    final Lock inInternalUseLock = new ReentrantLock();
 
     //MT:  protected by this' lock
     GooGooStatementCache scache                    = null;
@@ -311,8 +314,19 @@ public final class NewPooledConnection extends AbstractC3P0PooledConnection{
         this.typeMap_nondefault = (typeMap != dflt_typeMap);
     }
 
-    synchronized Object checkoutStatement( Method stmtProducingMethod, Object[] args ) throws SQLException
-    { return scache.checkoutStatement( physicalConnection, stmtProducingMethod, args ); }
+    // a virtual-thread-friendly cache prepares new Statements on the calling Thread,
+    // so we don't hold this' lock while it does
+    Object checkoutStatement( Method stmtProducingMethod, Object[] args ) throws SQLException
+    { 
+        GooGooStatementCache sc = getStatementCache();
+        if ( sc.isVirtualThreadFriendly() )
+            return sc.checkoutStatement( physicalConnection, stmtProducingMethod, args );
+        else
+        {
+            synchronized ( this )
+            { return sc.checkoutStatement( physicalConnection, stmtProducingMethod, args ); }
+        }
+    }
 
     synchronized void checkinStatement( Statement stmt ) throws SQLException
     { 
@@ -0,0 +1,469 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.log.*;
+import com.mchange.v2.util.ResourceClosedException;
+
+/**
+ * <p>A process-wide pool of helper threads, shared by every DataSource whose
+ * taskRunnerFactoryClassName is {@link SharedTaskRunnerFactory}. Applications
+ * with many small DataSources need not keep numHelperThreads idle threads
+ * for each of them.</p>
+ *
+ * <p>Each DataSource posts its tasks to its own <i>lane</i>, a TaskRunner with
+ * a queue of its own. Lanes with queued tasks take turns, round-robin, so a
+ * DataSource with a deep backlog cannot starve the others, and no lane ever
+ * runs more tasks at once than the thread count it was created with.</p>
+ *
+ * <p>The pool starts threads as lanes have work for them, up to max_threads,
+ * and threads that find nothing to do for a while exit.</p>
+ */
+public final class SharedHelperPool
+{
+    final static MLogger logger = MLog.getLogger( SharedHelperPool.class );
+
+    final static long IDLE_THREAD_LINGER = 60 * 1000; //milliseconds
+
+    final int    max_threads;
+    final String thread_label;
+    final long   linger_millis;
+
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition     work = lock.newCondition();
+
+    //MT: protected by lock
+    final List       lanes   = new ArrayList();  // open lanes, and closed lanes whose tasks have not yet finished
+    final LinkedList ready   = new LinkedList(); // lanes with queued tasks and room to run them, in turn
+    int              threads = 0;
+    int              idle    = 0;
+    int              thread_num = 0;
+
+    public SharedHelperPool( int max_threads, String thread_label )
+    { this( max_threads, thread_label, IDLE_THREAD_LINGER ); }
+
+    SharedHelperPool( int max_threads, String thread_label, long linger_millis )
+    {
+	this.max_threads   = Math.max( 1, max_threads );
+	this.thread_label  = thread_label;
+	this.linger_millis = linger_millis;
+    }
+
+    /**
+     * @param max_active the most tasks the lane may run at once
+     * @param max_administrative_task_time in seconds, zero or less to let tasks run indefinitely
+     */
+    public TaskRunner createLane( String label, int max_active, int max_administrative_task_time, Timer timer )
+    {
+	long matt_ms = (max_administrative_task_time > 0 && timer != null ? max_administrative_task_time * 1000L : 0);
+	Lane out = new Lane( label, Math.max( 1, max_active ), matt_ms, timer );
+	lock.lock();
+	try
+	{ lanes.add( out ); }
+	finally
+	{ lock.unlock(); }
+	return out;
+    }
+
+    public int getMaxThreads()
+    { return max_threads; }
+
+    public int getNumThreads()
+    {
+	lock.lock();
+	try
+	{ return threads; }
+	finally
+	{ lock.unlock(); }
+    }
+
+    public int getNumIdleThreads()
+    {
+	lock.lock();
+	try
+	{ return idle; }
+	finally
+	{ lock.unlock(); }
+    }
+
+    public int getNumLanes()
+    {
+	lock.lock();
+	try
+	{ return lanes.size(); }
+	finally
+	{ lock.unlock(); }
+    }
+
+    public int getNumTasksPending()
+    {
+	lock.lock();
+	try
+	{
+	    int out = 0;
+	    for ( Iterator ii = lanes.iterator(); ii.hasNext(); )
+		out += ((Lane) ii.next()).queue.size();
+	    return out;
+	}
+	finally
+	{ lock.unlock(); }
+    }
+
+    /**
+     * @return a description of the pool, with a line for each lane giving
+     *         its active, pending, and completed task counts
+     */
+    public String getStatus()
+    {
+	lock.lock();
+	try
+	{
+	    StringBuffer sb = new StringBuffer( 512 );
+	    sb.append( this );
+	    sb.append( " [ threads -> " );
+	    sb.append( threads );
+	    sb.append( ", idle -> " );
+	    sb.append( idle );
+	    sb.append( ", max threads -> " );
+	    sb.append( max_threads );
+	    sb.append( ", lanes -> " );
+	    sb.append( lanes.size() );
+	    sb.append( " ]\n" );
+	    for ( Iterator ii = lanes.iterator(); ii.hasNext(); )
+	    {
+		sb.append( '\t' );
+		((Lane) ii.next()).appendCounts( sb );
+		sb.append( '\n' );
+	    }
+	    return sb.toString();
+	}
+	finally
+	{ lock.unlock(); }
+    }
+
+    public String toString()
+    { return super.toString() + " [" + thread_label + "]"; }
+
+    // must be called with lock held
+    private void schedule( Lane lane )
+    {
+	if ( !lane.in_ready && !lane.queue.isEmpty() && lane.active < lane.max_active )
+	{
+	    lane.in_ready = true;
+	    ready.addLast( lane );
+
+	    if ( ready.size() > idle && threads < max_threads )
+	    {
+		Thread t = new Worker( thread_label + "-#" + thread_num++ );
+		t.setDaemon( true );
+		t.start();
+		++threads;
+	    }
+	    else
+		work.signal();
+	}
+    }
+
+    // must be called with lock held
+    private void retireIfDone( Lane lane )
+    {
+	if ( lane.closed && lane.queue.isEmpty() && lane.active == 0 )
+	    lanes.remove( lane );
+    }
+
+    class Worker extends Thread
+    {
+	Worker( String name )
+	{ super( name ); }
+
+	public void run()
+	{
+	    try
+	    {
+		while ( true )
+		{
+		    Lane     lane;
+		    Runnable task;
+
+		    lock.lock();
+		    try
+		    {
+			long deadline = System.currentTimeMillis() + linger_millis;
+			while ( ready.isEmpty() )
+			{
+			    long remaining = deadline - System.currentTimeMillis();
+			    if ( remaining <= 0 )
+				return;
+			    ++idle;
+			    try
+			    { work.await( remaining, TimeUnit.MILLISECONDS ); }
+			    finally
+			    { --idle; }
+			}
+
+			lane = (Lane) ready.removeFirst();
+			lane.in_ready = false;
+			task = (Runnable) lane.queue.removeFirst();
+			++lane.active;
+			lane.running.put( this, task );
+			schedule( lane ); // to the back of the line, if it has more to do
+		    }
+		    finally
+		    { lock.unlock(); }
+
+		    try
+		    { lane.runTask( this, task ); }
+		    finally
+		    {
+			lock.lock();
+			try
+			{
+			    --lane.active;
+			    ++lane.completed;
+			    lane.running.remove( this );
+			    retireIfDone( lane );
+			    schedule( lane );
+			}
+			finally
+			{ lock.unlock(); }
+		    }
+		}
+	    }
+	    catch ( InterruptedException e )
+	    {
+		if ( logger.isLoggable( MLevel.FINE ) )
+		    logger.log( MLevel.FINE, SharedHelperPool.this + " -- an idle helper thread was interrupted, and will exit.", e );
+	    }
+	    finally
+	    {
+		lock.lock();
+		try
+		{
+		    --threads;
+
+		    // we may have been signalled for work just as we gave up waiting
+		    if ( !ready.isEmpty() )
+			work.signal();
+		}
+		finally
+		{ lock.unlock(); }
+	    }
+	}
+    }
+
+    /**
+     * One DataSource's share of the pool.
+     */
+    public final class Lane implements TaskRunner
+    {
+	final String label;
+	final int    max_active;
+	final long   matt_ms;
+	final Timer  timer;
+
+	//MT: protected by SharedHelperPool's lock
+	final LinkedList queue    = new LinkedList();
+	final Map        running  = new HashMap(); // Worker -> task
+	int              active    = 0;
+	long             completed = 0;
+	boolean          in_ready  = false;
+	boolean          closed    = false;
+
+	Lane( String label, int max_active, long matt_ms, Timer timer )
+	{
+	    this.label      = label;
+	    this.max_active = max_active;
+	    this.matt_ms    = matt_ms;
+	    this.timer      = timer;
+	}
+
+	public void postRunnable( Runnable r )
+	{
+	    lock.lock();
+	    try
+	    {
+		if ( closed )
+		    throw new ResourceClosedException( this + " has been closed." );
+		queue.add( r );
+		schedule( this );
+	    }
+	    finally
+	    { lock.unlock(); }
+	}
+
+	/**
+	 * Tasks underway are permitted to finish, but are not interrupted.
+	 */
+	public void close( boolean skip_remaining_tasks )
+	{
+	    lock.lock();
+	    try
+	    {
+		closed = true;
+		if ( skip_remaining_tasks )
+		{
+		    queue.clear();
+		    ready.remove( this );
+		    in_ready = false;
+		}
+		retireIfDone( this );
+	    }
+	    finally
+	    { lock.unlock(); }
+	}
+
+	public void close()
+	{ close( true ); }
+
+	public int getThreadCount()
+	{ return getActiveCount(); }
+
+	public int getActiveCount()
+	{
+	    lock.lock();
+	    try
+	    { return active; }
+	    finally
+	    { lock.unlock(); }
+	}
+
+	// the shared pool's idle threads belong to no lane in particular
+	public int getIdleCount()
+	{ return 0; }
+
+	public int getPendingTaskCount()
+	{
+	    lock.lock();
+	    try
+	    { return queue.size(); }
+	    finally
+	    { lock.unlock(); }
+	}
+
+	public long getCompletedTaskCount()
+	{
+	    lock.lock();
+	    try
+	    { return completed; }
+	    finally
+	    { lock.unlock(); }
+	}
+
+	public String getStackTraces()
+	{
+	    Map snapshot;
+	    lock.lock();
+	    try
+	    { snapshot = new HashMap( running ); }
+	    finally
+	    { lock.unlock(); }
+
+	    StringBuffer sb = new StringBuffer( 1024 );
+	    sb.append( this );
+	    sb.append( '\n' );
+	    for ( Iterator ii = snapshot.entrySet().iterator(); ii.hasNext(); )
+	    {
+		Map.Entry entry = (Map.Entry) ii.next();
+		Thread t = (Thread) entry.getKey();
+		sb.append( '\t' );
+		sb.append( t );
+		sb.append( " running " );
+		sb.append( entry.getValue() );
+		sb.append( '\n' );
+		StackTraceElement[] stes = t.getStackTrace();
+		for ( int i = 0; i < stes.length; ++i )
+		{
+		    sb.append( "\t\t" );
+		    sb.append( stes[i] );
+		    sb.append( '\n' );
+		}
+	    }
+	    return sb.toString();
+	}
+
+	public String getStatus()
+	{
+	    StringBuffer sb = new StringBuffer( 256 );
+	    lock.lock();
+	    try
+	    {
+		appendCounts( sb );
+		sb.append( " in " );
+		sb.append( SharedHelperPool.this );
+	    }
+	    finally
+	    { lock.unlock(); }
+	    return sb.toString();
+	}
+
+	// must be called with lock held
+	void appendCounts( StringBuffer sb )
+	{
+	    sb.append( label );
+	    sb.append( " [ active -> " );
+	    sb.append( active );
+	    sb.append( '/' );
+	    sb.append( max_active );
+	    sb.append( ", pending tasks -> " );
+	    sb.append( queue.size() );
+	    sb.append( ", completed tasks -> " );
+	    sb.append( completed );
+	    sb.append( ", closed -> " );
+	    sb.append( closed );
+	    sb.append( " ]" );
+	}
+
+	void runTask( Thread t, Runnable task )
+	{
+	    TaskInterrupter interrupter = null;
+	    try
+	    {
+		if ( matt_ms > 0 )
+		{
+		    interrupter = new TaskInterrupter( t, task, this );
+		    timer.schedule( interrupter, matt_ms );
+		}
+		task.run();
+	    }
+	    catch ( RuntimeException e )
+	    {
+		if ( logger.isLoggable( MLevel.WARNING ) )
+		    logger.log( MLevel.WARNING, this + " -- a task failed unexpectedly: " + task, e );
+	    }
+	    finally
+	    {
+		if ( interrupter != null )
+		    interrupter.finish();
+	    }
+	}
+
+	public String toString()
+	{ return super.toString() + " [" + label + "]"; }
+    }
+}
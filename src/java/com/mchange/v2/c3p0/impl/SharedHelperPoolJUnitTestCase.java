@@ -0,0 +1,220 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.util.ResourceClosedException;
+import junit.framework.TestCase;
+
+public final class SharedHelperPoolJUnitTestCase extends TestCase
+{
+    final static long SLACK_MILLIS = 5000; //generous, for busy test machines
+
+    public void testLaneNeverRunsMoreThanMaxActive() throws Exception
+    {
+        SharedHelperPool pool = new SharedHelperPool( 8, "SharedHelperPoolJUnitTestCase" );
+        TaskRunner capped = pool.createLane( "capped", 2, 0, null );
+        TaskRunner other  = pool.createLane( "other", 2, 0, null );
+
+        CountDownLatch gate    = new CountDownLatch( 1 );
+        CountDownLatch started = new CountDownLatch( 6 );
+        CountDownLatch done    = new CountDownLatch( 6 );
+        AtomicInteger  active  = new AtomicInteger( 0 );
+        AtomicInteger  maxSeen = new AtomicInteger( 0 );
+        for (int i = 0; i < 6; ++i)
+            capped.postRunnable( new GatedTask( gate, started, done, active, maxSeen ) );
+
+        awaitCount( started, 4 ); // two running
+        Thread.sleep( 50 );      // in which time no more should start
+        assertEquals( 2, capped.getActiveCount() );
+        assertEquals( 4, capped.getPendingTaskCount() );
+        assertEquals( 4, started.getCount() );
+
+        // the cap is per lane, other lanes still run
+        CountDownLatch ran = new CountDownLatch( 1 );
+        other.postRunnable( new CountDown( ran ) );
+        assertTrue( "Another lane should run while the first is at its cap.", ran.await( SLACK_MILLIS, TimeUnit.MILLISECONDS ) );
+
+        gate.countDown();
+        assertTrue( done.await( SLACK_MILLIS, TimeUnit.MILLISECONDS ) );
+        assertEquals( "A lane should never run more than max_active tasks at once.", 2, maxSeen.get() );
+        awaitCompleted( capped, 6 );
+        assertEquals( 0, capped.getActiveCount() );
+    }
+
+    public void testLanesTakeTurns() throws Exception
+    {
+        SharedHelperPool pool = new SharedHelperPool( 1, "SharedHelperPoolJUnitTestCase" );
+        TaskRunner a = pool.createLane( "a", 1, 0, null );
+        TaskRunner b = pool.createLane( "b", 1, 0, null );
+
+        // occupy the only thread while both lanes queue up
+        CountDownLatch gate    = new CountDownLatch( 1 );
+        CountDownLatch started = new CountDownLatch( 1 );
+        a.postRunnable( new GatedTask( gate, started, new CountDownLatch( 1 ), new AtomicInteger(), new AtomicInteger() ) );
+        assertTrue( started.await( SLACK_MILLIS, TimeUnit.MILLISECONDS ) );
+
+        List order = Collections.synchronizedList( new ArrayList() );
+        CountDownLatch done = new CountDownLatch( 6 );
+        for (int i = 1; i <= 3; ++i)
+            a.postRunnable( new Record( order, "a" + i, done ) );
+        for (int i = 1; i <= 3; ++i)
+            b.postRunnable( new Record( order, "b" + i, done ) );
+
+        gate.countDown();
+        assertTrue( done.await( SLACK_MILLIS, TimeUnit.MILLISECONDS ) );
+
+        // b has waited longest for a turn, so goes first
+        assertEquals( Arrays.asList( new String[] { "b1", "a1", "b2", "a2", "b3", "a3" } ), order );
+    }
+
+    public void testIdleThreadsExit() throws Exception
+    {
+        SharedHelperPool pool = new SharedHelperPool( 4, "SharedHelperPoolJUnitTestCase", 100 );
+        TaskRunner lane = pool.createLane( "lane", 4, 0, null );
+
+        CountDownLatch ran = new CountDownLatch( 3 );
+        for (int i = 0; i < 3; ++i)
+            lane.postRunnable( new CountDown( ran ) );
+        assertTrue( ran.await( SLACK_MILLIS, TimeUnit.MILLISECONDS ) );
+        assertTrue( pool.getNumThreads() > 0 );
+
+        long deadline = System.currentTimeMillis() + SLACK_MILLIS;
+        while ( pool.getNumThreads() > 0 && System.currentTimeMillis() < deadline )
+            Thread.sleep( 10 );
+        assertEquals( "Idle threads should exit.", 0, pool.getNumThreads() );
+        assertEquals( 0, pool.getNumIdleThreads() );
+
+        // and new ones start when there is work again
+        ran = new CountDownLatch( 1 );
+        lane.postRunnable( new CountDown( ran ) );
+        assertTrue( ran.await( SLACK_MILLIS, TimeUnit.MILLISECONDS ) );
+    }
+
+    public void testClosedLaneRefusesTasksAndIsForgotten() throws Exception
+    {
+        SharedHelperPool pool = new SharedHelperPool( 2, "SharedHelperPoolJUnitTestCase" );
+        TaskRunner lane = pool.createLane( "lane", 1, 0, null );
+        assertEquals( 1, pool.getNumLanes() );
+
+        lane.close();
+        assertEquals( 0, pool.getNumLanes() );
+        try
+        {
+            lane.postRunnable( new CountDown( new CountDownLatch( 1 ) ) );
+            fail( "A closed lane should refuse tasks." );
+        }
+        catch (ResourceClosedException e)
+        {}
+    }
+
+    private static void awaitCount( CountDownLatch latch, long count ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + SLACK_MILLIS;
+        while ( latch.getCount() > count && System.currentTimeMillis() < deadline )
+            Thread.sleep( 1 );
+        assertEquals( count, latch.getCount() );
+    }
+
+    // a task's completion is counted just after it runs
+    private static void awaitCompleted( TaskRunner lane, long count ) throws InterruptedException
+    {
+        SharedHelperPool.Lane l = (SharedHelperPool.Lane) lane;
+        long deadline = System.currentTimeMillis() + SLACK_MILLIS;
+        while ( l.getCompletedTaskCount() < count && System.currentTimeMillis() < deadline )
+            Thread.sleep( 1 );
+        assertEquals( count, l.getCompletedTaskCount() );
+    }
+
+    final static class GatedTask implements Runnable
+    {
+        final CountDownLatch gate;
+        final CountDownLatch started;
+        final CountDownLatch done;
+        final AtomicInteger  active;
+        final AtomicInteger  maxSeen;
+
+        GatedTask( CountDownLatch gate, CountDownLatch started, CountDownLatch done, AtomicInteger active, AtomicInteger maxSeen )
+        {
+            this.gate    = gate;
+            this.started = started;
+            this.done    = done;
+            this.active  = active;
+            this.maxSeen = maxSeen;
+        }
+
+        public void run()
+        {
+            int now = active.incrementAndGet();
+            for (int seen = maxSeen.get(); now > seen && !maxSeen.compareAndSet( seen, now ); seen = maxSeen.get())
+                ;
+            started.countDown();
+            try
+            { gate.await(); }
+            catch (InterruptedException e)
+            {}
+            finally
+            {
+                active.decrementAndGet();
+                done.countDown();
+            }
+        }
+    }
+
+    final static class Record implements Runnable
+    {
+        final List           order;
+        final Object         name;
+        final CountDownLatch done;
+
+        Record( List order, Object name, CountDownLatch done )
+        {
+            this.order = order;
+            this.name  = name;
+            this.done  = done;
+        }
+
+        public void run()
+        {
+            order.add( name );
+            done.countDown();
+        }
+    }
+
+    final static class CountDown implements Runnable
+    {
+        final CountDownLatch latch;
+
+        CountDown( CountDownLatch latch )
+        { this.latch = latch; }
+
+        public void run()
+        { latch.countDown(); }
+    }
+}
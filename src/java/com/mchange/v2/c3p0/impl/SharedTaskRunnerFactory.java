@@ -0,0 +1,42 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.Timer;
+import com.mchange.v2.c3p0.C3P0Registry;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.c3p0.TaskRunnerFactory;
+
+/**
+ * Runs tasks on the process-wide {@link SharedHelperPool}, in a lane of
+ * their own, which never runs more than numHelperThreads tasks at once.
+ */
+public final class SharedTaskRunnerFactory implements TaskRunnerFactory
+{
+    public TaskRunner createTaskRunner( int num_threads, int max_administrative_task_time, Timer timer, String thread_label )
+    { return C3P0Registry.getSharedHelperPool().createLane( thread_label, num_threads, max_administrative_task_time, timer ); }
+
+    public String toString()
+    { return this.getClass().getName(); }
+}
@@ -0,0 +1,72 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.TimerTask;
+import com.mchange.v2.log.*;
+
+/*
+ * Interrupts a task's Thread if the task is still running when the timer fires,
+ * but never the Thread's next task, and clears any interrupt it delivered once
+ * the task it was meant for has finished. Enforces maxAdministrativeTaskTime
+ * for task runners other than c3p0's traditional ThreadPoolAsynchronousRunner.
+ */
+final class TaskInterrupter extends TimerTask
+{
+    final static MLogger logger = MLog.getLogger( TaskInterrupter.class );
+
+    final Thread   t;
+    final Runnable task;
+    final Object   runner;
+
+    //MT: protected by this' lock
+    boolean done  = false;
+    boolean fired = false;
+
+    TaskInterrupter( Thread t, Runnable task, Object runner )
+    {
+	this.t      = t;
+	this.task   = task;
+	this.runner = runner;
+    }
+
+    public synchronized void run()
+    {
+	if ( !done )
+	{
+	    fired = true;
+	    if ( logger.isLoggable( MLevel.WARNING ) )
+		logger.warning( runner + " -- task has exceeded maxAdministrativeTaskTime, and will be interrupted: " + task );
+	    t.interrupt();
+	}
+    }
+
+    // called by the task's own Thread
+    synchronized void finish()
+    {
+	done = true;
+	this.cancel();
+	if ( fired )
+	    Thread.interrupted();
+    }
+}
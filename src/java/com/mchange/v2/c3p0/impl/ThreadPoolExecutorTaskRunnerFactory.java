@@ -0,0 +1,47 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0.impl;
+
+import java.util.Timer;
+import java.util.concurrent.*;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.c3p0.TaskRunnerFactory;
+
+/**
+ * Runs tasks on a <tt>java.util.concurrent.ThreadPoolExecutor</tt> of
+ * numHelperThreads daemon threads, with an unbounded queue.
+ */
+public final class ThreadPoolExecutorTaskRunnerFactory implements TaskRunnerFactory
+{
+    public TaskRunner createTaskRunner( int num_threads, int max_administrative_task_time, Timer timer, String thread_label )
+    {
+	int n = Math.max( 1, num_threads );
+	ThreadPoolExecutor executor = new ThreadPoolExecutor( n, n, 0, TimeUnit.MILLISECONDS, 
+							      new LinkedBlockingQueue(), 
+							      ExecutorTaskRunner.daemonThreadFactory( thread_label ) );
+	return new ExecutorTaskRunner( executor, max_administrative_task_time, timer, thread_label );
+    }
+
+    public String toString()
+    { return this.getClass().getName(); }
+}
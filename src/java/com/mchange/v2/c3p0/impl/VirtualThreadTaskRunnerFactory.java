@@ -0,0 +1,57 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package com.mchange.v2.c3p0.impl;
+
+import java.lang.reflect.*;
+import java.util.Timer;
+import java.util.concurrent.*;
+import com.mchange.v2.c3p0.TaskRunner;
+import com.mchange.v2.c3p0.TaskRunnerFactory;
+
+/**
+ * <p>Runs each task on a virtual thread of its own. Requires JDK 21 or later.
+ * Virtual threads are reached reflectively, so that c3p0 still builds for
+ * older JVMs.</p>
+ *
+ * <p>numHelperThreads is ignored: any number of tasks may run at once, and tasks
+ * blocked on the database cost little more than their stacks. The pools themselves
+ * still limit how many Connections are acquired at once.</p>
+ */
+public final class VirtualThreadTaskRunnerFactory implements TaskRunnerFactory
+{
+    public TaskRunner createTaskRunner( int num_threads, int max_administrative_task_time, Timer timer, String thread_label )
+	throws Exception
+    {
+	Class builderClass = Class.forName( "java.lang.Thread$Builder" );
+	Object builder = Thread.class.getMethod( "ofVirtual", new Class[0] ).invoke( null, new Object[0] );
+	builder = builderClass.getMethod( "name", new Class[] { String.class, long.class } ).invoke( builder, new Object[] { thread_label + "-#", new Long( 0 ) } );
+	ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod( "factory", new Class[0] ).invoke( builder, new Object[0] );
+
+	Method m = Executors.class.getMethod( "newThreadPerTaskExecutor", new Class[] { ThreadFactory.class } );
+	ExecutorService executor = (ExecutorService) m.invoke( null, new Object[] { threadFactory } );
+	return new ExecutorTaskRunner( executor, max_administrative_task_time, timer, thread_label );
+    }
+
+    public String toString()
+    { return this.getClass().getName(); }
+}
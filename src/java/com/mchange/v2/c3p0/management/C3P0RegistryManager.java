@@ -62,6 +62,12 @@ public class C3P0RegistryManager implements C3P0RegistryManagerMBean
 
     public int getNumPoolsAllDataSources() throws SQLException
     { return C3P0Registry.getNumPoolsAllDataSources(); }
+
+    public String getSharedHelperPoolStatus()
+    { return C3P0Registry.getSharedHelperPoolStatus(); }
+
+    public int getSharedHelperPoolNumThreads()
+    { return C3P0Registry.getSharedHelperPoolNumThreads(); }
     
     public String getC3p0Version()
     { return C3P0Substitutions.VERSION ; }
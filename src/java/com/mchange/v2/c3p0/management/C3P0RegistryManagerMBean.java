@@ -41,6 +41,9 @@ public interface C3P0RegistryManagerMBean
 
     public int getNumPooledDataSources() throws SQLException;
     public int getNumPoolsAllDataSources() throws SQLException;
+
+    public String getSharedHelperPoolStatus();
+    public int getSharedHelperPoolNumThreads();
     
     public String getC3p0Version();
 }
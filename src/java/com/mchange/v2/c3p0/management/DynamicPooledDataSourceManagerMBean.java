@@ -29,6 +29,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
+import java.sql.Connection;
 import java.util.*;
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -94,6 +95,9 @@ public class DynamicPooledDataSourceManagerMBean implements DynamicMBean
         {
             hoTmp.add(PooledDataSource.class.getMethod("close", new Class[] { boolean.class }) );
             hoTmp.add(PooledDataSource.class.getMethod("getConnection", userPassArgs ) );
+            hoTmp.add(PooledDataSource.class.getMethod("getConnections", new Class[] { int.class, long.class } ) );
+            hoTmp.add(PooledDataSource.class.getMethod("getConnections", new Class[] { String.class, String.class, int.class, long.class } ) );
+            hoTmp.add(PooledDataSource.class.getMethod("closeConnections", new Class[] { Connection[].class } ) );
 
             hoTmp.add(PooledDataSource.class.getMethod("getLastAcquisitionFailure", userPassArgs ) );
             hoTmp.add(PooledDataSource.class.getMethod("getLastCheckinFailure", userPassArgs ) );
@@ -270,7 +274,9 @@ public class DynamicPooledDataSourceManagerMBean implements DynamicMBean
     // this method is fragile, makes assumptions that may have to change with
     // the PooledDataSource interface. It presumes that methods that look like
     // JavaBean properties should be skipped as attributes, that methods with
-    // two string arguments are always username and password, that methods with
+    // two string arguments are always username and password, that a double
+    // argument, alone or after those, is a percentile, that a long argument,
+    // alone or after those, is a timeout in milliseconds, that methods with
     // a return value are simple getters, while void methods are modifiers. At the
     // time of this writing, these assumptions all hold for PooledDataSource.
     // But beware the future.
@@ -278,7 +284,13 @@ public class DynamicPooledDataSourceManagerMBean implements DynamicMBean
     {
         MBeanParameterInfo user = new MBeanParameterInfo("user", "java.lang.String", "The database username of a pool-owner.");
         MBeanParameterInfo pwd = new MBeanParameterInfo("password", "java.lang.String", "The database password of a pool-owner.");
+        MBeanParameterInfo percentile = new MBeanParameterInfo("percentile", "double", "A percentile, between 0 and 100, e.g. 99.9.");
+        MBeanParameterInfo timeout = new MBeanParameterInfo("timeout", "long", "Milliseconds to wait, or zero to wait indefinitely.");
         MBeanParameterInfo[] userPass = {user, pwd};
+        MBeanParameterInfo[] pct = {percentile};
+        MBeanParameterInfo[] userPassPct = {user, pwd, percentile};
+        MBeanParameterInfo[] tmo = {timeout};
+        MBeanParameterInfo[] userPassTmo = {user, pwd, timeout};
         MBeanParameterInfo[] empty = {};
 
         Method[] meths = PooledDataSource.class.getMethods();
@@ -309,6 +321,14 @@ public class DynamicPooledDataSourceManagerMBean implements DynamicMBean
                 pi = userPass;
             else if (params.length == 0)
                 pi = empty;
+            else if (params.length == 1 && params[0] == double.class)
+                pi = pct;
+            else if (params.length == 3 && params[0] == String.class && params[1] == String.class && params[2] == double.class)
+                pi = userPassPct;
+            else if (params.length == 1 && params[0] == long.class)
+                pi = tmo;
+            else if (params.length == 3 && params[0] == String.class && params[1] == String.class && params[2] == long.class)
+                pi = userPassTmo;
             else
                 pi = null;
 
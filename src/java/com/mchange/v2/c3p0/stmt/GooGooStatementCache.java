@@ -19,15 +19,18 @@
  * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
  * Boston, MA 02111-1307, USA.
  */
-
-
 package com.mchange.v2.c3p0.stmt;
 
 import java.util.*;
 import java.sql.*;
 import java.lang.reflect.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import com.mchange.v2.async.AsynchronousRunner;
-import com.mchange.v2.holders.SynchronizedIntHolder;
+import com.mchange.v2.resourcepool.TaskStatistics;
 import com.mchange.v2.sql.SqlUtils;
 import com.mchange.v2.util.ResourceClosedException;
 import com.mchange.v2.log.*;
@@ -38,81 +41,126 @@ import java.io.PrintWriter;
 import java.io.IOException;
 import com.mchange.v2.io.IndentedWriter;
 
+/*
+ * Each physical Connection's cached Statements are kept in a ConnectionRec of
+ * their own, guarded by that ConnectionRec's lock, so that checkouts and
+ * check-ins on one Connection never contend with those on any other. Only one
+ * client at a time works with a Connection, so these locks are rarely contested,
+ * except by culls from a full cache, and by closes.
+ *
+ * The cache as a whole keeps only concurrent maps, from Connections to their
+ * ConnectionRecs and from cached Statements to theirs, and atomic counts. A new
+ * Statement is cached only once it has reserved a place in the count of cached
+ * Statements, which never exceeds max_statements. If the cache is full, the least
+ * recently used Statement is culled. Each ConnectionRec keeps its checked-in
+ * Statements in the order they were checked in, stamped from a sequence shared by
+ * the whole cache, so the least recently used Statement in the cache is the
+ * oldest among the ConnectionRecs' oldest.
+ *
+ * No thread ever holds the locks of two ConnectionRecs at once.
+ */
 public abstract class GooGooStatementCache
 {
     private final static MLogger logger = MLog.getLogger( GooGooStatementCache.class );
 
     private final static int DESTROY_NEVER          = 0;
-    private final static int DESTROY_IF_CHECKED_IN  = 1 << 0; 
+    private final static int DESTROY_IF_CHECKED_IN  = 1 << 0;
     private final static int DESTROY_IF_CHECKED_OUT = 1 << 1;
     private final static int DESTROY_ALWAYS         = (DESTROY_IF_CHECKED_IN | DESTROY_IF_CHECKED_OUT);
 
+    // results of ConnectionRec.replaceLeastRecentlyUsed(...)
+    private final static int ASSIMILATED = 0;
+    private final static int ROOM        = 1;
+    private final static int NO_ROOM     = 2;
 
     // Alternative culling algorithm minimizes hazard to drivers that can't have Statements closed beneath
     // active Connections. No longer necessary now that we've implemented deferred culling and not so good
     // since when all Connections are in use, nothing can be culled and new Statements cannot be cached
     private final static boolean CULL_ONLY_FROM_UNUSED_CONNECTIONS = false; //alternative culling
 
-    /* MT: protected by this's lock */
+    /* MT: thread-safe */
 
-    // contains all statements in the cache, 
-    // organized by connection
-    ConnectionStatementManager cxnStmtMgr;
+    // maps physical Connections to the records of their statements
+    final ConcurrentHashMap cxnToRecs = new ConcurrentHashMap();
 
-    // contains all statements in the cache, 
-    // bound to the keys that produced them
-    HashMap stmtToKey      = new HashMap();
+    // maps all statements in the cache to the records of their Connections
+    final ConcurrentHashMap stmtToRec = new ConcurrentHashMap();
 
-    // maps all known keys to their set of statements
-    // and to a queue of statements, if any, available
-    // for checkout
-    HashMap keyToKeyRec    = new HashMap();
+    final AtomicInteger numStatements           = new AtomicInteger( 0 );
+    final AtomicInteger numStatementsCheckedOut = new AtomicInteger( 0 );
+    final AtomicLong    checkinStamps           = new AtomicLong( 0 );
 
-    // contains all checked out statements -- in the cache, 
-    // but not currently available for checkout, nor for
-    // culling in case of overflow
-    HashSet checkedOut = new HashSet();
+    volatile boolean closed = false;
 
+    /* MT: end thread-safe */
 
-    /* MT: end protected by this' lock */
+    /* MT: thread-safe post-constructor constants */
 
-    /* MT: protected by its own lock */
+    final int max_statements;                // zero or less for no limit
+    final int max_statements_per_connection; // zero or less for no limit
 
-    AsynchronousRunner blockingTaskAsyncRunner;
+    final AsynchronousRunner blockingTaskAsyncRunner;
 
-    // This set is used to ensure that multiple threads
-    // do not try to remove the same statement from the
-    // cache, if for example a Statement is both deathmarched
-    // away and its parent Connection is closed.
-    //
-    // ALL ACCESS SHOULD BE EXPLICITLY SYNCHRONIZED
-    // ON removalPending's lock!
-    HashSet removalPending = new HashSet();
+    final StatementDestructionManager destructo;
 
-    StatementDestructionManager destructo;
-    
-    /* MT: end protected by its own lock */
-
-    public GooGooStatementCache(AsynchronousRunner blockingTaskAsyncRunner, AsynchronousRunner deferredStatementDestroyer)
-    { 
-        this.blockingTaskAsyncRunner = blockingTaskAsyncRunner; 
-        this.cxnStmtMgr = createConnectionStatementManager();
-	this.destructo = 
-	    deferredStatementDestroyer != null                                       ? 
-	    (StatementDestructionManager) new CautiousStatementDestructionManager( deferredStatementDestroyer )  : 
+    // if set, new Statements are prepared on the Thread that checks them out, rather
+    // than by a blockingTaskAsyncRunner Thread while the client wait()s for it. (a
+    // virtual thread that wait()s on a monitor pins its carrier.)
+    final boolean virtualThreadFriendly;
+
+    // queue waits and run times of the tasks that prepare and destroy Statements
+    final TaskStatistics prepareTaskStatistics = new TaskStatistics( "statement prepare" );
+    final TaskStatistics destroyTaskStatistics = new TaskStatistics( "statement destroy" );
+
+    /* MT: end thread-safe post-constructor constants */
+
+    /**
+     * @param max_statements the most statements to cache in all, or zero for no limit
+     * @param max_statements_per_connection the most statements to cache for any one Connection, or zero for no limit
+     */
+    public GooGooStatementCache(AsynchronousRunner blockingTaskAsyncRunner,
+				AsynchronousRunner deferredStatementDestroyer,
+				int max_statements,
+				int max_statements_per_connection,
+				boolean virtualThreadFriendly)
+    {
+        this.blockingTaskAsyncRunner = blockingTaskAsyncRunner;
+        this.max_statements = max_statements;
+        this.max_statements_per_connection = max_statements_per_connection;
+        this.virtualThreadFriendly = virtualThreadFriendly;
+	this.destructo =
+	    deferredStatementDestroyer != null                                       ?
+	    (StatementDestructionManager) new CautiousStatementDestructionManager( deferredStatementDestroyer )  :
 	    (StatementDestructionManager) new IncautiousStatementDestructionManager( blockingTaskAsyncRunner );
     }
 
-    public synchronized int getNumStatements()
-    { return this.isClosed() ? -1 : countCachedStatements(); }
+    public int getNumStatements()
+    { return this.isClosed() ? -1 : numStatements.get(); }
+
+    public int getNumStatementsCheckedOut()
+    { return this.isClosed() ? -1 : numStatementsCheckedOut.get(); }
+
+    public int getNumConnectionsWithCachedStatements()
+    {
+        if (isClosed())
+            return -1;
+
+        int out = 0;
+        for (Iterator ii = cxnToRecs.values().iterator(); ii.hasNext(); )
+        {
+            if (((ConnectionRec) ii.next()).size() > 0)
+                ++out;
+        }
+        return out;
+    }
 
-    public synchronized int getNumStatementsCheckedOut()
-    { return this.isClosed() ? -1 : checkedOut.size(); }
+    public TaskStatistics getPrepareTaskStatistics()
+    { return prepareTaskStatistics; }
 
-    public synchronized int getNumConnectionsWithCachedStatements()
-    { return isClosed() ? -1 : cxnStmtMgr.getNumConnectionsWithCachedStatements(); }
+    public TaskStatistics getDestroyTaskStatistics()
+    { return destroyTaskStatistics; }
 
-    public synchronized String dumpStatementCacheStatus()
+    public String dumpStatementCacheStatus()
     {
         if (isClosed())
             return this + "status: Closed.";
@@ -128,21 +176,25 @@ public abstract class GooGooStatementCache
                 iw.println("core stats:");
                 iw.upIndent();
                 iw.print("num cached statements: ");
-                iw.println( this.countCachedStatements() );
+                iw.println( numStatements.get() );
                 iw.print("num cached statements in use: ");
-                iw.println( checkedOut.size() );
+                iw.println( numStatementsCheckedOut.get() );
                 iw.print("num connections with cached statements: ");
-                iw.println(cxnStmtMgr.getNumConnectionsWithCachedStatements());
+                iw.println( getNumConnectionsWithCachedStatements() );
                 iw.downIndent();
                 iw.println("cached statement dump:");
                 iw.upIndent();
-                for (Iterator ii = cxnStmtMgr.connectionSet().iterator(); ii.hasNext();)
+                for (Iterator ii = cxnToRecs.values().iterator(); ii.hasNext();)
                 {
-                    Connection pcon = (Connection) ii.next();
-                    iw.print(pcon);
+                    ConnectionRec rec = (ConnectionRec) ii.next();
+                    List stmts = rec.statementList();
+                    if (stmts.isEmpty())
+                        continue;
+
+                    iw.print(rec.pcon);
                     iw.println(':');
                     iw.upIndent();
-                    for (Iterator jj = cxnStmtMgr.statementSet(pcon).iterator(); jj.hasNext();)
+                    for (Iterator jj = stmts.iterator(); jj.hasNext();)
                         iw.println(jj.next());
                     iw.downIndent();
                 }
@@ -167,213 +219,129 @@ public abstract class GooGooStatementCache
 
     public int getStatementDestroyerNumConnectionsInUse()                           { return destructo.getNumConnectionsInUse(); }
     public int getStatementDestroyerNumConnectionsWithDeferredDestroyStatements()   { return destructo.getNumConnectionsWithDeferredDestroyStatements(); }
-    public int getStatementDestroyerNumDeferredDestroyStatements()                  { return destructo.getNumDeferredDestroyStatements(); }  
+    public int getStatementDestroyerNumDeferredDestroyStatements()                  { return destructo.getNumDeferredDestroyStatements(); }
 
 
-    abstract ConnectionStatementManager createConnectionStatementManager();
-    
-    public synchronized Object checkoutStatement( Connection physicalConnection,
-                    Method stmtProducingMethod, 
-                    Object[] args )  
+    public boolean isVirtualThreadFriendly()
+    { return virtualThreadFriendly; }
+
+    public Object checkoutStatement( Connection physicalConnection,
+                    Method stmtProducingMethod,
+                    Object[] args )
     throws SQLException, ResourceClosedException
     {
-        try
-        {
-            Object out = null;
-
-            StatementCacheKey key = StatementCacheKey.find( physicalConnection, 
-                            stmtProducingMethod, 
-                            args );
-            LinkedList l = checkoutQueue( key );
-            if (l == null || l.isEmpty()) //we need a new statement
-            {
-                // we might wait() here... 
-                // don't presume atomicity before and after!
-                out = acquireStatement( physicalConnection, stmtProducingMethod, args );
+        if (isClosed())
+            throw new ResourceClosedException("A client attempted to check out a Statement from a closed Statement cache.");
 
-                if ( prepareAssimilateNewStatement( physicalConnection ) )
-                    assimilateNewCheckedOutStatement( key, physicalConnection, out );
-                // else case: we can't assimilate the statement...
-                // so, we just return our newly created statement, without caching it.
-                // on check-in, it will simply be destroyed... this is an "overload statement"
-            }
-            else //okay, we can use an old one
-            {
-                if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
-                    logger.finest(this.getClass().getName() + " ----> CACHE HIT");
-                //System.err.println("-------------> CACHE HIT!");
-
-                out = l.get(0);
-                l.remove(0);
-                if (! checkedOut.add( out ))
-                    throw new RuntimeException("Internal inconsistency: " +
-                                    "Checking out a statement marked " + 
-                    "as already checked out!");
-                removeStatementFromDeathmarches( out, physicalConnection );
-            }
+        StatementCacheKey key = StatementCacheKey.create( physicalConnection,
+                        stmtProducingMethod,
+                        args );
 
-            if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
-            {
-                //System.err.print("checkoutStatement(): ");
-                //printStats();
-                if (logger.isLoggable(MLevel.FINEST))
-                    logger.finest("checkoutStatement: " + statsString());
-            }
-
-            return out;
-        }
-        catch (NullPointerException npe)
+        ConnectionRec rec = (ConnectionRec) cxnToRecs.get( physicalConnection );
+        Object out = ( rec == null ? null : rec.checkoutCached( key ) );
+        if (out == null) //we need a new statement
         {
-            if (checkedOut == null) //we're closed
-            {
-                if (logger.isLoggable(MLevel.FINE))
-                    logger.log( MLevel.FINE, 
-                                "A client attempted to work with a closed Statement cache, " + "" +
-                                "provoking a NullPointerException. c3p0 recovers, but this should be rare.", 
-                                npe);
-                throw new ResourceClosedException( npe );
-            }
+            if (virtualThreadFriendly)
+                out = prepareStatement( physicalConnection, stmtProducingMethod, args );
             else
-                throw npe;
+                out = acquireStatement( physicalConnection, stmtProducingMethod, args );
+
+            assimilateOrOverloadStatement( key, physicalConnection, out );
         }
+        else if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
+            logger.finest(this.getClass().getName() + " ----> CACHE HIT");
+
+        if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX && logger.isLoggable(MLevel.FINEST))
+            logger.finest("checkoutStatement: " + statsString());
+
+        return out;
     }
 
-    public synchronized void checkinStatement( Object pstmt )
+    public void checkinStatement( Object pstmt )
 	throws SQLException
     {
-        if (checkedOut == null) //we're closed
+        if (isClosed())
         {
             destructo.synchronousDestroyStatement( pstmt );
-
             return;
         }
-        else if (! checkedOut.remove( pstmt ) )
-        {
-            if (! ourResource( pstmt ) ) //this is not our resource, or it is an overload statement
-                destructo.uncheckedDestroyStatement( pstmt ); // so we just destroy
-            //in the else case, it's already checked-in, so we ignore
 
+        ConnectionRec rec = (ConnectionRec) stmtToRec.get( pstmt );
+        if (rec == null) //this is not our resource, or it is an overload statement
+        {
+            destructo.uncheckedDestroyStatement( pstmt ); // so we just destroy
             return;
         }
+        else if (! rec.isCheckedOut( pstmt )) //it's already checked-in, so we ignore
+            return;
 
+        // no one else touches a checked-out statement, so we needn't hold rec's lock
         try
         { refreshStatement( (PreparedStatement) pstmt ); }
         catch (Exception e)
         {
             if (Debug.DEBUG)
             {
-//              System.err.println("Problem with checked-in Statement, discarding.");
-//              e.printStackTrace();
                 if (logger.isLoggable(MLevel.INFO))
                     logger.log(MLevel.INFO, "Problem with checked-in Statement, discarding.", e);
             }
 
-            // swaldman -- 2004-01-31: readd problem statement to checkedOut for consistency
-            // the statement is not yet checked-in, but it is removed from checked out, and this
-            // violates the consistency assumption of removeStatement(). Thanks to Zach Scott for
-            // calling attention to this issue.
-            checkedOut.add( pstmt );
-
-            removeStatement( pstmt, DESTROY_ALWAYS ); //force destruction of the statement even though it appears checked-out
+            rec.removeStatement( pstmt, DESTROY_ALWAYS ); //force destruction of the statement even though it appears checked-out
             return;
         }
 
-        StatementCacheKey key = (StatementCacheKey) stmtToKey.get( pstmt );
-        if (Debug.DEBUG && key == null)
-            throw new RuntimeException("Internal inconsistency: " +
-            "A checked-out statement has no key associated with it!");
-
-        LinkedList l = checkoutQueue( key );
-        l.add( pstmt );
-        addStatementToDeathmarches( pstmt, key.physicalConnection );
+        rec.checkin( pstmt );
 
         if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
         {
-//          System.err.print("checkinStatement(): ");
-//          printStats();
             if (logger.isLoggable(MLevel.FINEST))
                 logger.finest("checkinStatement(): " + statsString());
         }
     }
 
 
-    public synchronized void checkinAll(Connection pcon)
+    public void checkinAll(Connection pcon)
     throws SQLException
     {
         //new Exception("checkinAll()").printStackTrace();
 
-        Set stmtSet = cxnStmtMgr.statementSet( pcon );
-        if (stmtSet != null)
+        ConnectionRec rec = (ConnectionRec) cxnToRecs.get( pcon );
+        if (rec != null)
         {
-            for (Iterator ii = stmtSet.iterator(); ii.hasNext(); )
-            {
-                Object stmt = ii.next();
-                if (checkedOut.contains( stmt ))
-                    checkinStatement( stmt );
-            }
+            for (Iterator ii = rec.checkedOutList().iterator(); ii.hasNext(); )
+                checkinStatement( ii.next() );
         }
 
         if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
         {
-//          System.err.print("checkinAll(): ");
-//          printStats();
             if (logger.isLoggable(MLevel.FINEST))
                 logger.log(MLevel.FINEST, "checkinAll(): " + statsString());
         }
     }
 
     /*
-     * we only selectively sync' parts of this method, because we wish to wait for
-     * Statements we wish to destroy the Statements synchronously, but without
-     * holding the pool's lock.
+     * we remove the Connection's statements from the cache with its record's
+     * lock, but destroy them synchronously without it.
      */
     public void closeAll(Connection pcon) throws SQLException
     {
 //      System.err.println( this + ": closeAll( " + pcon + " )" );
 //      new Exception("closeAll()").printStackTrace();
 
-//      assert !Thread.holdsLock( this );
-
         if (! this.isClosed())
         {
             if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
             {
                 if (logger.isLoggable(MLevel.FINEST))
-                {
-                    logger.log(MLevel.FINEST, "ENTER METHOD: closeAll( " + pcon + " )! -- num_connections: " + 
-                                    cxnStmtMgr.getNumConnectionsWithCachedStatements());
-                    //logger.log(MLevel.FINEST, "Set of statements for connection: " + cSet + (cSet != null ? "; size: " + cSet.size() : ""));
-                }
-            }
-
-            Set stmtSet = null;
-            synchronized (this)
-            {
-                Set cSet = cxnStmtMgr.statementSet( pcon ); 
-
-                if (cSet != null)
-                {
-                    //the removeStatement(...) removes from cSet, so we can't be iterating over cSet directly
-                    stmtSet = new HashSet( cSet );
-                    //System.err.println("SIZE FOR CONNECTION SET: " + stmtSet.size());
-
-                    for (Iterator ii = stmtSet.iterator(); ii.hasNext(); )
-                    {
-                        Object stmt = ii.next();
-                        // we remove without destroying, leaving the destruction
-                        // until when we lose the pool's lock
-                        removeStatement( stmt, DESTROY_NEVER ); 
-                    }
-                }
+                    logger.log(MLevel.FINEST, "ENTER METHOD: closeAll( " + pcon + " )! -- num_connections: " +
+                                    getNumConnectionsWithCachedStatements());
             }
 
-            if ( stmtSet != null )
+            ConnectionRec rec = (ConnectionRec) cxnToRecs.remove( pcon );
+            if ( rec != null )
             {
-                for (Iterator ii = stmtSet.iterator(); ii.hasNext(); )
-                {
-                    Object stmt = ii.next();
-                    destructo.synchronousDestroyStatement( stmt );
-                }
+                for (Iterator ii = rec.retire().iterator(); ii.hasNext(); )
+                    destructo.synchronousDestroyStatement( ii.next() );
             }
 
             if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
@@ -382,141 +350,141 @@ public abstract class GooGooStatementCache
                     logger.finest("closeAll(): " + statsString());
             }
         }
-//      else
-//      {
-//      if (logger.isLoggable(MLevel.FINER))
-//      logger.log(MLevel.FINER, 
-//      this + ":  call to closeAll() when statment cache is already closed! [not harmful! debug only!]", 
-//      new Exception("DUPLICATE CLOSE DEBUG STACK TRACE."));
-//      }
     }
 
-    public synchronized void close() 
+    public void close()
 	throws SQLException
     {
         //System.err.println( this + ": close()" );
 
-        if (! isClosed())
+        synchronized ( this )
         {
-            for (Iterator ii = stmtToKey.keySet().iterator(); ii.hasNext(); )
-                destructo.synchronousDestroyStatement( ii.next() );
-	    destructo.close();
-
-            cxnStmtMgr       = null;
-            stmtToKey        = null;
-            keyToKeyRec      = null;
-            checkedOut       = null;
+            if (closed)
+            {
+                if (logger.isLoggable(MLevel.FINE))
+                    logger.log(MLevel.FINE, this + ": duplicate call to close() [not harmful! -- debug only!]", new Exception("DUPLICATE CLOSE DEBUG STACK TRACE."));
+                return;
+            }
+            closed = true;
         }
-        else
+
+        // any statement cached after we've set closed is cached on a
+        // ConnectionRec already in cxnToRecs, which we'll retire here
+        for (Iterator ii = cxnToRecs.values().iterator(); ii.hasNext(); )
         {
-            if (logger.isLoggable(MLevel.FINE))
-                logger.log(MLevel.FINE, this + ": duplicate call to close() [not harmful! -- debug only!]", new Exception("DUPLICATE CLOSE DEBUG STACK TRACE."));
+            ConnectionRec rec = (ConnectionRec) ii.next();
+            for (Iterator jj = rec.retire().iterator(); jj.hasNext(); )
+                destructo.synchronousDestroyStatement( jj.next() );
         }
-
+        cxnToRecs.clear();
+        destructo.close();
     }
 
 
-    public synchronized boolean isClosed()
-    { return cxnStmtMgr == null; }
-
-
+    public boolean isClosed()
+    { return closed; }
 
+    /*
+     * Caches a newly prepared statement, checked out, if there is room for it, or
+     * if room can be made by culling. Otherwise, it goes out as an "overload statement",
+     * to be destroyed on check-in.
+     */
+    private void assimilateOrOverloadStatement( StatementCacheKey key, Connection physicalConnection, Object ps )
+        throws ResourceClosedException
+    {
+        if (isClosed())
+        {
+            // the client will fall back to an uncached statement
+            destructo.synchronousDestroyStatement( ps );
+            throw new ResourceClosedException("A Statement cache was closed while a client prepared a new Statement.");
+        }
 
-    /* non-public methods that MUST be called with this' lock */
-
-    abstract boolean prepareAssimilateNewStatement(Connection pcon);
-
-    abstract void addStatementToDeathmarches( Object pstmt, Connection physicalConnection );
-    abstract void removeStatementFromDeathmarches( Object pstmt, Connection physicalConnection );
+        ConnectionRec rec = connectionRec( physicalConnection );
 
-    final int countCachedStatements()
-    { return stmtToKey.size(); }
+        // a Connection at its own limit replaces its least recently used statement,
+        // which frees no room in the cache as a whole, but needs none either.
+        if ( rec.replaceLeastRecentlyUsed( key, ps ) == ROOM && reserveRoom() )
+        {
+            if (! rec.add( key, ps )) // the Connection filled, or was retired, beneath us
+                numStatements.decrementAndGet();
+        }
+    }
 
-    private void assimilateNewCheckedOutStatement( StatementCacheKey key, 
-                    Connection pConn, 
-                    Object ps )
+    /*
+     * Counts a statement about to be cached, culling to make room if necessary.
+     *
+     * @return false if the cache is full, and nothing can be culled
+     */
+    private boolean reserveRoom()
     {
-        stmtToKey.put( ps, key );
-        HashSet ks = keySet( key );
-        if (ks == null)
-            keyToKeyRec.put( key, new KeyRec() );
-        else 
+        if (max_statements <= 0)
         {
-            //System.err.println("-------> Multiply prepared statement! " + key.stmtText );
-            if (logger.isLoggable(MLevel.INFO))
-                logger.info("Multiply prepared statement! " + key.stmtText );
-            if (Debug.DEBUG && logger.isLoggable(MLevel.FINE))
-                logger.fine("(The same statement has already been prepared by this Connection, " +
-                                "and that other instance has not yet been closed, so the statement pool " +
-                                "has to prepare a second PreparedStatement object rather than reusing " +
-                                "the previously-cached Statement. The new Statement will be cached, in case " +
-                "you frequently need multiple copies of this Statement.)");
+            numStatements.incrementAndGet();
+            return true;
         }
-        keySet( key ).add( ps );
-        cxnStmtMgr.addStatementForConnection( ps, pConn );
 
-        if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
+        while (true)
         {
-//          System.err.println("cxnStmtMgr.statementSet( " + pConn + " ).size(): " + 
-//          cxnStmtMgr.statementSet( pConn ).size());
-            if (logger.isLoggable(MLevel.FINEST))
-                logger.finest("cxnStmtMgr.statementSet( " + pConn + " ).size(): " + 
-                                cxnStmtMgr.statementSet( pConn ).size());
+            int n = numStatements.get();
+            if (n < max_statements)
+            {
+                if (numStatements.compareAndSet( n, n + 1 ))
+                    return true;
+            }
+            else if (! cullLeastRecentlyUsed())
+                return false;
         }
-
-        checkedOut.add( ps );
     }
 
-    private void removeStatement( Object ps , int destruction_policy )
+    /*
+     * @return false if there was no checked-in statement to cull
+     */
+    private boolean cullLeastRecentlyUsed()
     {
-        synchronized (removalPending)
+        while (true)
         {
-            if ( removalPending.contains( ps ) )
-                return;
-            else
-                removalPending.add(ps);
-        }
+            ConnectionRec oldest = null;
+            long oldest_stamp = Long.MAX_VALUE;
+            for (Iterator ii = cxnToRecs.values().iterator(); ii.hasNext(); )
+            {
+                ConnectionRec rec = (ConnectionRec) ii.next();
+                long stamp = rec.oldest_checkin;
+                if (stamp < oldest_stamp)
+                {
+                    // we don't cull Statements underneath of Connections in current use
+                    if (CULL_ONLY_FROM_UNUSED_CONNECTIONS && destructo.knownInUse( rec.pcon ))
+                        continue;
 
-        StatementCacheKey sck = (StatementCacheKey) stmtToKey.remove( ps );
-        removeFromKeySet( sck, ps );
-        Connection pConn = sck.physicalConnection;
+                    oldest = rec;
+                    oldest_stamp = stamp;
+                }
+            }
 
-        boolean checked_in = !checkedOut.contains( ps );
+            if (oldest == null)
+                return false;
+            else if (oldest.cullLeastRecentlyUsed())
+                return true;
 
-        if ( checked_in )
-        {
-            removeStatementFromDeathmarches( ps, pConn );
-            removeFromCheckoutQueue( sck , ps );
-            if ((destruction_policy & DESTROY_IF_CHECKED_IN) != 0)
-                destructo.deferredDestroyStatement( pConn, ps );
-        }
-        else
-        {
-            checkedOut.remove( ps );
-            if ((destruction_policy & DESTROY_IF_CHECKED_OUT) != 0)
-                destructo.deferredDestroyStatement( pConn, ps );
+            // else its statements were checked out or culled beneath
+            // us, and its oldest_checkin has moved. we look again.
         }
+    }
 
-
-        boolean check =	cxnStmtMgr.removeStatementForConnection( ps, pConn );
-        if (Debug.DEBUG && check == false)
+    private ConnectionRec connectionRec( Connection pcon )
+    {
+        ConnectionRec out = (ConnectionRec) cxnToRecs.get( pcon );
+        if (out == null)
         {
-            //new Exception("WARNING: removed a statement that apparently wasn't in a statement set!!!").printStackTrace();
-            if (logger.isLoggable(MLevel.WARNING))
-                logger.log(MLevel.WARNING, 
-                                this + " removed a statement that apparently wasn't in a statement set!!!",
-                                new Exception("LOG STACK TRACE"));
+            ConnectionRec fresh = new ConnectionRec( pcon );
+            out = (ConnectionRec) cxnToRecs.putIfAbsent( pcon, fresh );
+            if (out == null)
+                out = fresh;
         }
-
-        synchronized (removalPending)
-        { removalPending.remove(ps); }
+        return out;
     }
-    
 
-
-    
-    private Object acquireStatement(final Connection pConn, 
-                    final Method stmtProducingMethod, 
+    private Object acquireStatement(final Connection pConn,
+                    final Method stmtProducingMethod,
                     final Object[] args )
     throws SQLException
     {
@@ -525,40 +493,46 @@ public abstract class GooGooStatementCache
             final Object[] outHolder = new Object[1];
             final SQLException[] exceptionHolder = new SQLException[1];
 
+            // we wait on the task, not the cache, so that its
+            // completion wakes only the client waiting for it
             class StmtAcquireTask implements Runnable
             {
                 public void run()
                 {
+                    Object out = null;
+                    SQLException exc = null;
                     try
-                    {
-                        outHolder[0] = 
-                            stmtProducingMethod.invoke( pConn, 
-                                            args ); 
-                    }
+                    { out = stmtProducingMethod.invoke( pConn, args ); }
                     catch ( InvocationTargetException e )
-                    { 
+                    {
                         Throwable targetException = e.getTargetException();
                         if ( targetException instanceof SQLException )
-                            exceptionHolder[0] = (SQLException) targetException;
+                            exc = (SQLException) targetException;
                         else
-                            exceptionHolder[0] 
-                                            = SqlUtils.toSQLException(targetException);
+                            exc = SqlUtils.toSQLException(targetException);
                     }
                     catch ( Exception e )
-                    { exceptionHolder[0] = SqlUtils.toSQLException(e); }
+                    { exc = SqlUtils.toSQLException(e); }
                     finally
-                    { 
-                        synchronized ( GooGooStatementCache.this )
-                        { GooGooStatementCache.this.notifyAll(); }
+                    {
+                        synchronized ( this )
+                        {
+                            outHolder[0] = out;
+                            exceptionHolder[0] = ( out == null && exc == null ? new SQLException("Statement preparation failed unexpectedly.") : exc );
+                            this.notifyAll();
+                        }
                     }
                 }
             }
 
             Runnable r = new StmtAcquireTask();
-            blockingTaskAsyncRunner.postRunnable(r);
+            prepareTaskStatistics.post( blockingTaskAsyncRunner, r );
 
-            while ( outHolder[0] == null && exceptionHolder[0] == null )
-                this.wait(); //give up our lock while the Statement gets prepared
+            synchronized ( r )
+            {
+                while ( outHolder[0] == null && exceptionHolder[0] == null )
+                    r.wait();
+            }
             if (exceptionHolder[0] != null)
                 throw exceptionHolder[0];
             else
@@ -571,88 +545,52 @@ public abstract class GooGooStatementCache
         { throw SqlUtils.toSQLException( e ); }
     }
 
-    private KeyRec keyRec( StatementCacheKey key )
-    { return ((KeyRec) keyToKeyRec.get( key )); }
-
-    private HashSet keySet( StatementCacheKey key )
-    { 
-        KeyRec rec = keyRec( key );
-        return (rec == null ? null : rec.allStmts); 
-    }
-
-    private boolean removeFromKeySet( StatementCacheKey key, Object pstmt )
-    {
-        boolean out;
-        HashSet stmtSet = keySet( key );
-        out = stmtSet.remove( pstmt );
-        if (stmtSet.isEmpty() && checkoutQueue( key ).isEmpty())
-            keyToKeyRec.remove( key );
-        return out;
-    }
-
-    private LinkedList checkoutQueue( StatementCacheKey key )
-    { 
-        KeyRec rec = keyRec( key );
-        return ( rec == null ? null : rec.checkoutQueue );
-    }
-
-    private boolean removeFromCheckoutQueue( StatementCacheKey key, Object pstmt )
+    /*
+     * Prepares a statement on the calling Thread.
+     */
+    private Object prepareStatement( Connection pConn, Method stmtProducingMethod, Object[] args )
+        throws SQLException
     {
-        boolean out;
-        LinkedList q = checkoutQueue( key );
-        out = q.remove( pstmt );
-        if (q.isEmpty() && keySet( key ).isEmpty())
-            keyToKeyRec.remove( key );
-        return out;
+        try
+        { return stmtProducingMethod.invoke( pConn, args ); }
+        catch ( InvocationTargetException e )
+        {
+            Throwable targetException = e.getTargetException();
+            if ( targetException instanceof SQLException )
+                throw (SQLException) targetException;
+            else
+                throw SqlUtils.toSQLException(targetException);
+        }
+        catch ( Exception e )
+        { throw SqlUtils.toSQLException(e); }
     }
 
-    private boolean ourResource( Object ps )
-    { return stmtToKey.keySet().contains( ps ); }
-
     private void refreshStatement( PreparedStatement ps ) throws Exception
-    { 
-	ps.clearParameters(); 
+    {
+	ps.clearParameters();
 	ps.clearBatch();
     }
 
     private void printStats()
-    {
-        //new Exception("printStats()").printStackTrace();
-        int total_size = this.countCachedStatements();
-        int checked_out_size = checkedOut.size();
-        int num_connections  = cxnStmtMgr.getNumConnectionsWithCachedStatements(); 
-        int num_keys = keyToKeyRec.size(); 
-        System.err.print(this.getClass().getName() + " stats -- ");
-        System.err.print("total size: " + total_size);
-        System.err.print("; checked out: " + checked_out_size);
-        System.err.print("; num connections: " + num_connections);
-        System.err.println("; num keys: " + num_keys);
-    }
+    { System.err.println( statsString() ); }
 
     private String statsString()
     {
-        int total_size = this.countCachedStatements();
-        int checked_out_size = checkedOut.size();
-        int num_connections  = cxnStmtMgr.getNumConnectionsWithCachedStatements(); 
-        int num_keys = keyToKeyRec.size(); 
-
         StringBuffer sb = new StringBuffer(255);
         sb.append(this.getClass().getName());
         sb.append(" stats -- ");
         sb.append("total size: ");
-        sb.append(total_size);
+        sb.append(numStatements.get());
         sb.append("; checked out: ");
-        sb.append(checked_out_size);
+        sb.append(numStatementsCheckedOut.get());
         sb.append("; num connections: ");
-        sb.append(num_connections);
-	int in_use = destructo.countConnectionsInUse(); 
+        sb.append(getNumConnectionsWithCachedStatements());
+	int in_use = destructo.countConnectionsInUse();
 	if (in_use >= 0)
 	    {
 		sb.append("; num connections in use: ");
 		sb.append(in_use);
 	    }
-        sb.append("; num keys: ");
-        sb.append(num_keys);
         return sb.toString();
     }
 
@@ -663,219 +601,247 @@ public abstract class GooGooStatementCache
         LinkedList checkoutQueue  = new LinkedList();
     }
 
-    protected class Deathmarch
+    /*
+     * The statements cached for one physical Connection.
+     */
+    final class ConnectionRec
     {
-        TreeMap longsToStmts = new TreeMap(); 
-        HashMap stmtsToLongs = new HashMap();
+        final Connection pcon;
 
-        long last_long = -1;
+        /* MT: protected by this' lock */
 
-        public void deathmarchStatement( Object ps )
-        {
-            assert Thread.holdsLock(GooGooStatementCache.this);
-            
-            //System.err.println("deathmarchStatement( " + ps + " )");
-            if (Debug.DEBUG)
-            {
-                Long old = (Long) stmtsToLongs.get( ps );
-                if (old != null)
-                    throw new RuntimeException("Internal inconsistency: " +
-                                    "A statement is being double-deathmatched. no checked-out statements should be in a deathmarch already; " +
-                    "no already checked-in statement should be deathmarched!");
-            }
+        // contains all of this Connection's statements in the cache,
+        // bound to the keys that produced them
+        final HashMap stmtToKey = new HashMap();
 
-            Long youth = getNextLong();
-            stmtsToLongs.put( ps, youth );
-            longsToStmts.put( youth, ps );
-        }
+        // maps all known keys to their set of statements
+        // and to a queue of statements, if any, available
+        // for checkout
+        final HashMap keyToKeyRec = new HashMap();
+
+        // contains all checked out statements -- in the cache,
+        // but not currently available for checkout, nor for
+        // culling in case of overflow
+        final HashSet checkedOut = new HashSet();
+
+        // maps statements available for checkout to their check-in
+        // stamps, least recently checked-in (next to cull) first
+        final LinkedHashMap checkedIn = new LinkedHashMap();
+
+        boolean retired = false;
+
+        /* MT: end protected by this' lock */
 
-        public void undeathmarchStatement( Object ps )
+        // the check-in stamp of our least recently checked-in statement, or Long.MAX_VALUE
+        // if none is checked in. written with this' lock, read without it by cullers.
+        volatile long oldest_checkin = Long.MAX_VALUE;
+
+        ConnectionRec( Connection pcon )
+        { this.pcon = pcon; }
+
+        synchronized int size()
+        { return stmtToKey.size(); }
+
+        synchronized List statementList()
+        { return new ArrayList( stmtToKey.keySet() ); }
+
+        synchronized List checkedOutList()
+        { return new ArrayList( checkedOut ); }
+
+        synchronized boolean isCheckedOut( Object ps )
+        { return checkedOut.contains( ps ); }
+
+        /*
+         * @return a cached statement for key, now checked out, or null if none is available
+         */
+        synchronized Object checkoutCached( StatementCacheKey key )
         {
-            assert Thread.holdsLock(GooGooStatementCache.this);
+            KeyRec krec = (KeyRec) keyToKeyRec.get( key );
+            if (retired || krec == null || krec.checkoutQueue.isEmpty())
+                return null;
 
-            Long old = (Long) stmtsToLongs.remove( ps );
-            if (Debug.DEBUG && old == null)
-                throw new RuntimeException("Internal inconsistency: " +
-                "A (not new) checking-out statement is not in deathmarch.");
-            Object check = longsToStmts.remove( old );
-            if (Debug.DEBUG && old == null)
+            Object out = krec.checkoutQueue.removeFirst();
+            if (! checkedOut.add( out ))
                 throw new RuntimeException("Internal inconsistency: " +
-                "A (not new) checking-out statement is not in deathmarch.");
+                                "Checking out a statement marked " +
+                "as already checked out!");
+            unmarkCheckedIn( out );
+            numStatementsCheckedOut.incrementAndGet();
+            return out;
         }
-        
-        public boolean cullNext()
+
+        synchronized void checkin( Object ps )
         {
-            assert Thread.holdsLock(GooGooStatementCache.this);
+            if (! checkedOut.remove( ps )) // removed or checked-in beneath us
+                return;
 
-            Object cullMeStmt = null;
-            StatementCacheKey sck = null;
-            
-            if (CULL_ONLY_FROM_UNUSED_CONNECTIONS) //alternative implementation -- cull only from unused Connections
-            {
-                for (Iterator ii = longsToStmts.keySet().iterator(); cullMeStmt == null && ii.hasNext(); )
-                {
-                    Long l = (Long) ii.next();
-                    Object maybeCullMe = longsToStmts.get( l );
-                    StatementCacheKey maybeSck = (StatementCacheKey) stmtToKey.get( maybeCullMe );
-                    Connection pCon = maybeSck.physicalConnection;
-                    if (! destructo.knownInUse( pCon ) ) //we don't cull Statements underneath of Connections in current use
-                    {
-                        // we've found the first statement in the deathmarch
-                        // that we can cull...
-                        cullMeStmt = maybeCullMe;
-                        sck = maybeSck;
-                    }
-                }
-            }
-	    else //strict LRU culling
-	    {
-                if ( !longsToStmts.isEmpty() )
-                 {
-                    Long l = (Long) longsToStmts.firstKey();
-                    cullMeStmt = longsToStmts.get( l );
-                 }
-	    }
+            StatementCacheKey key = (StatementCacheKey) stmtToKey.get( ps );
+            if (Debug.DEBUG && key == null)
+                throw new RuntimeException("Internal inconsistency: " +
+                "A checked-out statement has no key associated with it!");
 
-            if ( cullMeStmt == null ) // we didn't find a Statement we could cull
-                return false;
+            ((KeyRec) keyToKeyRec.get( key )).checkoutQueue.add( ps );
+            markCheckedIn( ps );
+            numStatementsCheckedOut.decrementAndGet();
+        }
+
+        /*
+         * If this Connection is at max_statements_per_connection, culls its least recently
+         * used statement and caches ps in its place, taking over its room in the cache.
+         *
+         * @return ASSIMILATED if ps was cached, ROOM if this Connection is under its limit,
+         *         so that ps may be added if there is room in the cache as a whole, or NO_ROOM
+         */
+        synchronized int replaceLeastRecentlyUsed( StatementCacheKey key, Object ps )
+        {
+            if (retired || isClosed())
+                return NO_ROOM;
+            else if (max_statements_per_connection <= 0 || stmtToKey.size() < max_statements_per_connection)
+                return ROOM;
+            else if (checkedIn.isEmpty())
+                return NO_ROOM;
             else
             {
-                if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
-                {
-                    if (sck == null)
-                        sck = ((StatementCacheKey) stmtToKey.get(cullMeStmt));
-                    if (logger.isLoggable(MLevel.FINEST))
-                        logger.finest("CULLING: " + sck.stmtText);
-                }
-
-                // we do not undeathmarch the statement ourselves, because removeStatement( ... )
-                // should remove from all deathmarches...
-                removeStatement( cullMeStmt, DESTROY_ALWAYS );
-                if (Debug.DEBUG && this.contains( cullMeStmt ))
-                    throw new RuntimeException("Inconsistency!!! Statement culled from deathmarch failed to be removed by removeStatement( ... )!");
-
-                return true;
+                removeStatement( leastRecentlyUsed(), DESTROY_ALWAYS, false );
+                assimilate( key, ps );
+                return ASSIMILATED;
             }
         }
-        
 
         /*
-        public boolean cullNext()
+         * Caches ps, for which room has already been counted in the cache as a whole.
+         *
+         * @return false if ps cannot be cached after all
+         */
+        synchronized boolean add( StatementCacheKey key, Object ps )
         {
-            if ( longsToStmts.isEmpty() )
+            if (retired || isClosed())
+                return false;
+            else if (max_statements_per_connection > 0 && stmtToKey.size() >= max_statements_per_connection)
                 return false;
             else
             {
-                Long l = (Long) longsToStmts.firstKey();
-                Object ps = longsToStmts.get( l );
-                if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
-                {
-//                  System.err.println("CULLING: " + 
-//                  ((StatementCacheKey) stmtToKey.get(ps)).stmtText);
-                    if (logger.isLoggable(MLevel.FINEST))
-                        logger.finest("CULLING: " + ((StatementCacheKey) stmtToKey.get(ps)).stmtText);
-                }
-                // we do not undeathmarch the statement ourselves, because removeStatement( ... )
-                // should remove from all deathmarches...
-                removeStatement( ps, DESTROY_ALWAYS ); 
-                if (Debug.DEBUG && this.contains( ps ))
-                    throw new RuntimeException("Inconsistency!!! Statement culled from deathmarch failed to be removed by removeStatement( ... )!");
+                assimilate( key, ps );
                 return true;
             }
         }
-        */
 
-        public boolean contains( Object ps )
-        { return stmtsToLongs.keySet().contains( ps ); }
+        /*
+         * @return false if no statement is checked in
+         */
+        synchronized boolean cullLeastRecentlyUsed()
+        {
+            if (checkedIn.isEmpty())
+                return false;
 
-        public int size()
-        { return longsToStmts.size(); }
+            Object ps = leastRecentlyUsed();
+            if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX && logger.isLoggable(MLevel.FINEST))
+                logger.finest("CULLING: " + ((StatementCacheKey) stmtToKey.get( ps )).stmtText);
 
-        private Long getNextLong()
-        { return new Long( ++last_long ); }
-    }
+            removeStatement( ps, DESTROY_ALWAYS, true );
+            return true;
+        }
 
-    protected static abstract class ConnectionStatementManager
-    {
-        Map cxnToStmtSets = new HashMap();
+        synchronized void removeStatement( Object ps, int destruction_policy )
+        { removeStatement( ps, destruction_policy, true ); }
 
-        public int getNumConnectionsWithCachedStatements()
-        { return cxnToStmtSets.size(); }
+        /*
+         * Removes all of our statements from the cache, and refuses any more.
+         *
+         * @return the removed statements, for the caller to destroy
+         */
+        synchronized List retire()
+        {
+            retired = true;
 
-        public Set connectionSet()
-        { return cxnToStmtSets.keySet(); }
+            List out = new ArrayList( stmtToKey.keySet() );
+            for (Iterator ii = out.iterator(); ii.hasNext(); )
+                removeStatement( ii.next(), DESTROY_NEVER, true );
+            return out;
+        }
 
-        public Set statementSet( Connection pcon )
-        { return (Set) cxnToStmtSets.get( pcon ); }
+        /* non-public methods that MUST be called with this' lock */
 
-        public int getNumStatementsForConnection( Connection pcon )
+        private void assimilate( StatementCacheKey key, Object ps )
         {
-            Set stmtSet = statementSet( pcon );
-            return (stmtSet == null ? 0 : stmtSet.size());
-        }
+            stmtToKey.put( ps, key );
 
-        public void addStatementForConnection( Object ps, Connection pcon )
-        {
-            Set stmtSet = statementSet( pcon );
-            if (stmtSet == null)
+            KeyRec krec = (KeyRec) keyToKeyRec.get( key );
+            if (krec == null)
             {
-                stmtSet = new HashSet();
-                cxnToStmtSets.put( pcon, stmtSet );
+                krec = new KeyRec();
+                keyToKeyRec.put( key, krec );
             }
-            stmtSet.add( ps );
+            else
+            {
+                if (logger.isLoggable(MLevel.INFO))
+                    logger.info("Multiply prepared statement! " + key.stmtText );
+                if (Debug.DEBUG && logger.isLoggable(MLevel.FINE))
+                    logger.fine("(The same statement has already been prepared by this Connection, " +
+                                    "and that other instance has not yet been closed, so the statement pool " +
+                                    "has to prepare a second PreparedStatement object rather than reusing " +
+                                    "the previously-cached Statement. The new Statement will be cached, in case " +
+                    "you frequently need multiple copies of this Statement.)");
+            }
+            krec.allStmts.add( ps );
+
+            checkedOut.add( ps );
+            numStatementsCheckedOut.incrementAndGet();
+            stmtToRec.put( ps, this );
         }
 
-        public boolean removeStatementForConnection( Object ps, Connection pcon )
+        // if release_room is false, the statement's room in the cache passes to another
+        private void removeStatement( Object ps, int destruction_policy, boolean release_room )
         {
-            boolean out;
+            StatementCacheKey sck = (StatementCacheKey) stmtToKey.remove( ps );
+            if (sck == null) //already removed
+                return;
+
+            KeyRec krec = (KeyRec) keyToKeyRec.get( sck );
+            krec.allStmts.remove( ps );
 
-            Set stmtSet = statementSet( pcon );
-            if ( stmtSet != null )
+            boolean checked_in = !checkedOut.contains( ps );
+
+            if ( checked_in )
             {
-                out = stmtSet.remove( ps );
-                if (stmtSet.isEmpty())
-                    cxnToStmtSets.remove( pcon );
+                unmarkCheckedIn( ps );
+                krec.checkoutQueue.remove( ps );
+                if ((destruction_policy & DESTROY_IF_CHECKED_IN) != 0)
+                    destructo.deferredDestroyStatement( pcon, ps );
             }
             else
-                out = false;
+            {
+                checkedOut.remove( ps );
+                numStatementsCheckedOut.decrementAndGet();
+                if ((destruction_policy & DESTROY_IF_CHECKED_OUT) != 0)
+                    destructo.deferredDestroyStatement( pcon, ps );
+            }
 
-            return out;
-        }
-    }
+            if (krec.allStmts.isEmpty() && krec.checkoutQueue.isEmpty())
+                keyToKeyRec.remove( sck );
 
-    // i want this as optimized as possible, so i'm adopting the philosophy that all
-    // classes are abstract or final, to help enable compiler inlining...
-    protected static final class SimpleConnectionStatementManager extends ConnectionStatementManager 
-    {}
+            stmtToRec.remove( ps );
+            if (release_room)
+                numStatements.decrementAndGet();
+        }
 
-    protected final class DeathmarchConnectionStatementManager extends ConnectionStatementManager
-    {
-        Map cxnsToDms = new HashMap();
+        private Object leastRecentlyUsed()
+        { return checkedIn.keySet().iterator().next(); }
 
-        public void addStatementForConnection( Object ps, Connection pcon )
+        private void markCheckedIn( Object ps )
         {
-            super.addStatementForConnection( ps, pcon );
-            Deathmarch dm = (Deathmarch) cxnsToDms.get( pcon );
-            if (dm == null)
-            {
-                dm = new Deathmarch();
-                cxnsToDms.put( pcon, dm );
-            }
+            checkedIn.put( ps, new Long( checkinStamps.incrementAndGet() ) );
+            updateOldestCheckin();
         }
 
-        public boolean removeStatementForConnection( Object ps, Connection pcon )
+        private void unmarkCheckedIn( Object ps )
         {
-            boolean out = super.removeStatementForConnection( ps, pcon );
-            if (out)
-            {
-                if ( statementSet( pcon ) == null )
-                    cxnsToDms.remove( pcon );
-            }
-            return out;
+            checkedIn.remove( ps );
+            updateOldestCheckin();
         }
 
-        public Deathmarch getDeathmarch( Connection pcon )
-        { return (Deathmarch) cxnsToDms.get( pcon ); }
+        private void updateOldestCheckin()
+        { oldest_checkin = ( checkedIn.isEmpty() ? Long.MAX_VALUE : ((Long) checkedIn.values().iterator().next()).longValue() ); }
     }
 
     /*
@@ -928,7 +894,7 @@ public abstract class GooGooStatementCache
 
 	    Runnable r = new UncheckedStatementCloseTask();
 	    
-	    runner.postRunnable(r);
+	    destroyTaskStatistics.post( runner, r );
 	}
 	
 	final void synchronousDestroyStatement( final Object pstmt )
@@ -986,8 +952,18 @@ public abstract class GooGooStatementCache
 
 	boolean closed = false;
 
-	synchronized void close()
-	{ closed = true; }
+	// we guard our state with a java.util.concurrent Lock, rather than this' monitor,
+	// because Threads checking out Connections may wait here for Statements to be
+	// destroyed. a virtual thread that wait()s on a monitor pins its carrier thread.
+	final ReentrantLock lock                = new ReentrantLock();
+	final Condition     statementsDestroyed = lock.newCondition();
+
+	void close()
+	{ 
+	    lock.lock();
+	    try { closed = true; }
+	    finally { lock.unlock(); }
+	}
 
 	CautiousStatementDestructionManager(AsynchronousRunner deferredStatementDestroyer)
 	{   
@@ -1015,126 +991,165 @@ public abstract class GooGooStatementCache
 	    System.err.println(trace());
 	}
 
-	synchronized void waitMarkConnectionInUse(Connection physicalConnection) throws InterruptedException
+	void waitMarkConnectionInUse(Connection physicalConnection) throws InterruptedException
 	{
-	    if (! closed)
+	    lock.lock();
+	    try
 		{
-		    Set stmts = statementsUnderDestruction( physicalConnection );
-		    if (stmts != null)
+		    if (! closed)
 			{
-			    if (Debug.DEBUG && logger.isLoggable(MLevel.FINE))
+			    Set stmts = statementsUnderDestruction( physicalConnection );
+			    if (stmts != null)
 				{
-				    
-				    //System.err.println("*********************************************** => " + stmts);
-				    
-				    logger.log(MLevel.FINE, 
-					       "A connection is waiting to be accepted by the Statement cache because " + 
-					       stmts.size() + 
-					       " cached Statements are still being destroyed.");
-				    //printAllStats();
+				    if (Debug.DEBUG && logger.isLoggable(MLevel.FINE))
+					{
+					    logger.log(MLevel.FINE, 
+						       "A connection is waiting to be accepted by the Statement cache because " + 
+						       stmts.size() + 
+						       " cached Statements are still being destroyed.");
+					    //printAllStats();
+					}
+				    while (! stmts.isEmpty())
+					statementsDestroyed.await();
 				}
-			    while (! stmts.isEmpty())
-				this.wait();
+			    inUseConnections.add( physicalConnection );
 			}
-		    inUseConnections.add( physicalConnection );
 		}
+	    finally
+		{ lock.unlock(); }
 	}
 	
-	synchronized boolean tryMarkConnectionInUse(Connection physicalConnection)
+	boolean tryMarkConnectionInUse(Connection physicalConnection)
 	{ 
-	    if (! closed)
+	    lock.lock();
+	    try
 		{
-		    Set stmts = statementsUnderDestruction( physicalConnection );
-		    if ( stmts != null)
+		    if (! closed)
 			{
-			    int sz = stmts.size();
-			    if (Debug.DEBUG && logger.isLoggable(MLevel.FINE))
+			    Set stmts = statementsUnderDestruction( physicalConnection );
+			    if ( stmts != null)
+				{
+				    int sz = stmts.size();
+				    if (Debug.DEBUG && logger.isLoggable(MLevel.FINE))
+					{
+					    logger.log(MLevel.FINE, 
+						       "A connection could not be accepted by the Statement cache because " + 
+						       sz + 
+						       " cached Statements are still being destroyed."); 
+					}
+				    return false;
+				}
+			    else
 				{
-				    logger.log(MLevel.FINE, 
-					       "A connection could not be accepted by the Statement cache because " + 
-					       sz + 
-					       " cached Statements are still being destroyed."); 
+				    inUseConnections.add( physicalConnection ); 
+				    return true;
 				}
-			    return false;
 			}
 		    else
-			{
-			    inUseConnections.add( physicalConnection ); 
-			    return true;
-			}
+			return true;
 		}
-	    else
-		return true;
+	    finally
+		{ lock.unlock(); }
 	}
 
-	synchronized void unmarkConnectionInUse(Connection physicalConnection)
+	void unmarkConnectionInUse(Connection physicalConnection)
 	{ 
-	    boolean unmarked = inUseConnections.remove( physicalConnection ); 
+	    lock.lock();
+	    try
+		{
+		    boolean unmarked = inUseConnections.remove( physicalConnection ); 
 	    
-	    Set zombieStatements = (Set) connectionsToZombieStatementSets.get( physicalConnection );
+		    Set zombieStatements = (Set) connectionsToZombieStatementSets.get( physicalConnection );
 	    
-	    if ( zombieStatements != null )
-		{
-		    //System.err.println("zombieStatements: " + zombieStatements);
-		    destroyAllTrackedStatements( physicalConnection );
+		    if ( zombieStatements != null )
+			{
+			    //System.err.println("zombieStatements: " + zombieStatements);
+			    destroyAllTrackedStatements( physicalConnection );
+			}
 		}
+	    finally
+		{ lock.unlock(); }
 	}
 	
-	synchronized void deferredDestroyStatement(Object parentConnection, Object pstmt)
+	void deferredDestroyStatement(Object parentConnection, Object pstmt)
 	{
-	    if (! closed)
+	    lock.lock();
+	    try
 		{
-		    if (inUseConnections.contains(parentConnection))
+		    if (! closed)
 			{
-			    Set s = (Set) connectionsToZombieStatementSets.get(parentConnection);
-			    if (s == null)
+			    if (inUseConnections.contains(parentConnection))
+				{
+				    Set s = (Set) connectionsToZombieStatementSets.get(parentConnection);
+				    if (s == null)
+					{
+					    s = Collections.synchronizedSet( new HashSet() );
+					    connectionsToZombieStatementSets.put(parentConnection, s);
+					}
+				    s.add( pstmt );
+				}
+			    else
 				{
-				    s = Collections.synchronizedSet( new HashSet() );
-				    connectionsToZombieStatementSets.put(parentConnection, s);
+				    uncheckedDestroyStatement( pstmt );
 				}
-			    s.add( pstmt );
 			}
 		    else
-			{
-			    uncheckedDestroyStatement( pstmt );
-			}
+			uncheckedDestroyStatement( pstmt );
 		}
-	    else
-		uncheckedDestroyStatement( pstmt );
+	    finally
+		{ lock.unlock(); }
 	}
 	
 	// return -1 if unknown
-	synchronized int countConnectionsInUse()
-	{ return inUseConnections.size(); }
+	int countConnectionsInUse()
+	{ return getNumConnectionsInUse(); }
 	
 	// under alternative implementation we don't cull Statements 
 	// underneath of Connections in current use
-	synchronized boolean knownInUse(Connection pCon)
-	{ return inUseConnections.contains(pCon); }
+	boolean knownInUse(Connection pCon)
+	{ 
+	    lock.lock();
+	    try { return inUseConnections.contains(pCon); }
+	    finally { lock.unlock(); }
+	}
 
-	// we don't sync 'cuz we're just wrapping
-	// a sync'ed method
+	// we don't lock 'cuz we're just wrapping
+	// a locking method
 	Boolean tvlInUse( Connection pCon ) 
 	{ return Boolean.valueOf( knownInUse( pCon ) ); }
 
-	synchronized int getNumConnectionsInUse()
-	{ return inUseConnections.size(); }
+	int getNumConnectionsInUse()
+	{ 
+	    lock.lock();
+	    try { return inUseConnections.size(); }
+	    finally { lock.unlock(); }
+	}
 
-	synchronized int getNumConnectionsWithDeferredDestroyStatements()
-	{ return connectionsToZombieStatementSets.keySet().size(); }
+	int getNumConnectionsWithDeferredDestroyStatements()
+	{ 
+	    lock.lock();
+	    try { return connectionsToZombieStatementSets.keySet().size(); }
+	    finally { lock.unlock(); }
+	}
 	
-	synchronized int getNumDeferredDestroyStatements()
+	int getNumDeferredDestroyStatements()
 	{
-	    Set keys = connectionsToZombieStatementSets.keySet();
-	    int sum = 0;
-	    for ( Iterator ii = keys.iterator(); ii.hasNext(); )
+	    lock.lock();
+	    try
 		{
-		    Object con = ii.next();
-		    Set stmts = (Set) connectionsToZombieStatementSets.get( con );
-		    synchronized ( stmts )
-			{ sum += (stmts == null ? 0 : stmts.size()); }
+		    Set keys = connectionsToZombieStatementSets.keySet();
+		    int sum = 0;
+		    for ( Iterator ii = keys.iterator(); ii.hasNext(); )
+			{
+			    Object con = ii.next();
+			    Set stmts = (Set) connectionsToZombieStatementSets.get( con );
+			    synchronized ( stmts )
+				{ sum += (stmts == null ? 0 : stmts.size()); }
+			}
+		    return sum;
 		}
-	    return sum;
+	    finally
+		{ lock.unlock(); }
 	}
 	
 	private void trackedDestroyStatement( final Object parentConnection, final Object pstmt )
@@ -1148,7 +1163,8 @@ public abstract class GooGooStatementCache
 		    // debug
 		    //System.err.println("TrackedStatementCloseTask.run()");
 		    
-		    synchronized ( CautiousStatementDestructionManager.this )
+		    lock.lock();
+		    try
 			{
 			    //System.err.println("TrackedStatementCloseTask -- with lock");
 			    
@@ -1164,13 +1180,15 @@ public abstract class GooGooStatementCache
 					    Object removed2 = connectionsToZombieStatementSets.remove( parentConnection );
 					    //assert removed2 != null;
 					    assert removed2 == stmts;
-					    CautiousStatementDestructionManager.this.notifyAll();
+					    statementsDestroyed.signalAll();
 					    //System.err.println( "Notify -- all statements closed after close tracked statements: " + pstmt);
 					}
 				    //else
 				    //System.err.println("Statements remaining open -- " + stmts);
 				}
 			}
+		    finally
+			{ lock.unlock(); }
 		    //printAllStats();
 		}
 	    }
@@ -1180,7 +1198,7 @@ public abstract class GooGooStatementCache
 	    if (! closed)
 		{
 		    //blockingTaskAsyncRunner.postRunnable(r);
-		    deferredStatementDestroyer.postRunnable(r);
+		    destroyTaskStatistics.post( deferredStatementDestroyer, r );
 		    //System.err.println("trackedDestroyStatement() -- posted task.");
 		}
 	    else
@@ -1201,7 +1219,8 @@ public abstract class GooGooStatementCache
 		    // debug
 		    //System.err.println("TrackedDestroyAllStatementsTask.run()");
 
-		    synchronized ( CautiousStatementDestructionManager.this )
+		    lock.lock();
+		    try
 			{
 			    //System.err.println("TrackedDestroyAllStatementsTask -- with lock");
 
@@ -1215,12 +1234,14 @@ public abstract class GooGooStatementCache
 					    StatementUtils.attemptClose( pstmt );
 					    ii.remove();
 					}
-				    CautiousStatementDestructionManager.this.notifyAll();
+				    statementsDestroyed.signalAll();
 				    //System.err.println( "Notify -- closed all tracked statements." );
 				}
 			    //else
 			    //System.err.println("No statements for Connection " + parentConnection + "; with connections: " + connectionsToZombieStatementSets.keySet());
 			}
+		    finally
+			{ lock.unlock(); }
 		    //printAllStats();
 		}
 	    }
@@ -1230,7 +1251,7 @@ public abstract class GooGooStatementCache
 	    if (! closed)
 		{
 		    //blockingTaskAsyncRunner.postRunnable(r);
-		    deferredStatementDestroyer.postRunnable(r);
+		    destroyTaskStatistics.post( deferredStatementDestroyer, r );
 		    //System.err.println("destroyAllTrackedStatements() -- posted task.");
 		}
 	    else
@@ -1242,7 +1263,7 @@ public abstract class GooGooStatementCache
 
 	private Set statementsUnderDestruction( Object parentConnection ) 
 	{ 
-	    assert Thread.holdsLock( this );
+	    assert lock.isHeldByCurrentThread();
 
 	    return (Set) connectionsToZombieStatementSets.get( parentConnection ); 
 	}
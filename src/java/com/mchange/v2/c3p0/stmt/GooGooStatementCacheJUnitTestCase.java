@@ -0,0 +1,257 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.c3p0.stmt;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import com.mchange.v2.async.AsynchronousRunner;
+import com.mchange.v2.util.ResourceClosedException;
+import junit.framework.TestCase;
+
+public final class GooGooStatementCacheJUnitTestCase extends TestCase
+{
+    final static Method PREPARE;
+
+    static
+    {
+        try
+        { PREPARE = Connection.class.getMethod( "prepareStatement", new Class[] { String.class } ); }
+        catch ( NoSuchMethodException e )
+        { throw new ExceptionInInitializerError( e ); }
+    }
+
+    public void testGlobalLimitCullsLeastRecentlyUsedCheckedInStatement() throws Exception
+    {
+        GooGooStatementCache cache = new GlobalMaxOnlyStatementCache( new SynchronousRunner(), null, 3, true );
+        Connection c1 = connection();
+        Connection c2 = connection();
+
+        Object a = checkoutAndCheckin( cache, c1, "a" );
+        Object b = checkoutAndCheckin( cache, c2, "b" );
+        Object c = checkoutAndCheckin( cache, c1, "c" );
+        assertSame( "A checked-in statement should be reused.", a, checkoutAndCheckin( cache, c1, "a" ) );
+        assertEquals( 3, cache.getNumStatements() );
+
+        // b, on another Connection, is now the least recently used
+        Object d = checkoutAndCheckin( cache, c1, "d" );
+        assertEquals( 3, cache.getNumStatements() );
+        assertEquals( 1, closes( b ) );
+        assertEquals( 0, closes( a ) + closes( c ) + closes( d ) );
+        assertFalse( "A culled statement should not be reused.", b == checkoutAndCheckin( cache, c2, "b" ) );
+
+        // a was used more recently than c, so now c goes
+        assertEquals( 1, closes( c ) );
+        assertEquals( 0, closes( a ) );
+        assertEquals( 3, cache.getNumStatements() );
+    }
+
+    public void testPerConnectionLimitCullsThatConnectionsLeastRecentlyUsed() throws Exception
+    {
+        GooGooStatementCache cache = new DoubleMaxStatementCache( new SynchronousRunner(), null, 10, 2, true );
+        Connection c1 = connection();
+        Connection c2 = connection();
+
+        Object x = checkoutAndCheckin( cache, c2, "x" ); // least recently used of all
+        Object a = checkoutAndCheckin( cache, c1, "a" );
+        Object b = checkoutAndCheckin( cache, c1, "b" );
+        checkoutAndCheckin( cache, c1, "a" );
+
+        checkoutAndCheckin( cache, c1, "c" );
+        assertEquals( "A Connection at its limit should cull its own least recently used statement.", 1, closes( b ) );
+        assertEquals( 0, closes( a ) + closes( x ) );
+        assertEquals( 3, cache.getNumStatements() );
+        assertEquals( 2, cache.getNumConnectionsWithCachedStatements() );
+    }
+
+    public void testFullCacheHandsOutOverloadStatements() throws Exception
+    {
+        GooGooStatementCache cache = new DoubleMaxStatementCache( new SynchronousRunner(), null, 2, 0, true );
+        Connection c1 = connection();
+
+        // nothing checked in can be culled
+        Object a = cache.checkoutStatement( c1, PREPARE, args( "a" ) );
+        Object b = cache.checkoutStatement( c1, PREPARE, args( "b" ) );
+        Object overload = cache.checkoutStatement( c1, PREPARE, args( "c" ) );
+        assertEquals( 2, cache.getNumStatements() );
+        assertEquals( 2, cache.getNumStatementsCheckedOut() );
+
+        cache.checkinStatement( overload );
+        assertEquals( "An overload statement should be destroyed on checkin.", 1, closes( overload ) );
+        cache.checkinStatement( a );
+        cache.checkinStatement( b );
+        assertEquals( 0, closes( a ) + closes( b ) );
+        assertEquals( 0, cache.getNumStatementsCheckedOut() );
+
+        // now that a and b are checked in, c is cached in place of a
+        Object c = checkoutAndCheckin( cache, c1, "c" );
+        assertFalse( c == overload );
+        assertEquals( 1, closes( a ) );
+        assertSame( c, checkoutAndCheckin( cache, c1, "c" ) );
+        assertEquals( 2, cache.getNumStatements() );
+    }
+
+    public void testCloseAllRacingCheckinDestroysEveryStatement() throws Exception
+    {
+        final int TRIALS = 200;
+        final int STMTS  = 8;
+        for (int i = 0; i < TRIALS; ++i)
+        {
+            final GooGooStatementCache cache = new DoubleMaxStatementCache( new SynchronousRunner(), null, 100, 0, true );
+            final Connection c1 = connection();
+            final List stmts = new ArrayList();
+            for (int j = 0; j < STMTS; ++j)
+                stmts.add( cache.checkoutStatement( c1, PREPARE, args( "stmt" + j ) ) );
+
+            final Exception[] failure = new Exception[1];
+            Thread checkinThread = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < STMTS; ++j)
+                            cache.checkinStatement( stmts.get( j ) );
+                    }
+                    catch (Exception e)
+                    { failure[0] = e; }
+                }
+            };
+            checkinThread.start();
+            cache.closeAll( c1 );
+            checkinThread.join();
+            if (failure[0] != null)
+                throw failure[0];
+
+            for (int j = 0; j < STMTS; ++j)
+                assertTrue( "Every statement should be destroyed, whether checked in before or after closeAll(...).", closes( stmts.get( j ) ) > 0 );
+            assertEquals( 0, cache.getNumStatements() );
+            assertEquals( 0, cache.getNumStatementsCheckedOut() );
+            assertTrue( cache.stmtToRec.isEmpty() );
+            assertFalse( cache.cxnToRecs.containsKey( c1 ) );
+        }
+    }
+
+    public void testCloseWithStatementsCheckedOut() throws Exception
+    {
+        GooGooStatementCache cache = new DoubleMaxStatementCache( new SynchronousRunner(), null, 10, 0, true );
+        Connection c1 = connection();
+        Object out = cache.checkoutStatement( c1, PREPARE, args( "out" ) );
+        Object in  = checkoutAndCheckin( cache, c1, "in" );
+
+        cache.close();
+        assertTrue( cache.isClosed() );
+        assertEquals( 1, closes( in ) );
+        assertEquals( "A checked-out statement should be destroyed when its cache closes.", 1, closes( out ) );
+        assertEquals( -1, cache.getNumStatements() );
+
+        // checking it in later is harmless
+        cache.checkinStatement( out );
+        try
+        {
+            cache.checkoutStatement( c1, PREPARE, args( "in" ) );
+            fail( "A closed cache should refuse checkouts." );
+        }
+        catch (ResourceClosedException e)
+        {}
+        cache.close(); // a duplicate close is harmless too
+    }
+
+    private static Object checkoutAndCheckin( GooGooStatementCache cache, Connection pcon, String sql ) throws SQLException
+    {
+        Object out = cache.checkoutStatement( pcon, PREPARE, args( sql ) );
+        cache.checkinStatement( out );
+        return out;
+    }
+
+    private static Object[] args( String sql )
+    { return new Object[] { sql }; }
+
+    private static int closes( Object stmt )
+    { return ((StatementHandler) Proxy.getInvocationHandler( stmt )).closes; }
+
+    private static Connection connection()
+    {
+        InvocationHandler h = new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method m, Object[] args )
+            {
+                String name = m.getName();
+                if ( name.equals( "prepareStatement" ) )
+                    return Proxy.newProxyInstance( PreparedStatement.class.getClassLoader(), new Class[] { PreparedStatement.class }, new StatementHandler() );
+                else
+                    return objectMethod( proxy, m, args );
+            }
+        };
+        return (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class[] { Connection.class }, h );
+    }
+
+    // identity semantics, which the cache requires of its Connections and Statements
+    private static Object objectMethod( Object proxy, Method m, Object[] args )
+    {
+        String name = m.getName();
+        if ( name.equals( "hashCode" ) )
+            return new Integer( System.identityHashCode( proxy ) );
+        else if ( name.equals( "equals" ) )
+            return Boolean.valueOf( proxy == args[0] );
+        else if ( name.equals( "toString" ) )
+            return "proxy@" + Integer.toHexString( System.identityHashCode( proxy ) );
+        else
+            return null;
+    }
+
+    final static class StatementHandler implements InvocationHandler
+    {
+        volatile int closes = 0;
+
+        public Object invoke( Object proxy, Method m, Object[] args )
+        {
+            String name = m.getName();
+            if ( name.equals( "close" ) )
+            {
+                synchronized ( this )
+                { ++closes; }
+                return null;
+            }
+            else if ( name.equals( "isClosed" ) )
+                return Boolean.valueOf( closes > 0 );
+            else
+                return objectMethod( proxy, m, args ); //clearParameters(), clearBatch()
+        }
+    }
+
+    // runs destroy tasks as they are posted, so that tests see their results at once
+    final static class SynchronousRunner implements AsynchronousRunner
+    {
+        public void postRunnable( Runnable r )
+        { r.run(); }
+
+        public void close( boolean skip_remaining_tasks )
+        {}
+
+        public void close()
+        {}
+    }
+}
@@ -31,25 +31,10 @@ import com.mchange.v2.lang.ObjectUtils;
 
 abstract class StatementCacheKey
 {
-    static final int SIMPLE           = 0;
-    static final int MEMORY_COALESCED = 1;
-    static final int VALUE_IDENTITY   = 2;
-
-    //NOTE: subclasses rely upon their _find logic being protected by StatementCacheKey.class' lock!
-    public synchronized static StatementCacheKey find( Connection pcon, Method stmtProducingMethod, Object[] args )
-    {
-	switch ( VALUE_IDENTITY )
-	    {
-	    case SIMPLE:
-		return SimpleStatementCacheKey._find( pcon, stmtProducingMethod, args );
-	    case MEMORY_COALESCED:
-		return MemoryCoalescedStatementCacheKey._find( pcon, stmtProducingMethod, args );
-	    case VALUE_IDENTITY:
-		return ValueIdentityStatementCacheKey._find( pcon, stmtProducingMethod, args );
-	    default:
-		throw new InternalError("StatementCacheKey.find() is misconfigured.");
-	    }
-    }
+    // a fresh key, never coalesced, so no lock is required. lookups that find
+    // a cached Statement leave behind only a short-lived, unshared key.
+    static StatementCacheKey create( Connection pcon, Method stmtProducingMethod, Object[] args )
+    { return SimpleStatementCacheKey._find( pcon, stmtProducingMethod, args ); }
 
     //MT: instances are treated as immutable once they 
     //    have been initialized and handed to
@@ -161,6 +161,10 @@ public final class ConnectionDispersionTest
 			    System.out.print('*');
 			System.out.println();
 		    }
+
+		System.out.println("checkoutOrdering: " + ds.getCheckoutOrdering() +
+				   "; idle expirations: " + ds.getNumIdleExpirationsDefaultUser() +
+				   "; average idle time at checkout: " + ds.getAverageIdleTimeAtCheckoutDefaultUser() + " msecs");
 		
 // 		List outcomes = new ArrayList(NUM_THREADS);
 // 		for (int i = 0; i < NUM_THREADS; ++i)
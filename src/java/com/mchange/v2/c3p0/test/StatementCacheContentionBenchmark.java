@@ -0,0 +1,206 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.c3p0.test;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.concurrent.atomic.*;
+import com.mchange.v2.async.AsynchronousRunner;
+import com.mchange.v2.c3p0.stmt.*;
+
+/**
+ *  Measures the checkout/checkin throughput of a Statement cache shared by
+ *  64 client threads, each preparing Statements on a Connection of its own,
+ *  as clients of a pool do. Connections and PreparedStatements are Proxies
+ *  that do nothing, so no database is required, and what is measured is the
+ *  cache's own overhead.
+ *
+ *  The cache is measured once with room for every Statement the clients
+ *  prepare, so that all checkouts hit, and once with room for half, so that
+ *  Statements are constantly culled and re-prepared. Each trial is run as
+ *  the cache is, and with every call serialized on a single lock, as calls
+ *  were when the cache was guarded by one monitor. Each trial is preceded
+ *  by a warm-up of the same length.
+ */
+public final class StatementCacheContentionBenchmark
+{
+    private final static int NUM_THREADS   = 64;
+    private final static int NUM_SQL       = 16;  //distinct statements prepared by each client
+    private final static int PER_CXN_LIMIT = NUM_SQL;
+
+    private final static Method PREPARE_METHOD;
+
+    static
+    {
+	try
+	    { PREPARE_METHOD = Connection.class.getMethod( "prepareStatement", new Class[] { String.class } ); }
+	catch (NoSuchMethodException e)
+	    { throw new InternalError( e.toString() ); }
+    }
+
+    private final static String[] SQL = new String[ NUM_SQL ];
+
+    static
+    {
+	for (int i = 0; i < NUM_SQL; ++i)
+	    SQL[i] = "SELECT * FROM table_" + i + " WHERE id = ?";
+    }
+
+    public static void main(String[] argv)
+    {
+	try
+	    {
+		long trial_millis = (argv.length > 0 ? Long.parseLong( argv[0] ) : 2000);
+		int  all          = NUM_THREADS * NUM_SQL;
+
+		System.err.println( "processors: " + Runtime.getRuntime().availableProcessors() + "; threads: " + NUM_THREADS + 
+				    "; statements per thread: " + NUM_SQL + "; trial msecs: " + trial_millis );
+		System.err.println( "maxStatements\tone lock (ops/sec)\tconcurrent (ops/sec)\tratio" );
+
+		int[] max_statements = { all, all / 2 };
+		for (int i = 0; i < max_statements.length; ++i)
+		    {
+			double serialized = measure( max_statements[i], true, trial_millis );
+			double concurrent = measure( max_statements[i], false, trial_millis );
+			System.err.println( max_statements[i] + "\t\t" + (long) serialized + "\t\t\t" + (long) concurrent + "\t\t\t" + 
+					    ((long) (concurrent / serialized * 100)) / 100f );
+		    }
+	    }
+	catch (Exception e)
+	    { e.printStackTrace(); }
+    }
+
+    private static double measure( int max_statements, final boolean serialize, long trial_millis ) throws Exception
+    {
+	// Statements are prepared on the client Threads, and culled Statements destroyed inline
+	final GooGooStatementCache scache = new DoubleMaxStatementCache( new InlineRunner(), null, max_statements, PER_CXN_LIMIT, true );
+	final Object               lock   = new Object();
+	try
+	    {
+		final AtomicBoolean go       = new AtomicBoolean( true );
+		final AtomicBoolean counting = new AtomicBoolean( false );
+		final AtomicLong    ops      = new AtomicLong( 0 );
+		Thread[] threads = new Thread[ NUM_THREADS ];
+		for (int i = 0; i < NUM_THREADS; ++i)
+		    {
+			final Connection pcon = fakeConnection();
+			final int        seed = i;
+			threads[i] = new Thread()
+			    {
+				public void run()
+				{
+				    try
+					{
+					    long n = 0;
+					    int  s = seed;
+					    while ( go.get() )
+						{
+						    Object[] args = new Object[] { SQL[ s++ % NUM_SQL ] };
+						    if (serialize)
+							{
+							    Object ps;
+							    synchronized ( lock )
+								{ ps = scache.checkoutStatement( pcon, PREPARE_METHOD, args ); }
+							    synchronized ( lock )
+								{ scache.checkinStatement( ps ); }
+							}
+						    else
+							{
+							    Object ps = scache.checkoutStatement( pcon, PREPARE_METHOD, args );
+							    scache.checkinStatement( ps );
+							}
+						    if (counting.get())
+							++n;
+						}
+					    ops.addAndGet( n );
+					}
+				    catch (Exception e)
+					{ e.printStackTrace(); }
+				}
+			    };
+			threads[i].start();
+		    }
+		Thread.sleep( trial_millis ); //warm-up
+		counting.set( true );
+		long start = System.currentTimeMillis();
+		Thread.sleep( trial_millis );
+		counting.set( false );
+		long elapsed = System.currentTimeMillis() - start;
+		go.set( false );
+		for (int i = 0; i < NUM_THREADS; ++i)
+		    threads[i].join();
+		return ops.get() * 1000d / elapsed;
+	    }
+	finally
+	    { scache.close(); }
+    }
+
+    private static Connection fakeConnection()
+    { return (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class[] { Connection.class }, new DoNothingHandler( true ) ); }
+
+    /*
+     * Proxies are compared by identity, Connections produce PreparedStatements,
+     * and all other methods return null, false, or zero.
+     */
+    private static class DoNothingHandler implements InvocationHandler
+    {
+	final boolean is_connection;
+
+	DoNothingHandler( boolean is_connection )
+	{ this.is_connection = is_connection; }
+
+	public Object invoke( Object proxy, Method method, Object[] args )
+	{
+	    String name = method.getName();
+	    if ( "equals".equals( name ) && args != null && args.length == 1 )
+		return Boolean.valueOf( proxy == args[0] );
+	    else if ( "hashCode".equals( name ) && args == null )
+		return new Integer( System.identityHashCode( proxy ) );
+	    else if ( "toString".equals( name ) && args == null )
+		return (is_connection ? "fake Connection@" : "fake PreparedStatement@") + Integer.toHexString( System.identityHashCode( proxy ) );
+	    else if ( is_connection && "prepareStatement".equals( name ) )
+		return Proxy.newProxyInstance( PreparedStatement.class.getClassLoader(), new Class[] { PreparedStatement.class }, new DoNothingHandler( false ) );
+
+	    Class rt = method.getReturnType();
+	    if ( rt == boolean.class )
+		return Boolean.FALSE;
+	    else if ( rt == int.class )
+		return new Integer( 0 );
+	    else if ( rt == long.class )
+		return new Long( 0 );
+	    else if ( rt.isPrimitive() && rt != void.class )
+		throw new UnsupportedOperationException( method.toString() );
+	    else
+		return null;
+	}
+    }
+
+    private static class InlineRunner implements AsynchronousRunner
+    {
+	public void postRunnable( Runnable r )             { r.run(); }
+	public void close( boolean skip_remaining_tasks ) {}
+	public void close()                               {}
+    }
+}
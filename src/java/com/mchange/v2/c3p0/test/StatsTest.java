@@ -93,6 +93,12 @@ public final class StatsTest
 			display( cpds );
 		    }
 
+		System.err.println("Latencies...");
+		System.err.println( cpds.sampleLatencyStatusDefaultUser() );
+
+		System.err.println("Helper thread tasks...");
+		System.err.println( cpds.sampleTaskStatusDefaultUser() );
+
 		System.err.println("Closing data source, \"forcing\" garbage collection, and sleeping for 5 seconds...");
 		cpds.close();
 		System.gc();
@@ -0,0 +1,142 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.c3p0.test;
+
+import java.util.concurrent.atomic.*;
+import com.mchange.v2.resourcepool.*;
+
+/**
+ *  Compares the checkout/checkin throughput of a concurrent-checkout
+ *  pool with its idle resources on a single stripe against the same
+ *  pool striped (see the checkoutStripes configuration property), at
+ *  8 to 128 client threads. Resources are plain Objects, so no database
+ *  is required, and what is measured is the pool's own overhead.
+ *
+ *  Each client checks out, does a little work, and checks in, as fast as
+ *  it can. Each trial is preceded by a warm-up of the same length. The
+ *  pool is sized to the largest thread count, so clients seldom wait,
+ *  and contention for the idle resources dominates.
+ */
+public final class StripedCheckoutBenchmark
+{
+    private final static int[] THREAD_COUNTS = { 8, 16, 32, 64, 128 };
+    private final static int   WORK          = 50; //iterations of busywork per checkout
+
+    private static volatile int sink;
+
+    public static void main(String[] argv)
+    {
+	try
+	    {
+		long trial_millis = (argv.length > 0 ? Long.parseLong( argv[0] ) : 2000);
+		int  stripes      = (argv.length > 1 ? Integer.parseInt( argv[1] ) : Runtime.getRuntime().availableProcessors());
+		int  max          = THREAD_COUNTS[ THREAD_COUNTS.length - 1 ];
+
+		System.err.println( "processors: " + Runtime.getRuntime().availableProcessors() + "; stripes: " + stripes + 
+				    "; maxPoolSize: " + max + "; trial msecs: " + trial_millis );
+		System.err.println( "threads\t1 stripe (ops/sec)\t" + stripes + " stripes (ops/sec)\tratio" );
+		for (int i = 0; i < THREAD_COUNTS.length; ++i)
+		    {
+			int threads = THREAD_COUNTS[i];
+			double unstriped = measure( 1, threads, max, trial_millis );
+			double striped   = measure( stripes, threads, max, trial_millis );
+			System.err.println( threads + "\t" + (long) unstriped + "\t\t\t" + (long) striped + "\t\t\t" + 
+					    ((long) (striped / unstriped * 100)) / 100f );
+		    }
+	    }
+	catch (Exception e)
+	    { e.printStackTrace(); }
+    }
+
+    private static double measure( int stripes, int num_threads, int max, long trial_millis ) throws Exception
+    {
+	BasicResourcePoolFactory fact = BasicResourcePoolFactory.createNoEventSupportInstance( 3 );
+	fact.setMin( max );
+	fact.setStart( max );
+	fact.setMax( max );
+	fact.setConcurrentCheckout( true );
+	fact.setCheckoutStripes( stripes );
+	final ResourcePool pool = fact.createPool( new ObjectManager() );
+	try
+	    {
+		while (pool.getPoolSize() < max)
+		    Thread.sleep( 10 );
+
+		final AtomicBoolean go       = new AtomicBoolean( true );
+		final AtomicBoolean counting = new AtomicBoolean( false );
+		final AtomicLong    ops      = new AtomicLong( 0 );
+		Thread[] threads = new Thread[ num_threads ];
+		for (int i = 0; i < num_threads; ++i)
+		    {
+			threads[i] = new Thread()
+			    {
+				public void run()
+				{
+				    try
+					{
+					    long n = 0;
+					    boolean counted = false;
+					    while ( go.get() )
+						{
+						    Object resc = pool.checkoutResource( 0 );
+						    int x = 0;
+						    for (int j = 0; j < WORK; ++j)
+							x += j * x + 1;
+						    sink = x;
+						    pool.checkinResource( resc );
+						    if (counting.get())
+							++n;
+						}
+					    ops.addAndGet( n );
+					}
+				    catch (Exception e)
+					{ e.printStackTrace(); }
+				}
+			    };
+			threads[i].start();
+		    }
+		Thread.sleep( trial_millis ); //warm-up
+		counting.set( true );
+		long start = System.currentTimeMillis();
+		Thread.sleep( trial_millis );
+		counting.set( false );
+		long elapsed = System.currentTimeMillis() - start;
+		go.set( false );
+		for (int i = 0; i < num_threads; ++i)
+		    threads[i].join();
+		return ops.get() * 1000d / elapsed;
+	    }
+	finally
+	    { pool.close(); }
+    }
+
+    private static class ObjectManager implements ResourcePool.Manager
+    {
+	public Object acquireResource()                               { return new Object(); }
+	public void refurbishIdleResource(Object resc)                  {}
+	public void refurbishResourceOnCheckout(Object resc)            {}
+	public void refurbishResourceOnCheckin(Object resc)             {}
+	public void destroyResource(Object resc, boolean checked_out)   {}
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.c3p0.test;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.sql.*;
+import javax.sql.*;
+import com.mchange.v2.c3p0.*;
+
+/**
+ *  Hammers a small pool with many more virtual threads than there are
+ *  Connections, with virtualThreadFriendly set. Must be run on a JVM
+ *  that supports virtual threads (JDK 21+) with -Djdk.tracePinnedThreads=full;
+ *  any pinned-thread trace whose stack passes through c3p0 fails the test.
+ *
+ *  Virtual threads are reached reflectively, so this class still compiles
+ *  against the JDK c3p0 targets.
+ */
+public final class VirtualThreadPinningTest
+{
+    private final static int NUM_TASKS       = 2000;
+    private final static int ITERATIONS      = 20;
+    private final static int MAX_POOL_SIZE   = 5;
+    private final static int MAX_STATEMENTS  = 20;
+
+    private final static String PINNED_MARKER = "<== monitors";
+    private final static String C3P0_PACKAGE  = "com.mchange.";
+
+    public static void main(String[] argv)
+    {
+	String jdbc_url = null;
+	String username = null;
+	String password = null;
+	if (argv.length == 3)
+	    {
+		jdbc_url = argv[0];
+		username = argv[1];
+		password = argv[2];
+	    }
+	else if (argv.length == 1)
+	    {
+		jdbc_url = argv[0];
+		username = null;
+		password = null;
+	    }
+	else
+	    usage();
+
+	if (! jdbc_url.startsWith("jdbc:") )
+	    usage();
+
+	if (System.getProperty("jdk.tracePinnedThreads") == null)
+	    System.err.println("WARNING: jdk.tracePinnedThreads is not set; pinning will go unreported.");
+
+	// the JVM reports pinning to System.out, so we interpose to watch for traces
+	PrintStream origOut = System.out;
+	ByteArrayOutputStream captured = new ByteArrayOutputStream();
+	System.setOut( new PrintStream( new TeeOutputStream( origOut, captured ), true ) );
+
+	ComboPooledDataSource ds = null;
+	try
+	    {
+		ds = new ComboPooledDataSource();
+		ds.setJdbcUrl( jdbc_url );
+		ds.setUser( username );
+		ds.setPassword( password );
+		ds.setMaxPoolSize( MAX_POOL_SIZE );
+		ds.setMaxStatements( MAX_STATEMENTS );
+		ds.setTestConnectionOnCheckout( true );
+		ds.setVirtualThreadFriendly( true );
+
+		// get the DataSource initialized
+		ds.getConnection().close();
+
+		ExecutorService exec = newVirtualThreadPerTaskExecutor();
+		final ComboPooledDataSource fds = ds;
+		final int[] failures = new int[1];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < NUM_TASKS; ++i)
+		    {
+			exec.execute( new Runnable()
+			    {
+				public void run()
+				{
+				    for (int j = 0; j < ITERATIONS; ++j)
+					{
+					    try { useConnection( fds ); }
+					    catch (SQLException e)
+						{
+						    e.printStackTrace();
+						    synchronized ( failures )
+							{ ++failures[0]; }
+						}
+					}
+				}
+			    } );
+		    }
+		exec.shutdown();
+		exec.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+		long elapsed = System.currentTimeMillis() - start;
+
+		System.out.flush();
+		String out = captured.toString();
+		int pinned = countC3P0Pinnings( out );
+
+		System.err.println( NUM_TASKS * ITERATIONS + " checkouts on " + NUM_TASKS + " virtual threads in " + elapsed + " msecs." );
+		System.err.println( "Checkout failures: " + failures[0] );
+		System.err.println( "Pinned-thread traces through c3p0: " + pinned );
+		System.err.println( pinned == 0 && failures[0] == 0 ? "PASSED" : "FAILED" );
+	    }
+	catch (Exception e)
+	    { e.printStackTrace(); }
+	finally
+	    {
+		System.setOut( origOut );
+		if (ds != null)
+		    ds.close();
+	    }
+    }
+
+    private static void useConnection( DataSource ds ) throws SQLException
+    {
+	Connection c = null;
+	ResultSet rs = null;
+	try
+	    {
+		c = ds.getConnection();
+		rs = c.getMetaData().getTables( null,
+						null,
+						"PROBABLYNOT",
+						new String[] {"TABLE"} );
+	    }
+	finally
+	    {
+		try {if (rs != null) rs.close(); }
+		catch (Exception e)
+		    { e.printStackTrace(); }
+
+		try {if (c != null) c.close(); }
+		catch (Exception e)
+		    { e.printStackTrace(); }
+	    }
+    }
+
+    // a trace is a header line followed by indented frames;
+    // we count the traces that include a c3p0 frame holding a monitor
+    private static int countC3P0Pinnings( String out )
+    {
+	int count = 0;
+	boolean inTrace = false;
+	boolean counted = false;
+	BufferedReader br = new BufferedReader( new StringReader( out ) );
+	try
+	    {
+		for (String line = br.readLine(); line != null; line = br.readLine())
+		    {
+			boolean frame = line.startsWith(" ") || line.startsWith("\t");
+			if (! frame)
+			    {
+				inTrace = (line.indexOf("Thread[") >= 0 || line.indexOf("VirtualThread[") >= 0);
+				counted = false;
+			    }
+			else if (inTrace && !counted && line.indexOf( PINNED_MARKER ) >= 0 && line.indexOf( C3P0_PACKAGE ) >= 0)
+			    {
+				++count;
+				counted = true;
+			    }
+		    }
+	    }
+	catch (IOException e) // can't happen reading a String
+	    { e.printStackTrace(); }
+	return count;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception
+    {
+	try
+	    {
+		Method m = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor", new Class[0] );
+		return (ExecutorService) m.invoke( null, new Object[0] );
+	    }
+	catch (NoSuchMethodException e)
+	    {
+		System.err.println( VirtualThreadPinningTest.class.getName() + " requires a JVM that supports virtual threads (JDK 21+)." );
+		throw e;
+	    }
+    }
+
+    private static class TeeOutputStream extends OutputStream
+    {
+	OutputStream a;
+	OutputStream b;
+
+	TeeOutputStream( OutputStream a, OutputStream b )
+	{
+	    this.a = a;
+	    this.b = b;
+	}
+
+	public synchronized void write( int i ) throws IOException
+	{
+	    a.write( i );
+	    b.write( i );
+	}
+
+	public synchronized void write( byte[] bytes, int off, int len ) throws IOException
+	{
+	    a.write( bytes, off, len );
+	    b.write( bytes, off, len );
+	}
+
+	public void flush() throws IOException
+	{
+	    a.flush();
+	    b.flush();
+	}
+    }
+
+    private static void usage()
+    {
+	System.err.println("java " +
+			   "-Djdbc.drivers=<comma_sep_list_of_drivers> " +
+			   "-Djdk.tracePinnedThreads=full " +
+			   VirtualThreadPinningTest.class.getName() +
+			   " <jdbc_url> [<username> <password>]" );
+	System.exit(-1);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.Random;
+
+/*
+ * Tracks the health of a BasicResourcePool's resource source.
+ *
+ * CLOSED    -- acquisitions proceed normally. threshold consecutive failures
+ *              trip the breaker OPEN.
+ * OPEN      -- the source is presumed down. the pool ends its acquisition
+ *              series, and rejects clients who would have to wait. after a
+ *              backoff delay, a single probe acquisition is attempted.
+ * HALF_OPEN -- a probe is underway. if it succeeds, the breaker CLOSES, and
+ *              the pool refills. if it fails, the breaker reOPENs, and the
+ *              backoff delay doubles, up to a maximum.
+ *
+ * Backoff delays are jittered, drawn uniformly from the upper half of the
+ * current delay, so that many pools tripped by the same outage do not probe
+ * the database in lockstep.
+ */
+final class AcquisitionCircuitBreaker
+{
+    final static int CLOSED    = 0;
+    final static int OPEN      = 1;
+    final static int HALF_OPEN = 2;
+
+    final static String[] STATE_NAMES = { "CLOSED", "OPEN", "HALF_OPEN" };
+
+    final int  threshold;
+    final long base_backoff; //milliseconds
+    final long max_backoff;  //milliseconds
+
+    final Random random = new Random();
+
+    //MT: protected by this' lock
+    int  state                = CLOSED;
+    int  consecutive_failures = 0;
+    long backoff;
+    long trips                = 0;
+    long rejections           = 0;
+
+    AcquisitionCircuitBreaker( int threshold, long base_backoff, long max_backoff )
+    {
+        this.threshold    = Math.max( 1, threshold );
+        this.base_backoff = Math.max( 1, base_backoff );
+        this.max_backoff  = Math.max( this.base_backoff, max_backoff );
+        this.backoff      = this.base_backoff;
+    }
+
+    synchronized boolean isClosed()
+    { return state == CLOSED; }
+
+    synchronized String getStateName()
+    { return STATE_NAMES[ state ]; }
+
+    synchronized long getNumTrips()
+    { return trips; }
+
+    synchronized long getNumRejections()
+    { return rejections; }
+
+    synchronized int getConsecutiveFailures()
+    { return consecutive_failures; }
+
+    synchronized void recordRejection()
+    { ++rejections; }
+
+    /**
+     * @return true if the breaker had been OPEN or HALF_OPEN, and is now CLOSED
+     */
+    synchronized boolean recordSuccess()
+    {
+        boolean out = (state != CLOSED);
+        state = CLOSED;
+        consecutive_failures = 0;
+        backoff = base_backoff;
+        return out;
+    }
+
+    /**
+     * @return true if this failure has just tripped the breaker OPEN, in which
+     *         case the caller should schedule a probe after nextProbeDelay()
+     */
+    synchronized boolean recordFailure()
+    {
+        ++consecutive_failures;
+        if (state == HALF_OPEN || (state == CLOSED && consecutive_failures >= threshold))
+        {
+            if (state == HALF_OPEN)
+                backoff = Math.min( max_backoff, backoff * 2 );
+            state = OPEN;
+            ++trips;
+            return true;
+        }
+        else
+            return false;
+    }
+
+    /**
+     * @return true if the breaker was OPEN, and is now HALF_OPEN, in which
+     *         case the caller should make a single probe acquisition
+     */
+    synchronized boolean beginProbe()
+    {
+        if (state == OPEN)
+        {
+            state = HALF_OPEN;
+            return true;
+        }
+        else
+            return false;
+    }
+
+    /**
+     * @return a jittered delay, in milliseconds, before the next probe
+     */
+    synchronized long nextProbeDelay()
+    { return backoff / 2 + (long) (random.nextDouble() * (backoff - backoff / 2)); }
+}
@@ -0,0 +1,188 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import com.mchange.v2.async.AsynchronousRunner;
+import com.mchange.v2.log.*;
+import com.mchange.v2.util.ResourceClosedException;
+
+/*
+ * Runs a BasicResourcePool's acquisition tasks on threads of its own, at most
+ * parallelism of them at once, so that acquisitions neither compete with nor
+ * wait behind the idle tests and other tasks of the pool's shared task runner.
+ *
+ * Tasks posted while acquisitions are underway join the same queue, and are
+ * taken up by threads already running, so that a burst of requests for
+ * resources becomes a single batch, worked through in parallel, rather than
+ * many independent tasks. Threads are started only as the queue requires, and
+ * exit after lingering idle for a while.
+ */
+final class AcquisitionPipeline implements AsynchronousRunner
+{
+    final static MLogger logger = MLog.getLogger( AcquisitionPipeline.class );
+
+    final static long LINGER_MILLIS = 5000;
+
+    final int    parallelism;
+    final String threadName;
+
+    //MT: protected by this' lock
+    final LinkedList queue   = new LinkedList();
+    int              threads = 0;
+    int              idle    = 0;
+    boolean          closed  = false;
+
+    AcquisitionPipeline( int parallelism, String threadName )
+    {
+        this.parallelism = Math.max( 1, parallelism );
+        this.threadName  = threadName;
+    }
+
+    public synchronized void postRunnable( Runnable r )
+    { postBatch( Collections.singletonList( r ) ); }
+
+    /**
+     * Queues several tasks at once, starting only as many new
+     * threads as are needed, and permitted, to work through them.
+     */
+    public synchronized void postBatch( List tasks )
+    {
+        if ( closed )
+            throw new ResourceClosedException( this + " has been closed." );
+
+        queue.addAll( tasks );
+
+        int wake  = Math.min( idle, queue.size() );
+        int start = Math.min( parallelism - threads, queue.size() - wake );
+        for (int i = 0; i < wake; ++i)
+            this.notify();
+        for (int i = 0; i < start; ++i)
+        {
+            ++threads;
+            new Worker( threads ).start();
+        }
+    }
+
+    public synchronized int getNumThreads()
+    { return threads; }
+
+    public synchronized int getNumQueued()
+    { return queue.size(); }
+
+    public synchronized void close( boolean skip_remaining_tasks )
+    {
+        closed = true;
+        if ( skip_remaining_tasks )
+            queue.clear();
+        this.notifyAll();
+    }
+
+    public void close()
+    { close( true ); }
+
+    // must be called from synchronized method
+    // returns null if the calling thread should exit, in which case
+    // it is no longer counted, so that any task posted after we
+    // release our lock will start a new thread
+    private Runnable take() throws InterruptedException
+    {
+        assert Thread.holdsLock( this );
+
+        long deadline = System.currentTimeMillis() + LINGER_MILLIS;
+        while ( queue.isEmpty() && !closed )
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            if ( remaining <= 0 )
+                break;
+
+            ++idle;
+            try
+            { this.wait( remaining ); }
+            finally
+            { --idle; }
+        }
+        if ( queue.isEmpty() )
+        {
+            --threads;
+            return null;
+        }
+        else
+            return (Runnable) queue.removeFirst();
+    }
+
+    public String toString()
+    { return super.toString() + " [" + threadName + ", parallelism -> " + parallelism + "]"; }
+
+    class Worker extends Thread
+    {
+        Worker( int num )
+        {
+            super( threadName + "-#" + num );
+            this.setDaemon( true );
+        }
+
+        public void run()
+        {
+            boolean counted = true;
+            try
+            {
+                while ( true )
+                {
+                    Runnable task;
+                    synchronized ( AcquisitionPipeline.this )
+                    {
+                        task = take();
+                        if ( task == null )
+                        {
+                            counted = false;
+                            break;
+                        }
+                    }
+
+                    try
+                    { task.run(); }
+                    catch ( RuntimeException e )
+                    {
+                        if ( logger.isLoggable( MLevel.WARNING ) )
+                            logger.log( MLevel.WARNING, AcquisitionPipeline.this + " -- an acquisition task failed unexpectedly.", e );
+                    }
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                if ( logger.isLoggable( MLevel.FINE ) )
+                    logger.log( MLevel.FINE, AcquisitionPipeline.this + " -- a thread was interrupted, and will exit.", e );
+            }
+            finally
+            {
+                if ( counted )
+                {
+                    synchronized ( AcquisitionPipeline.this )
+                    { --threads; }
+                }
+            }
+        }
+    }
+}
@@ -23,7 +23,13 @@
 
 package com.mchange.v2.resourcepool;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import com.mchange.v2.async.*;
 import com.mchange.v2.log.*;
 import com.mchange.v2.lang.ThreadUtils;
@@ -37,6 +43,29 @@ class BasicResourcePool implements ResourcePool
     final static int AUTO_MAX_CULL_FREQUENCY = (15 * 60 * 1000); //15 mins
     final static int AUTO_MIN_CULL_FREQUENCY = (1 * 1000); //15 mins
 
+    // adaptive sizing
+    final static long   ADAPTIVE_SIZING_PERIOD  = 1000;      //msecs between samples
+    final static long   ADAPTIVE_RATE_TAU       = 5 * 1000;  //msecs, time constant of the rate, hold, and wait averages
+    final static long   ADAPTIVE_DECAY_TAU      = 60 * 1000; //msecs, time constant of demand's decay after a peak
+    final static double ADAPTIVE_HEADROOM       = 1.25;      //the pool is sized to predicted demand times this
+    final static double ADAPTIVE_WAIT_THRESHOLD = 1.0;       //msecs of average wait per checkout that signal a shortage
+
+    final static long MIN_CIRCUIT_BREAKER_BACKOFF = 100;     //msecs, the least delay before the first probe of an open circuit
+    final static long MAX_CIRCUIT_BREAKER_BACKOFF = 60000;   //msecs, the most by which repeated failed probes may back off
+
+    final static long MIN_SHEDDING_HOLD_SAMPLES = 10;        //checkins observed before we trust the mean hold time enough to shed
+
+    // idle tests are spread across each idle test period, which we visit in this many slices,
+    // though never more often than MIN_IDLE_TEST_SLICE allows
+    final static int  IDLE_TEST_SLICES    = 10;
+    final static long MIN_IDLE_TEST_SLICE = 1000;            //msecs
+
+    // PunchCard retirement states, see max_concurrent_retirements
+    final static int RETIREMENT_NONE     = 0; //in service
+    final static int RETIREMENT_AWAITING = 1; //due to be retired, waiting for a free retirement slot
+    final static int RETIREMENT_PENDING  = 2; //still in service, while its replacement is acquired
+    final static int RETIREMENT_DUE      = 3; //replaced, to be destroyed as soon as it is found idle
+
 
     //XXX: temporary -- for selecting between AcquireTask types
     //     remove soon, and use only ScatteredAcquireTask,
@@ -78,31 +107,138 @@ class BasicResourcePool implements ResourcePool
     final boolean break_on_acquisition_failure;
     final boolean debug_store_checkout_exceptions;
 
+    // null unless we are in concurrent checkout mode, in which case
+    // idle resources live here rather than in unused, and may be
+    // checked out and checked in without acquiring this' lock
+    final ConcurrentIdleBag idleBag;
+
+    // null unless thread affinity is enabled in concurrent checkout mode, in which
+    // case it holds, for each client Thread, a WeakReference to the resource that
+    // Thread last checked in, which it will try to reclaim before looking elsewhere
+    final ThreadLocal lastCheckedIn;
+
+    // decides where resources enter unused. (ignored in concurrent
+    // checkout mode, whose idleBag is always LIFO.)
+    final CheckoutOrdering checkout_ordering;
+
+    // if set, an AdaptiveSizingTask periodically predicts demand from
+    // smoothed checkout rates, hold times, and wait times, and grows or
+    // shrinks the pool to match, in place of excess_max_idle_time
+    final boolean adaptive_sizing;
+
+    // null unless acquisitions are to be run in parallel on threads
+    // of their own, rather than as tasks of the shared taskRunner
+    final AcquisitionPipeline acquisitionPipeline;
+
+    // null unless the pool's initial resources are to be acquired in parallel,
+    // on a pipeline of their own, in which case it is closed once the pool is
+    // ready. MT: protected by this' lock
+    AcquisitionPipeline warmupPipeline;
+
+    // the pool is "ready" once it first holds this many resources,
+    // whereupon readiness is released. see awaitReady()
+    final int            ready_size;
+    final CountDownLatch readiness = new CountDownLatch( 1 );
+
+    // null unless consecutive acquisition failures should open a circuit
+    // breaker, under which we fail waiting clients fast, and probe for the
+    // recovery of our resource source rather than hammering it
+    final AcquisitionCircuitBreaker circuitBreaker;
+
+    // if set, checkout clients never wait() on this' monitor, which would pin
+    // a virtual thread to its carrier. they enqueue in acquireWaiters instead,
+    // and park outside of this' lock.
+    final boolean virtual_thread_friendly;
+
+    // keeps per-priority statistics and, if any priority reserves resources,
+    // counts checked-out resources against their priorities
+    final PriorityLanes priorityLanes;
+
+    // null unless some priority reserves resources, in which case every checkout,
+    // and every handoff to a waiting client, must be admitted by priorityLanes.
+    // (concurrent checkout's lock-free fast paths are then bypassed.)
+    final HandoffQueue.Admission laneAdmission;
+
+    // if greater than zero, a client who would wait while this many clients
+    // already wait is rejected immediately, with a PoolSaturatedException
+    final int max_checkout_waiters;
+
+    // if set, a client who would wait is rejected immediately, with a
+    // PoolSaturatedException, if the clients ahead of it would likely
+    // keep it waiting beyond its timeout. see predictedCheckoutWait()
+    final boolean shed_predicted_timeouts;
+
+    // if greater than zero, each resource's maximum age is shortened by a random
+    // amount up to this, so that resources acquired together expire apart
+    final long max_resource_age_jitter;         //milliseconds
+
+    // if greater than zero, resources are retired "make-before-break". a resource
+    // that outlives its maximum age, or is reset, stays in service until a
+    // replacement has joined the pool, and at most this many replacements are
+    // acquired at once. see startRetirements()
+    final int max_concurrent_retirements;
+
+    // if greater than zero, at most this many idle resources are tested at once.
+    // resources whose tests come due while this many tests are underway wait
+    // for a test to finish
+    final int max_concurrent_idle_tests;
+
     final long pool_start_time = System.currentTimeMillis();
 
     //MT: not-reassigned, thread-safe, and independent
     final BasicResourcePoolFactory factory;
     final AsynchronousRunner       taskRunner;
     final RunnableQueue            asyncEventQueue;
+
+    // acquisitions, and work that checkouts wait on (check-in refurbishment,
+    // completion of asynchronous checkouts), run on acquireRunner, so that they
+    // never queue behind idle tests on testRunner or destruction on destroyRunner.
+    // each is taskRunner unless separately supplied, and taskRunner runs the rest.
+    final AsynchronousRunner       acquireRunner;
+    final AsynchronousRunner       testRunner;
+    final AsynchronousRunner       destroyRunner;
     final ResourcePoolEventSupport rpes;
+    final ResourcePoolEventRing    eventRing; //null if we don't support events
 
     //MT: protected by this' lock
-    Timer                    cullAndIdleRefurbishTimer;
-    TimerTask                cullTask;
-    TimerTask                idleRefurbishTask;
-    HashSet                  acquireWaiters = new HashSet();
+    TimingWheel              cullAndIdleRefurbishWheel;
+    TimingWheel.Timeout      cullTask;
+    TimingWheel.Timeout      idleRefurbishTask;
+    TimingWheel.Timeout      adaptiveSizingTask;
     HashSet                  otherWaiters = new HashSet();
 
+    // clients waiting to check out a resource park here, outside of this' lock,
+    // and are handed resources directly, in order of arrival
+    final HandoffQueue acquireWaiters = new HandoffQueue();
+
+    // clients checking out several resources at once wait here,
+    // outside of this' lock. see checkoutResources()
+    final BulkCheckoutSignal bulkWaiters = new BulkCheckoutSignal();
+
+    // the longest-waiting bulk client, for whom released resources are set aside.
+    // written only while holding this' lock, but in concurrent checkout mode,
+    // read without it before releasers take the lock to set something aside.
+    volatile BulkReservation bulkReservation = null;
+
+    // incremented whenever waiting clients are failed because resources
+    // could not be acquired, so that waiting bulk clients fail too
+    long acquisition_failures_signalled = 0;
+
     int pending_acquires;
     int pending_removes;
 
     int target_pool_size;
 
     /*  keys are all valid, managed resources, value is a PunchCard */ 
-    HashMap  managed = new HashMap();
+    /*  modified only while holding this' lock, but concurrent, so  */
+    /*  that it may be read without the lock in concurrent checkout */
+    /*  mode.                                                       */
+    Map  managed = new ConcurrentHashMap();
 
-    /* all valid, managed resources currently available for checkout */
-    LinkedList unused = new LinkedList();
+    /* all valid, managed resources currently available for checkout, */
+    /* in the order determined by checkout_ordering (unless we are in */
+    /* concurrent checkout mode, see idleBag)                         */
+    ResourceDeque unused = new ResourceDeque();
 
     /* resources which have been invalidated somehow, but which are */
     /* still checked out and in use.                                */
@@ -112,15 +248,88 @@ class BasicResourcePool implements ResourcePool
 
     Set idleCheckResources = new HashSet();
 
+    /* one ExpirationDeadline per managed resource (plus some, for resources */
+    /* removed since their deadlines were last examined), ordered by the     */
+    /* earliest time at which each resource might expire, so that culls     */
+    /* need examine only resources that are due.                             */
+    PriorityQueue expirationDeadlines = new PriorityQueue();
+
+    /* rolling retirement: resources due to be retired, in the order they */
+    /* came due; resources whose replacements are being acquired; and     */
+    /* resources that have been replaced, but not yet destroyed.          */
+    LinkedList awaitingRetirement = new LinkedList();
+    LinkedList retiringResources  = new LinkedList();
+    HashSet    replacedResources  = new HashSet();
+
+    Random jitterRandom = new Random();
+
     boolean force_kill_acquires = false;
 
-    boolean broken = false;
+    // volatile, so that concurrent checkouts and checkins can
+    // check it without acquiring this' lock
+    volatile boolean broken = false;
 
 //  long total_acquired = 0;
 
     long failed_checkins   = 0;
     long failed_checkouts  = 0;
     long failed_idle_tests = 0;
+    long idle_expirations  = 0;
+    long shed_checkouts    = 0;
+    long idle_tests        = 0;
+    long skipped_idle_tests = 0;
+
+    // protected by this' lock. set when idle tests came due, but
+    // max_concurrent_idle_tests were already underway
+    boolean idle_tests_deferred = false;
+
+    // punched at checkout, perhaps without this' lock in concurrent checkout mode
+    final AtomicLong checkouts_punched       = new AtomicLong( 0 );
+    final AtomicLong idle_millis_at_checkout = new AtomicLong( 0 );
+
+    // punched at checkin, and after each wait for a checkout, without this' lock
+    final AtomicLong checkins_punched        = new AtomicLong( 0 );
+    final AtomicLong held_millis             = new AtomicLong( 0 );
+    final AtomicLong checkout_wait_millis    = new AtomicLong( 0 );
+
+    // latency distributions, recorded without this' lock. checkout wait
+    // runs from a client's request to its receipt of a resource, including
+    // any refurbishment on checkout, and is recorded only for success.
+    final LatencyHistogram checkoutWaitHistogram    = new LatencyHistogram();
+    final LatencyHistogram holdTimeHistogram        = new LatencyHistogram();
+    final LatencyHistogram acquisitionTimeHistogram = new LatencyHistogram();
+
+    // queue waits and run times of the tasks we post to our runners. refurbish
+    // tasks refurbish resources on check-in, and complete asynchronous checkouts.
+    // destroy tasks include the removals by which the pool shrinks.
+    final TaskStatistics acquireTaskStatistics   = new TaskStatistics( "acquire" );
+    final TaskStatistics testTaskStatistics      = new TaskStatistics( "test" );
+    final TaskStatistics refurbishTaskStatistics = new TaskStatistics( "refurbish" );
+    final TaskStatistics destroyTaskStatistics   = new TaskStatistics( "destroy" );
+
+    // adaptive sizing state, protected by this' lock. the ewmas are
+    // exponentially weighted moving averages, updated by each sample
+    long   last_sample_time      = System.currentTimeMillis();
+    long   last_sample_checkouts = 0;
+    long   last_sample_checkins  = 0;
+    long   last_sample_held      = 0;
+    long   last_sample_waited    = 0;
+    double checkout_rate_ewma    = 0; //checkouts per second
+    double hold_time_ewma        = 0; //milliseconds
+    double wait_time_ewma        = 0; //milliseconds, per checkout
+    double demand_ewma           = 0; //resources concurrently in use or awaited
+    int    adaptive_target       = -1;
+    long   adaptive_expansions   = 0;
+    long   adaptive_contractions = 0;
+
+    // protected by this' lock. a fill begins when an empty pool
+    // starts to acquire, and ends when the pool reaches max
+    long fill_start_time   = -1;
+    long last_time_to_fill = -1;
+
+    // protected by this' lock. milliseconds from the pool's start
+    // until it was ready, or -1 if it is not yet ready
+    long time_to_ready = -1;
 
     Throwable lastCheckinFailure      = null;
     Throwable lastCheckoutFailure     = null;
@@ -144,9 +353,102 @@ class BasicResourcePool implements ResourcePool
     public synchronized long getNumFailedCheckouts()
     { return failed_checkouts; }
 
+    public synchronized long getNumShedCheckouts()
+    { return shed_checkouts; }
+
     public synchronized long getNumFailedIdleTests()
     { return failed_idle_tests; }
 
+    public synchronized long getNumIdleExpirations()
+    { return idle_expirations; }
+
+    public synchronized long getNumIdleTests()
+    { return idle_tests; }
+
+    public synchronized long getNumSkippedIdleTests()
+    { return skipped_idle_tests; }
+
+    public long getAverageIdleTimeAtCheckout()
+    {
+        long n = checkouts_punched.get();
+        return ( n == 0 ? 0 : idle_millis_at_checkout.get() / n );
+    }
+
+    public LatencyHistogram getCheckoutWaitHistogram()
+    { return checkoutWaitHistogram; }
+
+    public LatencyHistogram getHoldTimeHistogram()
+    { return holdTimeHistogram; }
+
+    public LatencyHistogram getAcquisitionTimeHistogram()
+    { return acquisitionTimeHistogram; }
+
+    public TaskStatistics getAcquireTaskStatistics()
+    { return acquireTaskStatistics; }
+
+    public TaskStatistics getTestTaskStatistics()
+    { return testTaskStatistics; }
+
+    public TaskStatistics getRefurbishTaskStatistics()
+    { return refurbishTaskStatistics; }
+
+    public TaskStatistics getDestroyTaskStatistics()
+    { return destroyTaskStatistics; }
+
+    public synchronized float getCheckoutRate()
+    { return (float) checkout_rate_ewma; }
+
+    public synchronized float getAverageHoldTime()
+    { return (float) hold_time_ewma; }
+
+    public synchronized float getAverageCheckoutWaitTime()
+    { return (float) wait_time_ewma; }
+
+    public synchronized int getAdaptiveTargetPoolSize()
+    { return adaptive_target; }
+
+    public synchronized long getNumAdaptiveExpansions()
+    { return adaptive_expansions; }
+
+    public synchronized long getNumAdaptiveContractions()
+    { return adaptive_contractions; }
+
+    public synchronized long getLastTimeToFill()
+    { return last_time_to_fill; }
+
+    public synchronized long getTimeToReady()
+    { return time_to_ready; }
+
+    /*
+     * We wait on a latch rather than this' monitor, so that
+     * waiting clients neither contend with checkouts, nor pin
+     * virtual threads to their carriers.
+     */
+    public boolean awaitReady( long timeout ) throws ResourcePoolException, InterruptedException
+    {
+        assert !Thread.holdsLock( this );
+
+        if (timeout > 0)
+            readiness.await( timeout, TimeUnit.MILLISECONDS );
+        else
+            readiness.await();
+
+        synchronized (this)
+        {
+            ensureNotBroken();
+            return time_to_ready >= 0;
+        }
+    }
+
+    public String getCircuitBreakerState()
+    { return (circuitBreaker == null ? "DISABLED" : circuitBreaker.getStateName()); }
+
+    public long getNumCircuitBreakerTrips()
+    { return (circuitBreaker == null ? 0 : circuitBreaker.getNumTrips()); }
+
+    public long getNumCircuitBreakerRejections()
+    { return (circuitBreaker == null ? 0 : circuitBreaker.getNumRejections()); }
+
     public synchronized Throwable getLastCheckinFailure()
     { return lastCheckinFailure; }
 
@@ -193,8 +495,38 @@ class BasicResourcePool implements ResourcePool
     private synchronized void setLastAcquisitionFailure( Throwable t )
     { this.lastAcquisitionFailiure = t; }
 
-    public synchronized int getNumCheckoutWaiters()
-    { return acquireWaiters.size(); }
+    public int getNumCheckoutWaiters()
+    { return acquireWaiters.size() + bulkWaiters.size(); }
+
+    public int getNumCheckoutWaiters( int priority )
+    { 
+        CheckoutPriorities.checkPriority( priority );
+        return acquireWaiters.size( priority ); 
+    }
+
+    public long getNumCheckouts( int priority )
+    { 
+        CheckoutPriorities.checkPriority( priority );
+        return priorityLanes.getNumCheckouts( priority ); 
+    }
+
+    public float getAverageCheckoutWaitTime( int priority )
+    { 
+        CheckoutPriorities.checkPriority( priority );
+        return priorityLanes.getAverageWaitTime( priority ); 
+    }
+
+    public int getNumCheckedOut( int priority )
+    { 
+        CheckoutPriorities.checkPriority( priority );
+        return priorityLanes.getInUse( priority ); 
+    }
+
+    public int getReservedCount( int priority )
+    { 
+        CheckoutPriorities.checkPriority( priority );
+        return priorityLanes.getReserved( priority ); 
+    }
 
     public synchronized int getNumPendingAcquireTasks()
     { return pending_acquires; }
@@ -202,15 +534,15 @@ class BasicResourcePool implements ResourcePool
     public synchronized int getNumPendingRemoveTasks()
     { return pending_removes; }
 
-    public synchronized int getNumThreadsWaitingForResources()
+    public int getNumThreadsWaitingForResources()
     { return acquireWaiters.size(); }
 
-    public synchronized String[] getThreadNamesWaitingForResources()
+    public String[] getThreadNamesWaitingForResources()
     {
-	int len = acquireWaiters.size();
-	String[] out = new String[len];
+	List waiting = acquireWaiters.threads();
+	String[] out = new String[waiting.size()];
 	int i = 0;
-	for (Iterator ii = acquireWaiters.iterator(); ii.hasNext(); )
+	for (Iterator ii = waiting.iterator(); ii.hasNext(); )
 	    out[i++] = ((Thread) ii.next()).getName();
 	Arrays.sort( out );
 	return out;
@@ -254,9 +586,27 @@ class BasicResourcePool implements ResourcePool
                     long                     expiration_enforcement_delay,
                     boolean                  break_on_acquisition_failure,
                     boolean                  debug_store_checkout_exceptions,
+                    boolean                  concurrent_checkout,
+                    boolean                  thread_affinity,
+                    CheckoutOrdering         checkout_ordering,
+                    boolean                  adaptive_sizing,
+                    int                      acquisition_parallelism,
+                    int                      circuit_breaker_threshold,
+                    boolean                  virtual_thread_friendly,
+                    int[]                    priority_reservations,
+                    int                      max_checkout_waiters,
+                    boolean                  shed_predicted_timeouts,
+                    int                      checkout_stripes,
+                    long                     max_resource_age_jitter,
+                    int                      max_concurrent_retirements,
+                    int                      warmup_parallelism,
+                    int                      max_concurrent_idle_tests,
                     AsynchronousRunner       taskRunner,
+                    AsynchronousRunner       acquireRunner,
+                    AsynchronousRunner       testRunner,
+                    AsynchronousRunner       destroyRunner,
                     RunnableQueue            asyncEventQueue,
-                    Timer                    cullAndIdleRefurbishTimer,
+                    TimingWheel              cullAndIdleRefurbishWheel,
                     BasicResourcePoolFactory factory)
     throws ResourcePoolException
     {
@@ -272,14 +622,37 @@ class BasicResourcePool implements ResourcePool
             this.check_idle_resources_delay       = check_idle_resources_delay;
             this.max_resource_age                 = max_resource_age;
             this.max_idle_time                    = max_idle_time;
-            this.excess_max_idle_time             = excess_max_idle_time;
+            this.excess_max_idle_time             = (adaptive_sizing ? -1 : excess_max_idle_time); //adaptive sizing does this job
             this.destroy_unreturned_resc_time     = destroy_unreturned_resc_time;
             //this.expiration_enforcement_delay     = expiration_enforcement_delay; -- set up below
             this.break_on_acquisition_failure     = break_on_acquisition_failure;
             this.debug_store_checkout_exceptions  = (debug_store_checkout_exceptions && destroy_unreturned_resc_time > 0);
+            this.idleBag                          = (concurrent_checkout ? new ConcurrentIdleBag( checkout_stripes ) : null);
+            this.lastCheckedIn                    = (concurrent_checkout && thread_affinity ? new ThreadLocal() : null);
+            this.checkout_ordering                = (checkout_ordering == null ? CheckoutOrderings.LIFO : checkout_ordering);
+            this.adaptive_sizing                  = adaptive_sizing;
+            this.acquisitionPipeline              = (acquisition_parallelism > 0 ? new AcquisitionPipeline( acquisition_parallelism, "BasicResourcePool-AcquisitionThread" ) : null);
+            this.warmupPipeline                   = (warmup_parallelism > 0 ? new AcquisitionPipeline( warmup_parallelism, "BasicResourcePool-WarmupThread" ) : null);
+            this.ready_size                       = Math.max(start, min);
+            this.circuitBreaker                   = (circuit_breaker_threshold > 0 ? 
+                                                     new AcquisitionCircuitBreaker( circuit_breaker_threshold, 
+                                                                                    Math.max( acq_attempt_delay, MIN_CIRCUIT_BREAKER_BACKOFF ), 
+                                                                                    MAX_CIRCUIT_BREAKER_BACKOFF ) :
+                                                     null);
+            this.virtual_thread_friendly          = virtual_thread_friendly;
+            this.priorityLanes                    = new PriorityLanes( max, priority_reservations );
+            this.laneAdmission                    = (priorityLanes.reserving() ? new LaneAdmission() : null);
+            this.max_checkout_waiters             = max_checkout_waiters;
+            this.shed_predicted_timeouts          = shed_predicted_timeouts;
+            this.max_resource_age_jitter          = (max_resource_age > 0 ? Math.min( Math.max( max_resource_age_jitter, 0 ), max_resource_age / 2 ) : 0);
+            this.max_concurrent_retirements       = max_concurrent_retirements;
+            this.max_concurrent_idle_tests        = max_concurrent_idle_tests;
             this.taskRunner                       = taskRunner;
+            this.acquireRunner                    = (acquireRunner != null ? acquireRunner : taskRunner);
+            this.testRunner                       = (testRunner != null ? testRunner : taskRunner);
+            this.destroyRunner                    = (destroyRunner != null ? destroyRunner : taskRunner);
             this.asyncEventQueue                  = asyncEventQueue;
-            this.cullAndIdleRefurbishTimer        = cullAndIdleRefurbishTimer;
+            this.cullAndIdleRefurbishWheel        = cullAndIdleRefurbishWheel;
             this.factory                          = factory;
 
             this.pending_acquires = 0;
@@ -288,11 +661,22 @@ class BasicResourcePool implements ResourcePool
             this.target_pool_size = Math.max(start, min);
 
             if (asyncEventQueue != null)
-                this.rpes = new ResourcePoolEventSupport(this);
+            {
+                this.rpes      = new ResourcePoolEventSupport(this);
+                this.eventRing = new ResourcePoolEventRing(rpes, asyncEventQueue);
+            }
             else
-                this.rpes = null;
+            {
+                this.rpes      = null;
+                this.eventRing = null;
+            }
 
             //start acquiring our initial resources
+            synchronized (this)
+            {
+                if (ready_size <= 0)
+                    becomeReady();
+            }
             ensureStartResources();
 
             if (mustEnforceExpiration())
@@ -302,10 +686,9 @@ class BasicResourcePool implements ResourcePool
                 else
                     this.expiration_enforcement_delay = expiration_enforcement_delay;
 
-                this.cullTask = new CullTask();
                 //System.err.println("minExpirationTime(): " + minExpirationTime());
                 //System.err.println("this.expiration_enforcement_delay: " + this.expiration_enforcement_delay);
-                cullAndIdleRefurbishTimer.schedule( cullTask, minExpirationTime(), this.expiration_enforcement_delay );
+                this.cullTask = cullAndIdleRefurbishWheel.schedule( new CullTask(), taskRunner, minExpirationTime(), this.expiration_enforcement_delay );
             }
             else
                 this.expiration_enforcement_delay = expiration_enforcement_delay;
@@ -313,12 +696,36 @@ class BasicResourcePool implements ResourcePool
             //System.err.println("this.check_idle_resources_delay: " + this.check_idle_resources_delay);
             if (check_idle_resources_delay > 0)
             {
-                this.idleRefurbishTask = new CheckIdleResourcesTask();
-                cullAndIdleRefurbishTimer.schedule( idleRefurbishTask, 
-                                check_idle_resources_delay, 
-                                check_idle_resources_delay );
+                long slice = idleTestSlice();
+                this.idleRefurbishTask = cullAndIdleRefurbishWheel.schedule( new CheckIdleResourcesTask(), 
+                                                                            taskRunner,
+                                                                            slice, 
+                                                                            slice );
+            }
+
+            if (adaptive_sizing)
+            {
+                this.adaptiveSizingTask = cullAndIdleRefurbishWheel.schedule( new AdaptiveSizingTask(), 
+                                                                             taskRunner,
+                                                                             ADAPTIVE_SIZING_PERIOD, 
+                                                                             ADAPTIVE_SIZING_PERIOD );
+                if ( excess_max_idle_time > 0 && logger.isLoggable( MLevel.INFO ) )
+                    logger.info( this + " -- adaptive sizing shrinks the pool in place of an excess idle time. " +
+                                 "excess_max_idle_time [" + excess_max_idle_time + "] will be ignored." );
             }
 
+            if ( idleBag == null && checkout_stripes > 1 && logger.isLoggable( MLevel.WARNING ) )
+                logger.warning( this + " -- checkout_stripes [" + checkout_stripes + "] is ignored, because stripes divide the idle resources " +
+                                "of concurrent checkout mode, which is not enabled." );
+
+            if ( this.max_resource_age_jitter < max_resource_age_jitter && logger.isLoggable( MLevel.WARNING ) )
+                logger.warning( this + " -- max_resource_age_jitter [" + max_resource_age_jitter + "] is limited to half of max_resource_age [" +
+                                max_resource_age + "], or to zero if resources have no maximum age. It will be " + this.max_resource_age_jitter + "." );
+
+            if ( idleBag != null && this.checkout_ordering != CheckoutOrderings.LIFO && logger.isLoggable( MLevel.WARNING ) )
+                logger.warning( this + " -- checkout ordering " + this.checkout_ordering + " is ignored in concurrent checkout mode, " +
+                                "which always checks out the most recently released resource (LIFO)." );
+
             if ( logger.isLoggable( MLevel.FINER ) )
                 logger.finer( this + " config: [start -> " + this.start + "; min -> " + this.min + "; max -> " + this.max + "; inc -> " + this.inc +
                                 "; num_acq_attempts -> " + this.num_acq_attempts + "; acq_attempt_delay -> " + this.acq_attempt_delay +
@@ -328,6 +735,23 @@ class BasicResourcePool implements ResourcePool
                                 "; expiration_enforcement_delay -> " + this.expiration_enforcement_delay + 
                                 "; break_on_acquisition_failure -> " + this.break_on_acquisition_failure + 
                                 "; debug_store_checkout_exceptions -> " + this.debug_store_checkout_exceptions + 
+                                "; concurrent_checkout -> " + (this.idleBag != null) + 
+                                "; thread_affinity -> " + (this.lastCheckedIn != null) + 
+                                "; checkout_ordering -> " + this.checkout_ordering + 
+                                "; adaptive_sizing -> " + this.adaptive_sizing + 
+                                "; acquisition_parallelism -> " + (this.acquisitionPipeline == null ? 0 : this.acquisitionPipeline.parallelism) + 
+                                "; circuit_breaker_threshold -> " + (this.circuitBreaker == null ? 0 : this.circuitBreaker.threshold) + 
+                                "; virtual_thread_friendly -> " + this.virtual_thread_friendly + 
+                                "; priority_reservations -> " + PriorityLanes.toString( this.priorityLanes.reserved ) + 
+                                "; max_checkout_waiters -> " + this.max_checkout_waiters + 
+                                "; shed_predicted_timeouts -> " + this.shed_predicted_timeouts + 
+                                "; checkout_stripes -> " + (this.idleBag == null ? 1 : this.idleBag.stripes) + 
+                                "; max_resource_age_jitter -> " + this.max_resource_age_jitter + 
+                                "; max_concurrent_retirements -> " + this.max_concurrent_retirements + 
+                                "; warmup_parallelism -> " + warmup_parallelism + 
+                                "; max_concurrent_idle_tests -> " + this.max_concurrent_idle_tests + 
+                                "; dedicated_runners -> [acquire: " + (this.acquireRunner != taskRunner) + 
+                                ", test: " + (this.testRunner != taskRunner) + ", destroy: " + (this.destroyRunner != taskRunner) + "]" +
                 "]");
 
         }
@@ -362,7 +786,7 @@ class BasicResourcePool implements ResourcePool
     {
         long out = Long.MAX_VALUE;
         if (max_resource_age > 0)
-            out = Math.min( out, max_resource_age );
+            out = Math.min( out, max_resource_age - max_resource_age_jitter );
         if (max_idle_time > 0)
             out = Math.min( out, max_idle_time );
         if (excess_max_idle_time > 0)
@@ -413,20 +837,24 @@ class BasicResourcePool implements ResourcePool
 
         if (! broken)
         {
-            int msz = managed.size();
+            int msz = managed.size() - countReplaced();
             //int expected_size = msz + pending_acquires - pending_removes;
 
 //          System.err.print("target: " + target_pool_size);
 //          System.err.println(" (msz: " + msz + "; pending_acquires: " + pending_acquires + "; pending_removes: " + pending_removes + ')');
             //new Exception( "_recheckResizePool() STACK TRACE" ).printStackTrace();
 
+            // acquisitions of replacements for retiring resources don't grow the pool,
+            // the resources they replace are still counted in msz
+            int replacing = Math.min( retiringResources.size(), pending_acquires );
+
             int shrink_count;
             int expand_count;
 
             if ((shrink_count = msz - pending_removes - target_pool_size) > 0)
                 shrinkPool( shrink_count );
-            else if ((expand_count = target_pool_size - (msz + pending_acquires)) > 0)
-                expandPool( expand_count );
+            else if ((expand_count = target_pool_size - (msz + pending_acquires - replacing)) > 0 && isCircuitClosed())
+                expandPool( expand_count ); //while the circuit is open, only probes acquire
         }
     }
 
@@ -478,17 +906,31 @@ class BasicResourcePool implements ResourcePool
     {
         assert Thread.holdsLock(this);
 
+        if (fill_start_time < 0 && managed.size() == 0 && pending_acquires == 0)
+            fill_start_time = System.currentTimeMillis();
+
+        // the whole expansion goes to the pipeline as one batch, which
+        // threads already at work acquiring will help to work through.
+        // until the pool is ready, the warm-up pipeline takes precedence.
+        AcquisitionPipeline pipeline = ( warmupPipeline != null ? warmupPipeline : acquisitionPipeline );
+        if ( pipeline != null )
+        {
+            List batch = new ArrayList( count );
+            for (int i = 0; i < count; ++i)
+                batch.add( acquireTaskStatistics.timed( new ScatteredAcquireTask() ) );
+            pipeline.postBatch( batch );
+        }
         // XXX: temporary switch -- assuming no problems appear, we'll get rid of AcquireTask
         //      in favor of ScatteredAcquireTask
-        if ( USE_SCATTERED_ACQUIRE_TASK )
+        else if ( USE_SCATTERED_ACQUIRE_TASK )
         {
             for (int i = 0; i < count; ++i)
-                taskRunner.postRunnable( new ScatteredAcquireTask() );
+                acquireTaskStatistics.post( acquireRunner, new ScatteredAcquireTask() );
         }
         else
         {
             for (int i = 0; i < count; ++i)
-                taskRunner.postRunnable( new AcquireTask() );
+                acquireTaskStatistics.post( acquireRunner, new AcquireTask() );
         }
     }
 
@@ -498,7 +940,7 @@ class BasicResourcePool implements ResourcePool
         assert Thread.holdsLock(this);
 
         for (int i = 0; i < count; ++i)
-            taskRunner.postRunnable( new RemoveTask() ); 
+            destroyTaskStatistics.post( taskRunner, new RemoveTask() );
     }
 
     /*
@@ -510,226 +952,767 @@ class BasicResourcePool implements ResourcePool
      */
     public Object checkoutResource( long timeout )
 	throws TimeoutException, ResourcePoolException, InterruptedException
-    {
-        Object resc = prelimCheckoutResource( timeout );
+    { return checkoutResource( timeout, CheckoutPriorities.NORMAL ); }
 
-        boolean refurb = attemptRefurbishResourceOnCheckout( resc );
+    public Object checkoutResource( long timeout, int priority )
+	throws TimeoutException, ResourcePoolException, InterruptedException
+    {
+        CheckoutPriorities.checkPriority( priority );
 
-        synchronized( this )
+        long start = System.nanoTime();
+        Object resc;
+        do
         {
-            if (!refurb)
+            resc = null;
+            if (idleBag != null && laneAdmission == null)
             {
-                removeResource( resc );
-                ensureMinResources();
-                resc = null;
+                if (lastCheckedIn != null)
+                    resc = reclaimLastCheckedIn();
+                if (resc == null)
+                    resc = concurrentPrelimCheckoutResource();
             }
-            else
-            {
-                asyncFireResourceCheckedOut( resc, managed.size(), unused.size(), excluded.size() );
-                if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
+            if (resc == null)
+                resc = prelimCheckoutResource( timeout, priority );
 
-                PunchCard card = (PunchCard) managed.get( resc );
-                if (card == null) //the resource has been removed!
-                {
-                    if (logger.isLoggable( MLevel.FINE ))
-                        logger.fine("Resource " + resc + " was removed from the pool while it was being checked out " +
-                        " or refurbished for checkout.");
-                    resc = null;
-                }
-                else
-                {
-                    card.checkout_time = System.currentTimeMillis();
-                    if (debug_store_checkout_exceptions)
-                        card.checkoutStackTraceException = new Exception("DEBUG STACK TRACE: Overdue resource check-out stack trace.");
-                }
-            }
+            // if resc fails refurbishment, best to do the recheckout while we 
+            // don't hold this' lock, so we don't refurbish-on-checkout while holding.
+            resc = finishCheckout( resc );
         }
+        while (resc == null);
 
-        // best to do the recheckout while we don't hold this'
-        // lock, so we don't refurbish-on-checkout while holding.
-        if (resc == null)
-            return checkoutResource( timeout );
-        else
-            return resc;
+        checkoutWaitHistogram.recordNanos( System.nanoTime() - start );
+        priorityLanes.recordCheckout( priority );
+        return resc;
     }
 
-    private synchronized Object prelimCheckoutResource( long timeout )
-	throws TimeoutException, ResourcePoolException, InterruptedException
-    {
-        try
-        {
-            ensureNotBroken();
-
-            int available = unused.size();
-            if (available == 0)
-            {
-                int msz = managed.size();
-
-                if (msz < max)
-                {
-                    // to cover all the load, we need the current size, plus those waiting already for acquisition, 
-                    // plus the current client 
-                    int desired_target = msz + acquireWaiters.size() + 1;
+    public AsyncCheckout checkoutResourceAsync( long timeout, CheckoutCallback callback )
+    { return checkoutResourceAsync( timeout, CheckoutPriorities.NORMAL, callback ); }
 
-                    if (logger.isLoggable(MLevel.FINER))
-                        logger.log(MLevel.FINER, "acquire test -- pool size: " + msz + "; target_pool_size: " + target_pool_size + "; desired target? " + desired_target);
+    public AsyncCheckout checkoutResourceAsync( long timeout, int priority, CheckoutCallback callback )
+    {
+        CheckoutPriorities.checkPriority( priority );
 
-                    if (desired_target >= target_pool_size)
-                    {
-                        //make sure we don't grab less than inc Connections at a time, if we can help it.
-                        desired_target = Math.max(desired_target, target_pool_size + inc);
+        AsyncCheckoutTask out = new AsyncCheckoutTask( timeout, priority, callback );
+        out.attempt();
+        return out;
+    }
 
-                        //make sure our target is within its bounds
-                        target_pool_size = Math.max( Math.min( max, desired_target ), min );
+    public List checkoutResources( int count, long timeout )
+	throws TimeoutException, ResourcePoolException, InterruptedException
+    { return checkoutResources( count, timeout, CheckoutPriorities.NORMAL ); }
 
-                        _recheckResizePool();
-                    }
-                }
-                else
-                {
-                    if (logger.isLoggable(MLevel.FINER))
-                        logger.log(MLevel.FINER, "acquire test -- pool is already maxed out. [managed: " + msz + "; max: " + max + "]");
-                }
+    /*
+     * All or nothing. We claim count resources in a single critical section, or
+     * request in a single batch the acquisitions that would make up the shortfall,
+     * and wait for a resource to be released before we look again.
+     *
+     * Were every bulk client to claim nothing until it could claim everything,
+     * single clients, served whenever anything is released, could starve it.
+     * So the longest-waiting bulk client holds on to what it finds, and has
+     * resources set aside for it as they are released, until it has enough
+     * (see reserveForBulk()). Other bulk clients hold nothing while they wait,
+     * so bulk clients cannot deadlock against one another, as clients who gather
+     * resources with one checkout after another can.
+     */
+    public List checkoutResources( int count, long timeout, int priority )
+	throws TimeoutException, ResourcePoolException, InterruptedException
+    {
+        CheckoutPriorities.checkPriority( priority );
 
-                awaitAvailable(timeout); //throws timeout exception
-            }
+        if (count < 1 || count > max)
+            throw new ResourcePoolException("Cannot check out " + count + " resources at once from " + this + 
+                                            ", whose maximum size is " + max + ".");
 
-            Object  resc = unused.get(0);
+        long start    = System.nanoTime();
+        long deadline = (timeout > 0 ? System.currentTimeMillis() + timeout : 0);
 
-            // this is a hack -- but "doing it right" adds a lot of complexity, and collisions between
-            // an idle check and a checkout should be relatively rare. anyway, it should work just fine.
-            if ( idleCheckResources.contains( resc ) )
-            {
-                if (Debug.DEBUG && logger.isLoggable( MLevel.FINER))
-                    logger.log( MLevel.FINER, 
-                                    "Resource we want to check out is in idleCheck! (waiting until idle-check completes.) [" + this + "]");
+        BulkReservation reservation = new BulkReservation( count, priority );
+        List out = null;
 
-                // we'll move remove() to after the if, so we don't have to add back
-                // unused.add(0, resc );
+        bulkWaiters.enter();
+        try
+        {
+            long failures;
+            synchronized (this)
+            { failures = acquisition_failures_signalled; }
 
-                // we'll wait for "something to happen" -- probably an idle check to
-                // complete -- then we'll try again and hope for the best.
-                Thread t = Thread.currentThread();
-                try
-                {
-                    otherWaiters.add ( t );
-                    this.wait( timeout );
-                    ensureNotBroken();
-                }
-                finally
-                { otherWaiters.remove( t ); }
-                return prelimCheckoutResource( timeout );
-            }
-            else if ( shouldExpire( resc ) )
+            while (out == null)
             {
-                removeResource( resc );
-                ensureMinResources();
-                return prelimCheckoutResource( timeout );
+                long seen = bulkWaiters.generation();
+                List claimed = prelimBulkCheckoutAttempt( reservation, timeout, failures );
+                if (claimed != null)
+                    out = finishBulkCheckout( claimed );
+                else if (! bulkWaiters.await( seen, deadline ))
+                    throw new TimeoutException("A client timed out while waiting to check out " + count + " resources at once from " + this + ".");
             }
-            else
+
+            long waited_nanos = System.nanoTime() - start;
+            long waited       = waited_nanos / 1000000;
+            for (int i = 0; i < count; ++i)
             {
-                unused.remove(0);
-                return resc;
+                checkoutWaitHistogram.recordNanos( waited_nanos );
+                priorityLanes.recordCheckout( priority );
+                priorityLanes.recordWait( priority, waited );
             }
+            checkout_wait_millis.addAndGet( waited * count );
+            return out;
         }
         catch ( ResourceClosedException e ) // one of our async threads died
         {
-            //System.err.println(this + " -- the pool was found to be closed or broken during an attempt to check out a resource.");
-            //e.printStackTrace();
             if (logger.isLoggable( MLevel.SEVERE ))
-                logger.log( MLevel.SEVERE, this + " -- the pool was found to be closed or broken during an attempt to check out a resource.", e );
+                logger.log( MLevel.SEVERE, this + " -- the pool was found to be closed or broken during an attempt to check out resources.", e );
 
             this.unexpectedBreak();
             throw e;
         }
-        catch ( InterruptedException e )
+        finally
         {
-            // 		System.err.println(this + " -- an attempt to checkout a resource was interrupted: some other thread " +
-            // 				   "must have either interrupted the Thread attempting checkout, or close() was called on the pool.");
-            // 		e.printStackTrace();
-            if (broken)
+            if (out == null)
+                abandonBulkReservation( reservation );
+            bulkWaiters.exit();
+        }
+    }
+
+    /*
+     * @return count resources claimed for checkout, or null if count resources
+     *         were not available, in which case r holds what we found if we are
+     *         the longest-waiting bulk client, and otherwise we have claimed none
+     */
+    private synchronized List prelimBulkCheckoutAttempt( BulkReservation r, long timeout, long failures )
+	throws ResourcePoolException
+    {
+        ensureNotBroken();
+
+        if (! isCircuitClosed())
+            throw rejectForOpenCircuit();
+
+        if (acquisition_failures_signalled != failures)
+            throw new CannotAcquireResourceException("A ResourcePool could not acquire a resource from its primary factory or source.");
+
+        int count    = r.count;
+        int priority = r.priority;
+
+        List claimed = new ArrayList( count );
+        boolean expired = false;
+
+        // first, whatever has been set aside for us
+        for (Iterator ii = r.held.iterator(); ii.hasNext(); )
+        {
+            Object resc = ii.next();
+            if ( shouldExpire( resc ) )
             {
-                if (logger.isLoggable( MLevel.FINER ))
-                    logger.log(MLevel.FINER, 
-                                    this + " -- an attempt to checkout a resource was interrupted, because the pool is now closed. " +
-                                    "[Thread: " + Thread.currentThread().getName() + ']',
-                                    e );
-                else if (logger.isLoggable( MLevel.INFO ))
-                    logger.log(MLevel.INFO, 
-                                    this + " -- an attempt to checkout a resource was interrupted, because the pool is now closed. " +
-                                    "[Thread: " + Thread.currentThread().getName() + ']');
+                removeExpiredResource( resc );
+                expired = true;
             }
             else
+                claimed.add( resc );
+        }
+        r.held.clear();
+        int reserved = claimed.size();
+
+        if (idleBag == null)
+        {
+            // we peek, and remove from unused only what we will keep
+            for (Iterator ii = unused.toList().iterator(); ii.hasNext() && claimed.size() < count; )
             {
-                if (logger.isLoggable( MLevel.WARNING ))
+                Object resc = ii.next();
+                if ( idleCheckResources.contains( resc ) )
+                    continue;
+                else if ( shouldExpire( resc ) )
                 {
-                    logger.log(MLevel.WARNING, 
-                                    this + " -- an attempt to checkout a resource was interrupted, and the pool is still live: some other thread " +
-                                    "must have either interrupted the Thread attempting checkout!",
-                                    e );
+                    removeExpiredResource( resc );
+                    expired = true;
                 }
+                else if ( admits( resc, priority ) )
+                    claimed.add( resc );
+            }
+            // we take what we found if it is enough, or if we are (or are about
+            // to become) the longest-waiting bulk client, who holds what it finds
+            if (claimed.size() == count || bulkReservation == null || bulkReservation == r)
+            {
+                for (Iterator ii = claimed.subList( reserved, claimed.size() ).iterator(); ii.hasNext(); )
+                    unused.remove( ii.next() );
             }
-            throw e;
         }
-    }
-
-    public synchronized void checkinResource( Object resc ) 
-    throws ResourcePoolException
-    {
-        try
+        else
         {
-            //we permit straggling resources to be checked in 
-            //without exception even if we are broken
-            if (managed.keySet().contains(resc))
-                doCheckinManaged( resc );
-            else if (excluded.contains(resc))
-                doCheckinExcluded( resc );
-            else if ( isFormerResource(resc) )
+            // in concurrent checkout mode, idle checks claim the resources they
+            // test, so whatever we can poll, we can check out
+            Object resc;
+            while ( claimed.size() < count && (resc = idleBag.poll()) != null )
             {
-                if ( logger.isLoggable( MLevel.FINER ) )
-                    logger.finer("Resource " + resc + " checked-in after having been checked-in already, or checked-in after " +
-                    " having being destroyed for being checked-out too long.");
+                if ( shouldExpire( resc ) )
+                {
+                    removeExpiredResource( resc );
+                    expired = true;
+                }
+                else if ( admits( resc, priority ) )
+                    claimed.add( resc );
+                else
+                {
+                    makeAvailableNoSignal( resc, CheckoutOrdering.CHECKED_IN );
+                    break; //what's idle is held for other priorities' reservations
+                }
             }
-            else
-                throw new ResourcePoolException("ResourcePool" + (broken ? " [BROKEN!]" : "") + ": Tried to check-in a foreign resource!");
-            if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
         }
-        catch ( ResourceClosedException e ) // one of our async threads died
-        {
-//          System.err.println(this + 
-//          " - checkinResource( ... ) -- even broken pools should allow checkins without exception. probable resource pool bug.");
-//          e.printStackTrace();
 
-            if ( logger.isLoggable( MLevel.SEVERE ) )
-                logger.log( MLevel.SEVERE, 
-                                this + " - checkinResource( ... ) -- even broken pools should allow checkins without exception. probable resource pool bug.", 
-                                e);
+        if (expired)
+            ensureMinResources();
 
-            this.unexpectedBreak();
-            throw e;
+        if (claimed.size() == count)
+        {
+            if (bulkReservation == r)
+                bulkReservation = null;
+            return claimed;
         }
-    }
 
-    public synchronized void checkinAll()
-    throws ResourcePoolException
-    {
-        try
+        int shortfall = count - claimed.size();
+
+        if (bulkReservation == null)
+            bulkReservation = r;
+
+        if (bulkReservation == r)
         {
-            Set checkedOutNotExcluded = new HashSet( managed.keySet() );
-            checkedOutNotExcluded.removeAll( unused );
-            for (Iterator ii = checkedOutNotExcluded.iterator(); ii.hasNext(); )
-                doCheckinManaged( ii.next() );
-            for (Iterator ii = excluded.iterator(); ii.hasNext(); )
-                doCheckinExcluded( ii.next() );
+            // we are the longest-waiting bulk client. we keep what we found.
+            r.held.addAll( claimed );
         }
-        catch ( ResourceClosedException e ) // one of our async threads died
+        else
         {
-//          System.err.println(this + 
-//          " - checkinAll() -- even broken pools should allow checkins without exception. probable resource pool bug.");
-//          e.printStackTrace();
+            // we give back whatever we found
+            for (Iterator ii = claimed.iterator(); ii.hasNext(); )
+            {
+                Object resc = ii.next();
+                if (idleBag == null)
+                {
+                    if (laneAdmission != null)
+                        releaseLane( resc );
+                }
+                else
+                    makeAvailableNoSignal( resc, CheckoutOrdering.CHECKED_IN );
+            }
+        }
 
-            if ( logger.isLoggable( MLevel.SEVERE ) )
-                logger.log( MLevel.SEVERE,
+        shedIfSaturated( priority, timeout );
+
+        // and ask for the rest as a single batch
+        int msz = managed.size();
+        if (msz < max)
+        {
+            int desired_target = msz + acquireWaiters.size() + shortfall;
+            if (desired_target >= target_pool_size)
+            {
+                desired_target = Math.max(desired_target, target_pool_size + inc);
+                target_pool_size = Math.max( Math.min( max, desired_target ), min );
+            }
+            _recheckResizePool();
+        }
+        return null;
+    }
+
+    /*
+     * Sets a released resource aside for the longest-waiting bulk client, if
+     * there is one that wants more, that may take it, and that no waiting single
+     * client outranks. Wakes the bulk client once it has all it needs.
+     *
+     * @return true if resc has been set aside
+     */
+    private boolean reserveForBulk( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        BulkReservation r = bulkReservation;
+        if (r == null || r.held.size() >= r.count)
+            return false;
+
+        for (int p = 0; p < r.priority; ++p)
+        {
+            if (acquireWaiters.size( p ) > 0)
+                return false;
+        }
+
+        if (! admits( resc, r.priority ))
+            return false;
+
+        r.held.add( resc );
+        if (r.held.size() == r.count)
+            bulkWaiters.signal();
+        return true;
+    }
+
+    /*
+     * When a bulk client gives up, by timing out or failing, we make available
+     * whatever had been set aside for it.
+     */
+    private synchronized void abandonBulkReservation( BulkReservation r )
+    {
+        if (bulkReservation == r)
+            bulkReservation = null;
+
+        boolean expired = false;
+        for (Iterator ii = r.held.iterator(); ii.hasNext(); )
+        {
+            Object resc = ii.next();
+            if (broken)
+                removeResource( resc, true ); //synchronous... if we're broken, async tasks might not work
+            else if ( shouldExpire( resc ) )
+            {
+                removeExpiredResource( resc );
+                expired = true;
+            }
+            else
+                makeAvailable( resc, CheckoutOrdering.CHECKED_IN );
+        }
+        r.held.clear();
+
+        if (expired)
+            ensureMinResources();
+    }
+
+    /*
+     * Refurbishes and marks checked out each of a set of claimed resources.
+     * Should not be called while holding this' lock.
+     *
+     * @return the resources, or null if any failed refurbishment, in which
+     *         case the rest have been checked back in, and the caller should
+     *         try again. we don't hold them while replacements are found.
+     */
+    private List finishBulkCheckout( List claimed ) throws ResourcePoolException
+    {
+        List out = new ArrayList( claimed.size() );
+        for (Iterator ii = claimed.iterator(); ii.hasNext(); )
+        {
+            Object resc = finishCheckout( ii.next() );
+            if (resc != null)
+                out.add( resc );
+        }
+
+        if (out.size() == claimed.size())
+            return out;
+        else
+        {
+            checkinResources( out );
+            return null;
+        }
+    }
+
+    /*
+     * Refurbishes a resource claimed for checkout, and marks it checked out.
+     * Should not be called while holding this' lock.
+     *
+     * @return resc, or null if it failed refurbishment, or was removed
+     *         from the pool, in which case the caller should try again
+     */
+    private Object finishCheckout( Object resc )
+    {
+        boolean refurb = attemptRefurbishResourceOnCheckout( resc );
+
+        if ( refurb && idleBag != null && !supportsEvents() )
+            resc = punchCheckout( resc ); // concurrent checkout mode, we don't need this' lock
+        else
+        {
+            synchronized( this )
+            {
+                if (!refurb)
+                {
+                    removeResource( resc );
+                    ensureMinResources();
+                    resc = null;
+                }
+                else
+                {
+                    asyncFireResourceCheckedOut( resc, managed.size(), unusedSize(), excluded.size() );
+                    if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
+
+                    resc = punchCheckout( resc );
+                }
+            }
+        }
+        return resc;
+    }
+
+    // needn't hold this' lock, since managed is a ConcurrentHashMap,
+    // and PunchCard times are volatile
+    private Object punchCheckout( Object resc )
+    {
+        PunchCard card = (PunchCard) managed.get( resc );
+        if (card == null) //the resource has been removed!
+        {
+            if (logger.isLoggable( MLevel.FINE ))
+                logger.fine("Resource " + resc + " was removed from the pool while it was being checked out " +
+                " or refurbished for checkout.");
+            return null;
+        }
+        else
+        {
+            long now = System.currentTimeMillis();
+            idle_millis_at_checkout.addAndGet( now - card.last_checkin_time );
+            checkouts_punched.incrementAndGet();
+
+            card.checkout_time = now;
+            if (debug_store_checkout_exceptions)
+                card.checkoutStackTraceException = new Exception("DEBUG STACK TRACE: Overdue resource check-out stack trace.");
+            return resc;
+        }
+    }
+
+    /*
+     * The fast path of concurrent checkout mode. We try to claim an idle
+     * resource without acquiring this' lock. If none is available, we
+     * return null, and the client falls back to prelimCheckoutResource(),
+     * which does all the waiting and pool-resizing under this' lock.
+     */
+    private Object concurrentPrelimCheckoutResource()
+    {
+        assert !Thread.holdsLock( this );
+
+        Object resc;
+        while (! broken && (resc = idleBag.poll()) != null)
+        {
+            PunchCard card = (PunchCard) managed.get( resc );
+            if (card == null) // removed from the pool even as we claimed it, the remover will destroy it
+                continue;
+            else if ( isExpired( resc, card ) )
+            {
+                synchronized (this)
+                {
+                    removeExpiredResource( resc );
+                    ensureMinResources();
+                }
+            }
+            else
+                return resc;
+        }
+        return null;
+    }
+
+    /*
+     * Checkout waiters park outside of this' lock, in a HandoffQueue,
+     * so unlike the other checkout steps, this method is not synchronized.
+     */
+    private Object prelimCheckoutResource( long timeout, int priority )
+	throws TimeoutException, ResourcePoolException, InterruptedException
+    {
+        try
+        {
+            Object resc;
+            do
+            {
+                Object attempt = prelimCheckoutAttempt( timeout, priority, null );
+                if (attempt instanceof HandoffQueue.Waiter)
+                {
+                    long wait_start = System.currentTimeMillis();
+                    try
+                    { resc = awaitHandoff( (HandoffQueue.Waiter) attempt, timeout ); }
+                    finally
+                    { 
+                        long waited = System.currentTimeMillis() - wait_start;
+                        checkout_wait_millis.addAndGet( waited ); 
+                        priorityLanes.recordWait( priority, waited );
+                    }
+                }
+                else
+                    resc = attempt;
+            }
+            while (resc == null);
+            return resc;
+        }
+        catch ( ResourceClosedException e ) // one of our async threads died
+        {
+            //System.err.println(this + " -- the pool was found to be closed or broken during an attempt to check out a resource.");
+            //e.printStackTrace();
+            if (logger.isLoggable( MLevel.SEVERE ))
+                logger.log( MLevel.SEVERE, this + " -- the pool was found to be closed or broken during an attempt to check out a resource.", e );
+
+            this.unexpectedBreak();
+            throw e;
+        }
+        catch ( InterruptedException e )
+        {
+            // 		System.err.println(this + " -- an attempt to checkout a resource was interrupted: some other thread " +
+            // 				   "must have either interrupted the Thread attempting checkout, or close() was called on the pool.");
+            // 		e.printStackTrace();
+            if (broken)
+            {
+                if (logger.isLoggable( MLevel.FINER ))
+                    logger.log(MLevel.FINER, 
+                                    this + " -- an attempt to checkout a resource was interrupted, because the pool is now closed. " +
+                                    "[Thread: " + Thread.currentThread().getName() + ']',
+                                    e );
+                else if (logger.isLoggable( MLevel.INFO ))
+                    logger.log(MLevel.INFO, 
+                                    this + " -- an attempt to checkout a resource was interrupted, because the pool is now closed. " +
+                                    "[Thread: " + Thread.currentThread().getName() + ']');
+            }
+            else
+            {
+                if (logger.isLoggable( MLevel.WARNING ))
+                {
+                    logger.log(MLevel.WARNING, 
+                                    this + " -- an attempt to checkout a resource was interrupted, and the pool is still live: some other thread " +
+                                    "must have either interrupted the Thread attempting checkout!",
+                                    e );
+                }
+            }
+            throw e;
+        }
+    }
+
+
+    /*
+     * @return an available resource, a HandoffQueue.Waiter to await if no resource
+     *         is available, or null if the caller should simply try again.
+     */
+    /*
+     * With thread affinity, the current Thread first tries to reclaim the resource
+     * it last checked in, if that has since become idle. A Thread that checks out,
+     * checks in, and checks out again thus tends to reuse one resource, whose state
+     * (cached statements, server-side session) is likely to remain warm, without
+     * contending with other Threads over the top of the idle stack.
+     */
+    private Object reclaimLastCheckedIn()
+    {
+        assert !Thread.holdsLock( this );
+
+        WeakReference ref = (WeakReference) lastCheckedIn.get();
+        Object resc = ( ref == null ? null : ref.get() );
+        if ( resc == null || broken || !idleBag.take( resc ) )
+            return null;
+
+        PunchCard card = (PunchCard) managed.get( resc );
+        if (card == null) // removed from the pool even as we claimed it, the remover will destroy it
+            return null;
+        else if ( isExpired( resc, card ) )
+        {
+            synchronized (this)
+            {
+                removeExpiredResource( resc );
+                ensureMinResources();
+            }
+            return null;
+        }
+        else
+            return resc;
+    }
+
+    /*
+     * @return a resource claimed for checkout, a HandoffQueue.Waiter enqueued
+     *         to await one, or null if the caller should try again. if listener
+     *         is non-null, the Waiter is asynchronous, and we never wait().
+     *         a resource returned has been admitted at priority.
+     */
+    private synchronized Object prelimCheckoutAttempt( long timeout, int priority, HandoffQueue.Listener listener )
+	throws TimeoutException, ResourcePoolException, InterruptedException
+    {
+        ensureNotBroken();
+
+        int available = unusedSize();
+        if (available == 0)
+        {
+            if (! isCircuitClosed())
+                throw rejectForOpenCircuit();
+
+            int msz = managed.size();
+
+            if (msz < max)
+            {
+                // to cover all the load, we need the current size, plus those waiting already for acquisition, 
+                // plus the current client 
+                int desired_target = msz + acquireWaiters.size() + 1;
+
+                if (logger.isLoggable(MLevel.FINER))
+                    logger.log(MLevel.FINER, "acquire test -- pool size: " + msz + "; target_pool_size: " + target_pool_size + "; desired target? " + desired_target);
+
+                if (desired_target >= target_pool_size)
+                {
+                    //make sure we don't grab less than inc Connections at a time, if we can help it.
+                    desired_target = Math.max(desired_target, target_pool_size + inc);
+
+                    //make sure our target is within its bounds
+                    target_pool_size = Math.max( Math.min( max, desired_target ), min );
+
+                    _recheckResizePool();
+                }
+            }
+            else
+            {
+                if (logger.isLoggable(MLevel.FINER))
+                    logger.log(MLevel.FINER, "acquire test -- pool is already maxed out. [managed: " + msz + "; max: " + max + "]");
+            }
+
+            return enqueueWaiter( priority, timeout, listener );
+        }
+
+        Object resc;
+        if (idleBag != null)
+        {
+            // in concurrent checkout mode, idle checks claim the resources they test,
+            // so we needn't worry about colliding with them. but another client might
+            // have claimed what we were awaiting without ever acquiring this' lock,
+            // or might be just in the middle of claiming it. we briefly release this'
+            // lock, so that we don't spin while such a client finishes, then try again.
+            resc = idleBag.poll();
+            if (resc == null)
+            {
+                if (listener != null || virtual_thread_friendly)
+                    return enqueueWaiter( priority, timeout, listener ); //rechecks the idleBag once enqueued
+
+                this.wait( 1 );
+                return null;
+            }
+        }
+        else
+            resc = unused.peekFirst();
+
+        // this is a hack -- but "doing it right" adds a lot of complexity, and collisions between
+        // an idle check and a checkout should be relatively rare. anyway, it should work just fine.
+        if ( idleBag == null && idleCheckResources.contains( resc ) )
+        {
+            if (Debug.DEBUG && logger.isLoggable( MLevel.FINER))
+                logger.log( MLevel.FINER, 
+                                "Resource we want to check out is in idleCheck! (waiting until idle-check completes.) [" + this + "]");
+
+            // we'll move remove() to after the if, so we don't have to add back
+            // unused.add(0, resc );
+
+            // an asynchronous client can't wait, it enqueues, as does any client
+            // if we're virtual-thread friendly. idle checks hand off their
+            // resources to waiters on completion.
+            if (listener != null || virtual_thread_friendly)
+                return enqueueWaiter( priority, timeout, listener );
+
+            // we'll wait for "something to happen" -- probably an idle check to
+            // complete -- then we'll try again and hope for the best.
+            Thread t = Thread.currentThread();
+            try
+            {
+                otherWaiters.add ( t );
+                this.wait( timeout );
+            }
+            finally
+            { otherWaiters.remove( t ); }
+            return null;
+        }
+        else if ( shouldExpire( resc ) )
+        {
+            removeExpiredResource( resc );
+            ensureMinResources();
+            return null;
+        }
+        else if (! admits( resc, priority ))
+        {
+            // what's idle is held for other priorities' reservations. we wait
+            // to be handed a resource once a checkin leaves room for us.
+            if (idleBag != null)
+                makeAvailable( resc, CheckoutOrdering.CHECKED_IN ); //we polled it, so we put it back
+            return enqueueWaiter( priority, timeout, listener );
+        }
+        else
+        {
+            if (idleBag == null)
+                unused.pollFirst();
+            return resc;
+        }
+    }
+
+    // no need to sync, but in traditional mode, callers hold this' lock,
+    // so that resc can't be checked out from under them
+    private boolean admits( Object resc, int priority )
+    { return ( laneAdmission == null || laneAdmission.admit( resc, priority ) ); }
+
+    public void checkinResource( Object resc ) 
+    throws ResourcePoolException
+    {
+        // in concurrent checkout mode, the usual case of checking in
+        // a checked-out, managed resource needn't acquire this' lock.
+        if ( idleBag != null && !broken && managed.containsKey( resc ) && idleBag.markReturning( resc ) )
+        {
+            if (lastCheckedIn != null)
+                lastCheckedIn.set( new WeakReference( resc ) );
+            refurbishTaskStatistics.post( acquireRunner, new RefurbishCheckinResourceTask( resc ) );
+        }
+        else
+            synchronizedCheckinResource( resc );
+    }
+
+    /*
+     * Checks in every resource, even if some fail, then
+     * rethrows the first failure.
+     */
+    public void checkinResources( Collection rescs ) 
+    throws ResourcePoolException
+    {
+        ResourcePoolException failure = null;
+        for (Iterator ii = rescs.iterator(); ii.hasNext(); )
+        {
+            try
+            { checkinResource( ii.next() ); }
+            catch (ResourcePoolException e)
+            {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private synchronized void synchronizedCheckinResource( Object resc ) 
+    throws ResourcePoolException
+    {
+        try
+        {
+            //we permit straggling resources to be checked in 
+            //without exception even if we are broken
+            if (managed.keySet().contains(resc))
+                doCheckinManaged( resc );
+            else if (excluded.contains(resc))
+                doCheckinExcluded( resc );
+            else if ( isFormerResource(resc) )
+            {
+                if ( logger.isLoggable( MLevel.FINER ) )
+                    logger.finer("Resource " + resc + " checked-in after having been checked-in already, or checked-in after " +
+                    " having being destroyed for being checked-out too long.");
+            }
+            else
+                throw new ResourcePoolException("ResourcePool" + (broken ? " [BROKEN!]" : "") + ": Tried to check-in a foreign resource!");
+            if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
+        }
+        catch ( ResourceClosedException e ) // one of our async threads died
+        {
+//          System.err.println(this + 
+//          " - checkinResource( ... ) -- even broken pools should allow checkins without exception. probable resource pool bug.");
+//          e.printStackTrace();
+
+            if ( logger.isLoggable( MLevel.SEVERE ) )
+                logger.log( MLevel.SEVERE, 
+                                this + " - checkinResource( ... ) -- even broken pools should allow checkins without exception. probable resource pool bug.", 
+                                e);
+
+            this.unexpectedBreak();
+            throw e;
+        }
+    }
+
+    public synchronized void checkinAll()
+    throws ResourcePoolException
+    {
+        try
+        {
+            Set checkedOutNotExcluded = new HashSet( managed.keySet() );
+            checkedOutNotExcluded.removeAll( cloneOfUnused() );
+            for (Iterator ii = checkedOutNotExcluded.iterator(); ii.hasNext(); )
+                doCheckinManaged( ii.next() );
+            for (Iterator ii = excluded.iterator(); ii.hasNext(); )
+                doCheckinExcluded( ii.next() );
+        }
+        catch ( ResourceClosedException e ) // one of our async threads died
+        {
+//          System.err.println(this + 
+//          " - checkinAll() -- even broken pools should allow checkins without exception. probable resource pool bug.");
+//          e.printStackTrace();
+
+            if ( logger.isLoggable( MLevel.SEVERE ) )
+                logger.log( MLevel.SEVERE,
                                 this + " - checkinAll() -- even broken pools should allow checkins without exception. probable resource pool bug.",
                                 e );
 
@@ -743,7 +1726,7 @@ class BasicResourcePool implements ResourcePool
     {
         try
         {
-            if ( unused.contains( resc ) )
+            if ( isUnused( resc ) )
                 return KNOWN_AND_AVAILABLE;
             else if ( managed.keySet().contains( resc ) || excluded.contains( resc ) )
                 return KNOWN_AND_CHECKED_OUT;
@@ -806,18 +1789,22 @@ class BasicResourcePool implements ResourcePool
 //  }
 
     public synchronized int getAvailableCount()
-    { return unused.size(); }
+    { return unusedSize(); }
 
     public synchronized int getExcludedCount()
     { return excluded.size(); }
 
     public synchronized int getAwaitingCheckinCount()
-    { return managed.size() - unused.size() + excluded.size(); }
+    { return managed.size() - unusedSize() + excluded.size(); }
 
     public synchronized void resetPool()
     {
         try
         {
+            // everything goes now, so no retirements remain to be made
+            awaitingRetirement.clear();
+            retiringResources.clear();
+
             for (Iterator ii = cloneOfManaged().keySet().iterator(); ii.hasNext();)
                 markBrokenNoEnsureMinResources(ii.next());
             ensureMinResources();
@@ -831,6 +1818,34 @@ class BasicResourcePool implements ResourcePool
         }
     }
 
+    public synchronized void retireAllResources()
+    {
+        if (max_concurrent_retirements <= 0)
+            resetPool();
+        else
+        {
+            try
+            {
+                for (Iterator ii = managed.entrySet().iterator(); ii.hasNext();)
+                {
+                    Map.Entry entry = (Map.Entry) ii.next();
+                    PunchCard pc = (PunchCard) entry.getValue();
+                    if (pc.retirement == RETIREMENT_NONE)
+                        awaitRetirement( entry.getKey(), pc );
+                }
+                startRetirements();
+                ensureMinResources();
+            }
+            catch ( ResourceClosedException e ) // one of our async threads died
+            {
+                //e.printStackTrace();
+                if ( logger.isLoggable( MLevel.SEVERE ) )
+                    logger.log( MLevel.SEVERE, "Apparent pool break.", e );
+                this.unexpectedBreak();
+            }
+        }
+    }
+
     public synchronized void close() 
     throws ResourcePoolException
     {
@@ -876,7 +1891,7 @@ class BasicResourcePool implements ResourcePool
     // this is designed as a response to a determination that our resource source is down.
     // rather than declaring ourselves broken in this case (as we did previously), we
     // kill all pending acquisition attempts, but retry on new acqusition requests.
-    private synchronized void forceKillAcquires() throws InterruptedException
+    private synchronized void forceKillAcquires()
     {
 	if (logger.isLoggable(MLevel.WARNING))
 	    logger.log(MLevel.WARNING, 
@@ -885,21 +1900,60 @@ class BasicResourcePool implements ResourcePool
 		       " is interrupting all Threads waiting on a resource to check out. " +
 		       "Will try again in response to new client requests.");
 
-        Thread t = Thread.currentThread();
+        force_kill_acquires = true;
+        acquireWaiters.failAll(); //wake up any threads waiting on an acquire, and force them all to die.
+        force_kill_acquires = false;
 
-        try
+        ++acquisition_failures_signalled;
+        bulkWaiters.signal();
+    }
+
+    private boolean isCircuitClosed()
+    { return (circuitBreaker == null || circuitBreaker.isClosed()); }
+
+    // must be called from synchronized method
+    private CircuitOpenException rejectForOpenCircuit()
+    {
+        assert Thread.holdsLock( this );
+
+        circuitBreaker.recordRejection();
+        return new CircuitOpenException("A ResourcePool's acquisition circuit breaker is open -- the pool's primary factory or source appears to be down. " +
+                                        "[" + this + ", circuit breaker state: " + circuitBreaker.getStateName() + "]", lastAcquisitionFailiure);
+    }
+
+    // like forceKillAcquires(), a response to a determination that our resource source is down.
+    // but rather than retrying on new client requests, we fail them fast, and ourselves
+    // probe for the source's recovery, after a backoff that grows while failures persist.
+    private synchronized void circuitOpened( Exception e )
+    {
+        long delay = circuitBreaker.nextProbeDelay();
+        int  failures = circuitBreaker.getConsecutiveFailures();
+        if (failures > circuitBreaker.threshold) // a failed probe has reopened the circuit, we've already warned
         {
-            force_kill_acquires = true;
-            this.notifyAll(); //wake up any threads waiting on an acquire, and force them all to die.
-            while (acquireWaiters.size() > 0) //we want to let all the waiting acquires die before we unset force_kill_acquires
-            {
-                otherWaiters.add( t ); 
-                this.wait();
-            }
-            force_kill_acquires = false;
+            if (logger.isLoggable(MLevel.FINE))
+                logger.log(MLevel.FINE, this + " -- acquisition circuit breaker probe failed (" + failures + " consecutive failures). " +
+                           "Will probe again in " + delay + " msecs.", e);
         }
-        finally
-        { otherWaiters.remove( t ); }
+        else if (logger.isLoggable(MLevel.WARNING))
+            logger.log(MLevel.WARNING, 
+                       this + " -- " + failures + " consecutive acquisition attempts have failed. " +
+                       "The acquisition circuit breaker is open: clients that would wait for a resource will fail immediately. " +
+                       "Will probe for recovery in " + delay + " msecs.",
+                       e);
+
+        acquireWaiters.failAll(); //wake up any threads waiting on an acquire, they will see the open circuit
+        bulkWaiters.signal();
+        if (! broken)
+            cullAndIdleRefurbishWheel.schedule( new CircuitBreakerProbeTask(), 
+                                                (acquisitionPipeline != null ? (AsynchronousRunner) acquisitionPipeline : acquireRunner), 
+                                                delay );
+    }
+
+    private synchronized void circuitClosed()
+    {
+        if (logger.isLoggable(MLevel.INFO))
+            logger.info(this + " -- an acquisition has succeeded. The acquisition circuit breaker is closed, and the pool will refill.");
+        _recheckResizePool();
     }
 
     //same as close(), but we do not destroy checked out
@@ -916,77 +1970,46 @@ class BasicResourcePool implements ResourcePool
     { return ( asyncEventQueue != null && !isBroken() ); }
 
     // no need to sync
-    private void asyncFireResourceAcquired( final Object       resc,
-                    final int          pool_size,
-                    final int          available_size,
-                    final int          removed_but_unreturned_size )
+    // events are handed to the preallocated ring, which neither allocates nor locks,
+    // and are delivered in batches by its drain task
+    private void asyncFireResourceAcquired( Object       resc,
+                    int          pool_size,
+                    int          available_size,
+                    int          removed_but_unreturned_size )
     {
         if ( canFireEvents() )
-        {
-            Runnable r = new Runnable()
-            {
-                public void run()
-                {rpes.fireResourceAcquired(resc, pool_size, available_size, removed_but_unreturned_size);}
-            };
-            asyncEventQueue.postRunnable(r);
-        }
+            eventRing.publish( ResourcePoolEventRing.ACQUIRED, resc, false, pool_size, available_size, removed_but_unreturned_size );
     }
 
     // no need to sync
-    private void asyncFireResourceCheckedIn( final Object       resc,
-                    final int          pool_size,
-                    final int          available_size,
-                    final int          removed_but_unreturned_size )
+    private void asyncFireResourceCheckedIn( Object       resc,
+                    int          pool_size,
+                    int          available_size,
+                    int          removed_but_unreturned_size )
     {
         if ( canFireEvents() )
-        {
-            Runnable r = new Runnable()
-            {
-                public void run()
-                {rpes.fireResourceCheckedIn(resc, pool_size, available_size, removed_but_unreturned_size);}
-            };
-            asyncEventQueue.postRunnable(r);
-        }
+            eventRing.publish( ResourcePoolEventRing.CHECKED_IN, resc, false, pool_size, available_size, removed_but_unreturned_size );
     }
 
     // no need to sync
-    private void asyncFireResourceCheckedOut( final Object       resc,
-                    final int          pool_size,
-                    final int          available_size,
-                    final int          removed_but_unreturned_size )
+    private void asyncFireResourceCheckedOut( Object       resc,
+                    int          pool_size,
+                    int          available_size,
+                    int          removed_but_unreturned_size )
     {
         if ( canFireEvents() )
-        {
-            Runnable r = new Runnable()
-            {
-                public void run()
-                {rpes.fireResourceCheckedOut(resc,pool_size,available_size,removed_but_unreturned_size);}
-            };
-            asyncEventQueue.postRunnable(r);
-        }
+            eventRing.publish( ResourcePoolEventRing.CHECKED_OUT, resc, true, pool_size, available_size, removed_but_unreturned_size );
     }
 
     // no need to sync
-    private void asyncFireResourceRemoved( final Object       resc,
-                    final boolean      checked_out_resource,
-                    final int          pool_size,
-                    final int          available_size,
-                    final int          removed_but_unreturned_size )
+    private void asyncFireResourceRemoved( Object       resc,
+                    boolean      checked_out_resource,
+                    int          pool_size,
+                    int          available_size,
+                    int          removed_but_unreturned_size )
     {
         if ( canFireEvents() )
-        {
-            //System.err.println("ASYNC RSRC REMOVED");
-            //new Exception().printStackTrace();
-            Runnable r = new Runnable()
-            {
-                public void run()
-                {
-                    rpes.fireResourceRemoved(resc, checked_out_resource,
-                                    pool_size,available_size,removed_but_unreturned_size);
-                }
-            };
-            asyncEventQueue.postRunnable(r);
-        }
+            eventRing.publish( ResourcePoolEventRing.REMOVED, resc, checked_out_resource, pool_size, available_size, removed_but_unreturned_size );
     }
 
     // needn't be called from a sync'ed method
@@ -1038,7 +2061,7 @@ class BasicResourcePool implements ResourcePool
         }
         else
         {
-            try { taskRunner.postRunnable( r ); }
+            try { destroyTaskStatistics.post( destroyRunner, r ); }
             catch (Exception e)
             {
                 if (logger.isLoggable(MLevel.FINER))
@@ -1071,7 +2094,20 @@ class BasicResourcePool implements ResourcePool
     {
         assert !Thread.holdsLock( this );
 
-        Object resc = mgr.acquireResource(); //note we acquire the resource while we DO NOT hold the pool's lock!
+        Object resc;
+        long start = System.nanoTime();
+        try
+        { resc = mgr.acquireResource(); } //note we acquire the resource while we DO NOT hold the pool's lock!
+        catch (Exception e)
+        {
+            if (circuitBreaker != null && circuitBreaker.recordFailure())
+                circuitOpened( e );
+            throw e;
+        }
+        acquisitionTimeHistogram.recordNanos( System.nanoTime() - start );
+
+        if (circuitBreaker != null && circuitBreaker.recordSuccess())
+            circuitClosed();
 
         boolean destroy = false;
         int msz;
@@ -1080,8 +2116,8 @@ class BasicResourcePool implements ResourcePool
         {
 	    try
 		{
-		    msz = managed.size();
-		    if (!broken && msz < target_pool_size)
+		    msz = managed.size() - countReplaced();
+		    if (!broken && (msz < target_pool_size || !retiringResources.isEmpty())) //a replacement for a retiring resource is always needed
 			assimilateResource(resc); 
 		    else
 			destroy = true;
@@ -1201,7 +2237,7 @@ class BasicResourcePool implements ResourcePool
     {
         assert Thread.holdsLock( this );
 
-        if ( unused.contains( resc ) )
+        if ( claimUnused( resc ) )
             removeResource( resc ); 
         else
             excludeResource( resc );
@@ -1224,6 +2260,14 @@ class BasicResourcePool implements ResourcePool
                 cullTask.cancel();
             if (idleRefurbishTask != null)
                 idleRefurbishTask.cancel();
+            if (adaptiveSizingTask != null)
+                adaptiveSizingTask.cancel();
+            if (acquisitionPipeline != null)
+                acquisitionPipeline.close( true );
+            if (warmupPipeline != null)
+                warmupPipeline.close( true );
+            expirationDeadlines.clear();
+            readiness.countDown(); //wake clients awaiting readiness, they will see we are broken
 
             // we destroy resources asynchronously, but with a dedicated one-off Thread, rather than
             // our asynchronous runner, because our asynchrous runner may be shutting down. The
@@ -1233,7 +2277,13 @@ class BasicResourcePool implements ResourcePool
             // the possibility of deadlock.
 
             managed.keySet().removeAll( cleanupResources );
-            unused.removeAll( cleanupResources );
+            if (idleBag == null)
+                unused.removeAll( cleanupResources );
+            else
+            {
+                for (Iterator ii = cleanupResources.iterator(); ii.hasNext(); )
+                    idleBag.remove( ii.next() );
+            }
             Thread resourceDestroyer = new Thread("Resource Destroyer in BasicResourcePool.close()")
             {
                 public void run()
@@ -1261,8 +2311,9 @@ class BasicResourcePool implements ResourcePool
             };
             resourceDestroyer.start();
 
-            for (Iterator ii = acquireWaiters.iterator(); ii.hasNext(); )
-                ((Thread) ii.next()).interrupt();
+            acquireWaiters.interruptAll();
+            acquireWaiters.failAsynchronous();
+            bulkWaiters.signal(); //they will see that we are broken
             for (Iterator ii = otherWaiters.iterator(); ii.hasNext(); )
                 ((Thread) ii.next()).interrupt();
             if (factory != null)
@@ -1291,7 +2342,11 @@ class BasicResourcePool implements ResourcePool
 
 
 
-        if (unused.contains(resc))
+        // in concurrent checkout mode, a resource that is still being refurbished
+        // after a prior checkin can't be marked as returning again
+        boolean already_checked_in = ( isUnused(resc) || (idleBag != null && !broken && !idleBag.markReturning( resc )) );
+
+        if (already_checked_in)
         {
             if ( Debug.DEBUG )
 		{
@@ -1306,112 +2361,412 @@ class BasicResourcePool implements ResourcePool
             removeResource( resc, true ); //synchronous... if we're broken, async tasks might not work
         else
         {
-            class RefurbishCheckinResourceTask implements Runnable
+            Runnable doMe = new RefurbishCheckinResourceTask( resc );
+            refurbishTaskStatistics.post( acquireRunner, doMe );
+        }
+
+	//lastCheckIns.put( resc, new Exception("LAST CHECK IN") );
+    }
+
+    class RefurbishCheckinResourceTask implements Runnable
+    {
+        final Object resc;
+
+        RefurbishCheckinResourceTask( Object resc )
+        { this.resc = resc; }
+
+        public void run()
+        {
+            boolean resc_okay = attemptRefurbishResourceOnCheckin( resc );
+
+            // in concurrent checkout mode, a successfully refurbished resource
+            // can be made available without acquiring the pool's lock
+            if ( resc_okay && idleBag != null && !supportsEvents() && concurrentCheckinRefurbished( resc ) )
+                return;
+
+            synchronized( BasicResourcePool.this )
             {
-                public void run()
+                PunchCard card = (PunchCard) managed.get( resc );
+
+                if ( resc_okay && card != null) //we have to check that the resource is still in the pool
+                {
+                    punchCheckin( card );
+
+                    makeAvailable( resc, CheckoutOrdering.CHECKED_IN );
+                    examineOnCheckin( resc, card );
+                }
+                else
+                {
+                    if (card != null)
+                        card.checkout_time = -1; //so we don't see this as still checked out and log an overdue cxn in removeResource()
+
+                    removeResource( resc );
+                    ensureMinResources();
+
+                    if (card == null && logger.isLoggable( MLevel.FINE ))
+                        logger.fine("Resource " + resc + " was removed from the pool during its refurbishment for checkin.");
+                }
+
+                asyncFireResourceCheckedIn( resc, managed.size(), unusedSize(), excluded.size() );
+                BasicResourcePool.this.notifyAll();
+            }
+        }
+    }
+
+    /*
+     * @return false if the resource was removed from the pool while it was being refurbished,
+     *         in which case the caller should sort things out while holding this' lock
+     */
+    private boolean concurrentCheckinRefurbished( Object resc )
+    {
+        assert !Thread.holdsLock( this );
+
+        PunchCard card = (PunchCard) managed.get( resc );
+        if (card == null)
+            return false;
+
+        punchCheckin( card );
+
+        boolean out = makeAvailable( resc, CheckoutOrdering.CHECKED_IN );
+        if (out)
+            examineOnCheckin( resc, card );
+        return out;
+    }
+
+    /*
+     * A resource that came due for expiration by age or retirement while
+     * checked out has no deadline for that (see scheduleExpirationCheck()),
+     * so its checkin schedules one. This takes this' lock, but few checkins
+     * find the flag set.
+     */
+    private void examineOnCheckin( Object resc, PunchCard card )
+    {
+        if (card.examine_on_checkin)
+        {
+            synchronized (this)
+            {
+                if (card.examine_on_checkin && managed.get( resc ) == card)
+                {
+                    card.examine_on_checkin = false;
+                    scheduleExpirationCheck( resc, card, System.currentTimeMillis() );
+                }
+            }
+        }
+    }
+
+    // needn't hold this' lock, PunchCard times are volatile
+    private void punchCheckin( PunchCard card )
+    {
+        long now = System.currentTimeMillis();
+        long checkout_time = card.checkout_time;
+        if (checkout_time >= 0)
+        {
+            held_millis.addAndGet( now - checkout_time );
+            checkins_punched.incrementAndGet();
+            holdTimeHistogram.recordMillis( now - checkout_time );
+        }
+
+        card.last_checkin_time = now;
+        card.checkout_time = -1;
+
+        if (laneAdmission != null)
+            priorityLanes.release( card );
+    }
+
+    private void doCheckinExcluded( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        excluded.remove(resc);
+        destroyResource(resc);
+    }
+
+    /*
+     * Enqueues the current Thread to await a resource handed off by a checkin or
+     * acquisition. In concurrent checkout mode, may instead return a resource that
+     * became available just as we enqueued.
+     */
+    private Object enqueueWaiter( int priority, long timeout, HandoffQueue.Listener listener ) throws TimeoutException, ResourcePoolException, InterruptedException
+    {
+        assert Thread.holdsLock( this );
+
+        if (force_kill_acquires)
+            throw new ResourcePoolException("A ResourcePool cannot acquire a new resource -- the factory or source appears to be down.");
+
+        shedIfSaturated( priority, timeout );
+
+        if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
+        {
+            if ( logger.isLoggable( MLevel.FINE ) )
+                logger.fine("enqueueWaiter(): " + 
+                                (exampleResource != null ? 
+                                                exampleResource : 
+                                "[unknown]") );
+            trace();
+        }
+
+        // if external management of the pool (via for instance unpoolResource())
+        // has depleted it, with no acquires scheduled, we might wait forever.
+        // this could only occur in fairly pathological situations where the pool
+        // is being externally forced to a very low (even zero) size, but since
+        // I've seen it, I've fixed it.
+        if (pending_acquires == 0 && managed.size() < max)
+            _recheckResizePool();
+
+        HandoffQueue.Waiter waiter = ( listener == null ? acquireWaiters.enqueue( priority ) : acquireWaiters.enqueue( priority, listener ) );
+
+        // in concurrent checkout mode, a resource may have been released without
+        // this' lock after we found none available, but before we enqueued. so we
+        // check again. (releasers check for waiters only after releasing, so
+        // between us, nothing is missed.)
+        if (idleBag != null)
+        {
+            Object resc = idleBag.poll();
+            if (resc != null)
+            {
+                if ( admits( resc, priority ) && waiter.cancel() )
                 {
-                    boolean resc_okay = attemptRefurbishResourceOnCheckin( resc );
-                    synchronized( BasicResourcePool.this )
+                    if ( shouldExpire( resc ) )
                     {
-                        PunchCard card = (PunchCard) managed.get( resc );
+                        removeExpiredResource( resc );
+                        ensureMinResources();
+                        return null;
+                    }
+                    else
+                        return resc;
+                }
+                else
+                    makeAvailable( resc, CheckoutOrdering.CHECKED_IN ); // we've already been handed something, or may not take this, let someone else have it
+            }
+        }
+        return waiter;
+    }
+
+    /*
+     * Load shedding. Rather than let a client wait out its full timeout when
+     * the pool cannot serve it in time, so that it fails late and holds its
+     * thread all the while, we fail it right away.
+     */
+    private void shedIfSaturated( int priority, long timeout ) throws PoolSaturatedException
+    {
+        assert Thread.holdsLock( this );
+
+        int waiting = acquireWaiters.size();
+        if (max_checkout_waiters > 0 && waiting >= max_checkout_waiters)
+        {
+            ++shed_checkouts;
+            throw new PoolSaturatedException("A client could not check out a resource from " + this + " because " + waiting + 
+                                             " clients were already waiting, and maxCheckoutWaiters is " + max_checkout_waiters + ".");
+        }
+
+        if (shed_predicted_timeouts && timeout > 0)
+        {
+            long predicted = predictedCheckoutWait( priority );
+            if (predicted > timeout)
+            {
+                ++shed_checkouts;
+                throw new PoolSaturatedException("A client could not check out a resource from " + this + " because it would likely have waited " +
+                                                 predicted + " msecs, beyond its timeout of " + timeout + " msecs. [waiting clients: " + waiting + 
+                                                 ", average hold time: " + (long) meanHoldTime() + " msecs]");
+            }
+        }
+    }
+
+    /*
+     * Estimates how long a client enqueued now at priority would wait. Those
+     * served before it are those waiting at its priority or higher. With the
+     * pool at max, and resources held for the mean hold time, a resource is
+     * checked in every mean_hold / max milliseconds, roughly. (Clients enqueued
+     * later at higher priorities might yet cut ahead, so this errs low.)
+     *
+     * @return the predicted wait in milliseconds, or 0 if we have not yet
+     *         observed enough checkins to guess
+     */
+    private long predictedCheckoutWait( int priority )
+    {
+        assert Thread.holdsLock( this );
+
+        if (checkins_punched.get() < MIN_SHEDDING_HOLD_SAMPLES)
+            return 0;
+
+        int ahead = 0;
+        for (int p = 0; p <= priority; ++p)
+            ahead += acquireWaiters.size( p );
+
+        return (long) ( (ahead + 1) * meanHoldTime() / Math.max( 1, max ) );
+    }
+
+    // adaptive sizing keeps a responsive average of hold times. otherwise,
+    // we make do with the mean over the life of the pool.
+    private double meanHoldTime()
+    {
+        assert Thread.holdsLock( this );
+
+        if (adaptive_sizing && hold_time_ewma > 0)
+            return hold_time_ewma;
+        else
+        {
+            long n = checkins_punched.get();
+            return ( n == 0 ? 0 : (double) held_millis.get() / n );
+        }
+    }
+
+    /*
+     * Must not be called while holding this' lock. By the
+     * semantics of wait(), a timeout of zero means forever.
+     *
+     * @return the resource handed to waiter, or null if
+     *         it has expired and the caller should try again
+     */
+    private Object awaitHandoff( HandoffQueue.Waiter waiter, long timeout ) 
+	throws TimeoutException, ResourcePoolException, InterruptedException
+    {
+        assert !Thread.holdsLock( this );
+
+        switch ( waiter.await( timeout ) )
+        {
+        case HandoffQueue.Waiter.FULFILLED:
+            Object resc = waiter.getResource();
+            synchronized ( this )
+            {
+                ensureNotBroken();
+                if ( shouldExpire( resc ) )
+                {
+                    removeExpiredResource( resc );
+                    ensureMinResources();
+                    return null;
+                }
+                else
+                    return resc;
+            }
+        case HandoffQueue.Waiter.FAILED:
+            if (! isCircuitClosed())
+                throw new CircuitOpenException("A ResourcePool's acquisition circuit breaker opened while a client waited for a resource. " +
+                                               "The pool's primary factory or source appears to be down.");
+            throw new CannotAcquireResourceException("A ResourcePool could not acquire a resource from its primary factory or source.");
+        default: // CANCELLED
+            synchronized ( this )
+            { ensureNotBroken(); }
+            throw new TimeoutException("A client timed out while waiting to acquire a resource from " + this + " -- timeout at awaitHandoff()");
+        }
+    }
 
-                        if ( resc_okay && card != null) //we have to check that the resource is still in the pool
-                        {
-                            unused.add(0,  resc );
+    /*
+     * Makes a resource that the pool holds -- newly acquired, just refurbished
+     * on checkin, or just tested -- available, handing it directly to the
+     * longest-waiting client of the highest priority that may be admitted, if
+     * there is one. Otherwise, in traditional mode,
+     * checkout_ordering decides where in unused it goes, given the reason
+     * (a CheckoutOrdering constant) it has become available.
+     *
+     * In traditional mode, must be called while holding this' lock. In
+     * concurrent checkout mode, needn't be.
+     *
+     * @return false if in concurrent checkout mode, resc was removed from the
+     *         pool, in which case the caller should sort things out while holding
+     *         this' lock
+     */
+    private boolean makeAvailable( Object resc, int reason )
+    {
+        boolean out = makeAvailableNoSignal( resc, reason );
+        bulkWaiters.signal();
+        return out;
+    }
 
-                            card.last_checkin_time = System.currentTimeMillis();
-                            card.checkout_time = -1;
-                        }
-                        else
-                        {
-                            if (card != null)
-                                card.checkout_time = -1; //so we don't see this as still checked out and log an overdue cxn in removeResource()
+    /*
+     * As makeAvailable(), but doesn't wake bulk clients. For returning
+     * resources a bulk client claimed during a single critical section,
+     * which other bulk clients, who look only while holding this' lock,
+     * could never have seen missing.
+     */
+    private boolean makeAvailableNoSignal( Object resc, int reason )
+    {
+        if (laneAdmission != null)
+            releaseLane( resc );
 
-                            removeResource( resc );
-                            ensureMinResources();
+        if (idleBag == null)
+        {
+            assert Thread.holdsLock( this );
 
-                            if (card == null && logger.isLoggable( MLevel.FINE ))
-                                logger.fine("Resource " + resc + " was removed from the pool during its refurbishment for checkin.");
-                        }
+            if ( bulkReservation != null && reserveForBulk( resc ) )
+                return true;
+            else if (! acquireWaiters.handoff( resc, laneAdmission ))
+            {
+                if ( checkout_ordering.placement( reason ) == CheckoutOrdering.BACK )
+                    unused.addLast( resc );
+                else
+                    unused.addFirst( resc );
+            }
+        }
+        else if (! idleBag.markOut( resc ))
+            return false;
+        else if ( bulkReservation != null && synchronizedReserveForBulk( resc ) )
+            return true;
+        else if (! acquireWaiters.handoff( resc, laneAdmission ))
+        {
+            idleBag.release( resc );
 
-                        asyncFireResourceCheckedIn( resc, managed.size(), unused.size(), excluded.size() );
-                        BasicResourcePool.this.notifyAll();
-                    }
+            // a waiter may have enqueued itself after we tried to hand off, but checked
+            // for available resources before we released. waiters enqueue before checking,
+            // and we released before checking for waiters, so at least one of us will see
+            // the other.
+            while ( acquireWaiters.size() > 0 && (resc = idleBag.poll()) != null )
+            {
+                if (! acquireWaiters.handoff( resc, laneAdmission ))
+                {
+                    idleBag.release( resc );
+                    if (laneAdmission != null)
+                        break; //the waiters may not be admitted, we'd just spin
                 }
             }
-
-            Runnable doMe = new RefurbishCheckinResourceTask();
-            taskRunner.postRunnable( doMe );
         }
-
-	//lastCheckIns.put( resc, new Exception("LAST CHECK IN") );
+        return true;
     }
 
-    private void doCheckinExcluded( Object resc )
-    {
-        assert Thread.holdsLock( this );
+    private synchronized boolean synchronizedReserveForBulk( Object resc )
+    { return reserveForBulk( resc ); }
 
-        excluded.remove(resc);
-        destroyResource(resc);
+    // no need to sync, priorityLanes has its own lock
+    private boolean releaseLane( Object resc )
+    {
+        PunchCard card = (PunchCard) managed.get( resc );
+        return ( card != null && priorityLanes.release( card ) );
     }
 
     /*
-     * by the semantics of wait(), a timeout of zero means forever.
+     * When a checked-out resource leaves the pool, the room it held within
+     * other priorities' reservations is freed, perhaps admitting waiters
+     * that idle resources could not serve before. Checkins free room too,
+     * but they bring a resource with them, so they needn't call this.
      */
-    private void awaitAvailable(long timeout) throws InterruptedException, TimeoutException, ResourcePoolException
+    private void serveWaitersFromIdle()
     {
         assert Thread.holdsLock( this );
 
-        if (force_kill_acquires)
-            throw new ResourcePoolException("A ResourcePool cannot acquire a new resource -- the factory or source appears to be down.");
-
-        Thread t = Thread.currentThread();
-        try
+        if (idleBag == null)
         {
-            acquireWaiters.add( t );
-
-            int avail;
-            long start = ( timeout > 0 ? System.currentTimeMillis() : -1);
-            if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX)
-            {
-                if ( logger.isLoggable( MLevel.FINE ) )
-                    logger.fine("awaitAvailable(): " + 
-                                    (exampleResource != null ? 
-                                                    exampleResource : 
-                                    "[unknown]") );
-                trace();
-            }
-            while ((avail = unused.size()) == 0) 
-            {
-                // the if case below can only occur when 1) a user attempts a
-                // checkout which would provoke an acquire; 2) this
-                // increments the pending acquires, so we go to the
-                // wait below without provoking postAcquireMore(); 3)
-                // the resources are acquired; 4) external management
-                // of the pool (via for instance unpoolResource() 
-                // depletes the newly acquired resources before we
-                // regain this' monitor; 5) we fall into wait() with
-                // no acquires being scheduled, and perhaps a managed.size()
-                // of zero, leading to deadlock. This could only occur in
-                // fairly pathological situations where the pool is being
-                // externally forced to a very low (even zero) size, but 
-                // since I've seen it, I've fixed it.
-                if (pending_acquires == 0 && managed.size() < max)
-                    _recheckResizePool();
-
-                this.wait(timeout);
-                if (timeout > 0 && System.currentTimeMillis() - start > timeout)
-                    throw new TimeoutException("A client timed out while waiting to acquire a resource from " + this + " -- timeout at awaitAvailable()");
-                if (force_kill_acquires)
-                    throw new CannotAcquireResourceException("A ResourcePool could not acquire a resource from its primary factory or source.");
-                ensureNotBroken();
+            for (Iterator ii = cloneOfUnused().iterator(); ii.hasNext() && acquireWaiters.size() > 0; )
+            {
+                Object resc = ii.next();
+                if ( idleCheckResources.contains( resc ) )
+                    continue;
+                else if ( acquireWaiters.handoff( resc, laneAdmission ) )
+                    unused.remove( resc );
+                else
+                    break;
             }
         }
-        finally
+        else
         {
-            acquireWaiters.remove( t );
-            if (acquireWaiters.size() == 0)
-                this.notifyAll();
+            Object resc;
+            while ( acquireWaiters.size() > 0 && (resc = idleBag.poll()) != null )
+            {
+                if (! acquireWaiters.handoff( resc, laneAdmission ))
+                {
+                    idleBag.release( resc );
+                    break;
+                }
+            }
         }
     }
 
@@ -1419,10 +2774,36 @@ class BasicResourcePool implements ResourcePool
     {
         assert Thread.holdsLock( this );
 
-        managed.put(resc, new PunchCard());
-        unused.add(0, resc);
+        PunchCard card = new PunchCard();
+        card.max_age = jitteredMaxAge();
+        if (check_idle_resources_delay > 0)
+            card.next_idle_test = card.acquisition_time + (long) (jitterRandom.nextDouble() * check_idle_resources_delay);
+        managed.put(resc, card);
+        if (excess_max_idle_time > 0 && managed.size() == min + 1)
+            rescheduleExpirationChecks(); //idle resources have become subject to excess_max_idle_time
+        else
+            scheduleExpirationCheck( resc, card, card.acquisition_time );
+        if (idleBag != null)
+            idleBag.register( resc );
+        makeAvailable( resc, CheckoutOrdering.ACQUIRED );
         //System.err.println("assimilate resource... unused: " + unused.size());
-        asyncFireResourceAcquired( resc, managed.size(), unused.size(), excluded.size() );
+        asyncFireResourceAcquired( resc, managed.size(), unusedSize(), excluded.size() );
+        if (! retiringResources.isEmpty() )
+            completeRetirement();
+        if (time_to_ready < 0 && managed.size() >= ready_size)
+            becomeReady();
+        if (fill_start_time >= 0)
+        {
+            if (managed.size() >= max)
+            {
+                last_time_to_fill = card.acquisition_time - fill_start_time;
+                fill_start_time = -1;
+                if (logger.isLoggable( MLevel.FINE ))
+                    logger.fine( this + " -- filled from empty to max [" + max + "] in " + last_time_to_fill + " msecs." );
+            }
+            else if (managed.size() >= target_pool_size && pending_acquires <= 1) //growth has stopped short of max, this fill is over
+                fill_start_time = -1;
+        }
         this.notifyAll();
         if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
         if (Debug.DEBUG && exampleResource == null)
@@ -1438,11 +2819,15 @@ class BasicResourcePool implements ResourcePool
 
         synchronized ( this )
         {
-            if (unused.size() > 0)
+            if (idleBag != null && (removeMe = idleBag.poll()) != null)
+            {
+                managed.remove(removeMe);
+                idleBag.remove(removeMe);
+            }
+            else if (idleBag == null && unused.size() > 0)
             {
-                removeMe = unused.get(0);
+                removeMe = unused.pollFirst();
                 managed.remove(removeMe);
-                unused.remove(removeMe);
             }
             else
             {
@@ -1491,10 +2876,19 @@ class BasicResourcePool implements ResourcePool
         else if ( logger.isLoggable( MLevel.FINE ) )
             logger.fine("Resource " + resc + " was removed twice. (Lotsa reasons a resource can be removed, sometimes simultaneously. It's okay)");
 
-        unused.remove(resc);
+        if (idleBag == null)
+            unused.remove(resc);
+        else
+            idleBag.remove(resc);
         destroyResource(resc, synchronous, checked_out);
         addToFormerResources( resc );
-        asyncFireResourceRemoved( resc, false, managed.size(), unused.size(), excluded.size() );
+        asyncFireResourceRemoved( resc, false, managed.size(), unusedSize(), excluded.size() );
+
+        if (checked_out)
+            bulkWaiters.signal(); //there is room to grow the pool now, for a bulk client waiting on a maxed-out pool
+
+        if (pc != null && laneAdmission != null && priorityLanes.release( pc ) && !broken)
+            serveWaitersFromIdle();
 
         if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
         //System.err.println("RESOURCE REMOVED!");
@@ -1506,13 +2900,113 @@ class BasicResourcePool implements ResourcePool
     {
         assert Thread.holdsLock( this );
 
-        managed.remove(resc);
+        PunchCard pc = (PunchCard) managed.remove(resc);
         excluded.add(resc);
-        if (Debug.DEBUG && unused.contains(resc) )
+        if (Debug.DEBUG && isUnused(resc) )
             throw new InternalError( "We should only \"exclude\" checked-out resources!" );
+        if (idleBag != null)
+            idleBag.remove(resc);
+        if (pc != null && laneAdmission != null && priorityLanes.release( pc ) && !broken)
+            serveWaitersFromIdle();
 	if ( Debug.DEBUG && logger.isLoggable( MLevel.FINEST ) )
 	    logger.log( MLevel.FINEST, "Excluded resource " + resc, new Exception("DEBUG STACK TRACE: Excluded resource stack trace"));
-        asyncFireResourceRemoved( resc, true, managed.size(), unused.size(), excluded.size() );
+        asyncFireResourceRemoved( resc, true, managed.size(), unusedSize(), excluded.size() );
+    }
+
+    /*
+     * Folds the checkouts, checkins, and waits since the last sample into
+     * moving averages, then predicts demand by Little's law -- resources in use
+     * equal the checkout rate times the hold time -- or from the resources
+     * actually in use or awaited, whichever is greater. Demand rises at once
+     * to meet a peak, but decays slowly, so a pool that sees bursts stays
+     * sized for them between bursts. The pool grows ahead of demand to the
+     * predicted size, plus headroom, plus an increment if clients have been
+     * kept waiting. It shrinks, by at most an increment per sample and only
+     * by destroying idle resources, when demand has fallen.
+     */
+    private void adaptSize()
+    {
+        assert Thread.holdsLock( this );
+
+        if (broken)
+            return;
+
+        long now = System.currentTimeMillis();
+        long dt  = now - last_sample_time;
+        if (dt <= 0)
+            return;
+
+        long checkouts = checkouts_punched.get();
+        long checkins  = checkins_punched.get();
+        long held      = held_millis.get();
+        long waited    = checkout_wait_millis.get();
+
+        long d_checkouts = checkouts - last_sample_checkouts;
+        long d_checkins  = checkins - last_sample_checkins;
+        long d_held      = held - last_sample_held;
+        long d_waited    = waited - last_sample_waited;
+
+        last_sample_time      = now;
+        last_sample_checkouts = checkouts;
+        last_sample_checkins  = checkins;
+        last_sample_held      = held;
+        last_sample_waited    = waited;
+
+        double alpha = 1 - Math.exp( -((double) dt) / ADAPTIVE_RATE_TAU );
+        checkout_rate_ewma += alpha * ( (d_checkouts * 1000d / dt) - checkout_rate_ewma );
+        if (d_checkins > 0)
+            hold_time_ewma += alpha * ( ((double) d_held / d_checkins) - hold_time_ewma );
+        wait_time_ewma += alpha * ( (d_checkouts > 0 ? (double) d_waited / d_checkouts : 0) - wait_time_ewma );
+
+        int in_use = managed.size() - unusedSize() + acquireWaiters.size();
+        double demand = Math.max( checkout_rate_ewma * hold_time_ewma / 1000d, in_use );
+        if (demand >= demand_ewma)
+            demand_ewma = demand;
+        else
+            demand_ewma += (1 - Math.exp( -((double) dt) / ADAPTIVE_DECAY_TAU )) * ( demand - demand_ewma );
+
+        int predicted = (int) Math.ceil( demand_ewma * ADAPTIVE_HEADROOM );
+        if (wait_time_ewma > ADAPTIVE_WAIT_THRESHOLD)
+            predicted += inc;
+        predicted = Math.max( Math.min( max, predicted ), min );
+        adaptive_target = predicted;
+
+        if (predicted > target_pool_size)
+        {
+            if (logger.isLoggable( MLevel.FINE ))
+                logger.fine( this + " -- adaptive sizing: growing target_pool_size from " + target_pool_size + " to " + predicted + 
+                             " [checkout rate: " + checkout_rate_ewma + "/sec; hold time: " + hold_time_ewma + " msecs; wait time: " + 
+                             wait_time_ewma + " msecs; demand: " + demand_ewma + ']' );
+            target_pool_size = predicted;
+            ++adaptive_expansions;
+            _recheckResizePool();
+        }
+        else if (predicted < target_pool_size && acquireWaiters.size() == 0)
+        {
+            int new_target = Math.max( predicted, target_pool_size - inc );
+            if (logger.isLoggable( MLevel.FINE ))
+                logger.fine( this + " -- adaptive sizing: shrinking target_pool_size from " + target_pool_size + " to " + new_target + 
+                             " [checkout rate: " + checkout_rate_ewma + "/sec; hold time: " + hold_time_ewma + " msecs; wait time: " + 
+                             wait_time_ewma + " msecs; demand: " + demand_ewma + ']' );
+            target_pool_size = new_target;
+            ++adaptive_contractions;
+            removeIdleTowards( new_target );
+        }
+    }
+
+    // removes idle resources, least recently used first,
+    // so long as the pool is larger than new_sz
+    private void removeIdleTowards( int new_sz )
+    {
+        assert Thread.holdsLock( this );
+
+        List idle = cloneOfUnused();
+        for (int i = idle.size(); --i >= 0 && managed.size() > new_sz; )
+        {
+            Object resc = idle.get( i );
+            if ( claimUnused( resc ) )
+                removeResource( resc );
+        }
     }
 
     private void removeTowards( int new_sz )
@@ -1522,14 +3016,23 @@ class BasicResourcePool implements ResourcePool
         int num_to_remove = managed.size() - new_sz;
         int count = 0;
         for (Iterator ii = cloneOfUnused().iterator(); 
-        ii.hasNext() && count < num_to_remove; 
-        ++count)
+        ii.hasNext() && count < num_to_remove; )
         {
             Object resc = ii.next();
-            removeResource( resc );
+            if ( claimUnused( resc ) )
+            {
+                removeResource( resc );
+                ++count;
+            }
         }
     }
 
+    /*
+     * Examines only resources whose expiration deadlines have passed. Each is
+     * either expired, or, if activity since its deadline was computed has
+     * postponed its expiration, rescheduled. The cost of a cull is thus
+     * proportional to the number of resources due, not the size of the pool.
+     */
     private void cullExpired()
     {
         assert Thread.holdsLock( this );
@@ -1537,50 +3040,403 @@ class BasicResourcePool implements ResourcePool
         if ( logger.isLoggable( MLevel.FINER ) )
             logger.log( MLevel.FINER, "BEGIN check for expired resources.  [" + this + "]");
 
-        // if we do not time-out checkedout resources, we only need to test unused resources
-        Collection checkMe = ( destroy_unreturned_resc_time > 0 ? (Collection) cloneOfManaged().keySet() : cloneOfUnused() );
+        long now = System.currentTimeMillis();
+        List reschedule = null;
 
-        for ( Iterator ii = checkMe.iterator(); ii.hasNext(); )
+        ExpirationDeadline deadline;
+        while ( (deadline = (ExpirationDeadline) expirationDeadlines.peek()) != null && deadline.time <= now )
         {
-            Object resc = ii.next();
-            if ( shouldExpire( resc ) )
+            expirationDeadlines.poll();
+
+            Object resc = deadline.resc;
+            PunchCard pc = (PunchCard) managed.get( resc );
+            if ( pc == null || pc.deadline != deadline ) // already removed, or superseded, just forget about it
+                continue;
+
+            pc.deadline = null;
+            if ( isExpired( resc, pc ) && claimForRemoval( resc ) )
             {
                 if ( logger.isLoggable( MLevel.FINER ) )
                     logger.log( MLevel.FINER, "Removing expired resource: " + resc + " [" + this + "]");
 
-                target_pool_size = Math.max( min, target_pool_size - 1 ); //expiring a resource resources the target size to match
+                if ( pc.retirement != RETIREMENT_DUE ) // a retired resource's replacement has already taken its place
+                    target_pool_size = Math.max( min, target_pool_size - 1 ); //expiring a resource resources the target size to match
 
-                removeResource( resc );
+                removeExpiredResource( resc );
 
                 if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
             }
+            else
+            {
+                // in rolling retirement, resources that outlive their maximum ages
+                // are not expired outright, but queued to be replaced, then retired
+                if ( max_concurrent_retirements > 0 && pc.retirement == RETIREMENT_NONE && pc.max_age > 0 && now - pc.acquisition_time > pc.max_age )
+                    awaitRetirement( resc, pc );
+
+                // we reschedule only after we're done polling, so that we don't see
+                // deadlines we've just rescheduled again during this pass
+                if (reschedule == null)
+                    reschedule = new ArrayList();
+                reschedule.add( resc );
+            }
         }
+        if (reschedule != null)
+        {
+            for (Iterator ii = reschedule.iterator(); ii.hasNext(); )
+            {
+                Object resc = ii.next();
+                PunchCard pc = (PunchCard) managed.get( resc );
+                if (pc != null)
+                    scheduleExpirationCheck( resc, pc, now );
+            }
+        }
+
+        if (max_concurrent_retirements > 0)
+            startRetirements();
+
         if ( logger.isLoggable( MLevel.FINER ) )
             logger.log( MLevel.FINER, "FINISHED check for expired resources.  [" + this + "]");
         ensureMinResources();
     }
 
+    /*
+     * Each resource has at most one deadline in expirationDeadlines, its PunchCard's.
+     * A deadline still queued is replaced, at O(n) cost, but only resources whose
+     * retirements are completing, or that are checked in after coming due, are
+     * rescheduled before their deadlines are polled.
+     *
+     * A checked-out resource that has come due by age or retirement will expire
+     * only once checked in, at a time we can't foresee. Rather than reexamine it
+     * on every cull until then, we leave it for its checkin to reschedule. We
+     * set its flag before we look again at whether it is checked out, and
+     * checkins clear checkout_time before they look at the flag, so that
+     * between us, at least one of us sees the other.
+     */
+    // must be called from synchronized method
+    private void scheduleExpirationCheck( Object resc, PunchCard pc, long now )
+    {
+        assert Thread.holdsLock( this );
+
+        if ( pc.deadline != null )
+        {
+            expirationDeadlines.remove( pc.deadline );
+            pc.deadline = null;
+        }
+
+        long time = expirationBound( pc, now );
+        if ( dueWhenIdle( pc, now ) )
+        {
+            pc.examine_on_checkin = true;
+            if ( pc.checkout_time < 0 ) // not checked out, or checked in beneath us
+            {
+                pc.examine_on_checkin = false;
+                time = now;
+            }
+        }
+
+        if ( time != Long.MAX_VALUE ) // if nothing ever expires, we needn't keep track
+        {
+            pc.deadline = new ExpirationDeadline( Math.max( time, now + 1 ), resc );
+            expirationDeadlines.add( pc.deadline );
+        }
+    }
+
+    /*
+     * When the pool grows past min, idle resources become subject to excess_max_idle_time,
+     * which expirationBound() leaves out of their deadlines while the pool is no larger than
+     * min. So we recompute all deadlines, once each time the pool grows past min, which
+     * only an acquisition can make it do.
+     */
+    // must be called from synchronized method
+    private void rescheduleExpirationChecks()
+    {
+        assert Thread.holdsLock( this );
+
+        expirationDeadlines.clear();
+
+        long now = System.currentTimeMillis();
+        for (Iterator ii = managed.entrySet().iterator(); ii.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) ii.next();
+            PunchCard pc = (PunchCard) entry.getValue();
+            pc.deadline = null;
+            scheduleExpirationCheck( entry.getKey(), pc, now );
+        }
+    }
+
+    /*
+     * Whether the resource would be expired now, by its age or its retirement, if
+     * it were idle. needn't hold this' lock.
+     */
+    private boolean dueWhenIdle( PunchCard pc, long now )
+    {
+        if (pc.retirement == RETIREMENT_DUE)
+            return true;
+        else // rolling retirements replace old resources before they expire
+            return ( max_concurrent_retirements <= 0 && pc.retirement == RETIREMENT_NONE && pc.max_age > 0 && now - pc.acquisition_time > pc.max_age );
+    }
+
+    /*
+     * Returns the earliest time at which isExpired() might become true for a resource,
+     * given that at any moment after now it might be checked out or in. As long as this
+     * is no later than the actual time of expiration, expirations cannot be missed, even
+     * though we don't reschedule on every checkout and checkin (which in concurrent checkout
+     * mode occur without this' lock). Activity only ever postpones the actual time,
+     * in which case the resource will be examined, and its deadline recomputed, early.
+     *
+     * needn't hold this' lock, since PunchCard times are volatile
+     */
+    private long expirationBound( PunchCard pc, long now )
+    {
+        long out = Long.MAX_VALUE;
+
+        long checkout_time = pc.checkout_time;
+        boolean checked_out = (checkout_time >= 0);
+
+        // isExpired() compares ages with >, so we add one to all deadlines
+
+        // idle clocks restart when the resource is checked in, no sooner than now
+        long idle_since = ( checked_out ? now : pc.last_checkin_time );
+        if (max_idle_time > 0)
+            out = Math.min( out, idle_since + max_idle_time + 1 );
+        // not enforced while the pool is no larger than min. rescheduleExpirationChecks()
+        // adds it when the pool grows.
+        if (excess_max_idle_time > 0 && managed.size() > min)
+            out = Math.min( out, idle_since + excess_max_idle_time + 1 );
+
+        // age and retirement are only enforced on resources that are not checked out.
+        // a checked-out resource that has already come due is left for its checkin
+        // to reschedule (see scheduleExpirationCheck()).
+        if (! (checked_out && dueWhenIdle( pc, now )))
+        {
+            // the resource might be checked in at any moment. (once a rolling retirement
+            // has begun, it, not the resource's age, determines when it is removed.)
+            if (pc.max_age > 0 && pc.retirement == RETIREMENT_NONE)
+                out = Math.min( out, pc.acquisition_time + pc.max_age + 1 );
+
+            // a replaced resource is removed as soon as it is found idle
+            if (pc.retirement == RETIREMENT_DUE)
+                out = Math.min( out, now );
+        }
+
+        // the unreturned clock starts when the resource is checked out, no sooner than now
+        if (destroy_unreturned_resc_time > 0)
+            out = Math.min( out, (checked_out ? checkout_time : now) + destroy_unreturned_resc_time + 1 );
+
+        return out;
+    }
+
+    // must be called from synchronized method
+    private long jitteredMaxAge()
+    {
+        assert Thread.holdsLock( this );
+
+        if (max_resource_age_jitter > 0)
+            return max_resource_age - (long) (jitterRandom.nextDouble() * (max_resource_age_jitter + 1));
+        else
+            return max_resource_age;
+    }
+
+    // must be called from synchronized method
+    private void awaitRetirement( Object resc, PunchCard pc )
+    {
+        assert Thread.holdsLock( this );
+
+        pc.retirement = RETIREMENT_AWAITING;
+        awaitingRetirement.add( resc );
+    }
+
+    /*
+     * Rolling retirement. Resources due to be retired begin retirement, in the
+     * order they came due, as slots free up. Each remains in service while a
+     * replacement is acquired, and is destroyed only after that replacement
+     * has joined the pool (see completeRetirement()). So retirements never
+     * shrink the pool, and never put more than max_concurrent_retirements
+     * acquisitions to our resource source at once. While replacements of
+     * checked-out resources await their checkins, the pool may exceed max by
+     * as many.
+     */
+    private void startRetirements()
+    {
+        assert Thread.holdsLock( this );
+
+        if ( broken || !isCircuitClosed() )
+            return;
+
+        // forget resources removed for other reasons during their retirements
+        for (Iterator ii = retiringResources.iterator(); ii.hasNext(); )
+        {
+            if (! managed.containsKey( ii.next() ))
+                ii.remove();
+        }
+
+        // replacements whose acquisitions failed are acquired again
+        int unreplaced = retiringResources.size() - pending_acquires;
+        if (unreplaced > 0)
+            expandPool( unreplaced );
+
+        while ( retiringResources.size() < max_concurrent_retirements && !awaitingRetirement.isEmpty() )
+        {
+            Object resc = awaitingRetirement.removeFirst();
+            PunchCard pc = (PunchCard) managed.get( resc );
+            if (pc != null && pc.retirement == RETIREMENT_AWAITING)
+            {
+                if ( logger.isLoggable( MLevel.FINER ) )
+                    logger.log( MLevel.FINER, "Acquiring a replacement for resource " + resc + ", which is being retired. [" + this + "]");
+
+                pc.retirement = RETIREMENT_PENDING;
+                retiringResources.add( resc );
+                expandPool( 1 );
+            }
+        }
+    }
+
+    /*
+     * A resource has joined the pool, so the longest-retiring resource has been
+     * replaced. We destroy it now if it is idle, or else as soon as it is
+     * found idle, by a checkout or a cull.
+     */
+    private void completeRetirement()
+    {
+        assert Thread.holdsLock( this );
+
+        while (! retiringResources.isEmpty() )
+        {
+            Object resc = retiringResources.removeFirst();
+            PunchCard pc = (PunchCard) managed.get( resc );
+            if (pc != null)
+            {
+                pc.retirement = RETIREMENT_DUE;
+                replacedResources.add( resc );
+                if ( isExpired( resc, pc ) && claimForRemoval( resc ) )
+                    removeExpiredResource( resc );
+                else
+                    scheduleExpirationCheck( resc, pc, System.currentTimeMillis() );
+                break;
+            }
+        }
+        startRetirements();
+    }
+
+    // resources that have been replaced, but not yet destroyed, don't count
+    // toward the size of the pool. their replacements already do.
+    private int countReplaced()
+    {
+        assert Thread.holdsLock( this );
+
+        if ( replacedResources.isEmpty() )
+            return 0;
+
+        for (Iterator ii = replacedResources.iterator(); ii.hasNext(); )
+        {
+            if (! managed.containsKey( ii.next() ))
+                ii.remove();
+        }
+        return replacedResources.size();
+    }
+
+    // we visit the idle resources several times per idle test period, so that
+    // each resource can be tested at its own time, rather than all at once
+    private long idleTestSlice()
+    {
+        long slice = check_idle_resources_delay / IDLE_TEST_SLICES;
+        return Math.max( slice, Math.min( check_idle_resources_delay, MIN_IDLE_TEST_SLICE ) );
+    }
+
+    /*
+     * each resource's first test is due at a random time within the first idle
+     * test period after its acquisition, and later tests are due one period
+     * apart, so that tests of resources acquired together are spread across
+     * the period. a resource checked in within the period before its test is
+     * due has been in use recently enough that the test would tell us nothing,
+     * so we skip it, and keep its schedule. (a resource that failed in use
+     * would have been removed from the pool, rather than checked in.)
+     *
+     * when max_concurrent_idle_tests leaves room for fewer tests than are due,
+     * the longest overdue are tested first. otherwise, when tests are due faster
+     * than they can be run, resources late in the unused list would never be
+     * reached.
+     */
     private void checkIdleResources()
     {
         assert Thread.holdsLock( this );
 
+        idle_tests_deferred = false;
+
+        long now = System.currentTimeMillis();
+        List due = new ArrayList();
         List u = cloneOfUnused();
         for ( Iterator ii = u.iterator(); ii.hasNext(); )
         {
             Object resc = ii.next();
+
+            PunchCard card = (PunchCard) managed.get( resc );
+            if ( card == null || card.next_idle_test > now || idleCheckResources.contains( resc ) )
+                continue;
+
+            if ( card.last_checkin_time > card.acquisition_time && now - card.last_checkin_time < check_idle_resources_delay )
+            {
+                card.next_idle_test = nextIdleTest( card.next_idle_test, now );
+                ++skipped_idle_tests;
+                continue;
+            }
+
+            due.add( resc );
+        }
+
+        if ( max_concurrent_idle_tests > 0 && due.size() > max_concurrent_idle_tests - idleCheckResources.size() )
+        {
+            Collections.sort( due, new Comparator()
+            {
+                public int compare( Object a, Object b )
+                {
+                    long aDue = ((PunchCard) managed.get( a )).next_idle_test;
+                    long bDue = ((PunchCard) managed.get( b )).next_idle_test;
+                    return ( aDue < bDue ? -1 : ( aDue > bDue ? 1 : 0 ) );
+                }
+            } );
+        }
+
+        for ( Iterator ii = due.iterator(); ii.hasNext(); )
+        {
+            Object resc = ii.next();
+            PunchCard card = (PunchCard) managed.get( resc );
+
+            if ( max_concurrent_idle_tests > 0 && idleCheckResources.size() >= max_concurrent_idle_tests )
+            {
+                idle_tests_deferred = true;
+                break;
+            }
+
+            // in concurrent checkout mode, we claim each resource before we test
+            // it, so that clients can't check it out while the test is underway
+            if ( idleBag != null && !idleBag.claim( resc ) )
+                continue;
+
             if ( idleCheckResources.add( resc ) )
-                taskRunner.postRunnable( new AsyncTestIdleResourceTask( resc ) );
+            {
+                card.next_idle_test = nextIdleTest( card.next_idle_test, now );
+                testTaskStatistics.post( testRunner, new AsyncTestIdleResourceTask( resc ) );
+            }
         }
 
         if (Debug.DEBUG && Debug.TRACE == Debug.TRACE_MAX) trace();
     }
 
+    // the first time after now in the schedule of due, keeping each resource's
+    // tests in phase, even if some have been deferred, or missed entirely
+    private long nextIdleTest( long due, long now )
+    {
+        long next = due + check_idle_resources_delay;
+        if (next <= now)
+            next += ((now - next) / check_idle_resources_delay + 1) * check_idle_resources_delay;
+        return next;
+    }
+
     private boolean shouldExpire( Object resc )
     {
         assert Thread.holdsLock( this );
 
-        boolean expired = false;
-
         PunchCard pc = (PunchCard) managed.get( resc );
 
         // the resource has already been removed
@@ -1595,12 +3451,27 @@ class BasicResourcePool implements ResourcePool
             return true;
         }
 
+        return isExpired( resc, pc );
+    }
+
+    // needn't hold this' lock, since PunchCard times are volatile
+    // (and managed.size() is thread-safe)
+    private boolean isExpired( Object resc, PunchCard pc )
+    {
+        boolean expired = false;
+
         long now = System.currentTimeMillis();
 
         if (pc.checkout_time < 0) //resource is not checked out
         {
             long idle_age = now - pc.last_checkin_time;
-            if (excess_max_idle_time > 0)
+            if (pc.retirement == RETIREMENT_DUE)
+            {
+                expired = true;
+                if ( logger.isLoggable( MLevel.FINER ) )
+                    logger.log(MLevel.FINER, "EXPIRED retired resource, whose replacement has been acquired: " + resc + " [" + this + "]");
+            }
+            if (!expired && excess_max_idle_time > 0)
             {
                 int msz = managed.size();
                 expired = (msz > min && idle_age > excess_max_idle_time);
@@ -1623,20 +3494,20 @@ class BasicResourcePool implements ResourcePool
                                     "; max_idle_time: " + max_idle_time +
                                     " [" + this + "]");
             }
-            if (!expired && max_resource_age > 0)
+            if (!expired && pc.max_age > 0 && max_concurrent_retirements <= 0) //rolling retirements replace old resources before they expire
             {
                 long abs_age = now - pc.acquisition_time;
-                expired = ( abs_age > max_resource_age );
+                expired = ( abs_age > pc.max_age );
 
                 if ( expired && logger.isLoggable( MLevel.FINER ) )
                     logger.log(MLevel.FINER, 
                                     "EXPIRED old resource: " + resc + 
                                     " ---> absolute_age: " + abs_age + 
-                                    "; max_absolute_age: " + max_resource_age +
+                                    "; max_absolute_age: " + pc.max_age +
                                     " [" + this + "]");
             }
         }
-        else //resource is checked out
+        else if (destroy_unreturned_resc_time > 0) //resource is checked out
         {
             long checkout_age = now - pc.checkout_time;
             expired = checkout_age > destroy_unreturned_resc_time;
@@ -1657,6 +3528,27 @@ class BasicResourcePool implements ResourcePool
     private void ensureStartResources()
     { recheckResizePool(); }
 
+    /*
+     * The pool has acquired its initial resources. We release clients
+     * awaiting readiness, and let the warm-up pipeline finish whatever
+     * it has queued, but give it nothing more.
+     */
+    private void becomeReady()
+    {
+        assert Thread.holdsLock( this );
+
+        time_to_ready = System.currentTimeMillis() - pool_start_time;
+        if (warmupPipeline != null)
+        {
+            warmupPipeline.close( false );
+            warmupPipeline = null;
+        }
+        readiness.countDown();
+
+        if (logger.isLoggable( MLevel.FINE ))
+            logger.fine( this + " -- ready, with " + managed.size() + " resources, " + time_to_ready + " msecs after the pool started." );
+    }
+
     // we needn't hold this' lock
     private void ensureMinResources()
     { recheckResizePool(); }
@@ -1733,7 +3625,7 @@ class BasicResourcePool implements ResourcePool
                             "" :
                                 " (e.g. " + exampleResource +")");
             logger.finest("trace " + this + " [managed: " + managed.size() + ", " +
-                            "unused: " + unused.size() + ", excluded: " +
+                            "unused: " + unusedSize() + ", excluded: " +
                             excluded.size() + ']' + exampleResStr );
         }
     }
@@ -1742,14 +3634,96 @@ class BasicResourcePool implements ResourcePool
     { 
         assert Thread.holdsLock( this );
 
-        return (HashMap) managed.clone(); 
+        return new HashMap( managed ); 
     }
 
-    private final LinkedList cloneOfUnused()
+    private final List cloneOfUnused()
     { 
         assert Thread.holdsLock( this );
 
-        return (LinkedList) unused.clone(); 
+        return ( idleBag == null ? unused.toList() : idleBag.availableResources() ); 
+    }
+
+    /*
+     * the methods below hide the difference between the traditional mode, in which unused
+     * resources live in the LinkedList unused, and concurrent checkout mode, in which they
+     * live in idleBag, and may be checked out by clients who do not hold this' lock.
+     */
+
+    // must be called from synchronized method
+    private int unusedSize()
+    {
+        assert Thread.holdsLock( this );
+
+        return ( idleBag == null ? unused.size() : idleBag.size() );
+    }
+
+    // must be called from synchronized method
+    private void removeExpiredResource( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        PunchCard pc = (PunchCard) managed.get( resc );
+        if (pc != null && pc.checkout_time < 0)
+            ++idle_expirations;
+        removeResource( resc );
+    }
+
+    // must be called from synchronized method
+    private void reorderTestedUnused( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        int placement = checkout_ordering.placement( CheckoutOrdering.IDLE_TESTED );
+        if ( placement != CheckoutOrdering.UNCHANGED && unused.remove( resc ) )
+        {
+            if ( placement == CheckoutOrdering.BACK )
+                unused.addLast( resc );
+            else
+                unused.addFirst( resc );
+        }
+    }
+
+    // must be called from synchronized method
+    private boolean isUnused( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        return ( idleBag == null ? unused.contains( resc ) : idleBag.isAvailable( resc ) );
+    }
+
+    /*
+     * must be called from synchronized method
+     *
+     * @return true if resc is unused, and will remain so until we
+     *         release this' lock, or (in concurrent checkout mode)
+     *         until it is explicitly released or removed.
+     */
+    private boolean claimUnused( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        if (idleBag == null)
+            return unused.contains( resc );
+        else
+            return idleBag.claim( resc ) || idleBag.isHeld( resc );
+    }
+
+    // must be called from synchronized method
+    // in concurrent checkout mode, a resource that appears not to be checked out
+    // may be claimed at any moment by a client that doesn't hold this' lock. we
+    // must claim such resources ourselves before removing them.
+    private boolean claimForRemoval( Object resc )
+    {
+        assert Thread.holdsLock( this );
+
+        if (idleBag == null)
+            return true;
+        else
+        {
+            PunchCard pc = (PunchCard) managed.get( resc );
+            return ( pc == null || pc.checkout_time > 0 || claimUnused( resc ) );
+        }
     }
 
     private final HashSet cloneOfExcluded()
@@ -1790,7 +3764,14 @@ class BasicResourcePool implements ResourcePool
             try
             {
                 boolean fkap = isForceKillAcquiresPending();
-                if (! fkap)
+                boolean circuit_open = ! isCircuitClosed();
+                if (circuit_open)
+                {
+                    //the circuit opened after this series began. only probes
+                    //acquire now, and a successful probe will refill the pool.
+                    decrementPendingAcquires();
+                }
+                else if (! fkap)
                 {
                     //we don't want this call to be sync'd
                     //on the pool, so that resource acquisition
@@ -1811,7 +3792,8 @@ class BasicResourcePool implements ResourcePool
 		    {
 			if (logger.isLoggable(MLevel.FINEST))
 			    logger.finest("Acquisition series terminated " +
-					  (fkap ? "because force-kill-acquires is pending" : "successfully") +
+					  (circuit_open ? "because the acquisition circuit breaker is open" : 
+					   (fkap ? "because force-kill-acquires is pending" : "successfully")) +
 					  ". Decremented pending_acquires [" + pending_acquires + "], " +
 					  " attempts_remaining: " + attempts_remaining);
 		    }
@@ -1831,7 +3813,15 @@ class BasicResourcePool implements ResourcePool
             {
                 BasicResourcePool.this.setLastAcquisitionFailure(e);
 
-                if (attempts_remaining == 0) //last try in a round...
+                if (! isCircuitClosed())
+                {
+                    // the circuit breaker has opened, and has taken over retrying from us
+                    decrementPendingAcquires();
+                    if (logger.isLoggable(MLevel.FINEST))
+                        logger.finest("Acquisition series terminated because the acquisition circuit breaker is open. Decremented pending_acquires [" + 
+                                      pending_acquires + "], " + " attempts_remaining: " + attempts_remaining);
+                }
+                else if (attempts_remaining == 0) //last try in a round...
                 {
                     decrementPendingAcquires();
                     if ( logger.isLoggable( MLevel.WARNING ) )
@@ -1855,21 +3845,7 @@ class BasicResourcePool implements ResourcePool
                         unexpectedBreak();
                     }
                     else
-                    {
-                        try { forceKillAcquires(); }
-                        catch (InterruptedException ie)
-                        {
-                            if ( logger.isLoggable(MLevel.WARNING) )
-                                logger.log(MLevel.WARNING, 
-                                                "Failed to force-kill pending acquisition attempts after acquisition failue, " +
-                                                " due to an InterruptedException!",
-                                                ie );
-
-                            // we might still have clients waiting, so we should try
-                            // to ensure there are sufficient connections to serve
-			    recheck = true;
-                        }
-                    }
+                        forceKillAcquires();
                     if (logger.isLoggable(MLevel.FINEST))
                         logger.finest("Acquisition series terminated unsuccessfully. Decremented pending_acquires [" + pending_acquires + "], " +
                                         " attempts_remaining: " + attempts_remaining);
@@ -1885,12 +3861,9 @@ class BasicResourcePool implements ResourcePool
                     if (logger.isLoggable( logLevel ))
                         logger.log( logLevel, "An exception occurred while acquiring a poolable resource. Will retry.", e );
 
-                    TimerTask doNextAcquire = new TimerTask()
-                    {
-                        public void run()
-                        { taskRunner.postRunnable( new ScatteredAcquireTask( attempts_remaining - 1, false ) ); }
-                    };
-                    cullAndIdleRefurbishTimer.schedule( doNextAcquire, acq_attempt_delay );
+                    cullAndIdleRefurbishWheel.schedule( new ScatteredAcquireTask( attempts_remaining - 1, false ), 
+                                                        (acquisitionPipeline != null ? (AsynchronousRunner) acquisitionPipeline : acquireRunner), 
+                                                        acq_attempt_delay );
                 }
             }
 	    finally
@@ -1901,6 +3874,279 @@ class BasicResourcePool implements ResourcePool
         }
     }
 
+    /*
+     *  a checkout on behalf of a client that will not wait. we claim a
+     *  resource at once if we can, otherwise we enqueue an asynchronous
+     *  waiter. checkins and acquisitions hand resources to it just as they
+     *  would to a waiting Thread, and we complete the checkout on a thread of
+     *  our acquireRunner, since those who hand off may hold the pool's lock.
+     *
+     *  the state makes completion, timeout, and cancellation mutually exclusive.
+     *  a resource that arrives after the checkout has timed out or been
+     *  cancelled goes back to the pool.
+     */
+    class AsyncCheckoutTask implements Runnable, HandoffQueue.Listener, AsyncCheckout
+    {
+        final static int PENDING   = 0;
+        final static int DONE      = 1;
+        final static int CANCELLED = 2;
+
+        final long             timeout;
+        final int              priority;
+        final CheckoutCallback callback;
+        final AtomicInteger    state = new AtomicInteger( PENDING );
+        final long             start_nanos = System.nanoTime();
+
+        volatile HandoffQueue.Waiter waiter      = null; //the waiter most recently enqueued
+        volatile HandoffQueue.Waiter done_waiter = null; //the waiter most recently fulfilled or failed
+        volatile TimingWheel.Timeout timer       = null;
+        volatile long                wait_start  = -1;
+
+        AsyncCheckoutTask( long timeout, int priority, CheckoutCallback callback )
+        {
+            this.timeout  = timeout;
+            this.priority = priority;
+            this.callback = callback;
+        }
+
+        // must not be called while holding the pool's lock
+        void attempt()
+        {
+            assert !Thread.holdsLock( BasicResourcePool.this );
+
+            try
+            {
+                Object resc = null;
+                while (resc == null && state.get() == PENDING)
+                {
+                    if (idleBag != null && laneAdmission == null)
+                    {
+                        if (lastCheckedIn != null)
+                            resc = reclaimLastCheckedIn();
+                        if (resc == null)
+                            resc = concurrentPrelimCheckoutResource();
+                    }
+                    if (resc == null)
+                    {
+                        Object attempt = prelimCheckoutAttempt( timeout, priority, this );
+                        if (attempt instanceof HandoffQueue.Waiter)
+                        {
+                            awaiting( (HandoffQueue.Waiter) attempt );
+                            return;
+                        }
+                        resc = attempt;
+                    }
+                    if (resc != null)
+                        resc = finishCheckout( resc );
+                }
+                if (resc != null)
+                    complete( resc );
+            }
+            catch ( ResourceClosedException e ) // one of our async threads died
+            {
+                if (logger.isLoggable( MLevel.SEVERE ))
+                    logger.log( MLevel.SEVERE, BasicResourcePool.this + " -- the pool was found to be closed or broken during an attempt to check out a resource.", e );
+
+                unexpectedBreak();
+                fail( new ResourcePoolException("Attempted to use a closed or broken resource pool", e) );
+            }
+            catch ( ResourcePoolException e )
+            { fail( e ); }
+            catch ( InterruptedException e ) // we never wait, so this shouldn't happen
+            { fail( new ResourcePoolException("An asynchronous checkout was interrupted.", e) ); }
+        }
+
+        private void awaiting( HandoffQueue.Waiter w )
+        {
+            this.waiter = w;
+            if (wait_start < 0)
+            {
+                wait_start = System.currentTimeMillis();
+                if (timeout > 0 && state.get() == PENDING)
+                {
+                    this.timer = cullAndIdleRefurbishWheel.schedule( new Runnable()
+                    {
+                        public void run()
+                        { timedOut(); }
+                    }, acquireRunner, timeout );
+                }
+            }
+
+            // we may have been cancelled or timed out while we enqueued
+            if (state.get() != PENDING)
+                w.cancel();
+        }
+
+        public void waiterDone( HandoffQueue.Waiter w )
+        {
+            this.done_waiter = w;
+            try
+            { refurbishTaskStatistics.post( acquireRunner, this ); }
+            catch ( Exception e ) // our runner is closed, the pool must be closing
+            { run(); }
+        }
+
+        public void run()
+        {
+            HandoffQueue.Waiter w = done_waiter;
+            switch ( w.getState() )
+            {
+            case HandoffQueue.Waiter.FULFILLED:
+                Object resc = w.getResource();
+                boolean expired = false;
+                synchronized ( BasicResourcePool.this )
+                {
+                    if (broken)
+                        resc = null;
+                    else if (state.get() != PENDING)
+                    {
+                        if ( managed.containsKey( resc ) )
+                            makeAvailable( resc, CheckoutOrdering.CHECKED_IN ); // we're no longer interested, let someone else have this
+                        return;
+                    }
+                    else if ( expired = shouldExpire( resc ) )
+                    {
+                        removeExpiredResource( resc );
+                        ensureMinResources();
+                    }
+                }
+                if (resc == null)
+                {
+                    fail( new ResourcePoolException("Attempted to use a closed or broken resource pool") );
+                    return;
+                }
+                resc = ( expired ? null : finishCheckout( resc ) );
+                if (resc == null)
+                    attempt();
+                else
+                    complete( resc );
+                break;
+            case HandoffQueue.Waiter.FAILED:
+                if (broken)
+                    fail( new ResourcePoolException("Attempted to use a closed or broken resource pool") );
+                else if (! isCircuitClosed())
+                    fail( new CircuitOpenException("A ResourcePool's acquisition circuit breaker opened while a client awaited an asynchronous checkout. " +
+                                                   "The pool's primary factory or source appears to be down.") );
+                else
+                    fail( new CannotAcquireResourceException("A ResourcePool could not acquire a resource from its primary factory or source.") );
+                break;
+            default: // CANCELLED, by us, there's nothing to do
+            }
+        }
+
+        public boolean cancel()
+        {
+            if ( state.compareAndSet( PENDING, CANCELLED ) )
+            {
+                finished();
+                HandoffQueue.Waiter w = waiter;
+                if (w != null)
+                    w.cancel();
+                return true;
+            }
+            else
+                return false;
+        }
+
+        private void timedOut()
+        {
+            if ( state.compareAndSet( PENDING, DONE ) )
+            {
+                HandoffQueue.Waiter w = waiter;
+                if (w != null)
+                    w.cancel();
+                finished();
+                notifyFailed( new TimeoutException("A client timed out while awaiting an asynchronous checkout from " + BasicResourcePool.this + ".") );
+            }
+        }
+
+        private void complete( Object resc )
+        {
+            if ( state.compareAndSet( PENDING, DONE ) )
+            {
+                finished();
+                checkoutWaitHistogram.recordNanos( System.nanoTime() - start_nanos );
+                priorityLanes.recordCheckout( priority );
+                try
+                { callback.checkedOut( resc ); }
+                catch ( RuntimeException e )
+                {
+                    if (logger.isLoggable( MLevel.WARNING ))
+                        logger.log( MLevel.WARNING, BasicResourcePool.this + " -- an asynchronous checkout's callback failed.", e );
+                }
+            }
+            else
+            {
+                try
+                { checkinResource( resc ); }
+                catch ( ResourcePoolException e )
+                {
+                    if (logger.isLoggable( MLevel.FINE ))
+                        logger.log( MLevel.FINE, BasicResourcePool.this + " -- could not check in a resource delivered after an asynchronous checkout was abandoned.", e );
+                }
+            }
+        }
+
+        private void fail( ResourcePoolException e )
+        {
+            if ( state.compareAndSet( PENDING, DONE ) )
+            {
+                finished();
+                notifyFailed( e );
+            }
+        }
+
+        private void finished()
+        {
+            TimingWheel.Timeout t = timer;
+            if (t != null)
+                t.cancel();
+            if (wait_start >= 0)
+            {
+                long waited = System.currentTimeMillis() - wait_start;
+                checkout_wait_millis.addAndGet( waited );
+                priorityLanes.recordWait( priority, waited );
+            }
+        }
+
+        private void notifyFailed( ResourcePoolException e )
+        {
+            try
+            { callback.failed( e ); }
+            catch ( RuntimeException re )
+            {
+                if (logger.isLoggable( MLevel.WARNING ))
+                    logger.log( MLevel.WARNING, BasicResourcePool.this + " -- an asynchronous checkout's callback failed.", re );
+            }
+        }
+    }
+
+    /*
+     *  a single acquisition, made when an open circuit
+     *  breaker's backoff has elapsed. if it fails, the
+     *  breaker reopens and schedules the next probe.
+     */
+    class CircuitBreakerProbeTask implements Runnable
+    {
+        public void run()
+        {
+            synchronized ( BasicResourcePool.this )
+            {
+                if (broken || !circuitBreaker.beginProbe())
+                    return;
+            }
+
+            try
+            { BasicResourcePool.this.doAcquire(); }
+            catch (Exception e)
+            {
+                BasicResourcePool.this.setLastAcquisitionFailure(e);
+                if (logger.isLoggable(MLevel.FINE))
+                    logger.log(MLevel.FINE, BasicResourcePool.this + " -- a circuit breaker probe acquisition failed.", e);
+            }
+        }
+    }
+
     /*
      *  task we post to separate thread to acquire
      *  pooled resources
@@ -2065,7 +4311,8 @@ class BasicResourcePool implements ResourcePool
         }
     }
 
-    class CullTask extends TimerTask
+    // posted to our taskRunner by the timing wheel
+    class CullTask implements Runnable
     {
         public void run()
         {
@@ -2088,10 +4335,11 @@ class BasicResourcePool implements ResourcePool
         }
     }
 
-    // this is run by a single-threaded timer, so we don't have
-    // to worry about multiple threads executing the task at the same 
-    // time 
-    class CheckIdleResourcesTask extends TimerTask
+    // posted to our taskRunner by the timing wheel, which never
+    // posts a periodic task while a previous posting is pending,
+    // so we don't have to worry about multiple threads executing
+    // the task at the same time 
+    class CheckIdleResourcesTask implements Runnable
     {
         public void run()
         {
@@ -2116,6 +4364,28 @@ class BasicResourcePool implements ResourcePool
         }
     }
 
+    // posted to our taskRunner by the timing wheel
+    class AdaptiveSizingTask implements Runnable
+    {
+        public void run()
+        {
+            try
+            {
+                synchronized ( BasicResourcePool.this )
+                { adaptSize(); }
+            }
+            catch ( ResourceClosedException e ) // one of our async threads died
+            {
+                if ( Debug.DEBUG )
+                {
+                    if ( logger.isLoggable( MLevel.FINE ) )
+                        logger.log( MLevel.FINE, "a resource pool async thread died.", e );
+                }
+                unexpectedBreak();
+            }
+        }
+    }
+
     class AsyncTestIdleResourceTask implements Runnable
     {
         // unchanging after ctor
@@ -2160,19 +4430,120 @@ class BasicResourcePool implements ResourcePool
             {
                 synchronized (BasicResourcePool.this)
                 {
+                    ++idle_tests;
                     idleCheckResources.remove( resc );
+                    if ( managed.containsKey( resc ) ) //the test succeeded, or else resc would have been removed
+                    {
+                        if ( idleBag != null )
+                            makeAvailable( resc, CheckoutOrdering.IDLE_TESTED );
+                        else if ( acquireWaiters.size() > 0 && unused.remove( resc ) )
+                            makeAvailable( resc, CheckoutOrdering.IDLE_TESTED ); //someone may have enqueued rather than wait for the test
+                        else
+                            reorderTestedUnused( resc );
+                    }
+
+                    // tests that came due while too many were underway need not wait for the next slice
+                    if ( idle_tests_deferred && !broken )
+                    {
+                        try
+                        { checkIdleResources(); }
+                        catch ( ResourceClosedException e ) // one of our async threads died
+                        {
+                            if ( Debug.DEBUG && logger.isLoggable( MLevel.FINE ) )
+                                logger.log( MLevel.FINE, "a resource pool async thread died.", e );
+                            unexpectedBreak();
+                        }
+                    }
+
                     BasicResourcePool.this.notifyAll();
                 }
             }
         }
     }
 
+    /*
+     *  admits checkouts and handoffs by priority, counting each admitted
+     *  resource, via its PunchCard, against the priority it was admitted at.
+     */
+    class LaneAdmission implements HandoffQueue.Admission
+    {
+        public boolean admit( Object resc, int priority )
+        {
+            PunchCard card = (PunchCard) managed.get( resc );
+            return ( card != null && priorityLanes.admit( card, priority ) );
+        }
+
+        public void withdraw( Object resc )
+        { releaseLane( resc ); }
+    }
+
+    /*
+     * The resources set aside for a waiting bulk client, see reserveForBulk()
+     */
+    final static class BulkReservation
+    {
+        final int count;
+        final int priority;
+
+        //MT: protected by the pool's lock
+        final List held = new ArrayList();
+
+        BulkReservation( int count, int priority )
+        {
+            this.count    = count;
+            this.priority = priority;
+        }
+    }
+
+    final static class ExpirationDeadline implements Comparable
+    {
+        final long   time;
+        final Object resc;
+
+        ExpirationDeadline( long time, Object resc )
+        {
+            this.time = time;
+            this.resc = resc;
+        }
+
+        public int compareTo( Object o )
+        {
+            long other = ((ExpirationDeadline) o).time;
+            return ( time < other ? -1 : (time == other ? 0 : 1) );
+        }
+    }
+
+    // times are volatile, so that they can be punched and read
+    // without the pool's lock in concurrent checkout mode
     final static class PunchCard
     {
         long acquisition_time;
-        long last_checkin_time;
-        long checkout_time;
-        Exception checkoutStackTraceException;
+
+        // this resource's own maximum age, max_resource_age less any jitter
+        long max_age;
+
+        // see RETIREMENT_NONE etc. written only under the pool's lock, but
+        // volatile so that isExpired() may read it without
+        volatile int retirement = RETIREMENT_NONE;
+        volatile long last_checkin_time;
+        volatile long checkout_time;
+        volatile Exception checkoutStackTraceException;
+
+        // when this resource's next idle test is due, protected by the pool's lock
+        long next_idle_test;
+
+        // this resource's deadline in expirationDeadlines, or null if none
+        // is queued, protected by the pool's lock
+        ExpirationDeadline deadline;
+
+        // set when the resource came due while checked out, so that its
+        // checkin reschedules it. written under the pool's lock, but volatile
+        // so that checkins may read it without
+        volatile boolean examine_on_checkin = false;
+
+        // the priority against which the resource is counted, or -1.
+        // protected by the pool's PriorityLanes' lock
+        int priority = -1;
 
         PunchCard()
         {
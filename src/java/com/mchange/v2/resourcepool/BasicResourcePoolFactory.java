@@ -61,15 +61,38 @@ public class BasicResourcePoolFactory extends ResourcePoolFactory
 
     boolean break_on_acquisition_failure    = true;
     boolean debug_store_checkout_stacktrace = false;
+    boolean concurrent_checkout             = false;
+    boolean thread_affinity                 = false;
+
+    CheckoutOrdering checkout_ordering       = CheckoutOrderings.LIFO;
+    boolean          adaptive_sizing         = false;
+    int              acquisition_parallelism = 0;   //by default, acquisitions are tasks of the shared task runner
+    int              circuit_breaker_threshold = 0;
+    boolean          virtual_thread_friendly   = false;
+    int[]            priority_reservations     = null;  //by default, nothing is reserved for any priority
+    int              max_checkout_waiters      = 0;     //by default, any number of clients may wait
+    boolean          shed_predicted_timeouts   = false;
+    int              checkout_stripes          = 1;     //by default, concurrent checkout keeps all idle resources on one stack
+    long             max_age_jitter            = 0;     //milliseconds, by default resources expire at exactly max_age
+    int              max_concurrent_retirements = 0;    //by default, old resources are destroyed as soon as they expire
+    int              warmup_parallelism        = 0;     //by default, initial resources are acquired like any others
+    int              max_concurrent_idle_tests = 0;     //by default, any number of idle resources may be tested at once
 
     AsynchronousRunner taskRunner;
     boolean            taskRunner_is_external;
 
+    // if null, the tasks are run by taskRunner
+    AsynchronousRunner acquireTaskRunner = null;
+    AsynchronousRunner testTaskRunner    = null;
+    AsynchronousRunner destroyTaskRunner = null;
+
     RunnableQueue asyncEventQueue;
     boolean       asyncEventQueue_is_external;
 
-    Timer   timer;
-    boolean timer_is_external;
+    // pools schedule their maintenance on the process-wide TimingWheel. an
+    // external Timer is accepted for compatibility, but is no longer used.
+    Timer       timer;
+    TimingWheel timingWheel = TimingWheel.sharedInstance();
 
     int default_num_task_threads;
 
@@ -118,7 +141,6 @@ public class BasicResourcePoolFactory extends ResourcePoolFactory
 	this.asyncEventQueue_is_external = ( asyncEventQueue != null );
 
 	this.timer = timer;
-	this.timer_is_external = ( timer != null );
 
 	this.default_num_task_threads = default_num_task_threads;
     }
@@ -134,8 +156,6 @@ public class BasicResourcePoolFactory extends ResourcePoolFactory
 	    }
 	if (! asyncEventQueue_is_external)
 	    asyncEventQueue = new CarefulRunnableQueue( true, false );
-	if (! timer_is_external )
-	    timer = new Timer( true );
 
 	this.liveChildren = new HashSet();
     }
@@ -152,11 +172,6 @@ public class BasicResourcePoolFactory extends ResourcePoolFactory
 		asyncEventQueue.close();
 		asyncEventQueue = null;
 	    }
-	if (! timer_is_external )
-	    {
-		timer.cancel();
-		timer = null;
-	    }
 
 	this.liveChildren = null;
     }
@@ -324,6 +339,150 @@ public class BasicResourcePoolFactory extends ResourcePoolFactory
 	throws ResourcePoolException
     { return debug_store_checkout_stacktrace; }
 
+    public synchronized void setConcurrentCheckout( boolean concurrent_checkout )
+	throws ResourcePoolException
+    { this.concurrent_checkout = concurrent_checkout; }
+
+    public synchronized boolean getConcurrentCheckout()
+	throws ResourcePoolException
+    { return concurrent_checkout; }
+
+    public synchronized void setThreadAffinity( boolean thread_affinity )
+	throws ResourcePoolException
+    { this.thread_affinity = thread_affinity; }
+
+    public synchronized boolean getThreadAffinity()
+	throws ResourcePoolException
+    { return thread_affinity; }
+
+    public synchronized void setCheckoutOrdering( CheckoutOrdering checkout_ordering )
+	throws ResourcePoolException
+    { this.checkout_ordering = checkout_ordering; }
+
+    public synchronized CheckoutOrdering getCheckoutOrdering()
+	throws ResourcePoolException
+    { return checkout_ordering; }
+
+    public synchronized void setAdaptiveSizing( boolean adaptive_sizing )
+	throws ResourcePoolException
+    { this.adaptive_sizing = adaptive_sizing; }
+
+    public synchronized boolean getAdaptiveSizing()
+	throws ResourcePoolException
+    { return adaptive_sizing; }
+
+    public synchronized void setAcquisitionParallelism( int acquisition_parallelism )
+	throws ResourcePoolException
+    { this.acquisition_parallelism = acquisition_parallelism; }
+
+    public synchronized int getAcquisitionParallelism()
+	throws ResourcePoolException
+    { return acquisition_parallelism; }
+
+    public synchronized void setCircuitBreakerThreshold( int circuit_breaker_threshold )
+	throws ResourcePoolException
+    { this.circuit_breaker_threshold = circuit_breaker_threshold; }
+
+    public synchronized int getCircuitBreakerThreshold()
+	throws ResourcePoolException
+    { return circuit_breaker_threshold; }
+
+    public synchronized void setVirtualThreadFriendly( boolean virtual_thread_friendly )
+	throws ResourcePoolException
+    { this.virtual_thread_friendly = virtual_thread_friendly; }
+
+    public synchronized boolean getVirtualThreadFriendly()
+	throws ResourcePoolException
+    { return virtual_thread_friendly; }
+
+    public synchronized void setPriorityReservations( int[] priority_reservations )
+	throws ResourcePoolException
+    { this.priority_reservations = (priority_reservations == null ? null : (int[]) priority_reservations.clone()); }
+
+    public synchronized int[] getPriorityReservations()
+	throws ResourcePoolException
+    { return (priority_reservations == null ? null : (int[]) priority_reservations.clone()); }
+
+    public synchronized void setMaxCheckoutWaiters( int max_checkout_waiters )
+	throws ResourcePoolException
+    { this.max_checkout_waiters = max_checkout_waiters; }
+
+    public synchronized int getMaxCheckoutWaiters()
+	throws ResourcePoolException
+    { return max_checkout_waiters; }
+
+    public synchronized void setShedPredictedTimeouts( boolean shed_predicted_timeouts )
+	throws ResourcePoolException
+    { this.shed_predicted_timeouts = shed_predicted_timeouts; }
+
+    public synchronized boolean getShedPredictedTimeouts()
+	throws ResourcePoolException
+    { return shed_predicted_timeouts; }
+
+    public synchronized void setCheckoutStripes( int checkout_stripes )
+	throws ResourcePoolException
+    { this.checkout_stripes = checkout_stripes; }
+
+    public synchronized int getCheckoutStripes()
+	throws ResourcePoolException
+    { return checkout_stripes; }
+
+    public synchronized void setResourceMaxAgeJitter( long millis )
+	throws ResourcePoolException
+    { this.max_age_jitter = millis; }
+
+    public synchronized long getResourceMaxAgeJitter()
+	throws ResourcePoolException
+    { return max_age_jitter; }
+
+    public synchronized void setMaxConcurrentRetirements( int max_concurrent_retirements )
+	throws ResourcePoolException
+    { this.max_concurrent_retirements = max_concurrent_retirements; }
+
+    public synchronized int getMaxConcurrentRetirements()
+	throws ResourcePoolException
+    { return max_concurrent_retirements; }
+
+    public synchronized void setWarmupParallelism( int warmup_parallelism )
+	throws ResourcePoolException
+    { this.warmup_parallelism = warmup_parallelism; }
+
+    public synchronized int getWarmupParallelism()
+	throws ResourcePoolException
+    { return warmup_parallelism; }
+
+    public synchronized void setMaxConcurrentIdleTests( int max_concurrent_idle_tests )
+	throws ResourcePoolException
+    { this.max_concurrent_idle_tests = max_concurrent_idle_tests; }
+
+    public synchronized int getMaxConcurrentIdleTests()
+	throws ResourcePoolException
+    { return max_concurrent_idle_tests; }
+
+    public synchronized void setAcquireTaskRunner( AsynchronousRunner acquireTaskRunner )
+	throws ResourcePoolException
+    { this.acquireTaskRunner = acquireTaskRunner; }
+
+    public synchronized AsynchronousRunner getAcquireTaskRunner()
+	throws ResourcePoolException
+    { return acquireTaskRunner; }
+
+    public synchronized void setTestTaskRunner( AsynchronousRunner testTaskRunner )
+	throws ResourcePoolException
+    { this.testTaskRunner = testTaskRunner; }
+
+    public synchronized AsynchronousRunner getTestTaskRunner()
+	throws ResourcePoolException
+    { return testTaskRunner; }
+
+    public synchronized void setDestroyTaskRunner( AsynchronousRunner destroyTaskRunner )
+	throws ResourcePoolException
+    { this.destroyTaskRunner = destroyTaskRunner; }
+
+    public synchronized AsynchronousRunner getDestroyTaskRunner()
+	throws ResourcePoolException
+    { return destroyTaskRunner; }
+
     public synchronized ResourcePool createPool(ResourcePool.Manager mgr)
 	throws ResourcePoolException
     {
@@ -345,9 +504,27 @@ public class BasicResourcePoolFactory extends ResourcePoolFactory
 						    expiration_enforcement_delay,
 						    break_on_acquisition_failure,
 						    debug_store_checkout_stacktrace,
+						    concurrent_checkout,
+						    thread_affinity,
+						    checkout_ordering,
+						    adaptive_sizing,
+						    acquisition_parallelism,
+						    circuit_breaker_threshold,
+						    virtual_thread_friendly,
+						    priority_reservations,
+						    max_checkout_waiters,
+						    shed_predicted_timeouts,
+						    checkout_stripes,
+						    max_age_jitter,
+						    max_concurrent_retirements,
+						    warmup_parallelism,
+						    max_concurrent_idle_tests,
 						    taskRunner,
+						    acquireTaskRunner,
+						    testTaskRunner,
+						    destroyTaskRunner,
 						    asyncEventQueue,
-						    timer,
+						    timingWheel,
 						    this );
 	liveChildren.add( child );
 	return child;
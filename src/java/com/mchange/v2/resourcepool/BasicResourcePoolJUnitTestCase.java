@@ -0,0 +1,579 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import junit.framework.TestCase;
+
+/*
+ * Exercises small pools over a StubManager, whose resources are plain
+ * Objects, so timings here are the pool's own, give or take the 50 msec
+ * tick of the shared TimingWheel.
+ */
+public final class BasicResourcePoolJUnitTestCase extends TestCase
+{
+    final static long AWAIT_MILLIS = 10000;
+
+    public void testOpenCircuitFailsCheckoutsFastThenRecovers() throws Exception
+    {
+        StubManager mgr = new StubManager();
+        mgr.down = true;
+
+        BasicResourcePoolFactory fact = factory( 1, 1, 4 );
+        fact.setAcquisitionRetryDelay( 10 );
+        fact.setCircuitBreakerThreshold( 3 );
+        final ResourcePool pool = fact.createPool( mgr );
+        try
+        {
+            await( "the circuit to open", new Condition()
+            {
+                boolean holds() throws Exception
+                { return ! "CLOSED".equals( pool.getCircuitBreakerState() ); }
+            } );
+            assertEquals( 1, pool.getNumCircuitBreakerTrips() );
+
+            long start = System.currentTimeMillis();
+            try
+            {
+                pool.checkoutResource( 5000 );
+                fail( "A checkout should fail while the circuit is open." );
+            }
+            catch ( CircuitOpenException e )
+            {}
+            assertTrue( "An open circuit should fail checkouts fast.", System.currentTimeMillis() - start < 1000 );
+            assertTrue( pool.getNumCircuitBreakerRejections() >= 1 );
+
+            // while open, only the occasional probe should reach the source
+            int attempts = mgr.attempts.get();
+            Thread.sleep( 300 );
+            assertTrue( "Too many acquisition attempts while open: " + (mgr.attempts.get() - attempts),
+                        mgr.attempts.get() - attempts <= 3 );
+
+            mgr.down = false;
+            await( "a probe to close the circuit", new Condition()
+            {
+                boolean holds() throws Exception
+                { return "CLOSED".equals( pool.getCircuitBreakerState() ); }
+            } );
+            pool.checkinResource( pool.checkoutResource( 5000 ) );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testReservedCapacityIsHeldForItsPriority() throws Exception
+    {
+        BasicResourcePoolFactory fact = factory( 3, 3, 3 );
+        fact.setPriorityReservations( new int[] { 1, 0, 0 } );
+        ResourcePool pool = fact.createPool( new StubManager() );
+        try
+        {
+            awaitSize( pool, 3 );
+            assertEquals( 1, pool.getReservedCount( CheckoutPriorities.HIGH ) );
+
+            Object a = pool.checkoutResource( 1000, CheckoutPriorities.NORMAL );
+            Object b = pool.checkoutResource( 1000, CheckoutPriorities.NORMAL );
+            try
+            {
+                pool.checkoutResource( 200, CheckoutPriorities.NORMAL );
+                fail( "The last resource should be held for HIGH priority clients." );
+            }
+            catch ( TimeoutException e )
+            {}
+            assertEquals( 1, pool.getAvailableCount() );
+
+            Object c = pool.checkoutResource( 200, CheckoutPriorities.HIGH );
+            assertEquals( 2, pool.getNumCheckedOut( CheckoutPriorities.NORMAL ) );
+            assertEquals( 1, pool.getNumCheckedOut( CheckoutPriorities.HIGH ) );
+
+            pool.checkinResource( a );
+            pool.checkinResource( b );
+            pool.checkinResource( c );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testHigherPriorityWaitersAreServedFirst() throws Exception
+    {
+        ResourcePool pool = factory( 1, 1, 1 ).createPool( new StubManager() );
+        try
+        {
+            Object held = pool.checkoutResource( 1000 );
+
+            Checkout low = startCheckout( pool, 5000, CheckoutPriorities.LOW );
+            Checkout high = startCheckout( pool, 5000, CheckoutPriorities.HIGH );
+
+            pool.checkinResource( held );
+            held = high.awaitResource();
+            assertTrue( "A LOW priority client should still be waiting.", low.isAlive() );
+
+            pool.checkinResource( held );
+            pool.checkinResource( low.awaitResource() );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testMaxCheckoutWaitersShedsExcessClients() throws Exception
+    {
+        BasicResourcePoolFactory fact = factory( 1, 1, 1 );
+        fact.setMaxCheckoutWaiters( 1 );
+        ResourcePool pool = fact.createPool( new StubManager() );
+        try
+        {
+            Object held = pool.checkoutResource( 1000 );
+            Checkout waiter = startCheckout( pool, 5000, CheckoutPriorities.NORMAL );
+
+            long start = System.currentTimeMillis();
+            try
+            {
+                pool.checkoutResource( 5000 );
+                fail( "A client beyond maxCheckoutWaiters should be shed." );
+            }
+            catch ( PoolSaturatedException e )
+            {}
+            assertTrue( "A shed client should fail fast.", System.currentTimeMillis() - start < 1000 );
+            assertEquals( 1, pool.getNumShedCheckouts() );
+
+            pool.checkinResource( held );
+            pool.checkinResource( waiter.awaitResource() );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testPredictedTimeoutsAreShed() throws Exception
+    {
+        BasicResourcePoolFactory fact = factory( 1, 1, 1 );
+        fact.setShedPredictedTimeouts( true );
+        final ResourcePool pool = fact.createPool( new StubManager() );
+        try
+        {
+            // teach the pool that resources are held for 50 msecs or so
+            for (int i = 0; i < 10; ++i)
+            {
+                Object resc = pool.checkoutResource( 1000 );
+                Thread.sleep( 50 );
+                pool.checkinResource( resc );
+            }
+
+            final Object held = pool.checkoutResource( 1000 );
+            try
+            {
+                pool.checkoutResource( 5 );
+                fail( "A client that would surely time out should be shed." );
+            }
+            catch ( PoolSaturatedException e )
+            {}
+            assertEquals( 1, pool.getNumShedCheckouts() );
+
+            // a client with time enough should wait, and be served
+            Thread checkin = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep( 50 );
+                        pool.checkinResource( held );
+                    }
+                    catch ( Exception e )
+                    { e.printStackTrace(); }
+                }
+            };
+            checkin.start();
+            pool.checkinResource( pool.checkoutResource( 5000 ) );
+            checkin.join();
+            assertEquals( 1, pool.getNumShedCheckouts() );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testJitteredMaxAgesSpreadExpirations() throws Exception
+    {
+        LiveCountingManager mgr = new LiveCountingManager();
+        BasicResourcePoolFactory fact = factory( 8, 8, 8 );
+        fact.setResourceMaxAge( 1000 );
+        fact.setResourceMaxAgeJitter( 500 );
+        fact.setExpirationEnforcementDelay( 50 );
+        ResourcePool pool = fact.createPool( mgr );
+        try
+        {
+            mgr.awaitDestroyed( 8 );
+
+            long[] ages = mgr.ages( 8 );
+            Arrays.sort( ages );
+            assertTrue( "Expired before its jittered max age: " + ages[0], ages[0] >= 500 );
+            assertTrue( "Expired well after max age: " + ages[7], ages[7] < 1500 );
+            assertTrue( "Expirations should not come together: " + ages[0] + " to " + ages[7], ages[7] - ages[0] >= 50 );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testRollingRetirementsReplaceBeforeDestroying() throws Exception
+    {
+        LiveCountingManager mgr = new LiveCountingManager();
+        BasicResourcePoolFactory fact = factory( 3, 3, 3 );
+        fact.setResourceMaxAge( 500 );
+        fact.setMaxConcurrentRetirements( 1 );
+        fact.setExpirationEnforcementDelay( 50 );
+        ResourcePool pool = fact.createPool( mgr );
+        try
+        {
+            mgr.awaitDestroyed( 6 ); // two generations
+            mgr.assertRolling( 3, 1 );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testRetireAllResourcesRollsThroughThePool() throws Exception
+    {
+        LiveCountingManager mgr = new LiveCountingManager();
+        BasicResourcePoolFactory fact = factory( 3, 3, 3 );
+        fact.setMaxConcurrentRetirements( 1 );
+        ResourcePool pool = fact.createPool( mgr );
+        try
+        {
+            awaitSize( pool, 3 );
+            pool.retireAllResources();
+            mgr.awaitDestroyed( 3 );
+            mgr.assertRolling( 3, 1 );
+            awaitSize( pool, 3 );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testBulkCheckoutCompletesUnderSteadySingleCheckouts() throws Exception
+    { bulkCheckoutUnderSteadySingleCheckouts( false ); }
+
+    public void testConcurrentModeBulkCheckoutCompletesUnderSteadySingleCheckouts() throws Exception
+    { bulkCheckoutUnderSteadySingleCheckouts( true ); }
+
+    private void bulkCheckoutUnderSteadySingleCheckouts( boolean concurrent_checkout ) throws Exception
+    {
+        BasicResourcePoolFactory fact = factory( 4, 4, 4 );
+        fact.setConcurrentCheckout( concurrent_checkout );
+        final ResourcePool pool = fact.createPool( new StubManager() );
+        final AtomicBoolean go = new AtomicBoolean( true );
+        Thread[] singles = new Thread[6];
+        try
+        {
+            awaitSize( pool, 4 );
+
+            // at all times, some single client is waiting, ready to take whatever is released
+            for (int i = 0; i < singles.length; ++i)
+            {
+                singles[i] = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            while ( go.get() )
+                            {
+                                Object resc = pool.checkoutResource( 5000 );
+                                Thread.sleep( 5 );
+                                pool.checkinResource( resc );
+                            }
+                        }
+                        catch ( Exception e )
+                        { e.printStackTrace(); }
+                    }
+                };
+                singles[i].start();
+            }
+            Thread.sleep( 100 );
+
+            List rescs = pool.checkoutResources( 3, 5000 );
+            assertEquals( 3, rescs.size() );
+            pool.checkinResources( rescs );
+        }
+        finally
+        {
+            go.set( false );
+            for (int i = 0; i < singles.length; ++i)
+            {
+                if ( singles[i] != null )
+                    singles[i].join( AWAIT_MILLIS );
+            }
+            pool.close();
+        }
+    }
+
+    public void testConcurrentIdleTestsAreCapped() throws Exception
+    {
+        IdleTestingManager mgr = new IdleTestingManager();
+        mgr.test_millis = 100;
+        BasicResourcePoolFactory fact = factory( 6, 6, 6 );
+        fact.setIdleResourceTestPeriod( 1000 );
+        fact.setMaxConcurrentIdleTests( 1 );
+        final ResourcePool pool = fact.createPool( mgr );
+        try
+        {
+            mgr.awaitTested( 6 );
+            await( "six idle tests counted", new Condition()
+            {
+                boolean holds() throws Exception
+                { return pool.getNumIdleTests() >= 6; }
+            } );
+            synchronized ( mgr )
+            { assertEquals( 1, mgr.max_testing ); }
+        }
+        finally
+        { pool.close(); }
+    }
+
+    public void testCappedIdleTestsStarveNoResource() throws Exception
+    {
+        // six 200 msec tests per 1000 msec period, one at a time: more than can be run
+        IdleTestingManager mgr = new IdleTestingManager();
+        mgr.test_millis = 200;
+        BasicResourcePoolFactory fact = factory( 6, 6, 6 );
+        fact.setIdleResourceTestPeriod( 1000 );
+        fact.setMaxConcurrentIdleTests( 1 );
+        ResourcePool pool = fact.createPool( mgr );
+        try
+        { mgr.awaitTested( 6 ); }
+        finally
+        { pool.close(); }
+    }
+
+    public void testRecentlyCheckedInResourcesSkipIdleTests() throws Exception
+    {
+        IdleTestingManager mgr = new IdleTestingManager();
+        BasicResourcePoolFactory fact = factory( 1, 1, 1 );
+        fact.setIdleResourceTestPeriod( 1000 );
+        ResourcePool pool = fact.createPool( mgr );
+        try
+        {
+            long end = System.currentTimeMillis() + 2500;
+            while (System.currentTimeMillis() < end)
+            {
+                pool.checkinResource( pool.checkoutResource( 1000 ) );
+                Thread.sleep( 20 );
+            }
+            synchronized ( mgr )
+            { assertEquals( "A resource in constant use needs no idle test.", 0, mgr.tested.size() ); }
+            assertTrue( pool.getNumSkippedIdleTests() >= 1 );
+        }
+        finally
+        { pool.close(); }
+    }
+
+    static class StubManager implements ResourcePool.Manager
+    {
+        volatile boolean down = false;
+
+        final AtomicInteger attempts = new AtomicInteger();
+
+        public Object acquireResource() throws Exception
+        {
+            attempts.incrementAndGet();
+            if ( down )
+                throw new Exception( "The stub resource source is down." );
+            return new Object();
+        }
+
+        public void refurbishIdleResource(Object resc) throws Exception {}
+        public void refurbishResourceOnCheckout(Object resc)            {}
+        public void refurbishResourceOnCheckin(Object resc)             {}
+        public void destroyResource(Object resc, boolean checked_out)   {}
+    }
+
+    // counts resources between their acquisition and destruction
+    final static class LiveCountingManager extends StubManager
+    {
+        final Map  born   = new IdentityHashMap();
+        final List ages   = new ArrayList();
+
+        int live                   = 0;
+        int max_live               = 0;
+        int min_live_after_destroy = Integer.MAX_VALUE;
+
+        public Object acquireResource() throws Exception
+        {
+            Object out = super.acquireResource();
+            synchronized ( this )
+            {
+                born.put( out, new Long( System.currentTimeMillis() ) );
+                max_live = Math.max( max_live, ++live );
+            }
+            return out;
+        }
+
+        public synchronized void destroyResource(Object resc, boolean checked_out)
+        {
+            min_live_after_destroy = Math.min( min_live_after_destroy, --live );
+            ages.add( new Long( System.currentTimeMillis() - ((Long) born.remove( resc )).longValue() ) );
+        }
+
+        void awaitDestroyed( final int n ) throws Exception
+        {
+            await( n + " destructions", new Condition()
+            {
+                boolean holds()
+                { synchronized ( LiveCountingManager.this ) { return ages.size() >= n; } }
+            } );
+        }
+
+        synchronized long[] ages( int n )
+        {
+            long[] out = new long[ n ];
+            for (int i = 0; i < n; ++i)
+                out[i] = ((Long) ages.get( i )).longValue();
+            return out;
+        }
+
+        synchronized void assertRolling( int size, int max_concurrent_retirements )
+        {
+            assertTrue( "Retirement shrank the pool to " + min_live_after_destroy + ".", min_live_after_destroy >= size );
+            // resources are destroyed asynchronously, so a retired resource may
+            // not yet be gone when the next retirement begins
+            assertTrue( "Too many replacements at once: " + max_live + " live.", max_live <= size + 2 * max_concurrent_retirements );
+        }
+    }
+
+    // records which resources were idle tested, and how many at once
+    final static class IdleTestingManager extends StubManager
+    {
+        final Set tested = new HashSet();
+
+        int testing     = 0;
+        int max_testing = 0;
+
+        volatile long test_millis = 0;
+
+        public void refurbishIdleResource(Object resc) throws Exception
+        {
+            synchronized ( this )
+            {
+                max_testing = Math.max( max_testing, ++testing );
+                tested.add( resc );
+            }
+            try
+            { Thread.sleep( test_millis ); }
+            finally
+            {
+                synchronized ( this )
+                { --testing; }
+            }
+        }
+
+        void awaitTested( final int n ) throws Exception
+        {
+            await( n + " resources idle tested", new Condition()
+            {
+                boolean holds()
+                { synchronized ( IdleTestingManager.this ) { return tested.size() >= n; } }
+            } );
+        }
+    }
+
+    final static class Checkout extends Thread
+    {
+        final ResourcePool pool;
+        final long         timeout;
+        final int          priority;
+
+        volatile Object    resc;
+        volatile Exception failure;
+
+        Checkout( ResourcePool pool, long timeout, int priority )
+        {
+            this.pool     = pool;
+            this.timeout  = timeout;
+            this.priority = priority;
+        }
+
+        public void run()
+        {
+            try
+            { resc = pool.checkoutResource( timeout, priority ); }
+            catch ( Exception e )
+            { failure = e; }
+        }
+
+        Object awaitResource() throws Exception
+        {
+            join( AWAIT_MILLIS );
+            if ( failure != null )
+                throw failure;
+            assertNotNull( "Checkout did not complete.", resc );
+            return resc;
+        }
+    }
+
+    abstract static class Condition
+    { abstract boolean holds() throws Exception; }
+
+    static BasicResourcePoolFactory factory( int start, int min, int max ) throws ResourcePoolException
+    {
+        BasicResourcePoolFactory fact = BasicResourcePoolFactory.createNoEventSupportInstance( 3 );
+        fact.setStart( start );
+        fact.setMin( min );
+        fact.setMax( max );
+        return fact;
+    }
+
+    static Checkout startCheckout( final ResourcePool pool, long timeout, final int priority ) throws Exception
+    {
+        final int waiting = pool.getNumCheckoutWaiters( priority );
+        Checkout out = new Checkout( pool, timeout, priority );
+        out.start();
+        await( "a waiting checkout", new Condition()
+        {
+            boolean holds() throws Exception
+            { return pool.getNumCheckoutWaiters( priority ) > waiting; }
+        } );
+        return out;
+    }
+
+    static void await( String what, Condition c ) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (! c.holds())
+        {
+            if ( System.currentTimeMillis() > deadline )
+                fail( "Timed out awaiting " + what + "." );
+            Thread.sleep( 10 );
+        }
+    }
+
+    static void awaitSize( final ResourcePool pool, final int size ) throws Exception
+    {
+        await( "a pool of " + size, new Condition()
+        {
+            boolean holds() throws Exception
+            { return pool.getPoolSize() == size; }
+        } );
+    }
+}
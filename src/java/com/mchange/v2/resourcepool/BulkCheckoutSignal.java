@@ -0,0 +1,116 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Clients checking out several resources at once take all they need or
+ * none, so unlike single checkouts, they cannot queue in a HandoffQueue
+ * to be handed resources one at a time. They wait here instead, for any
+ * resource to be released, or any other change in the pool's fortunes,
+ * and then look again.
+ *
+ * A waiter must enter() before it reads the generation and looks for
+ * resources, and a releaser must release before it signals, so that
+ * between them, no release is missed. Releasers pay only a read of an
+ * AtomicInteger unless bulk clients are waiting.
+ *
+ * We wait on a Condition rather than a monitor, so that waiting clients
+ * don't pin virtual threads to their carriers.
+ */
+final class BulkCheckoutSignal
+{
+    final AtomicInteger waiting = new AtomicInteger( 0 );
+
+    final ReentrantLock lock    = new ReentrantLock();
+    final Condition     changed = lock.newCondition();
+
+    //MT: protected by lock
+    long generation = 0;
+
+    void enter()
+    { waiting.incrementAndGet(); }
+
+    void exit()
+    { waiting.decrementAndGet(); }
+
+    int size()
+    { return waiting.get(); }
+
+    long generation()
+    {
+        lock.lock();
+        try
+        { return generation; }
+        finally
+        { lock.unlock(); }
+    }
+
+    void signal()
+    {
+        if (waiting.get() > 0)
+        {
+            lock.lock();
+            try
+            {
+                ++generation;
+                changed.signalAll();
+            }
+            finally
+            { lock.unlock(); }
+        }
+    }
+
+    /**
+     * @param seen the generation read before the caller last looked for resources
+     * @param deadline in milliseconds since the epoch, or zero to wait indefinitely
+     * @return false if the deadline passed without a signal
+     */
+    boolean await( long seen, long deadline ) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (generation == seen)
+            {
+                if (deadline > 0)
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        return false;
+                    changed.await( remaining, TimeUnit.MILLISECONDS );
+                }
+                else
+                    changed.await();
+            }
+            return true;
+        }
+        finally
+        { lock.unlock(); }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+/**
+ * Decides the order in which a BasicResourcePool's idle resources are checked out.
+ * Idle resources wait in a queue, and are always checked out from its front.
+ * A CheckoutOrdering decides where in that queue a resource is placed when it
+ * becomes available.
+ *
+ * <p>Implementations must be immutable and thread-safe, and, if named by class
+ * in configuration, must offer a public no-arg constructor.</p>
+ *
+ * @see CheckoutOrderings
+ */
+public interface CheckoutOrdering
+{
+    // reasons a resource becomes available, or is reconsidered
+    public final static int ACQUIRED    = 0;
+    public final static int CHECKED_IN  = 1;
+    public final static int IDLE_TESTED = 2;
+
+    // placements
+    public final static int FRONT     = 0;
+    public final static int BACK      = 1;
+    public final static int UNCHANGED = 2; // only meaningful for IDLE_TESTED
+
+    /**
+     * @param reason one of ACQUIRED, CHECKED_IN, or IDLE_TESTED (in which case
+     *        the resource has just passed a test, and is already in the queue)
+     * @return FRONT, BACK, or (for IDLE_TESTED) UNCHANGED
+     */
+    public int placement( int reason );
+}
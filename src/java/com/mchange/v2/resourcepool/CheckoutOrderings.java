@@ -0,0 +1,96 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+/**
+ * The standard CheckoutOrderings.
+ *
+ * <ul>
+ *   <li><b>LIFO</b> -- the most recently checked-in resource is checked out next. A small,
+ *       hot working set of resources serves most requests, while the rest sit idle long
+ *       enough to be expired, so the pool shrinks toward its load. The idle count churns
+ *       most under this ordering: expect more idle expirations, and short idle times at
+ *       checkout.</li>
+ *   <li><b>FIFO</b> -- the resource idle longest is checked out next. Load is spread
+ *       evenly across all resources, which stay warm, so few are ever idle long enough to
+ *       be expired, and the pool holds its size. Expect few idle expirations, and idle times
+ *       at checkout near the pool size divided by the checkout rate.</li>
+ *   <li><b>MOST_RECENTLY_VALIDATED</b> -- newly acquired resources, and resources that have
+ *       just passed an idle test, are checked out first. Checked-in resources go to the back.
+ *       Clients are preferentially handed resources recently known to be good, making
+ *       tests on checkout less valuable. Churn falls between LIFO and FIFO.</li>
+ * </ul>
+ */
+public final class CheckoutOrderings
+{
+    public final static CheckoutOrdering LIFO                    = new Lifo();
+    public final static CheckoutOrdering FIFO                    = new Fifo();
+    public final static CheckoutOrdering MOST_RECENTLY_VALIDATED = new MostRecentlyValidated();
+
+    /**
+     * @param name "LIFO", "FIFO", "MOST_RECENTLY_VALIDATED" (case-insensitive), or the fully
+     *        qualified name of a class implementing CheckoutOrdering. null means LIFO.
+     */
+    public static CheckoutOrdering forName( String name ) throws Exception
+    {
+        if (name == null || name.trim().length() == 0 || "LIFO".equalsIgnoreCase( name.trim() ))
+            return LIFO;
+        else if ("FIFO".equalsIgnoreCase( name.trim() ))
+            return FIFO;
+        else if ("MOST_RECENTLY_VALIDATED".equalsIgnoreCase( name.trim() ))
+            return MOST_RECENTLY_VALIDATED;
+        else
+            return (CheckoutOrdering) Class.forName( name.trim() ).newInstance();
+    }
+
+    final static class Lifo implements CheckoutOrdering
+    {
+        public int placement( int reason )
+        { return ( reason == IDLE_TESTED ? UNCHANGED : FRONT ); }
+
+        public String toString()
+        { return "LIFO"; }
+    }
+
+    final static class Fifo implements CheckoutOrdering
+    {
+        public int placement( int reason )
+        { return ( reason == IDLE_TESTED ? UNCHANGED : BACK ); }
+
+        public String toString()
+        { return "FIFO"; }
+    }
+
+    final static class MostRecentlyValidated implements CheckoutOrdering
+    {
+        public int placement( int reason )
+        { return ( reason == CHECKED_IN ? BACK : FRONT ); }
+
+        public String toString()
+        { return "MOST_RECENTLY_VALIDATED"; }
+    }
+
+    private CheckoutOrderings()
+    {}
+}
@@ -0,0 +1,132 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.StringTokenizer;
+
+/**
+ * The priorities at which clients may check out resources.
+ *
+ * <p>Clients waiting for a resource are served strictly in order of priority,
+ * HIGH first, and in order of arrival within a priority. Each priority may also
+ * reserve a minimum number of resources: a checkout is admitted only if it leaves
+ * room, within the pool's maximum size, for the reservations of the other priorities
+ * that are not yet in use. A reservation is a floor, not a ceiling -- any priority
+ * may use the whole of the pool that others have not reserved.</p>
+ */
+public final class CheckoutPriorities
+{
+    public final static int HIGH   = 0;
+    public final static int NORMAL = 1;
+    public final static int LOW    = 2;
+
+    public final static int COUNT  = 3;
+
+    final static String[] NAMES = { "HIGH", "NORMAL", "LOW" };
+
+    /**
+     * @param name "HIGH", "NORMAL", or "LOW" (case-insensitive)
+     */
+    public static int forName( String name )
+    {
+        String trimmed = ( name == null ? "" : name.trim() );
+        for (int i = 0; i < COUNT; ++i)
+        {
+            if ( NAMES[i].equalsIgnoreCase( trimmed ) )
+                return i;
+        }
+        throw new IllegalArgumentException("Unknown checkout priority: '" + name + "'. [Expected one of HIGH, NORMAL, LOW]");
+    }
+
+    public static String nameOf( int priority )
+    {
+        checkPriority( priority );
+        return NAMES[ priority ];
+    }
+
+    public static void checkPriority( int priority )
+    {
+        if (priority < 0 || priority >= COUNT)
+            throw new IllegalArgumentException("Unknown checkout priority: " + priority + ". [Expected one of HIGH (0), NORMAL (1), LOW (2)]");
+    }
+
+    /**
+     * @param spec a comma-separated list of priority names and reserved counts,
+     *        e.g. "HIGH:5,LOW:1". Priorities not listed reserve nothing.
+     * @return the reserved count of each priority, indexed by priority, or null
+     *         if spec is null or empty, or reserves nothing
+     */
+    public static int[] parseReservations( String spec )
+    {
+        if (spec == null || spec.trim().length() == 0)
+            return null;
+
+        int[] out = new int[ COUNT ];
+        boolean any = false;
+        for (StringTokenizer st = new StringTokenizer( spec, "," ); st.hasMoreTokens(); )
+        {
+            String entry = st.nextToken().trim();
+            int colon = entry.indexOf(':');
+            if (colon < 0)
+                throw new IllegalArgumentException("Bad checkout priority reservation '" + entry + "'. [Expected <priority>:<count>, e.g. HIGH:5]");
+
+            int priority = forName( entry.substring(0, colon) );
+            int count;
+            try { count = Integer.parseInt( entry.substring( colon + 1 ).trim() ); }
+            catch (NumberFormatException e)
+            { throw new IllegalArgumentException("Bad count in checkout priority reservation '" + entry + "'."); }
+            if (count < 0)
+                throw new IllegalArgumentException("Negative count in checkout priority reservation '" + entry + "'.");
+
+            out[ priority ] = count;
+            any = any || count > 0;
+        }
+        return ( any ? out : null );
+    }
+
+    /**
+     * @throws IllegalArgumentException unless, in a pool of size max, every priority
+     *         could check out at least one resource while all the others hold
+     *         their reservations unused
+     */
+    public static void checkReservations( int[] reserved, int max )
+    {
+        if (reserved.length != COUNT)
+            throw new IllegalArgumentException("Expected " + COUNT + " checkout priority reservations, found " + reserved.length + '.');
+
+        int total = 0;
+        for (int p = 0; p < COUNT; ++p)
+            total += reserved[p];
+
+        for (int p = 0; p < COUNT; ++p)
+        {
+            if (1 + total - reserved[p] > max)
+                throw new IllegalArgumentException("Checkout priority reservations " + PriorityLanes.toString( reserved ) + 
+                                                   " leave no room within max pool size " + max + " for priority " + NAMES[p] + '.');
+        }
+    }
+
+    private CheckoutPriorities()
+    {}
+}
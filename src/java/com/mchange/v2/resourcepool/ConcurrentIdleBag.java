@@ -0,0 +1,392 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Holds the idle resources of a BasicResourcePool in concurrent checkout
+ * mode. Every managed resource has a slot, whose state is changed only by
+ * compare-and-set, so a client thread may claim an idle resource, or
+ * return one, without acquiring the pool's lock.
+ *
+ * Idle slots are kept on a lock-free (Treiber) stack, so that, as with
+ * the traditional LinkedList of unused resources, the most recently
+ * checked-in resource is the next to be checked out. Stack nodes may go
+ * stale when a slot is claimed other than by popping. Stale nodes are
+ * discarded when popped, and are swept out when they become numerous.
+ *
+ * With more than one stripe, there is a stack per stripe, and each thread
+ * has a home stripe, chosen by hashing its id. A resource checked in is
+ * released onto the home stack of the client that checked it in (even
+ * though helper threads refurbish and release it), and clients poll their
+ * home stacks first, stealing from the others, in turn, only if theirs is
+ * empty. Clients on different stripes thus contend neither for a stack
+ * head nor for an idle count. Ordering is LIFO within each stripe.
+ */
+final class ConcurrentIdleBag
+{
+    // slot states
+    final static int IDLE      = 0; // available for checkout by anyone
+    final static int HELD      = 1; // claimed by the pool itself, e.g. for an idle test
+    final static int OUT       = 2; // checked out by a client
+    final static int RETURNING = 3; // checked in, but still being refurbished
+    final static int GONE      = 4; // no longer managed
+
+    // per-stripe heads and idle counts are spaced PAD elements apart,
+    // so that those of different stripes fall on different cache lines
+    final static int PAD = 16;
+
+    final int                  stripes;
+    final ConcurrentHashMap    slots = new ConcurrentHashMap();   // resc -> Slot
+    final AtomicReferenceArray heads;                             // top Node of each stripe's stack
+    final AtomicIntegerArray   idle;                              // idle count of each stripe
+    final AtomicInteger        stale = new AtomicInteger( 0 );
+
+    ConcurrentIdleBag()
+    { this( 1 ); }
+
+    ConcurrentIdleBag( int stripes )
+    {
+        this.stripes = Math.max( 1, stripes );
+        this.heads   = new AtomicReferenceArray( this.stripes * PAD );
+        this.idle    = new AtomicIntegerArray( this.stripes * PAD );
+    }
+
+    /**
+     * @return the number of resources currently available for checkout
+     */
+    public int size()
+    { 
+        int out = 0;
+        for (int i = 0; i < stripes; ++i)
+            out += idle.get( i * PAD );
+        return Math.max( 0, out ); 
+    }
+
+    /**
+     * Registers a new resource, initially held by the pool.
+     */
+    public void register( Object resc )
+    { slots.put( resc, new Slot( resc ) ); }
+
+    /**
+     * Forgets about a resource, whatever its state.
+     * Should be called (while holding the pool's lock) whenever the pool
+     * ceases to manage a resource.
+     */
+    public void remove( Object resc )
+    {
+        Slot s = (Slot) slots.remove( resc );
+        if (s != null)
+        {
+            if (s.state.getAndSet( GONE ) == IDLE)
+                idle.decrementAndGet( s.stripe * PAD );
+            if (s.queued.get() && stale.incrementAndGet() > slots.size())
+                sweep();
+        }
+    }
+
+    /**
+     * Claims the most recently released idle resource for checkout.
+     *
+     * @return the claimed resource, now marked as checked-out, or null
+     *         if no resource was available.
+     */
+    public Object poll()
+    {
+        int home = homeStripe();
+        for (int i = 0; i < stripes; ++i)
+        {
+            Object out = poll( (home + i) % stripes );
+            if (out != null)
+                return out;
+        }
+        return null;
+    }
+
+    private Object poll( int stripe )
+    {
+        for (Node n = pop( stripe ); n != null; n = pop( stripe ))
+        {
+            Slot s = n.slot;
+
+            // clear queued before we try to claim, so that if our claim fails
+            // because of some concurrent change of state, a subsequent release()
+            // will find the slot unqueued and push it again.
+            s.queued.set( false );
+            if ( s.state.compareAndSet( IDLE, OUT ) )
+            {
+                idle.decrementAndGet( s.stripe * PAD );
+                return s.resc;
+            }
+            else if ( s.state.get() == GONE )
+                stale.decrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * Claims a particular idle resource for checkout. Its stack node, if
+     * any, goes stale, and will be discarded when popped.
+     *
+     * @return true if resc was idle, and is now marked as checked-out
+     */
+    public boolean take( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        if (s != null && s.state.compareAndSet( IDLE, OUT ))
+        {
+            idle.decrementAndGet( s.stripe * PAD );
+            return true;
+        }
+        else
+            return false;
+    }
+
+    /**
+     * Claims a particular idle resource on behalf of the pool itself.
+     *
+     * @return true if resc was idle, and is now held
+     */
+    public boolean claim( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        if (s != null && s.state.compareAndSet( IDLE, HELD ))
+        {
+            idle.decrementAndGet( s.stripe * PAD );
+            return true;
+        }
+        else
+            return false;
+    }
+
+    /**
+     * Marks a checked-out resource as checked-in, but not yet available.
+     *
+     * @return false if resc was not checked out, probably because it
+     *         has been checked-in already.
+     */
+    public boolean markReturning( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        if ( s != null && s.state.compareAndSet( OUT, RETURNING ) )
+        {
+            s.stripe = homeStripe(); //so that release() returns resc to the checking-in client's stripe
+            return true;
+        }
+        else
+            return false;
+    }
+
+    /**
+     * Marks a held or returning resource as checked-out, so that
+     * it may be handed directly to a waiting client. A resource that
+     * the pool itself has polled, and so is already out, is left as is.
+     *
+     * @return false if resc is not managed, or is idle
+     */
+    public boolean markOut( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        if (s == null)
+            return false;
+
+        int st;
+        do
+        {
+            st = s.state.get();
+            if (st == OUT)
+                return true;
+            else if (st != HELD && st != RETURNING)
+                return false;
+        }
+        while (! s.state.compareAndSet( st, OUT ));
+        return true;
+    }
+
+    /**
+     * Makes a held, returning, or (for the pool's own bookkeeping) checked-out
+     * resource available for checkout.
+     *
+     * @return false if resc is not managed, or is already available
+     */
+    public boolean release( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        if (s == null)
+            return false;
+
+        // a returning resource goes back to the stripe of the client that checked
+        // it in, others to the stripe of the current thread. (only the sum of the
+        // per-stripe idle counts is meaningful, so it does no harm if a race leaves
+        // a slot counted against one stripe and discounted from another.)
+        int st;
+        int stripe;
+        do
+        {
+            st = s.state.get();
+            if (st == IDLE || st == GONE)
+                return false;
+            stripe = ( st == RETURNING ? s.stripe : homeStripe() );
+            s.stripe = stripe;
+        }
+        while (! s.state.compareAndSet( st, IDLE ));
+
+        // we push before incrementing the count, so that
+        // threads who see a positive count are likely to
+        // find something on the stack
+        if ( s.queued.compareAndSet( false, true ) )
+            push( stripe, s );
+        idle.incrementAndGet( stripe * PAD );
+        return true;
+    }
+
+    /**
+     * @return true if resc is idle, or held by the pool, i.e. if it would
+     *         be among the unused resources of a traditional pool.
+     */
+    public boolean isAvailable( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        if (s == null)
+            return false;
+        else
+        {
+            int st = s.state.get();
+            return (st == IDLE || st == HELD);
+        }
+    }
+
+    /**
+     * @return true if resc is held by the pool
+     */
+    public boolean isHeld( Object resc )
+    {
+        Slot s = (Slot) slots.get( resc );
+        return ( s != null && s.state.get() == HELD );
+    }
+
+    /**
+     * @return a snapshot of all resources that are idle, or held by the pool
+     */
+    public List availableResources()
+    {
+        List out = new LinkedList();
+        for (Iterator ii = slots.values().iterator(); ii.hasNext(); )
+        {
+            Slot s = (Slot) ii.next();
+            int st = s.state.get();
+            if (st == IDLE || st == HELD)
+                out.add( s.resc );
+        }
+        return out;
+    }
+
+    // thread ids are usually allocated sequentially, so we mix
+    // them, lest threads created together share a stripe
+    private int homeStripe()
+    {
+        if (stripes == 1)
+            return 0;
+
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h >>> 1) % stripes;
+    }
+
+    private void push( int stripe, Slot s )
+    {
+        int i = stripe * PAD;
+        Node n = new Node( s );
+        do { n.next = (Node) heads.get( i ); }
+        while (! heads.compareAndSet( i, n.next, n ));
+    }
+
+    private Node pop( int stripe )
+    {
+        int i = stripe * PAD;
+        Node h;
+        do
+        {
+            h = (Node) heads.get( i );
+            if (h == null)
+                return null;
+        }
+        while (! heads.compareAndSet( i, h, h.next ));
+        return h;
+    }
+
+    // detaches each whole stack, then pushes back only
+    // the nodes of slots that remain idle, in their
+    // original order. concurrent pollers may briefly
+    // see an empty stack, and will fall back to the
+    // pool's synchronized checkout path.
+    private void sweep()
+    {
+        stale.set( 0 );
+        for (int stripe = 0; stripe < stripes; ++stripe)
+        {
+            List keep = new ArrayList();
+            for (Node n = (Node) heads.getAndSet( stripe * PAD, null ); n != null; n = n.next)
+            {
+                Slot s = n.slot;
+                s.queued.set( false );
+                if (s.state.get() == IDLE && s.queued.compareAndSet( false, true ))
+                    keep.add( s );
+            }
+            for (int i = keep.size(); --i >= 0; )
+                push( stripe, (Slot) keep.get( i ) );
+        }
+    }
+
+    final static class Slot
+    {
+        final Object        resc;
+        final AtomicInteger state  = new AtomicInteger( HELD );
+        final AtomicBoolean queued = new AtomicBoolean( false );
+
+        // the stripe onto whose stack the slot was last released, and against
+        // whose idle count it is counted while idle. always a valid index,
+        // so racy reads are harmless.
+        int stripe = 0;
+
+        Slot( Object resc )
+        { this.resc = resc; }
+    }
+
+    final static class Node
+    {
+        final Slot slot;
+        Node       next; // set only before the node is published
+
+        Node( Slot slot )
+        { this.slot = slot; }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import junit.framework.TestCase;
+
+public final class ConcurrentIdleBagJUnitTestCase extends TestCase
+{
+    public void testSlotStateTransitions()
+    {
+        ConcurrentIdleBag bag = new ConcurrentIdleBag();
+        Object resc = "resc";
+
+        bag.register( resc );
+        assertTrue( "A newly registered resource should be held by the pool.", bag.isHeld( resc ) );
+        assertTrue( "A held resource should count as available.", bag.isAvailable( resc ) );
+        assertEquals( 0, bag.size() );
+        assertNull( "A held resource should not be polled.", bag.poll() );
+        assertFalse( "A held resource is not checked out, so can't be returning.", bag.markReturning( resc ) );
+
+        assertTrue( bag.release( resc ) );
+        assertEquals( 1, bag.size() );
+        assertTrue( bag.isAvailable( resc ) );
+        assertFalse( "An idle resource should not be released twice.", bag.release( resc ) );
+        assertFalse( "An idle resource is not checked out, so can't be returning.", bag.markReturning( resc ) );
+        assertFalse( "An idle resource should not be marked out directly.", bag.markOut( resc ) );
+
+        assertSame( resc, bag.poll() );
+        assertEquals( 0, bag.size() );
+        assertFalse( "A checked-out resource should not count as available.", bag.isAvailable( resc ) );
+        assertFalse( "A checked-out resource should not be claimed.", bag.claim( resc ) );
+        assertTrue( "A checked-out resource marked out should stay out.", bag.markOut( resc ) );
+
+        assertTrue( bag.markReturning( resc ) );
+        assertFalse( "A returning resource should not be checked in twice.", bag.markReturning( resc ) );
+        assertFalse( bag.isAvailable( resc ) );
+        assertTrue( bag.release( resc ) );
+
+        assertTrue( bag.claim( resc ) );
+        assertTrue( bag.isHeld( resc ) );
+        assertTrue( "A held resource should count as available.", bag.isAvailable( resc ) );
+        assertEquals( 0, bag.size() );
+        assertFalse( "A held resource should not be claimed twice.", bag.claim( resc ) );
+        assertEquals( Collections.singletonList( resc ), bag.availableResources() );
+        assertTrue( "A held resource should be handed out directly.", bag.markOut( resc ) );
+        assertFalse( bag.isHeld( resc ) );
+        assertTrue( bag.markReturning( resc ) );
+        assertTrue( "A returning resource should be handed out directly.", bag.markOut( resc ) );
+        assertTrue( bag.markReturning( resc ) );
+        assertTrue( bag.release( resc ) );
+
+        bag.remove( resc );
+        assertEquals( 0, bag.size() );
+        assertFalse( bag.isAvailable( resc ) );
+        assertFalse( "A removed resource should not be released.", bag.release( resc ) );
+        assertFalse( "A removed resource should not be claimed.", bag.claim( resc ) );
+        assertNull( "A removed resource should not be polled.", bag.poll() );
+    }
+
+    public void testLastReleasedIsFirstPolled()
+    {
+        ConcurrentIdleBag bag = new ConcurrentIdleBag();
+        for (int i = 0; i < 3; ++i)
+        {
+            bag.register( new Integer( i ) );
+            bag.release( new Integer( i ) );
+        }
+        assertEquals( new Integer( 2 ), bag.poll() );
+        assertEquals( new Integer( 1 ), bag.poll() );
+        assertEquals( new Integer( 0 ), bag.poll() );
+        assertNull( bag.poll() );
+    }
+
+    public void testStaleNodesAreDiscardedWhenPolled()
+    {
+        ConcurrentIdleBag bag = new ConcurrentIdleBag();
+        Object a = "a";
+        Object b = "b";
+        bag.register( a );
+        bag.register( b );
+        bag.release( a );
+        bag.release( b );
+
+        // b's node goes stale, but remains atop the stack
+        assertTrue( bag.claim( b ) );
+        assertEquals( 1, bag.size() );
+        assertSame( a, bag.poll() );
+        assertNull( bag.poll() );
+
+        // discarding b's node unqueued it, so it can be pushed again
+        assertTrue( bag.release( b ) );
+        assertSame( b, bag.poll() );
+    }
+
+    public void testTakenResourceLeavesAStaleNode()
+    {
+        ConcurrentIdleBag bag = new ConcurrentIdleBag();
+        Object a = "a";
+        Object b = "b";
+        bag.register( a );
+        bag.register( b );
+        assertFalse( "A held resource should not be taken.", bag.take( a ) );
+        bag.release( a );
+        bag.release( b );
+
+        // a is taken from beneath b, and its node goes stale
+        assertTrue( bag.take( a ) );
+        assertFalse( "An idle resource should be taken only once.", bag.take( a ) );
+        assertEquals( 1, bag.size() );
+        assertSame( b, bag.poll() );
+        assertNull( bag.poll() );
+
+        assertTrue( bag.markReturning( a ) );
+        assertTrue( bag.release( a ) );
+        assertSame( a, bag.poll() );
+
+        bag.remove( b );
+        assertFalse( "A removed resource should not be taken.", bag.take( b ) );
+    }
+
+    public void testStaleNodesAreSwept()
+    {
+        ConcurrentIdleBag bag = new ConcurrentIdleBag();
+        for (int i = 0; i < 10; ++i)
+        {
+            bag.register( new Integer( i ) );
+            bag.release( new Integer( i ) );
+        }
+
+        // the sixth removal leaves more stale nodes than managed resources
+        for (int i = 0; i < 6; ++i)
+            bag.remove( new Integer( i ) );
+
+        assertEquals( 0, bag.stale.get() );
+        List stacked = stack( bag, 0 );
+        assertEquals( "Only idle resources should remain stacked after a sweep: " + stacked, 4, stacked.size() );
+        assertEquals( "A sweep should preserve stack order.", Arrays.asList( new Object[] { new Integer( 9 ), new Integer( 8 ), new Integer( 7 ), new Integer( 6 ) } ), stacked );
+        assertEquals( 4, bag.size() );
+
+        for (int i = 0; i < 4; ++i)
+            assertEquals( stacked.get( i ), bag.poll() );
+        assertNull( bag.poll() );
+    }
+
+    public void testPollersStealFromOtherStripes() throws Exception
+    {
+        final ConcurrentIdleBag bag = new ConcurrentIdleBag( 4 );
+
+        // release resources from threads until they occupy at least two stripes, at
+        // least one of which can't be the home stripe of any one poller
+        List rescs = new ArrayList();
+        Set stripes = new HashSet();
+        for (int i = 0; i < 64 && stripes.size() < 2; ++i)
+        {
+            Object resc = new Integer( i );
+            rescs.add( resc );
+            bag.register( resc );
+            stripes.add( new Integer( releaseOnNewThread( bag, resc ) ) );
+        }
+        assertEquals( "Could not release resources onto more than one stripe.", 2, stripes.size() );
+
+        final List polled = new ArrayList();
+        runOnNewThread( new Runnable()
+        {
+            public void run()
+            {
+                for (Object resc = bag.poll(); resc != null; resc = bag.poll())
+                    polled.add( resc );
+            }
+        } );
+        assertEquals( "A poller should find resources on every stripe.", new HashSet( rescs ), new HashSet( polled ) );
+        assertEquals( 0, bag.size() );
+    }
+
+    public void testReturningResourceGoesToCheckingInClientsStripe() throws Exception
+    {
+        final ConcurrentIdleBag bag = new ConcurrentIdleBag( 4 );
+        final Object resc = "resc";
+        bag.register( resc );
+        bag.release( resc );
+        assertSame( resc, bag.poll() );
+
+        final int[] stripe = new int[1];
+        runOnNewThread( new Runnable()
+        {
+            public void run()
+            {
+                assertTrue( bag.markReturning( resc ) );
+                stripe[0] = slot( bag, resc ).stripe;
+            }
+        } );
+
+        // a helper thread, here ours, releases it after refurbishment
+        assertTrue( bag.release( resc ) );
+        assertEquals( stripe[0], slot( bag, resc ).stripe );
+        assertEquals( Collections.singletonList( resc ), stack( bag, stripe[0] ) );
+    }
+
+    private static ConcurrentIdleBag.Slot slot( ConcurrentIdleBag bag, Object resc )
+    { return (ConcurrentIdleBag.Slot) bag.slots.get( resc ); }
+
+    // the resources whose nodes are on a stripe's stack, top first
+    private static List stack( ConcurrentIdleBag bag, int stripe )
+    {
+        List out = new ArrayList();
+        for (ConcurrentIdleBag.Node n = (ConcurrentIdleBag.Node) bag.heads.get( stripe * ConcurrentIdleBag.PAD ); n != null; n = n.next)
+            out.add( n.slot.resc );
+        return out;
+    }
+
+    // a resource released by a thread that isn't returning it goes to that thread's home stripe
+    private static int releaseOnNewThread( final ConcurrentIdleBag bag, final Object resc ) throws Exception
+    {
+        runOnNewThread( new Runnable()
+        {
+            public void run()
+            { bag.release( resc ); }
+        } );
+        return slot( bag, resc ).stripe;
+    }
+
+    private static void runOnNewThread( Runnable r ) throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        final Runnable inner = r;
+        Thread t = new Thread()
+        {
+            public void run()
+            {
+                try
+                { inner.run(); }
+                catch (Throwable e)
+                { failure[0] = e; }
+            }
+        };
+        t.start();
+        t.join();
+        if (failure[0] instanceof Error)
+            throw (Error) failure[0];
+        else if (failure[0] != null)
+            throw (Exception) failure[0];
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * A fair queue of clients waiting to check out a resource. A resource that
+ * becomes available is handed directly to the longest-waiting client of the
+ * highest priority (see CheckoutPriorities) that is waiting and may be
+ * admitted, which alone is woken. Each waiter parks on its own, and times out (or is
+ * interrupted) independently, by a compare-and-set on its own state, without
+ * disturbing the queue or anyone else in it. Cancelled waiters are skipped
+ * when encountered, and purged when they become numerous.
+ *
+ * A waiter may instead be asynchronous, in which case no Thread parks. The
+ * waiter's Listener is notified by whichever Thread fulfills or fails it.
+ *
+ * Entirely thread-safe, no external synchronization is required.
+ */
+final class HandoffQueue
+{
+    final static int PURGE_THRESHOLD = 32;
+
+    // one queue of waiters per priority, highest priority first
+    final ConcurrentLinkedQueue[] lanes     = new ConcurrentLinkedQueue[ CheckoutPriorities.COUNT ];
+    final AtomicInteger[]         laneLive  = new AtomicInteger[ CheckoutPriorities.COUNT ];
+    final AtomicInteger           live      = new AtomicInteger( 0 );
+    final AtomicInteger           cancelled = new AtomicInteger( 0 );
+
+    HandoffQueue()
+    {
+        for (int p = 0; p < lanes.length; ++p)
+        {
+            lanes[p]    = new ConcurrentLinkedQueue();
+            laneLive[p] = new AtomicInteger( 0 );
+        }
+    }
+
+    /**
+     * Adds a Waiter for the current Thread to the tail of priority's queue.
+     */
+    public Waiter enqueue( int priority )
+    { return enqueue( new Waiter( Thread.currentThread(), priority ) ); }
+
+    /**
+     * Adds an asynchronous Waiter, whose listener will be notified
+     * when it is fulfilled or failed, to the tail of priority's queue.
+     */
+    public Waiter enqueue( int priority, Listener listener )
+    { return enqueue( new Waiter( listener, priority ) ); }
+
+    private Waiter enqueue( Waiter w )
+    {
+        lanes[ w.priority ].offer( w );
+
+        // we increment only after the Waiter is visible in the queue, so that
+        // anyone who sees a positive count and tries to hand off a resource
+        // will find someone to hand it to
+        laneLive[ w.priority ].incrementAndGet();
+        live.incrementAndGet();
+        return w;
+    }
+
+    /**
+     * Hands resc to the longest-waiting client of the highest priority
+     * that has clients waiting, and that admission (if non-null) admits.
+     *
+     * @return false if nobody was waiting, or no waiting client could be
+     *         admitted, in which case the caller is still responsible for resc
+     */
+    public boolean handoff( Object resc, Admission admission )
+    {
+        for (int p = 0; p < lanes.length; ++p)
+        {
+            if (laneLive[p].get() <= 0 || (admission != null && !admission.admit( resc, p )))
+                continue;
+
+            for (Waiter w = (Waiter) lanes[p].poll(); w != null; w = (Waiter) lanes[p].poll())
+            {
+                if (w.fulfill( resc ))
+                    return true;
+                else if (w.state.get() == Waiter.CANCELLED)
+                    cancelled.decrementAndGet();
+            }
+
+            // everyone at this priority gave up even as we admitted resc
+            if (admission != null)
+                admission.withdraw( resc );
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of clients waiting
+     */
+    public int size()
+    { return Math.max( 0, live.get() ); }
+
+    /**
+     * @return the number of clients waiting at priority
+     */
+    public int size( int priority )
+    { return Math.max( 0, laneLive[ priority ].get() ); }
+
+    /**
+     * @return a snapshot of the Threads of all waiting clients, 
+     *         highest priority, then longest-waiting, first
+     */
+    public List threads()
+    {
+        List out = new ArrayList();
+        for (int p = 0; p < lanes.length; ++p)
+        {
+            for (Iterator ii = lanes[p].iterator(); ii.hasNext(); )
+            {
+                Waiter w = (Waiter) ii.next();
+                if (w.thread != null && w.state.get() == Waiter.WAITING)
+                    out.add( w.thread );
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Fails every client now waiting. Their await() methods
+     * will return Waiter.FAILED.
+     */
+    public void failAll()
+    {
+        for (int p = 0; p < lanes.length; ++p)
+        {
+            for (Waiter w = (Waiter) lanes[p].poll(); w != null; w = (Waiter) lanes[p].poll())
+                w.fail();
+        }
+        cancelled.set( 0 );
+    }
+
+    /**
+     * Fails every asynchronous waiter now waiting, leaving
+     * waiting Threads undisturbed.
+     */
+    public void failAsynchronous()
+    {
+        for (int p = 0; p < lanes.length; ++p)
+        {
+            for (Iterator ii = lanes[p].iterator(); ii.hasNext(); )
+            {
+                Waiter w = (Waiter) ii.next();
+                if (w.listener != null && w.fail())
+                    ii.remove();
+            }
+        }
+    }
+
+    /**
+     * Interrupts the Threads of every client now waiting.
+     */
+    public void interruptAll()
+    {
+        for (Iterator ii = threads().iterator(); ii.hasNext(); )
+            ((Thread) ii.next()).interrupt();
+    }
+
+    private void purge()
+    {
+        for (int p = 0; p < lanes.length; ++p)
+        {
+            for (Iterator ii = lanes[p].iterator(); ii.hasNext(); )
+            {
+                Waiter w = (Waiter) ii.next();
+                if (w.state.get() != Waiter.WAITING)
+                    ii.remove();
+            }
+        }
+        cancelled.set( 0 );
+    }
+
+    /**
+     * Decides whether a resource may be handed to a client of a given
+     * priority. An admitted resource that finds nobody to take it is
+     * withdrawn. Called without any lock held by the queue.
+     */
+    interface Admission
+    {
+        public boolean admit( Object resc, int priority );
+        public void    withdraw( Object resc );
+    }
+
+    /**
+     * Notified, in place of a parked Thread, when an asynchronous Waiter
+     * is fulfilled or failed. The notifying Thread may hold the pool's lock,
+     * so implementations should do little more than dispatch the outcome.
+     */
+    interface Listener
+    {
+        public void waiterDone( Waiter w );
+    }
+
+    final class Waiter
+    {
+        final static int WAITING   = 0;
+        final static int FULFILLED = 1;
+        final static int CANCELLED = 2;
+        final static int FAILED    = 3;
+
+        final Thread        thread;   //null if asynchronous
+        final Listener      listener; //null unless asynchronous
+        final int           priority;
+        final AtomicInteger state = new AtomicInteger( WAITING );
+
+        volatile Object resc = null;
+
+        Waiter( Thread thread, int priority )
+        { 
+            this.thread   = thread; 
+            this.listener = null;
+            this.priority = priority;
+        }
+
+        Waiter( Listener listener, int priority )
+        {
+            this.thread   = null;
+            this.listener = listener;
+            this.priority = priority;
+        }
+
+        public int getState()
+        { return state.get(); }
+
+        /**
+         * @return the resource handed to this Waiter, if it has been FULFILLED
+         */
+        public Object getResource()
+        { return resc; }
+
+        /**
+         * Parks the calling Thread, which should be the Waiter's own, until this
+         * Waiter is fulfilled, failed, or the timeout expires.
+         *
+         * @param timeout in milliseconds, zero means forever
+         * @return FULFILLED, FAILED, or CANCELLED if the timeout expired
+         *
+         * @throws InterruptedException if the Thread was interrupted before
+         *         the Waiter was fulfilled or failed.
+         */
+        public int await( long timeout ) throws InterruptedException
+        {
+            long deadline = ( timeout > 0 ? System.nanoTime() + (timeout * 1000000L) : 0 );
+            while (state.get() == WAITING)
+            {
+                if (Thread.interrupted())
+                {
+                    if (cancel())
+                        throw new InterruptedException();
+                    else
+                    {
+                        // we were fulfilled or failed even as we were interrupted.
+                        // we'll take the outcome, but preserve the interrupt.
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+
+                if (timeout > 0)
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        cancel();
+                        break;
+                    }
+                    LockSupport.parkNanos( this, remaining );
+                }
+                else
+                    LockSupport.park( this );
+            }
+            return state.get();
+        }
+
+        /**
+         * @return true if the Waiter was cancelled, false if it had
+         *         already been fulfilled or failed
+         */
+        public boolean cancel()
+        {
+            if (state.compareAndSet( WAITING, CANCELLED ))
+            {
+                departed();
+                if (cancelled.incrementAndGet() > size() + PURGE_THRESHOLD)
+                    purge();
+                return true;
+            }
+            else
+                return false;
+        }
+
+        boolean fulfill( Object r )
+        {
+            // we set resc before we change state, so that
+            // a Waiter that sees FULFILLED sees resc as well
+            this.resc = r;
+            if (state.compareAndSet( WAITING, FULFILLED ))
+            {
+                departed();
+                wake();
+                return true;
+            }
+            else
+            {
+                this.resc = null;
+                return false;
+            }
+        }
+
+        boolean fail()
+        {
+            if (state.compareAndSet( WAITING, FAILED ))
+            {
+                departed();
+                wake();
+                return true;
+            }
+            else
+                return false;
+        }
+
+        private void departed()
+        {
+            laneLive[ priority ].decrementAndGet();
+            live.decrementAndGet();
+        }
+
+        private void wake()
+        {
+            if (thread != null)
+                LockSupport.unpark( thread );
+            else
+                listener.waiterDone( this );
+        }
+    }
+}
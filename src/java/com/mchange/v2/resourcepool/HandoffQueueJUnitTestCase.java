@@ -0,0 +1,242 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import junit.framework.TestCase;
+
+public final class HandoffQueueJUnitTestCase extends TestCase
+{
+    final static int NORMAL = CheckoutPriorities.NORMAL;
+
+    public void testLongestWaitingIsServedFirst()
+    {
+        HandoffQueue q = new HandoffQueue();
+        Recorder rec = new Recorder();
+        HandoffQueue.Waiter[] ws = new HandoffQueue.Waiter[3];
+        for (int i = 0; i < ws.length; ++i)
+            ws[i] = q.enqueue( NORMAL, rec );
+        assertEquals( 3, q.size() );
+
+        for (int i = 0; i < ws.length; ++i)
+            assertTrue( q.handoff( new Integer( i ), null ) );
+        for (int i = 0; i < ws.length; ++i)
+        {
+            assertEquals( HandoffQueue.Waiter.FULFILLED, ws[i].getState() );
+            assertEquals( new Integer( i ), ws[i].getResource() );
+        }
+        assertEquals( Arrays.asList( ws ), rec.done );
+        assertEquals( 0, q.size() );
+        assertFalse( "Nobody should remain to take a resource.", q.handoff( "extra", null ) );
+    }
+
+    public void testHigherPrioritiesAreServedFirst()
+    {
+        HandoffQueue q = new HandoffQueue();
+        Recorder rec = new Recorder();
+        HandoffQueue.Waiter low    = q.enqueue( CheckoutPriorities.LOW, rec );
+        HandoffQueue.Waiter normal = q.enqueue( CheckoutPriorities.NORMAL, rec );
+        HandoffQueue.Waiter high   = q.enqueue( CheckoutPriorities.HIGH, rec );
+        assertEquals( 1, q.size( CheckoutPriorities.LOW ) );
+
+        q.handoff( "a", null );
+        q.handoff( "b", null );
+        q.handoff( "c", null );
+        assertEquals( "a", high.getResource() );
+        assertEquals( "b", normal.getResource() );
+        assertEquals( "c", low.getResource() );
+    }
+
+    public void testRefusedPrioritiesAreSkipped()
+    {
+        HandoffQueue q = new HandoffQueue();
+        Recorder rec = new Recorder();
+        HandoffQueue.Waiter high = q.enqueue( CheckoutPriorities.HIGH, rec );
+        HandoffQueue.Waiter low  = q.enqueue( CheckoutPriorities.LOW, rec );
+
+        HandoffQueue.Admission lowOnly = new HandoffQueue.Admission()
+        {
+            public boolean admit( Object resc, int priority )
+            { return priority == CheckoutPriorities.LOW; }
+
+            public void withdraw( Object resc )
+            { fail( "Nothing should be withdrawn." ); }
+        };
+        assertTrue( q.handoff( "a", lowOnly ) );
+        assertEquals( "a", low.getResource() );
+        assertEquals( HandoffQueue.Waiter.WAITING, high.getState() );
+        assertFalse( "Nobody admissible remains to take a resource.", q.handoff( "b", lowOnly ) );
+    }
+
+    public void testAdmittedResourceIsWithdrawnIfWaitersGiveUp()
+    {
+        HandoffQueue q = new HandoffQueue();
+        final HandoffQueue.Waiter w = q.enqueue( NORMAL, new Recorder() );
+
+        // the only waiter gives up even as the resource is admitted for it
+        final List withdrawn = new ArrayList();
+        HandoffQueue.Admission admission = new HandoffQueue.Admission()
+        {
+            public boolean admit( Object resc, int priority )
+            { return w.cancel(); }
+
+            public void withdraw( Object resc )
+            { withdrawn.add( resc ); }
+        };
+        assertFalse( q.handoff( "a", admission ) );
+        assertEquals( Collections.singletonList( "a" ), withdrawn );
+        assertEquals( 0, q.size() );
+    }
+
+    public void testCancelledWaitersAreSkipped()
+    {
+        HandoffQueue q = new HandoffQueue();
+        Recorder rec = new Recorder();
+        HandoffQueue.Waiter first  = q.enqueue( NORMAL, rec );
+        HandoffQueue.Waiter second = q.enqueue( NORMAL, rec );
+
+        assertTrue( first.cancel() );
+        assertFalse( "A Waiter should be cancelled only once.", first.cancel() );
+        assertEquals( 1, q.size() );
+
+        assertTrue( q.handoff( "a", null ) );
+        assertEquals( "a", second.getResource() );
+        assertNull( first.getResource() );
+        assertFalse( "A fulfilled Waiter should not be cancelled.", second.cancel() );
+        assertEquals( HandoffQueue.Waiter.FULFILLED, second.getState() );
+        assertEquals( Collections.singletonList( second ), rec.done );
+    }
+
+    public void testCancelAndFulfillRaceHasOneWinner() throws Exception
+    {
+        final int TRIALS = 2000;
+        for (int i = 0; i < TRIALS; ++i)
+        {
+            final HandoffQueue q = new HandoffQueue();
+            final HandoffQueue.Waiter w = q.enqueue( NORMAL, new Recorder() );
+            final boolean[] cancelled = new boolean[1];
+            Thread canceller = new Thread()
+            {
+                public void run()
+                { cancelled[0] = w.cancel(); }
+            };
+            canceller.start();
+            boolean handed = q.handoff( "resc", null );
+            canceller.join();
+
+            assertTrue( "Exactly one of cancel() and handoff() should succeed. [cancelled: " + cancelled[0] + ", handed: " + handed + "]", cancelled[0] != handed );
+            assertEquals( handed ? "resc" : null, w.getResource() );
+            assertEquals( handed ? HandoffQueue.Waiter.FULFILLED : HandoffQueue.Waiter.CANCELLED, w.getState() );
+            assertEquals( 0, q.size() );
+        }
+    }
+
+    public void testBlockingWaiterIsWokenOrTimesOut() throws Exception
+    {
+        final HandoffQueue q = new HandoffQueue();
+        final int[]    state = new int[1];
+        final Object[] resc  = new Object[1];
+        Thread waiter = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    HandoffQueue.Waiter w = q.enqueue( NORMAL );
+                    state[0] = w.await( 0 );
+                    resc[0] = w.getResource();
+                }
+                catch (InterruptedException e)
+                { state[0] = -1; }
+            }
+        };
+        waiter.start();
+        while (q.size() == 0)
+            Thread.sleep( 1 );
+        assertTrue( q.handoff( "resc", null ) );
+        waiter.join( 5000 );
+        assertEquals( HandoffQueue.Waiter.FULFILLED, state[0] );
+        assertEquals( "resc", resc[0] );
+
+        HandoffQueue.Waiter w = q.enqueue( NORMAL );
+        long start = System.nanoTime();
+        assertEquals( HandoffQueue.Waiter.CANCELLED, w.await( 50 ) );
+        assertTrue( "A Waiter should not time out early.", System.nanoTime() - start >= 50 * 1000000L );
+        assertEquals( 0, q.size() );
+    }
+
+    public void testCancelledWaitersArePurged()
+    {
+        HandoffQueue q = new HandoffQueue();
+        Recorder rec = new Recorder();
+        HandoffQueue.Waiter[] ws = new HandoffQueue.Waiter[50];
+        for (int i = 0; i < ws.length; ++i)
+            ws[i] = q.enqueue( NORMAL, rec );
+
+        // the 42nd cancellation leaves more cancelled waiters than
+        // live ones plus PURGE_THRESHOLD, and purges all 42
+        for (int i = 0; i < 45; ++i)
+            ws[i].cancel();
+
+        assertEquals( 5, q.size() );
+        assertEquals( 3, q.cancelled.get() );
+        assertEquals( 8, q.lanes[ NORMAL ].size() );
+
+        assertTrue( q.handoff( "a", null ) );
+        assertSame( ws[45], rec.done.get( 0 ) );
+        assertEquals( 0, q.cancelled.get() );
+    }
+
+    public void testFailAsynchronousSparesThreads()
+    {
+        HandoffQueue q = new HandoffQueue();
+        Recorder rec = new Recorder();
+        HandoffQueue.Waiter async1 = q.enqueue( NORMAL, rec );
+        HandoffQueue.Waiter sync   = q.enqueue( NORMAL );
+        HandoffQueue.Waiter async2 = q.enqueue( CheckoutPriorities.HIGH, rec );
+
+        q.failAsynchronous();
+        assertEquals( HandoffQueue.Waiter.FAILED, async1.getState() );
+        assertEquals( HandoffQueue.Waiter.FAILED, async2.getState() );
+        assertEquals( HandoffQueue.Waiter.WAITING, sync.getState() );
+        assertEquals( 2, rec.done.size() );
+        assertEquals( 1, q.size() );
+        assertEquals( Collections.singletonList( Thread.currentThread() ), q.threads() );
+
+        q.failAll();
+        assertEquals( HandoffQueue.Waiter.FAILED, sync.getState() );
+        assertEquals( 0, q.size() );
+        assertTrue( q.threads().isEmpty() );
+        Thread.interrupted(); // failing our own Waiter unparked us, but leaves no interrupt
+    }
+
+    final static class Recorder implements HandoffQueue.Listener
+    {
+        final List done = Collections.synchronizedList( new ArrayList() );
+
+        public void waiterDone( HandoffQueue.Waiter w )
+        { done.add( w ); }
+    }
+}
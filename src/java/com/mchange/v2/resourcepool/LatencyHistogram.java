@@ -0,0 +1,174 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  A lock-free histogram of latencies, in the manner of HdrHistogram.
+ *  Values are recorded in microseconds into log-linear buckets: values below
+ *  64 microseconds are counted exactly, and above that, each power of two
+ *  is divided into 32 buckets, so that any value is reported to within about
+ *  3% of its true value. Values beyond about 19 hours are recorded as that.
+ *
+ *  Recording a value costs a few atomic increments and never blocks, so
+ *  that pools can record every checkout. Percentiles are read without
+ *  stopping recorders, and so are approximate while values are being
+ *  recorded. Counts accumulate over the life of the histogram.
+ */
+public final class LatencyHistogram
+{
+    final static int  SUB_BUCKET_BITS  = 6;
+    final static int  SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;   // 64
+    final static int  SUB_BUCKET_HALF  = SUB_BUCKET_COUNT / 2;   // 32
+    final static int  MAX_MAGNITUDE    = 35;                     // log2 of the largest value we distinguish
+    final static long MAX_VALUE        = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    final static int  NUM_BUCKETS      = SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF;
+
+    final static double[] SUMMARY_PERCENTILES = { 50, 90, 99, 99.9 };
+
+    final AtomicLongArray counts = new AtomicLongArray( NUM_BUCKETS );
+    final AtomicLong      total  = new AtomicLong( 0 );
+    final AtomicLong      sum    = new AtomicLong( 0 );  //microseconds
+    final AtomicLong      max    = new AtomicLong( 0 );  //microseconds
+
+    public void recordNanos( long nanos )
+    { recordMicros( nanos / 1000 ); }
+
+    public void recordMillis( long millis )
+    { recordMicros( millis * 1000 ); }
+
+    public void recordMicros( long micros )
+    {
+        if (micros < 0) //the clock moved backwards
+            micros = 0;
+        else if (micros > MAX_VALUE)
+            micros = MAX_VALUE;
+
+        counts.incrementAndGet( bucketIndex( micros ) );
+        total.incrementAndGet();
+        sum.addAndGet( micros );
+
+        long m;
+        while ( micros > (m = max.get()) && !max.compareAndSet( m, micros ) ) 
+            ;
+    }
+
+    public long getCount()
+    { return total.get(); }
+
+    /**
+     * @return the largest value recorded, in milliseconds
+     */
+    public float getMaxMillis()
+    { return max.get() / 1000f; }
+
+    /**
+     * @return the mean of the values recorded, in milliseconds, or 0 if none have been
+     */
+    public float getMeanMillis()
+    {
+        long n = total.get();
+        return ( n == 0 ? 0 : (float) ((double) sum.get() / n / 1000) );
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the value, in milliseconds, at or below which percentile of the values
+     *         recorded fall, or 0 if none have been
+     */
+    public float getPercentileMillis( double percentile )
+    {
+        if (percentile < 0 || percentile > 100 || Double.isNaN( percentile ))
+            throw new IllegalArgumentException("A percentile must be between 0 and 100: " + percentile);
+
+        long n = total.get();
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max( 1, (long) Math.ceil( percentile / 100 * n ) );
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+        {
+            seen += counts.get( i );
+            if (seen >= rank)
+                return Math.min( highestEquivalentValue( i ), max.get() ) / 1000f;
+        }
+        return getMaxMillis(); //counts moved beneath us, rank lies beyond what we saw
+    }
+
+    /**
+     * @return a one-line summary: count, mean, median, 90th, 99th, and 99.9th percentiles, and max
+     */
+    public String summary()
+    {
+        StringBuffer sb = new StringBuffer( 128 );
+        sb.append( "count: " );
+        sb.append( getCount() );
+        sb.append( "; mean: " );
+        sb.append( getMeanMillis() );
+        for (int i = 0; i < SUMMARY_PERCENTILES.length; ++i)
+        {
+            sb.append( "; p" );
+            double p = SUMMARY_PERCENTILES[i];
+            sb.append( p == Math.floor( p ) ? String.valueOf( (long) p ) : String.valueOf( p ) );
+            sb.append( ": " );
+            sb.append( getPercentileMillis( p ) );
+        }
+        sb.append( "; max: " );
+        sb.append( getMaxMillis() );
+        sb.append( " (msecs)" );
+        return sb.toString();
+    }
+
+    public String toString()
+    { return super.toString() + " [" + summary() + "]"; }
+
+    // values below SUB_BUCKET_COUNT get buckets of their own. above, a value
+    // of magnitude m (2^m <= value < 2^(m+1)) is shifted right until only its
+    // top SUB_BUCKET_BITS bits remain, the highest of which is always set, so
+    // the remaining bits pick one of SUB_BUCKET_HALF buckets for magnitude m.
+    static int bucketIndex( long value )
+    {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros( value );
+        int shift     = magnitude - (SUB_BUCKET_BITS - 1);
+        int sub       = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (sub - SUB_BUCKET_HALF);
+    }
+
+    static long highestEquivalentValue( int index )
+    {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift  = offset / SUB_BUCKET_HALF + 1;
+        long sub   = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A BasicResourcePool's bookkeeping for checkout priorities.
+ *
+ * If any priority reserves resources, every checkout must first be admitted:
+ * a checkout at priority p is admitted only if the resources already checked
+ * out, plus this one, plus the unmet reservations of every other priority,
+ * fit within the pool's maximum size. An admitted resource is counted against
+ * its priority, via its PunchCard, until it is checked in, made available
+ * again, or removed from the pool. Counting is idempotent, so every path by
+ * which a resource leaves a client's hands may release it.
+ *
+ * Checkout counts and wait times are kept per priority whether or not
+ * anything is reserved.
+ */
+final class PriorityLanes
+{
+    final int   max;
+    final int[] reserved; //null if nothing is reserved, in which case every checkout is admitted
+
+    //MT: protected by this' lock
+    final int[] in_use = new int[ CheckoutPriorities.COUNT ];
+    int         total_in_use = 0;
+
+    //MT: thread-safe
+    final AtomicLongArray checkouts   = new AtomicLongArray( CheckoutPriorities.COUNT );
+    final AtomicLongArray wait_millis = new AtomicLongArray( CheckoutPriorities.COUNT );
+
+    PriorityLanes( int max, int[] reserved )
+    {
+        this.max      = max;
+        this.reserved = ( reserved == null ? null : (int[]) reserved.clone() );
+
+        if (this.reserved != null)
+            CheckoutPriorities.checkReservations( this.reserved, max );
+    }
+
+    boolean reserving()
+    { return reserved != null; }
+
+    /*
+     * @return true, having counted card's resource against priority, if a
+     *         checkout at priority leaves room for every other priority's
+     *         unmet reservation. a resource already counted is first released.
+     */
+    synchronized boolean admit( BasicResourcePool.PunchCard card, int priority )
+    {
+        if (reserved == null)
+            return true;
+
+        _release( card );
+
+        if (total_in_use + 1 + unmetExcept( priority ) > max)
+            return false;
+
+        ++in_use[ priority ];
+        ++total_in_use;
+        card.priority = priority;
+        return true;
+    }
+
+    /*
+     * @return true if card's resource had been counted against a priority
+     */
+    synchronized boolean release( BasicResourcePool.PunchCard card )
+    { return _release( card ); }
+
+    synchronized int getInUse( int priority )
+    { return ( reserved == null ? -1 : in_use[ priority ] ); }
+
+    int getReserved( int priority )
+    { return ( reserved == null ? 0 : reserved[ priority ] ); }
+
+    void recordCheckout( int priority )
+    { checkouts.incrementAndGet( priority ); }
+
+    void recordWait( int priority, long millis )
+    { wait_millis.addAndGet( priority, millis ); }
+
+    long getNumCheckouts( int priority )
+    { return checkouts.get( priority ); }
+
+    float getAverageWaitTime( int priority )
+    {
+        long n = checkouts.get( priority );
+        return ( n == 0 ? 0 : ((float) wait_millis.get( priority )) / n );
+    }
+
+    private boolean _release( BasicResourcePool.PunchCard card )
+    {
+        assert Thread.holdsLock( this );
+
+        int p = card.priority;
+        if (p < 0)
+            return false;
+
+        --in_use[ p ];
+        --total_in_use;
+        card.priority = -1;
+        return true;
+    }
+
+    private int unmetExcept( int priority )
+    {
+        assert Thread.holdsLock( this );
+
+        int out = 0;
+        for (int p = 0; p < CheckoutPriorities.COUNT; ++p)
+        {
+            if (p != priority)
+                out += Math.max( 0, reserved[p] - in_use[p] );
+        }
+        return out;
+    }
+
+    static String toString( int[] reserved )
+    {
+        if (reserved == null)
+            return "[none]";
+
+        StringBuffer sb = new StringBuffer();
+        sb.append('[');
+        for (int p = 0; p < reserved.length; ++p)
+        {
+            if (p > 0)
+                sb.append(", ");
+            sb.append( CheckoutPriorities.nameOf( p ) );
+            sb.append(':');
+            sb.append( reserved[p] );
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+
+/*
+ * A double-ended queue of resources, backed by a circular array that doubles
+ * as needed. Insertion and removal at either end are constant time, and
+ * allocate nothing, unlike LinkedList, which allocates a node per insertion.
+ * Removal from the middle shifts the shorter side of the queue.
+ *
+ * Not thread-safe. BasicResourcePool accesses its instance only while
+ * holding its own lock.
+ */
+final class ResourceDeque
+{
+    final static int INITIAL_CAPACITY = 16; //must be a power of two
+
+    Object[] elements = new Object[ INITIAL_CAPACITY ];
+    int      head     = 0; //index of the first element
+    int      size     = 0;
+
+    public int size()
+    { return size; }
+
+    public void addFirst( Object o )
+    {
+        ensureCapacity();
+        head = (head - 1) & (elements.length - 1);
+        elements[head] = o;
+        ++size;
+    }
+
+    public void addLast( Object o )
+    {
+        ensureCapacity();
+        elements[ index( size ) ] = o;
+        ++size;
+    }
+
+    /**
+     * @return the first element, or null if the deque is empty
+     */
+    public Object peekFirst()
+    { return ( size == 0 ? null : elements[head] ); }
+
+    /**
+     * @return the first element, now removed, or null if the deque is empty
+     */
+    public Object pollFirst()
+    {
+        if (size == 0)
+            return null;
+
+        Object out = elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        --size;
+        return out;
+    }
+
+    public boolean contains( Object o )
+    { return indexOf( o ) >= 0; }
+
+    public boolean remove( Object o )
+    {
+        int i = indexOf( o );
+        if (i < 0)
+            return false;
+        else
+        {
+            removeAt( i );
+            return true;
+        }
+    }
+
+    public void removeAll( Collection c )
+    {
+        for (Iterator ii = c.iterator(); ii.hasNext(); )
+            remove( ii.next() );
+    }
+
+    /**
+     * @return a snapshot of all elements, first to last
+     */
+    public List toList()
+    {
+        List out = new ArrayList( size );
+        for (int i = 0; i < size; ++i)
+            out.add( elements[ index( i ) ] );
+        return out;
+    }
+
+    // i is an offset from head
+    private int index( int i )
+    { return (head + i) & (elements.length - 1); }
+
+    // returns an offset from head
+    private int indexOf( Object o )
+    {
+        for (int i = 0; i < size; ++i)
+        {
+            if (o.equals( elements[ index( i ) ] ))
+                return i;
+        }
+        return -1;
+    }
+
+    // i is an offset from head
+    private void removeAt( int i )
+    {
+        if (i < size / 2)
+        {
+            for (int j = i; j > 0; --j)
+                elements[ index( j ) ] = elements[ index( j - 1 ) ];
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        }
+        else
+        {
+            for (int j = i; j < size - 1; ++j)
+                elements[ index( j ) ] = elements[ index( j + 1 ) ];
+            elements[ index( size - 1 ) ] = null;
+        }
+        --size;
+    }
+
+    private void ensureCapacity()
+    {
+        if (size == elements.length)
+        {
+            Object[] newElements = new Object[ elements.length * 2 ];
+            for (int i = 0; i < size; ++i)
+                newElements[i] = elements[ index( i ) ];
+            elements = newElements;
+            head = 0;
+        }
+    }
+}
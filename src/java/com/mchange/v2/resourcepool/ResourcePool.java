@@ -23,6 +23,8 @@
 
 package com.mchange.v2.resourcepool;
 
+import java.util.Collection;
+import java.util.List;
 import com.mchange.v1.util.ClosableResource;
 
 public interface ResourcePool extends ClosableResource
@@ -38,9 +40,51 @@ public interface ResourcePool extends ClosableResource
     public Object checkoutResource( long timeout )
 	throws TimeoutException, ResourcePoolException, InterruptedException;
 
+    /**
+     * Checks out a resource at the given priority, one of the constants of
+     * CheckoutPriorities. Other checkout methods check out at NORMAL priority.
+     *
+     * @see CheckoutPriorities
+     */
+    public Object checkoutResource( long timeout, int priority )
+	throws TimeoutException, ResourcePoolException, InterruptedException;
+
+    /**
+     * Checks out a resource without blocking the calling Thread. If a resource is
+     * available, the callback is notified before this method returns. Otherwise, it is
+     * notified by a Thread of the pool's, once a resource has been checked in or acquired
+     * for it, once timeout milliseconds have passed (zero means no timeout), or once it
+     * has become clear that no resource can be acquired. The callback is notified exactly
+     * once, unless the checkout is first cancelled.
+     */
+    public AsyncCheckout checkoutResourceAsync( long timeout, CheckoutCallback callback );
+
+    public AsyncCheckout checkoutResourceAsync( long timeout, int priority, CheckoutCallback callback );
+
+    /**
+     * Checks out count resources at once, or none. Waits, for up to timeout
+     * milliseconds (zero means no timeout), until count resources can be claimed
+     * together. Only the longest-waiting bulk client holds resources while it
+     * waits, collecting them as they are released.
+     *
+     * @return a List of count resources, each of which must be checked in
+     */
+    public List checkoutResources( int count, long timeout )
+	throws TimeoutException, ResourcePoolException, InterruptedException;
+
+    public List checkoutResources( int count, long timeout, int priority )
+	throws TimeoutException, ResourcePoolException, InterruptedException;
+
     public void checkinResource( Object resc ) 
 	throws ResourcePoolException;
 
+    /**
+     * Checks in each of several resources, even if some
+     * fail, then throws the first failure, if any.
+     */
+    public void checkinResources( Collection rescs ) 
+	throws ResourcePoolException;
+
     public void checkinAll()
 	throws ResourcePoolException;
 
@@ -93,10 +137,204 @@ public interface ResourcePool extends ClosableResource
 
     public long getNumFailedIdleTests()
     throws ResourcePoolException;
+
+    /**
+     * @return the number of resources expired while idle (i.e. not checked out),
+     *         for exceeding a maximum idle time or age
+     */
+    public long getNumIdleExpirations()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of idle resources that have been tested
+     */
+    public long getNumIdleTests()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of idle tests skipped, because the resources
+     *         had been checked in within the idle test period
+     */
+    public long getNumSkippedIdleTests()
+    throws ResourcePoolException;
+
+    /**
+     * @return the mean time, in milliseconds, that resources had been idle when they were checked out
+     */
+    public long getAverageIdleTimeAtCheckout()
+    throws ResourcePoolException;
+
+    /**
+     * @return a moving average of the number of checkouts per second,
+     *         maintained only if adaptive sizing is enabled
+     */
+    public float getCheckoutRate()
+    throws ResourcePoolException;
+
+    /**
+     * @return a moving average of the time, in milliseconds, for which resources
+     *         are checked out, maintained only if adaptive sizing is enabled
+     */
+    public float getAverageHoldTime()
+    throws ResourcePoolException;
+
+    /**
+     * @return a moving average of the time, in milliseconds, that each checkout
+     *         spends waiting for a resource, maintained only if adaptive sizing is enabled
+     */
+    public float getAverageCheckoutWaitTime()
+    throws ResourcePoolException;
+
+    /**
+     * @return the pool size most recently predicted by adaptive sizing, or -1
+     *         if adaptive sizing is not enabled
+     */
+    public int getAdaptiveTargetPoolSize()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of times adaptive sizing has grown the pool's target size
+     */
+    public long getNumAdaptiveExpansions()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of times adaptive sizing has shrunk the pool's target size
+     */
+    public long getNumAdaptiveContractions()
+    throws ResourcePoolException;
+
+    /**
+     * @return the time, in milliseconds, the pool most recently took to grow
+     *         from empty to its maximum size, or -1 if it has never done so
+     */
+    public long getLastTimeToFill()
+    throws ResourcePoolException;
+
+    /**
+     * @return the time, in milliseconds, from the pool's start until it
+     *         was ready, or -1 if it is not yet ready
+     */
+    public long getTimeToReady()
+    throws ResourcePoolException;
+
+    /**
+     * Waits until the pool has first acquired its initial resources,
+     * the larger of its start and min sizes.
+     *
+     * @param timeout milliseconds, or zero to wait indefinitely
+     * @return true if the pool is ready, false if the timeout
+     *         elapsed first
+     * @throws ResourcePoolException if the pool is closed or
+     *         broken, including while we wait
+     */
+    public boolean awaitReady( long timeout )
+    throws ResourcePoolException, InterruptedException;
+
+    /**
+     * @return CLOSED, OPEN, or HALF_OPEN, or DISABLED if the pool has no acquisition circuit breaker
+     */
+    public String getCircuitBreakerState()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of times the pool's acquisition circuit breaker has opened
+     */
+    public long getNumCircuitBreakerTrips()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of checkouts that have failed immediately because the
+     *         pool's acquisition circuit breaker was open
+     */
+    public long getNumCircuitBreakerRejections()
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of checkouts that have failed immediately, with a
+     *         PoolSaturatedException, because too many clients were already
+     *         waiting, or because they would likely have timed out
+     */
+    public long getNumShedCheckouts()
+    throws ResourcePoolException;
+
+    /**
+     * @return the distribution of times from clients' requests for resources to
+     *         their receipt of them, over successful checkouts
+     */
+    public LatencyHistogram getCheckoutWaitHistogram()
+    throws ResourcePoolException;
+
+    /**
+     * @return the distribution of times for which clients held resources before checking them in
+     */
+    public LatencyHistogram getHoldTimeHistogram()
+    throws ResourcePoolException;
+
+    /**
+     * @return the distribution of times taken by successful acquisitions of new resources
+     */
+    public LatencyHistogram getAcquisitionTimeHistogram()
+    throws ResourcePoolException;
+
+    /**
+     * @return queue waits and run times of the tasks that acquire new resources
+     */
+    public TaskStatistics getAcquireTaskStatistics()
+    throws ResourcePoolException;
+
+    /**
+     * @return queue waits and run times of the tasks that test idle resources
+     */
+    public TaskStatistics getTestTaskStatistics()
+    throws ResourcePoolException;
+
+    /**
+     * @return queue waits and run times of the tasks that refurbish resources
+     *         on check-in, or complete asynchronous checkouts
+     */
+    public TaskStatistics getRefurbishTaskStatistics()
+    throws ResourcePoolException;
+
+    /**
+     * @return queue waits and run times of the tasks that remove and destroy resources
+     */
+    public TaskStatistics getDestroyTaskStatistics()
+    throws ResourcePoolException;
     
     public int getNumCheckoutWaiters()
     throws ResourcePoolException;
 
+    public int getNumCheckoutWaiters( int priority )
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of successful checkouts at priority
+     */
+    public long getNumCheckouts( int priority )
+    throws ResourcePoolException;
+
+    /**
+     * @return the mean time, in milliseconds, that checkouts at priority
+     *         have spent waiting for a resource
+     */
+    public float getAverageCheckoutWaitTime( int priority )
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of resources checked out at priority, or -1
+     *         if no priority reserves resources, in which case
+     *         resources are not counted by priority
+     */
+    public int getNumCheckedOut( int priority )
+    throws ResourcePoolException;
+
+    /**
+     * @return the number of resources reserved for priority
+     */
+    public int getReservedCount( int priority )
+    throws ResourcePoolException;
+
     public Throwable getLastAcquisitionFailure()
     throws ResourcePoolException;
 
@@ -124,12 +362,52 @@ public interface ResourcePool extends ClosableResource
     public void resetPool()
 	throws ResourcePoolException;
 
+    /**
+     * Like resetPool(), but if the pool retires resources
+     * on a rolling basis, each resource remains in service
+     * until a replacement has been acquired, so the pool
+     * never dips in size and never asks its resource source
+     * for more than a few resources at once. Otherwise, just
+     * resets the pool.
+     */
+    public void retireAllResources()
+	throws ResourcePoolException;
+
     public void close() 
 	throws ResourcePoolException;
 
     public void close( boolean close_checked_out_resources ) 
 	throws ResourcePoolException;
 
+    public interface CheckoutCallback
+    {
+        /**
+         * The caller now holds resc, and must eventually check it in.
+         */
+	public void checkedOut(Object resc);
+
+        /**
+         * @param e a TimeoutException (a PoolSaturatedException if the pool
+         *          shed the checkout rather than let it wait), a
+         *          CannotAcquireResourceException (a CircuitOpenException if
+         *          the pool's acquisition circuit breaker is open), or a
+         *          ResourcePoolException if the pool is closed or broken
+         */
+	public void failed(ResourcePoolException e);
+    }
+
+    public interface AsyncCheckout
+    {
+        /**
+         * Abandons an asynchronous checkout. If a resource is delivered
+         * for it even as it is cancelled, the pool takes the resource back.
+         *
+         * @return false if the callback has already been, or
+         *         is already being, notified
+         */
+	public boolean cancel();
+    }
+
     public interface Manager
     {
 	public Object acquireResource() throws Exception;
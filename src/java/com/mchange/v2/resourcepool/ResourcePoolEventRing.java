@@ -0,0 +1,289 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import com.mchange.v2.async.RunnableQueue;
+import com.mchange.v2.log.*;
+
+/*
+ * Carries a BasicResourcePool's events from the threads that fire them
+ * to its listeners. Events are written into the preallocated slots of a
+ * bounded ring, so firing an event allocates nothing and takes no lock:
+ * a producer claims a slot by incrementing a counter, fills it, and
+ * publishes it by advancing the slot's sequence number (after Vyukov's
+ * bounded queue).
+ *
+ * A single drain task, itself preallocated, consumes the ring. It is
+ * posted to the pool's asynchronous event queue only when the ring
+ * goes from idle to busy, and then delivers every event it finds, in
+ * the order their slots were claimed, before it lets go. So the event
+ * queue sees one task per batch of events, rather than one per event,
+ * and events are never delivered by more than one thread at a time.
+ *
+ * If the ring is full, events spill into a synchronized overflow list,
+ * and keep spilling there until the drain task has emptied it. This
+ * should be rare, and it never blocks a producer (who may hold the
+ * pool's lock) on the progress of listeners (who may want it).
+ */
+final class ResourcePoolEventRing
+{
+    final static MLogger logger = MLog.getLogger( ResourcePoolEventRing.class );
+
+    final static int DEFAULT_CAPACITY = 1024;
+
+    // event kinds
+    final static int ACQUIRED    = 0;
+    final static int CHECKED_IN  = 1;
+    final static int CHECKED_OUT = 2;
+    final static int REMOVED     = 3;
+
+    final ResourcePoolEventSupport rpes;
+    final RunnableQueue            asyncEventQueue;
+
+    final int             capacity;
+    final int             mask;
+    final AtomicLongArray sequence;        // slot i is writable when sequence == pos, readable when sequence == pos + 1
+    final AtomicLong      tail = new AtomicLong( 0 ); // next position to claim
+    long                  head = 0;                   // next position to deliver, touched only by the drain task
+
+    // slot contents, written by the slot's producer before it publishes
+    final int[]     kinds;
+    final Object[]  rescs;
+    final boolean[] checkedOuts;
+    final int[]     poolSizes;
+    final int[]     availableSizes;
+    final int[]     removedButUnreturnedSizes;
+
+    // MT: protected by its own lock
+    final LinkedList overflow   = new LinkedList();
+    volatile boolean overflowing = false;
+
+    final AtomicBoolean scheduled = new AtomicBoolean( false );
+    final Runnable      drainTask = new DrainTask();
+
+    ResourcePoolEventRing( ResourcePoolEventSupport rpes, RunnableQueue asyncEventQueue )
+    { this( rpes, asyncEventQueue, DEFAULT_CAPACITY ); }
+
+    ResourcePoolEventRing( ResourcePoolEventSupport rpes, RunnableQueue asyncEventQueue, int min_capacity )
+    {
+        int cap = 1;
+        while (cap < min_capacity)
+            cap <<= 1;
+
+        this.rpes            = rpes;
+        this.asyncEventQueue = asyncEventQueue;
+        this.capacity        = cap;
+        this.mask            = cap - 1;
+        this.sequence        = new AtomicLongArray( cap );
+        for (int i = 0; i < cap; ++i)
+            sequence.set( i, i );
+
+        this.kinds                     = new int[ cap ];
+        this.rescs                     = new Object[ cap ];
+        this.checkedOuts               = new boolean[ cap ];
+        this.poolSizes                 = new int[ cap ];
+        this.availableSizes            = new int[ cap ];
+        this.removedButUnreturnedSizes = new int[ cap ];
+    }
+
+    // no need to sync
+    void publish( int kind, Object resc, boolean checked_out, int pool_size, int available_size, int removed_but_unreturned_size )
+    {
+        if (! rpes.hasListeners() )
+            return;
+
+        if ( overflowing || !offer( kind, resc, checked_out, pool_size, available_size, removed_but_unreturned_size ) )
+            spill( kind, resc, checked_out, pool_size, available_size, removed_but_unreturned_size );
+
+        if ( scheduled.compareAndSet( false, true ) )
+            asyncEventQueue.postRunnable( drainTask );
+    }
+
+    private boolean offer( int kind, Object resc, boolean checked_out, int pool_size, int available_size, int removed_but_unreturned_size )
+    {
+        while (true)
+        {
+            long pos = tail.get();
+            int  idx = (int) pos & mask;
+            long seq = sequence.get( idx );
+            if (seq == pos)
+            {
+                if ( tail.compareAndSet( pos, pos + 1 ) )
+                {
+                    kinds[idx]                     = kind;
+                    rescs[idx]                     = resc;
+                    checkedOuts[idx]               = checked_out;
+                    poolSizes[idx]                 = pool_size;
+                    availableSizes[idx]            = available_size;
+                    removedButUnreturnedSizes[idx] = removed_but_unreturned_size;
+                    sequence.set( idx, pos + 1 ); // publish
+                    return true;
+                }
+            }
+            else if (seq < pos) // the slot still holds an undelivered event from the last lap
+                return false;
+            // else another producer claimed pos first, try again
+        }
+    }
+
+    private void spill( int kind, Object resc, boolean checked_out, int pool_size, int available_size, int removed_but_unreturned_size )
+    {
+        synchronized ( overflow )
+        {
+            overflowing = true;
+            overflow.add( new SpilledEvent( kind, resc, checked_out, pool_size, available_size, removed_but_unreturned_size ) );
+        }
+    }
+
+    // called only by the drain task
+    private int drainRing()
+    {
+        int delivered = 0;
+        while ( delivered < capacity )
+        {
+            int idx = (int) head & mask;
+            if ( sequence.get( idx ) != head + 1 ) // empty, or the next slot is claimed but not yet published
+                break;
+
+            int     kind        = kinds[idx];
+            Object  resc        = rescs[idx];
+            boolean checked_out = checkedOuts[idx];
+            int     pool_size   = poolSizes[idx];
+            int     available   = availableSizes[idx];
+            int     removed     = removedButUnreturnedSizes[idx];
+            rescs[idx] = null; // don't keep destroyed resources reachable
+
+            sequence.set( idx, head + capacity ); // free the slot for the next lap
+            ++head;
+            ++delivered;
+
+            deliver( kind, resc, checked_out, pool_size, available, removed );
+        }
+        return delivered;
+    }
+
+    // called only by the drain task
+    private int drainOverflow()
+    {
+        Object[] spilled;
+        synchronized ( overflow )
+        {
+            if (! overflowing )
+                return 0;
+            spilled = overflow.toArray();
+            overflow.clear();
+            overflowing = false;
+        }
+        for (int i = 0; i < spilled.length; ++i)
+        {
+            SpilledEvent se = (SpilledEvent) spilled[i];
+            deliver( se.kind, se.resc, se.checked_out, se.pool_size, se.available_size, se.removed_but_unreturned_size );
+        }
+        return spilled.length;
+    }
+
+    private boolean isEmpty()
+    { return sequence.get( (int) head & mask ) != head + 1 && !overflowing; }
+
+    private void deliver( int kind, Object resc, boolean checked_out, int pool_size, int available_size, int removed_but_unreturned_size )
+    {
+        try
+        {
+            switch ( kind )
+            {
+            case ACQUIRED:
+                rpes.fireResourceAcquired( resc, pool_size, available_size, removed_but_unreturned_size );
+                break;
+            case CHECKED_IN:
+                rpes.fireResourceCheckedIn( resc, pool_size, available_size, removed_but_unreturned_size );
+                break;
+            case CHECKED_OUT:
+                rpes.fireResourceCheckedOut( resc, pool_size, available_size, removed_but_unreturned_size );
+                break;
+            case REMOVED:
+                rpes.fireResourceRemoved( resc, checked_out, pool_size, available_size, removed_but_unreturned_size );
+                break;
+            default:
+                throw new InternalError("Unknown ResourcePoolEvent kind: " + kind);
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            // one misbehaving listener should not cost the rest of the batch
+            if ( logger.isLoggable( MLevel.WARNING ) )
+                logger.log( MLevel.WARNING, "A ResourcePoolListener threw an Exception.", e );
+        }
+    }
+
+    class DrainTask implements Runnable
+    {
+        public void run()
+        {
+            while (true)
+            {
+                // the ring's events were all claimed before any that spilled
+                int delivered = drainRing();
+                delivered += drainOverflow();
+
+                if ( delivered >= capacity )
+                {
+                    // let other tasks on a shared queue have a turn; we remain scheduled
+                    asyncEventQueue.postRunnable( this );
+                    return;
+                }
+
+                scheduled.set( false );
+
+                // an event published after we last looked, but before we unscheduled,
+                // may not have posted us. if so, whoever wins the CAS drains it.
+                if ( isEmpty() || !scheduled.compareAndSet( false, true ) )
+                    return;
+            }
+        }
+    }
+
+    final static class SpilledEvent
+    {
+        final int     kind;
+        final Object  resc;
+        final boolean checked_out;
+        final int     pool_size;
+        final int     available_size;
+        final int     removed_but_unreturned_size;
+
+        SpilledEvent( int kind, Object resc, boolean checked_out, int pool_size, int available_size, int removed_but_unreturned_size )
+        {
+            this.kind                        = kind;
+            this.resc                        = resc;
+            this.checked_out                 = checked_out;
+            this.pool_size                   = pool_size;
+            this.available_size              = available_size;
+            this.removed_but_unreturned_size = removed_but_unreturned_size;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.resourcepool;
+
+import java.lang.reflect.*;
+import java.util.*;
+import com.mchange.v2.async.RunnableQueue;
+import junit.framework.TestCase;
+
+public final class ResourcePoolEventRingJUnitTestCase extends TestCase
+{
+    final static int CAPACITY = 4;
+
+    ManualQueue           queue;
+    Recorder              recorder;
+    ResourcePoolEventRing ring;
+
+    protected void setUp()
+    {
+        ResourcePool source = (ResourcePool) Proxy.newProxyInstance( ResourcePool.class.getClassLoader(), 
+                                                                     new Class[] { ResourcePool.class }, 
+                                                                     new InvocationHandler()
+                                                                     {
+                                                                         public Object invoke( Object proxy, Method m, Object[] args )
+                                                                         { return ( "toString".equals( m.getName() ) ? "fake ResourcePool" : null ); }
+                                                                     } );
+        ResourcePoolEventSupport rpes = new ResourcePoolEventSupport( source );
+        recorder = new Recorder();
+        rpes.addResourcePoolListener( recorder );
+        queue = new ManualQueue();
+        ring  = new ResourcePoolEventRing( rpes, queue, CAPACITY );
+    }
+
+    public void testCapacityIsRoundedToPowerOfTwo()
+    {
+        assertEquals( 8, new ResourcePoolEventRing( null, null, 5 ).capacity );
+        assertEquals( CAPACITY, ring.capacity );
+    }
+
+    public void testNothingIsPostedWithoutListeners()
+    {
+        ResourcePoolEventSupport rpes = new ResourcePoolEventSupport( null );
+        ResourcePoolEventRing quiet = new ResourcePoolEventRing( rpes, queue, CAPACITY );
+        quiet.publish( ResourcePoolEventRing.ACQUIRED, "a", false, 1, 1, 0 );
+        assertEquals( 0, queue.size() );
+    }
+
+    public void testEventsAreDeliveredInOrderAcrossLaps()
+    {
+        int n = 0;
+        for (int lap = 0; lap < 5; ++lap)
+        {
+            for (int i = 0; i < CAPACITY - 1; ++i, ++n)
+                publish( n );
+            assertEquals( "One drain task should be posted per batch.", 1, queue.size() );
+            queue.runAll();
+        }
+        assertEquals( expected( 0, n ), recorder.events );
+        assertTrue( "The ring should have wrapped around.", ring.head > CAPACITY );
+        for (int i = 0; i < CAPACITY; ++i)
+            assertNull( "Delivered resources should not remain reachable from the ring.", ring.rescs[i] );
+    }
+
+    public void testEventKindsAndSizesAreDelivered()
+    {
+        ring.publish( ResourcePoolEventRing.ACQUIRED,    "a", false, 1, 2, 3 );
+        ring.publish( ResourcePoolEventRing.CHECKED_OUT, "b", true,  4, 5, 6 );
+        ring.publish( ResourcePoolEventRing.CHECKED_IN,  "c", false, 7, 8, 9 );
+        ring.publish( ResourcePoolEventRing.REMOVED,     "d", true,  1, 0, 1 );
+        queue.runAll();
+        assertEquals( Arrays.asList( new String[] { "acquired:a:false:1:2:3", "checkedOut:b:true:4:5:6", "checkedIn:c:false:7:8:9", "removed:d:true:1:0:1" } ), recorder.details );
+    }
+
+    public void testOverflowSpillsAndPreservesOrder()
+    {
+        // more than the ring holds, with no drain in between
+        int n = 3 * CAPACITY;
+        for (int i = 0; i < n; ++i)
+            publish( i );
+        assertTrue( ring.overflowing );
+        assertEquals( n - CAPACITY, ring.overflow.size() );
+        assertEquals( "Only one drain task should be posted.", 1, queue.size() );
+
+        queue.runAll();
+        assertEquals( expected( 0, n ), recorder.events );
+        assertFalse( ring.overflowing );
+
+        // once the overflow is drained, events go to the ring again
+        publish( n );
+        assertEquals( 0, ring.overflow.size() );
+        queue.runAll();
+        assertEquals( expected( 0, n + 1 ), recorder.events );
+    }
+
+    public void testEventsPublishedWhileSpillingSpillToo()
+    {
+        for (int i = 0; i < CAPACITY + 1; ++i)
+            publish( i );
+
+        // published as the first event is delivered, when the ring has room again, but
+        // the spilled event has yet to be delivered. it must follow the spilled event.
+        recorder.publishOn   = "0";
+        recorder.publishWhat = String.valueOf( CAPACITY + 1 );
+        recorder.ring        = ring;
+        queue.runAll();
+        assertEquals( expected( 0, CAPACITY + 2 ), recorder.events );
+    }
+
+    public void testFullBatchReschedulesDrainTask()
+    {
+        for (int i = 0; i < CAPACITY; ++i)
+            publish( i );
+        assertEquals( 1, queue.size() );
+
+        // a full ring's worth is delivered, then the task yields, but remains scheduled
+        queue.runNext();
+        assertEquals( expected( 0, CAPACITY ), recorder.events );
+        assertEquals( "A drain task that delivered a full batch should post itself again.", 1, queue.size() );
+        assertTrue( ring.scheduled.get() );
+
+        publish( CAPACITY );
+        assertEquals( "No second drain task should be posted while one is scheduled.", 1, queue.size() );
+
+        queue.runNext();
+        assertEquals( expected( 0, CAPACITY + 1 ), recorder.events );
+        assertEquals( 0, queue.size() );
+        assertFalse( ring.scheduled.get() );
+
+        publish( CAPACITY + 1 );
+        assertEquals( "An idle ring should post its drain task for a new event.", 1, queue.size() );
+    }
+
+    public void testListenerExceptionsDoNotCostTheBatch()
+    {
+        recorder.throwOn = "1";
+        for (int i = 0; i < 3; ++i)
+            publish( i );
+        queue.runAll();
+        assertEquals( expected( 0, 3 ), recorder.events );
+    }
+
+    private void publish( int i )
+    { ring.publish( ResourcePoolEventRing.CHECKED_IN, String.valueOf( i ), false, i, 0, 0 ); }
+
+    private static List expected( int from, int to )
+    {
+        List out = new ArrayList();
+        for (int i = from; i < to; ++i)
+            out.add( String.valueOf( i ) );
+        return out;
+    }
+
+    final static class Recorder implements ResourcePoolListener
+    {
+        final List events  = new ArrayList(); // resources, in order of delivery
+        final List details = new ArrayList();
+        Object     throwOn = null;
+
+        // when publishOn is delivered, publishWhat is published to ring
+        Object                publishOn   = null;
+        Object                publishWhat = null;
+        ResourcePoolEventRing ring        = null;
+
+        public void resourceAcquired( ResourcePoolEvent evt )   { record( "acquired", evt ); }
+        public void resourceCheckedIn( ResourcePoolEvent evt )  { record( "checkedIn", evt ); }
+        public void resourceCheckedOut( ResourcePoolEvent evt ) { record( "checkedOut", evt ); }
+        public void resourceRemoved( ResourcePoolEvent evt )    { record( "removed", evt ); }
+
+        private void record( String kind, ResourcePoolEvent evt )
+        {
+            events.add( evt.getResource() );
+            details.add( kind + ':' + evt.getResource() + ':' + evt.isCheckedOutResource() + ':' + 
+                         evt.getPoolSize() + ':' + evt.getAvailableSize() + ':' + evt.getRemovedButUnreturnedSize() );
+            if (evt.getResource().equals( publishOn ))
+            {
+                assertTrue( ring.overflowing );
+                ring.publish( ResourcePoolEventRing.CHECKED_IN, publishWhat, false, 0, 0, 0 );
+                assertEquals( "An event published while others await delivery in the overflow should spill.", 2, ring.overflow.size() );
+            }
+            if (evt.getResource().equals( throwOn ))
+                throw new RuntimeException( "Listener failure for testing." );
+        }
+    }
+
+    // runs posted tasks only when the test asks it to
+    final static class ManualQueue implements RunnableQueue
+    {
+        final LinkedList tasks = new LinkedList();
+
+        public void postRunnable( Runnable r )            { tasks.add( r ); }
+        public void close( boolean skip_remaining_tasks ) {}
+        public void close()                               {}
+
+        int size()
+        { return tasks.size(); }
+
+        void runNext()
+        { ((Runnable) tasks.removeFirst()).run(); }
+
+        void runAll()
+        {
+            while (! tasks.isEmpty())
+                runNext();
+        }
+    }
+}
@@ -23,28 +23,58 @@
 
 package com.mchange.v2.resourcepool;
 
-import java.util.*;
-
 public class ResourcePoolEventSupport
 {
+    final static ResourcePoolListener[] NO_LISTENERS = new ResourcePoolListener[0];
+
     ResourcePool source;
-    Set          mlisteners = new HashSet();
+
+    // copy-on-write: replaced, never modified, when listeners come and go,
+    // so that events are delivered to a stable snapshot without locking
+    volatile ResourcePoolListener[] mlisteners = NO_LISTENERS;
 
     public ResourcePoolEventSupport(ResourcePool source)
     { this.source = source; }
 
     public synchronized void addResourcePoolListener(ResourcePoolListener mlistener)
-    {mlisteners.add(mlistener);}
+    {
+	ResourcePoolListener[] old = mlisteners;
+	for (int i = 0; i < old.length; ++i)
+	    if (old[i].equals( mlistener ))
+		return;
+	ResourcePoolListener[] updated = new ResourcePoolListener[ old.length + 1 ];
+	System.arraycopy( old, 0, updated, 0, old.length );
+	updated[ old.length ] = mlistener;
+	mlisteners = updated;
+    }
 
     public synchronized void removeResourcePoolListener(ResourcePoolListener mlistener)
-    {mlisteners.remove(mlistener);}
+    {
+	ResourcePoolListener[] old = mlisteners;
+	for (int i = 0; i < old.length; ++i)
+	    {
+		if (old[i].equals( mlistener ))
+		    {
+			ResourcePoolListener[] updated = new ResourcePoolListener[ old.length - 1 ];
+			System.arraycopy( old, 0, updated, 0, i );
+			System.arraycopy( old, i + 1, updated, i, old.length - i - 1 );
+			mlisteners = updated;
+			return;
+		    }
+	    }
+    }
+
+    // no need to sync
+    public boolean hasListeners()
+    { return mlisteners.length > 0; }
 
-    public synchronized void fireResourceAcquired( Object       resc,
-						   int          pool_size,
-						   int          available_size,
-						   int          removed_but_unreturned_size )
+    public void fireResourceAcquired( Object       resc,
+				      int          pool_size,
+				      int          available_size,
+				      int          removed_but_unreturned_size )
     {
-	if (! mlisteners.isEmpty() )
+	ResourcePoolListener[] rpls = mlisteners;
+	if ( rpls.length > 0 )
 	    {
 		ResourcePoolEvent evt = new ResourcePoolEvent(source,
 							      resc,
@@ -52,20 +82,18 @@ public class ResourcePoolEventSupport
 							      pool_size,
 							      available_size,
 							      removed_but_unreturned_size );
-		for (Iterator i = mlisteners.iterator(); i.hasNext();)
-		    {
-			ResourcePoolListener rpl = (ResourcePoolListener) i.next();
-			rpl.resourceAcquired(evt);
-		    }
+		for (int i = 0; i < rpls.length; ++i)
+		    rpls[i].resourceAcquired(evt);
 	    }
     }
 
-    public synchronized void fireResourceCheckedIn( Object       resc,
-						    int          pool_size,
-						    int          available_size,
-						    int          removed_but_unreturned_size )
+    public void fireResourceCheckedIn( Object       resc,
+				       int          pool_size,
+				       int          available_size,
+				       int          removed_but_unreturned_size )
     {
-	if (! mlisteners.isEmpty() )
+	ResourcePoolListener[] rpls = mlisteners;
+	if ( rpls.length > 0 )
 	    {
 		ResourcePoolEvent evt = new ResourcePoolEvent(source,
 							      resc,
@@ -73,20 +101,18 @@ public class ResourcePoolEventSupport
 							      pool_size,
 							      available_size,
 							      removed_but_unreturned_size );
-		for (Iterator i = mlisteners.iterator(); i.hasNext();)
-		    {
-			ResourcePoolListener rpl = (ResourcePoolListener) i.next();
-			rpl.resourceCheckedIn(evt);
-		    }
+		for (int i = 0; i < rpls.length; ++i)
+		    rpls[i].resourceCheckedIn(evt);
 	    }
     }
 
-    public synchronized void fireResourceCheckedOut( Object       resc,
-						     int          pool_size,
-						     int          available_size,
-						     int          removed_but_unreturned_size )
+    public void fireResourceCheckedOut( Object       resc,
+					int          pool_size,
+					int          available_size,
+					int          removed_but_unreturned_size )
     {
-	if (! mlisteners.isEmpty() )
+	ResourcePoolListener[] rpls = mlisteners;
+	if ( rpls.length > 0 )
 	    {
 		ResourcePoolEvent evt = new ResourcePoolEvent(source,
 							      resc,
@@ -94,21 +120,19 @@ public class ResourcePoolEventSupport
 							      pool_size,
 							      available_size,
 							      removed_but_unreturned_size );
-		for (Iterator i = mlisteners.iterator(); i.hasNext();)
-		    {
-			ResourcePoolListener rpl = (ResourcePoolListener) i.next();
-			rpl.resourceCheckedOut(evt);
-		    }
+		for (int i = 0; i < rpls.length; ++i)
+		    rpls[i].resourceCheckedOut(evt);
 	    }
     }
 
-    public synchronized void fireResourceRemoved( Object       resc,
-						  boolean      checked_out_resource,
-						  int          pool_size,
-						  int          available_size,
-						  int          removed_but_unreturned_size )
+    public void fireResourceRemoved( Object       resc,
+				     boolean      checked_out_resource,
+				     int          pool_size,
+				     int          available_size,
+				     int          removed_but_unreturned_size )
     {
-	if (! mlisteners.isEmpty() )
+	ResourcePoolListener[] rpls = mlisteners;
+	if ( rpls.length > 0 )
 	    {
 		ResourcePoolEvent evt = new ResourcePoolEvent(source,
 							      resc,
@@ -116,11 +140,8 @@ public class ResourcePoolEventSupport
 							      pool_size,
 							      available_size,
 							      removed_but_unreturned_size );
-		for (Iterator i = mlisteners.iterator(); i.hasNext();)
-		    {
-			ResourcePoolListener rpl = (ResourcePoolListener) i.next();
-			rpl.resourceRemoved(evt);
-		    }
+		for (int i = 0; i < rpls.length; ++i)
+		    rpls[i].resourceRemoved(evt);
 	    }
     }
 }
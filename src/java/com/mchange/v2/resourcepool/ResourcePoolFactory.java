@@ -70,7 +70,8 @@ public abstract class ResourcePoolFactory
 
     /**
      * Any or all of these arguments can be null -- any unspecified resources
-     * will be created and cleaned up internally.
+     * will be created and cleaned up internally. cullTimer is ignored: pools
+     * schedule their maintenance on the process-wide {@link TimingWheel}.
      */
     public static ResourcePoolFactory createInstance( AsynchronousRunner taskRunner,
 						      RunnableQueue asyncEventQueue,
@@ -171,6 +172,207 @@ public abstract class ResourcePoolFactory
     public abstract boolean getDebugStoreCheckoutStackTrace()
 	throws ResourcePoolException;
 
+    /**
+     *  If true, idle resources are held in a lock-free structure, so that
+     *  uncontended checkouts and checkins need not acquire the pool's lock.
+     */
+    public abstract void setConcurrentCheckout( boolean concurrent_checkout )
+	throws ResourcePoolException;
+
+    public abstract boolean getConcurrentCheckout()
+	throws ResourcePoolException;
+
+    /**
+     *  If true, and concurrent checkout is enabled, a Thread checking out
+     *  a resource will first try to reclaim the resource it last checked in.
+     */
+    public abstract void setThreadAffinity( boolean thread_affinity )
+	throws ResourcePoolException;
+
+    public abstract boolean getThreadAffinity()
+	throws ResourcePoolException;
+
+    /**
+     *  Determines the order in which idle resources are checked out.
+     *  null means the default, CheckoutOrderings.LIFO.
+     */
+    public abstract void setCheckoutOrdering( CheckoutOrdering checkout_ordering )
+	throws ResourcePoolException;
+
+    public abstract CheckoutOrdering getCheckoutOrdering()
+	throws ResourcePoolException;
+
+    /**
+     *  If true, the pool predicts demand from smoothed checkout rates, hold times,
+     *  and wait times, and grows ahead of it or shrinks behind it, within min and max.
+     *  Excess resource max idle time is then ignored.
+     */
+    public abstract void setAdaptiveSizing( boolean adaptive_sizing )
+	throws ResourcePoolException;
+
+    public abstract boolean getAdaptiveSizing()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, resources are acquired on up to this many threads
+     *  dedicated to acquisition, rather than by the factory's shared task runner.
+     */
+    public abstract void setAcquisitionParallelism( int acquisition_parallelism )
+	throws ResourcePoolException;
+
+    public abstract int getAcquisitionParallelism()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, this many consecutive acquisition failures open a circuit
+     *  breaker, under which checkouts that would wait fail immediately, and the pool
+     *  probes for recovery with single acquisitions, backing off exponentially.
+     */
+    public abstract void setCircuitBreakerThreshold( int circuit_breaker_threshold )
+	throws ResourcePoolException;
+
+    public abstract int getCircuitBreakerThreshold()
+	throws ResourcePoolException;
+
+    /**
+     *  If true, clients never wait() on a pool's monitor. A client that must
+     *  wait for a resource parks outside of it, so that a virtual thread
+     *  waiting on the pool does not pin its carrier thread.
+     */
+    public abstract void setVirtualThreadFriendly( boolean virtual_thread_friendly )
+	throws ResourcePoolException;
+
+    public abstract boolean getVirtualThreadFriendly()
+	throws ResourcePoolException;
+
+    /**
+     *  The number of resources reserved for each checkout priority, indexed
+     *  by the constants of CheckoutPriorities, or null if nothing is reserved.
+     *  A checkout is admitted only if it leaves room, within the maximum pool
+     *  size, for every other priority's unmet reservation.
+     */
+    public abstract void setPriorityReservations( int[] priority_reservations )
+	throws ResourcePoolException;
+
+    public abstract int[] getPriorityReservations()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, a client who would have to wait for a resource
+     *  while this many clients already wait fails immediately, with a
+     *  PoolSaturatedException.
+     */
+    public abstract void setMaxCheckoutWaiters( int max_checkout_waiters )
+	throws ResourcePoolException;
+
+    public abstract int getMaxCheckoutWaiters()
+	throws ResourcePoolException;
+
+    /**
+     *  If true, a client who would have to wait for a resource fails immediately,
+     *  with a PoolSaturatedException, if the clients already waiting ahead of it,
+     *  at the pool's observed mean hold time, would keep it waiting beyond its
+     *  checkout timeout. Clients who would wait without timeout are never shed.
+     */
+    public abstract void setShedPredictedTimeouts( boolean shed_predicted_timeouts )
+	throws ResourcePoolException;
+
+    public abstract boolean getShedPredictedTimeouts()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than one, and concurrent checkout is enabled, idle resources
+     *  are divided among this many stripes. Each client thread checks resources
+     *  in to, and out of, a home stripe, chosen by hashing the thread, and steals
+     *  from other stripes before waiting, so that clients on different stripes
+     *  do not contend. Pool sizes are enforced across all stripes together.
+     */
+    public abstract void setCheckoutStripes( int checkout_stripes )
+	throws ResourcePoolException;
+
+    public abstract int getCheckoutStripes()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, each resource's maximum age is shortened by a
+     *  random amount, up to this many milliseconds (but no more than half
+     *  the maximum age), so that resources acquired together do not all
+     *  expire together.
+     */
+    public abstract void setResourceMaxAgeJitter( long millis )
+	throws ResourcePoolException;
+
+    public abstract long getResourceMaxAgeJitter()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, resources that outlive their maximum age, or
+     *  that are discarded by a reset of the pool, are retired on a rolling
+     *  basis: each remains in service until a replacement has been acquired,
+     *  and only then is destroyed, with at most this many replacements
+     *  underway at once.
+     */
+    public abstract void setMaxConcurrentRetirements( int max_concurrent_retirements )
+	throws ResourcePoolException;
+
+    public abstract int getMaxConcurrentRetirements()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, a pool acquires its initial resources
+     *  on threads of its own, at most this many at once, until it
+     *  is ready. See {@link ResourcePool#awaitReady(long)}.
+     */
+    public abstract void setWarmupParallelism( int warmup_parallelism )
+	throws ResourcePoolException;
+
+    public abstract int getWarmupParallelism()
+	throws ResourcePoolException;
+
+    /**
+     *  If greater than zero, at most this many idle resources
+     *  are tested at once. Tests that come due while this many
+     *  are underway wait until one finishes.
+     */
+    public abstract void setMaxConcurrentIdleTests( int max_concurrent_idle_tests )
+	throws ResourcePoolException;
+
+    public abstract int getMaxConcurrentIdleTests()
+	throws ResourcePoolException;
+
+    /**
+     *  If set, pools run acquisitions, and the work that checkouts
+     *  wait on, such as the refurbishment of checked-in resources,
+     *  here rather than on the factory's task runner, so that they
+     *  never queue behind background maintenance. Unlike the
+     *  factory's own task runner, this is never closed by the factory.
+     */
+    public abstract void setAcquireTaskRunner( AsynchronousRunner acquireTaskRunner )
+	throws ResourcePoolException;
+
+    public abstract AsynchronousRunner getAcquireTaskRunner()
+	throws ResourcePoolException;
+
+    /**
+     *  If set, pools test idle resources here, rather than on the
+     *  factory's task runner.
+     */
+    public abstract void setTestTaskRunner( AsynchronousRunner testTaskRunner )
+	throws ResourcePoolException;
+
+    public abstract AsynchronousRunner getTestTaskRunner()
+	throws ResourcePoolException;
+
+    /**
+     *  If set, pools destroy resources here, rather than on the
+     *  factory's task runner.
+     */
+    public abstract void setDestroyTaskRunner( AsynchronousRunner destroyTaskRunner )
+	throws ResourcePoolException;
+
+    public abstract AsynchronousRunner getDestroyTaskRunner()
+	throws ResourcePoolException;
+
 //     /**
 //      *  Sets whether or not maxAge should be interpreted
 //      *  as the maximum age since the resource was first acquired 
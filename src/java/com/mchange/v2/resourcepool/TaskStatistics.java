@@ -0,0 +1,173 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.mchange.v2.async.AsynchronousRunner;
+
+/**
+ *  Counts and times the tasks of one kind that a pool posts to its
+ *  AsynchronousRunners. Each task's wait in its runner's queue, from
+ *  post to start, and its run time are recorded in LatencyHistograms,
+ *  so that a saturated runner shows up as growing queue waits long
+ *  before any task runs long enough to be interrupted.
+ *
+ *  Like LatencyHistogram, recording never blocks, and counts accumulate
+ *  over the life of the pool. Tasks a runner accepts but skips, because
+ *  it is closed, remain counted as queued.
+ */
+public final class TaskStatistics
+{
+    final String name;
+
+    final LatencyHistogram queueWaitHistogram = new LatencyHistogram();
+    final LatencyHistogram runTimeHistogram   = new LatencyHistogram();
+
+    final AtomicLong    posted  = new AtomicLong( 0 );
+    final AtomicLong    failed  = new AtomicLong( 0 );
+    final AtomicInteger queued  = new AtomicInteger( 0 );
+    final AtomicInteger running = new AtomicInteger( 0 );
+
+    public TaskStatistics( String name )
+    { this.name = name; }
+
+    /**
+     * Posts a timed version of r to runner. If the runner refuses
+     * the task, it is uncounted, and the runner's Exception rethrown.
+     */
+    public void post( AsynchronousRunner runner, Runnable r )
+    {
+        TimedTask timed = new TimedTask( r );
+        try
+        { runner.postRunnable( timed ); }
+        catch ( RuntimeException e )
+        {
+            timed.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a version of r that records its queue wait and run time,
+     *         counted as posted as of this call
+     */
+    public Runnable timed( Runnable r )
+    { return new TimedTask( r ); }
+
+    public String getName()
+    { return name; }
+
+    public long getNumPosted()
+    { return posted.get(); }
+
+    /**
+     * @return the number of tasks that ended by throwing an Exception or Error
+     */
+    public long getNumFailed()
+    { return failed.get(); }
+
+    /**
+     * @return the number of tasks posted, but not yet started
+     */
+    public int getNumQueued()
+    { return queued.get(); }
+
+    public int getNumRunning()
+    { return running.get(); }
+
+    public LatencyHistogram getQueueWaitHistogram()
+    { return queueWaitHistogram; }
+
+    public LatencyHistogram getRunTimeHistogram()
+    { return runTimeHistogram; }
+
+    public String summary()
+    {
+        StringBuffer sb = new StringBuffer( 384 );
+        sb.append( name );
+        sb.append( " tasks -- posted: " );
+        sb.append( getNumPosted() );
+        sb.append( "; queued: " );
+        sb.append( getNumQueued() );
+        sb.append( "; running: " );
+        sb.append( getNumRunning() );
+        sb.append( "; failed: " );
+        sb.append( getNumFailed() );
+        sb.append( "\n\tqueue wait -- " );
+        sb.append( queueWaitHistogram.summary() );
+        sb.append( "\n\trun time -- " );
+        sb.append( runTimeHistogram.summary() );
+        return sb.toString();
+    }
+
+    public String toString()
+    { return super.toString() + " [" + name + "]"; }
+
+    final class TimedTask implements Runnable
+    {
+        final Runnable inner;
+        final long     posted_nanos;
+
+        TimedTask( Runnable inner )
+        {
+            this.inner        = inner;
+            this.posted_nanos = System.nanoTime();
+            posted.incrementAndGet();
+            queued.incrementAndGet();
+        }
+
+        void discard()
+        {
+            posted.decrementAndGet();
+            queued.decrementAndGet();
+        }
+
+        public void run()
+        {
+            long start = System.nanoTime();
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            queueWaitHistogram.recordNanos( start - posted_nanos );
+
+            boolean ok = false;
+            try
+            {
+                inner.run();
+                ok = true;
+            }
+            finally
+            {
+                runTimeHistogram.recordNanos( System.nanoTime() - start );
+                running.decrementAndGet();
+                if (! ok)
+                    failed.incrementAndGet();
+            }
+        }
+
+        // runners report on tasks by their toString(), so we remain invisible
+        public String toString()
+        { return inner.toString(); }
+    }
+}
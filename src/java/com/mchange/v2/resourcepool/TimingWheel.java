@@ -0,0 +1,345 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import com.mchange.v2.async.AsynchronousRunner;
+import com.mchange.v2.log.*;
+
+/**
+ * <p>A hashed timing wheel, on which many pools may schedule their
+ * maintenance tasks without each requiring a Timer thread of its own.</p>
+ *
+ * <p>Time is divided into ticks, and the wheel into a fixed number of buckets,
+ * one per tick, that it visits in turn. A timeout is hashed to the bucket of its
+ * deadline tick, along with the number of whole turns of the wheel that must
+ * pass before it is due. Scheduling and cancelling a timeout are constant time,
+ * however many timeouts are outstanding. A timeout fires no earlier than its
+ * deadline, and at most about one tick later.</p>
+ *
+ * <p>The wheel's single thread never runs tasks itself. When a timeout fires, its
+ * task is posted to the AsynchronousRunner supplied when it was scheduled, so
+ * that a slow task delays only the pool it belongs to. A periodic task is not
+ * posted again while a previous posting has yet to complete; periods that
+ * elapse in the meantime are skipped.</p>
+ *
+ * <p>The wheel's thread is a daemon, started when a timeout is scheduled,
+ * and which exits when no timeouts remain.</p>
+ */
+public final class TimingWheel
+{
+    final static MLogger logger = MLog.getLogger( TimingWheel.class );
+
+    final static long DFLT_TICK_MILLIS  = 50;
+    final static int  DFLT_WHEEL_SIZE   = 512;  //must be a power of two
+
+    final static TimingWheel SHARED_INSTANCE = new TimingWheel( "C3P0SharedTimingWheel", DFLT_TICK_MILLIS, DFLT_WHEEL_SIZE );
+
+    /**
+     * @return the process-wide TimingWheel shared by all pools
+     */
+    public static TimingWheel sharedInstance()
+    { return SHARED_INSTANCE; }
+
+    final String threadName;
+    final long   tick_millis;
+    final long   start_time = System.currentTimeMillis();
+
+    //MT: protected by this' lock
+    final Timeout[] buckets; //each the head of a doubly-linked list, or null
+    int             count     = 0;
+    long            last_tick = -1; //the most recent tick whose bucket has been processed
+    Thread          worker    = null;
+
+    TimingWheel( String threadName, long tick_millis, int wheel_size )
+    {
+        if ( Integer.bitCount( wheel_size ) != 1 )
+            throw new IllegalArgumentException("wheel_size must be a power of two: " + wheel_size);
+
+        this.threadName  = threadName;
+        this.tick_millis = tick_millis;
+        this.buckets     = new Timeout[ wheel_size ];
+    }
+
+    /**
+     * Schedules task to be posted to runner once, after delay milliseconds.
+     */
+    public Timeout schedule( Runnable task, AsynchronousRunner runner, long delay )
+    { return schedule( task, runner, delay, -1 ); }
+
+    /**
+     * Schedules task to be posted to runner after delay milliseconds,
+     * then every period milliseconds thereafter, until cancelled.
+     */
+    public synchronized Timeout schedule( Runnable task, AsynchronousRunner runner, long delay, long period )
+    {
+        Timeout out = new Timeout( task, runner, period );
+        if ( worker == null )
+        {
+            // with nothing scheduled, every bucket is empty, so no ticks need be caught up
+            last_tick = currentTick();
+            worker = new Worker();
+            worker.start();
+        }
+        insert( out, System.currentTimeMillis() + Math.max( 0, delay ) );
+        return out;
+    }
+
+    /**
+     * @return the number of outstanding timeouts
+     */
+    public synchronized int getNumScheduled()
+    { return count; }
+
+    public String toString()
+    { return super.toString() + " [" + threadName + ", tick_millis -> " + tick_millis + ", buckets -> " + buckets.length + "]"; }
+
+    // must be called from synchronized method
+    private void insert( Timeout t, long deadline )
+    {
+        assert Thread.holdsLock( this );
+
+        // the first tick at or after the deadline, but never a tick already processed
+        long tick = Math.max( (deadline - start_time + tick_millis - 1) / tick_millis, last_tick + 1 );
+
+        t.rounds = (tick - last_tick - 1) / buckets.length;
+        t.bucket = (int) (tick & (buckets.length - 1));
+        t.prev   = null;
+        t.next   = buckets[ t.bucket ];
+        if ( t.next != null )
+            t.next.prev = t;
+        buckets[ t.bucket ] = t;
+        ++count;
+    }
+
+    // must be called from synchronized method
+    private void unlink( Timeout t )
+    {
+        assert Thread.holdsLock( this );
+
+        if ( t.prev != null )
+            t.prev.next = t.next;
+        else
+            buckets[ t.bucket ] = t.next;
+        if ( t.next != null )
+            t.next.prev = t.prev;
+        t.prev   = null;
+        t.next   = null;
+        t.bucket = -1;
+        --count;
+    }
+
+    private long currentTick()
+    { return (System.currentTimeMillis() - start_time) / tick_millis; }
+
+    // must be called from synchronized method
+    // returns the timeouts now due, or null if the wheel's thread should exit
+    private List awaitDue() throws InterruptedException
+    {
+        assert Thread.holdsLock( this );
+
+        while ( true )
+        {
+            if ( count == 0 )
+            {
+                worker = null;
+                return null;
+            }
+
+            long now_tick = currentTick();
+            if ( now_tick <= last_tick )
+                this.wait( Math.max( 1, start_time + (last_tick + 1) * tick_millis - System.currentTimeMillis() ) );
+            else
+            {
+                List due = null;
+                while ( last_tick < now_tick )
+                {
+                    ++last_tick;
+                    int b = (int) (last_tick & (buckets.length - 1));
+                    for (Timeout t = buckets[b], next; t != null; t = next)
+                    {
+                        next = t.next;
+                        if ( t.rounds > 0 )
+                            --t.rounds;
+                        else
+                        {
+                            unlink( t );
+                            if ( due == null )
+                                due = new ArrayList();
+                            due.add( t );
+                        }
+                    }
+                }
+                if ( due != null )
+                    return due;
+            }
+        }
+    }
+
+    // must be called from synchronized method
+    private void rescheduleIfPeriodic( Timeout t )
+    {
+        assert Thread.holdsLock( this );
+
+        if ( t.period > 0 && !t.cancelled )
+            insert( t, System.currentTimeMillis() + t.period );
+    }
+
+    class Worker extends Thread
+    {
+        Worker()
+        {
+            super( threadName );
+            this.setDaemon( true );
+        }
+
+        public void run()
+        {
+            try
+            {
+                while ( true )
+                {
+                    List due;
+                    synchronized ( TimingWheel.this )
+                    {
+                        due = awaitDue();
+                        if ( due == null )
+                            break;
+                    }
+
+                    // post outside of our lock, the runners have locks of their own
+                    for (int i = 0, len = due.size(); i < len; ++i)
+                        ((Timeout) due.get(i)).fire();
+
+                    synchronized ( TimingWheel.this )
+                    {
+                        for (int i = 0, len = due.size(); i < len; ++i)
+                            rescheduleIfPeriodic( (Timeout) due.get(i) );
+                    }
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                if ( logger.isLoggable( MLevel.WARNING ) )
+                    logger.log( MLevel.WARNING, TimingWheel.this + " -- thread interrupted. Outstanding timeouts will fire when next a task is scheduled.", e );
+                synchronized ( TimingWheel.this )
+                { worker = null; }
+            }
+        }
+    }
+
+    /**
+     * A task scheduled on a TimingWheel.
+     */
+    public final class Timeout
+    {
+        final Runnable           task;
+        final AsynchronousRunner runner;
+        final long               period;
+
+        //MT: protected by TimingWheel.this' lock
+        Timeout prev;
+        Timeout next;
+        int     bucket = -1;
+        long    rounds;
+        boolean cancelled = false;
+        boolean posted    = false; //a posting of the task is pending or running
+
+        Timeout( Runnable task, AsynchronousRunner runner, long period )
+        {
+            this.task   = task;
+            this.runner = runner;
+            this.period = period;
+        }
+
+        /**
+         * Prevents any further running of this Timeout's task. A task
+         * that has already begun to run is not interrupted.
+         *
+         * @return false if this Timeout had already been cancelled,
+         *         or was a one-off whose task has already run
+         */
+        public boolean cancel()
+        {
+            synchronized ( TimingWheel.this )
+            {
+                if ( cancelled )
+                    return false;
+
+                cancelled = true;
+                if ( bucket >= 0 )
+                {
+                    unlink( this );
+                    return true;
+                }
+                else
+                    return ( posted || period > 0 );
+            }
+        }
+
+        void fire()
+        {
+            synchronized ( TimingWheel.this )
+            {
+                if ( cancelled || posted )
+                    return;
+                posted = true;
+            }
+
+            try
+            { runner.postRunnable( new Posting() ); }
+            catch ( Exception e )
+            {
+                // probably a runner that has been closed
+                if ( logger.isLoggable( MLevel.WARNING ) )
+                    logger.log( MLevel.WARNING, TimingWheel.this + " -- could not post task " + task + " to " + runner + ". The task is cancelled.", e );
+                synchronized ( TimingWheel.this )
+                {
+                    posted    = false;
+                    cancelled = true;
+                }
+            }
+        }
+
+        class Posting implements Runnable
+        {
+            public void run()
+            {
+                try
+                {
+                    boolean go;
+                    synchronized ( TimingWheel.this )
+                    { go = !cancelled; }
+                    if ( go )
+                        task.run();
+                }
+                finally
+                {
+                    synchronized ( TimingWheel.this )
+                    { posted = false; }
+                }
+            }
+        }
+    }
+}
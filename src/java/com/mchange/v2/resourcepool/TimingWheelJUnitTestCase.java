@@ -0,0 +1,177 @@
+/*
+ * Distributed as part of c3p0 v.0.9.2
+ *
+ * Copyright (C) 2012 Machinery For Change, Inc.
+ *
+ * Author: Steve Waldman <swaldman@mchange.com>
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2.1, as
+ * published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; see the file LICENSE.  If not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+
+package com.mchange.v2.resourcepool;
+
+import java.util.*;
+import com.mchange.v2.async.AsynchronousRunner;
+import junit.framework.TestCase;
+
+public final class TimingWheelJUnitTestCase extends TestCase
+{
+    // a small wheel, whose laps are short, so that timeouts must wait out several of them
+    final static long TICK_MILLIS = 10;
+    final static int  WHEEL_SIZE  = 8;
+    final static long LAP_MILLIS  = TICK_MILLIS * WHEEL_SIZE;
+
+    final static long SLACK_MILLIS = 2000; //generous, for busy test machines
+
+    TimingWheel wheel;
+
+    protected void setUp()
+    { wheel = new TimingWheel( "TimingWheelJUnitTestCase", TICK_MILLIS, WHEEL_SIZE ); }
+
+    public void testTimeoutsFireNoEarlierThanDeadlinesAcrossLaps() throws Exception
+    {
+        long[] delays = { 5, LAP_MILLIS + 5, 2 * LAP_MILLIS + 5, 3 * LAP_MILLIS + 50 };
+        Firing[] firings = new Firing[ delays.length ];
+
+        long start = System.currentTimeMillis();
+        for (int i = delays.length; --i >= 0; ) // latest first, so that firing order isn't insertion order
+            firings[i] = new Firing( wheel, delays[i] );
+
+        for (int i = 0; i < delays.length; ++i)
+        {
+            long fired = firings[i].awaitFiring( delays[i] + SLACK_MILLIS );
+            assertTrue( "Timeout " + i + " did not fire.", fired > 0 );
+            assertTrue( "Timeout " + i + " fired early, after " + (fired - start) + " of " + delays[i] + " msecs.", fired - start >= delays[i] );
+            if (i > 0)
+                assertTrue( "Timeouts should fire in order of their deadlines.", fired >= firings[i - 1].awaitFiring( 0 ) );
+        }
+        assertEquals( 0, wheel.getNumScheduled() );
+    }
+
+    public void testCancelledTimeoutNeverFires() throws Exception
+    {
+        Firing cancelled = new Firing( wheel, LAP_MILLIS + 5 );
+        Firing kept      = new Firing( wheel, 2 * LAP_MILLIS );
+        assertEquals( 2, wheel.getNumScheduled() );
+
+        assertTrue( cancelled.timeout.cancel() );
+        assertFalse( "A Timeout should be cancelled only once.", cancelled.timeout.cancel() );
+        assertEquals( 1, wheel.getNumScheduled() );
+
+        assertTrue( kept.awaitFiring( SLACK_MILLIS ) > 0 );
+        assertEquals( 0, cancelled.awaitFiring( 0 ) );
+
+        // the task has run, but its posting may not yet have finished
+        long deadline = System.currentTimeMillis() + SLACK_MILLIS;
+        while ( isPosted( wheel, kept.timeout ) && System.currentTimeMillis() < deadline )
+            Thread.sleep( 1 );
+        assertFalse( "A one-off Timeout that has run can't be cancelled.", kept.timeout.cancel() );
+    }
+
+    public void testPeriodicTimeoutRepeatsUntilCancelled() throws Exception
+    {
+        final int[] runs = new int[1];
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                synchronized ( runs )
+                {
+                    ++runs[0];
+                    runs.notifyAll();
+                }
+            }
+        };
+        TimingWheel.Timeout t = wheel.schedule( task, new InlineRunner(), 0, 2 * TICK_MILLIS );
+
+        int seen;
+        synchronized ( runs )
+        {
+            long deadline = System.currentTimeMillis() + SLACK_MILLIS;
+            while (runs[0] < 3 && System.currentTimeMillis() < deadline)
+                runs.wait( SLACK_MILLIS );
+            assertTrue( "A periodic task should run repeatedly.", runs[0] >= 3 );
+        }
+
+        assertTrue( t.cancel() );
+        synchronized ( runs )
+        { seen = runs[0]; }
+        Thread.sleep( 10 * TICK_MILLIS );
+        synchronized ( runs )
+        { assertTrue( "A cancelled periodic task ran again.", runs[0] <= seen + 1 ); } // one run may have been underway
+        assertEquals( 0, wheel.getNumScheduled() );
+    }
+
+    public void testThreadExitsWhenNothingIsScheduled() throws Exception
+    {
+        Firing f = new Firing( wheel, TICK_MILLIS );
+        assertTrue( f.awaitFiring( SLACK_MILLIS ) > 0 );
+
+        long deadline = System.currentTimeMillis() + SLACK_MILLIS;
+        while ( workerOf( wheel ) != null && System.currentTimeMillis() < deadline )
+            Thread.sleep( TICK_MILLIS );
+        assertNull( "The wheel's thread should exit when nothing is scheduled.", workerOf( wheel ) );
+
+        // and start again when needed
+        f = new Firing( wheel, TICK_MILLIS );
+        assertTrue( f.awaitFiring( SLACK_MILLIS ) > 0 );
+    }
+
+    private static boolean isPosted( TimingWheel wheel, TimingWheel.Timeout t )
+    {
+        synchronized ( wheel )
+        { return t.posted; }
+    }
+
+    private static Thread workerOf( TimingWheel wheel )
+    {
+        synchronized ( wheel )
+        { return wheel.worker; }
+    }
+
+    final static class Firing implements Runnable
+    {
+        final TimingWheel.Timeout timeout;
+
+        long fired = 0; //MT: protected by this' lock
+
+        Firing( TimingWheel wheel, long delay )
+        { this.timeout = wheel.schedule( this, new InlineRunner(), delay ); }
+
+        public synchronized void run()
+        {
+            fired = System.currentTimeMillis();
+            this.notifyAll();
+        }
+
+        // returns when fired, or zero if not fired within timeout
+        synchronized long awaitFiring( long timeout ) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            for (long remaining = timeout; fired == 0 && remaining > 0; remaining = deadline - System.currentTimeMillis())
+                this.wait( remaining );
+            return fired;
+        }
+    }
+
+    final static class InlineRunner implements AsynchronousRunner
+    {
+        public void postRunnable( Runnable r )            { r.run(); }
+        public void close( boolean skip_remaining_tasks ) {}
+        public void close()                               {}
+    }
+}